@@ -0,0 +1,92 @@
+package no.janco.ragarchitect.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import no.janco.ragarchitect.ragarchitect.vector.HttpEmbeddingProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static io.qdrant.client.QueryFactory.nearest;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+
+/**
+ * Boxed {@code List<Float>} against primitive {@link Embedding} for the two things the retrieval path does with a
+ * vector: parse it from the /embed response and turn it into a Qdrant query.
+ * Run with {@code -prof gc} to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmbeddingVectorBenchmark {
+
+    @Param({"1", "32"})
+    private int batchSize;
+
+    @Param({"384"})
+    private int dimension;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] responseJson;
+    private List<Float> boxedVector;
+    private Embedding primitiveVector;
+
+    // The response shape EmbeddingService deserialized into before Embedding was introduced
+    public static class BoxedEmbeddingResponse {
+        public List<List<Float>> embeddings;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("{\"embeddings\": [");
+        for (int i = 0; i < batchSize; i++) {
+            json.append(i == 0 ? "[" : ", [");
+            for (int j = 0; j < dimension; j++) {
+                json.append(j == 0 ? "" : ", ").append(random.nextFloat() * 2 - 1);
+            }
+            json.append("]");
+        }
+        responseJson = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+
+        boxedVector = objectMapper.readValue(responseJson, BoxedEmbeddingResponse.class).embeddings.get(0);
+        primitiveVector = objectMapper.readValue(responseJson, HttpEmbeddingProvider.EmbeddingResponse.class).getEmbeddings().get(0);
+    }
+
+    @Benchmark
+    public List<List<Float>> parseBoxed() throws Exception {
+        return objectMapper.readValue(responseJson, BoxedEmbeddingResponse.class).embeddings;
+    }
+
+    @Benchmark
+    public List<Embedding> parsePrimitive() throws Exception {
+        return objectMapper.readValue(responseJson, HttpEmbeddingProvider.EmbeddingResponse.class).getEmbeddings();
+    }
+
+    @Benchmark
+    public Points.QueryPoints buildQueryBoxed() {
+        return query(nearest(boxedVector));
+    }
+
+    @Benchmark
+    public Points.QueryPoints buildQueryPrimitive() {
+        return query(nearest(primitiveVector.values()));
+    }
+
+    private static Points.QueryPoints query(Points.Query nearest) {
+        return Points.QueryPoints.newBuilder()
+                .setCollectionName("code")
+                .setQuery(nearest)
+                .setWithPayload(enable(true))
+                .setLimit(30)
+                .setScoreThreshold(0.3f)
+                .build();
+    }
+}
@@ -0,0 +1,74 @@
+package no.janco.ragarchitect.benchmarks;
+
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.value;
+
+/**
+ * Turning a Qdrant query response into {@link IndexContent}, as the index search does with its 20 matches: decoding
+ * the response from the wire, and reading each point's payload. Without {@code withContent} the payload holds only
+ * the ranking fields, as the chat context queries and the index browser request it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexContentBenchmark {
+
+    @Param({"20"})
+    private int points;
+
+    @Param({"1500"})
+    private int contentChars;
+
+    @Param({"true", "false"})
+    private boolean withContent;
+
+    private byte[] responseBytes;
+    private Points.QueryResponse response;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        Points.QueryResponse.Builder builder = Points.QueryResponse.newBuilder();
+        for (int i = 0; i < points; i++) {
+            Points.ScoredPoint.Builder point = Points.ScoredPoint.newBuilder()
+                    .setId(id(i))
+                    .setScore(1f - i / (float) points)
+                    .putPayload("area", value("ragarchitect"))
+                    .putPayload("item_path", value("src/main/java/no/janco/ragarchitect/ragarchitect/Orchestrator.java"))
+                    .putPayload("chunk_id", value(String.valueOf(i)));
+            if (withContent) {
+                point.putPayload("content", value(TokenizerBenchmark.generateCode(random, contentChars)));
+            }
+            builder.addResult(point);
+        }
+        response = builder.build();
+        responseBytes = response.toByteArray();
+    }
+
+    @Benchmark
+    public List<IndexContent> decodeAndExtract() throws Exception {
+        return extract(Points.QueryResponse.parseFrom(responseBytes));
+    }
+
+    @Benchmark
+    public List<IndexContent> extract() {
+        return extract(response);
+    }
+
+    private static List<IndexContent> extract(Points.QueryResponse response) {
+        return response.getResultList().stream()
+                .map(point -> IndexContent.fromPayload(point.getPayloadMap()))
+                .toList();
+    }
+}
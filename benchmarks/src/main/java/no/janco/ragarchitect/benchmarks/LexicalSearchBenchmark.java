@@ -0,0 +1,101 @@
+package no.janco.ragarchitect.benchmarks;
+
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.lexical.LexicalIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a BM25 query against the in-memory lexical index, which runs on the chat path next to the Qdrant
+ * queries. Chunks are about the size of the code indexer's 2000 character chunks, and are generated from a vocabulary
+ * whose word frequencies follow Zipf's law, as they do in real code: a few words everywhere and a long tail of rare
+ * identifiers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexicalSearchBenchmark {
+
+    private static final String[] SYLLABLES = {"qd", "rant", "ser", "vice", "in", "dex", "con", "tent", "em", "bed",
+            "vec", "tor", "search", "prompt", "to", "ken", "cache", "chat", "view", "col", "lec", "point", "pay", "load",
+            "batch", "cli", "ent", "re", "quest", "han", "dler", "li", "mit", "er", "pack", "cat", "store", "git", "chunk"};
+    private static final int VOCABULARY_SIZE = 20_000;
+
+    @Param({"10000", "100000"})
+    private int chunks;
+
+    private String[] vocabulary;
+    // Cumulative Zipf probabilities over the vocabulary, most frequent word first
+    private double[] cumulative;
+    private LexicalIndex index;
+    private String[] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        vocabulary = new String[VOCABULARY_SIZE];
+        cumulative = new double[VOCABULARY_SIZE];
+        double total = 0;
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int syllables = 1 + random.nextInt(3); syllables > 0; syllables--) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            vocabulary[i] = word.toString();
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            cumulative[i] /= total;
+        }
+
+        LexicalIndex.Builder builder = LexicalIndex.builder();
+        for (int i = 0; i < chunks; i++) {
+            builder.add(Points.PointId.newBuilder().setNum(i).build(), "src/" + identifier(random) + ".java", chunk(random, 2000));
+        }
+        index = builder.build();
+
+        queries = new String[256];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = i % 2 == 0
+                    ? "Where is " + identifier(random) + "." + identifier(random) + " called?"
+                    : "How does the " + word(random) + " " + word(random) + " work with " + word(random) + " " + word(random);
+        }
+    }
+
+    @Benchmark
+    public List<LexicalIndex.Hit> search() {
+        return index.search(queries[next++ & (queries.length - 1)], 30);
+    }
+
+    private String chunk(Random random, int length) {
+        StringBuilder code = new StringBuilder(length + 64);
+        while (code.length() < length) {
+            code.append(random.nextInt(3) == 0 ? identifier(random) : word(random));
+            code.append(random.nextInt(4) == 0 ? "(" : " ");
+        }
+        return code.toString();
+    }
+
+    private String identifier(Random random) {
+        StringBuilder identifier = new StringBuilder(word(random));
+        for (int parts = 1 + random.nextInt(2); parts > 0; parts--) {
+            String word = word(random);
+            identifier.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        return identifier.toString();
+    }
+
+    private String word(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return vocabulary[Math.min(index < 0 ? -index - 1 : index, VOCABULARY_SIZE - 1)];
+    }
+}
@@ -0,0 +1,62 @@
+package no.janco.ragarchitect.benchmarks;
+
+import no.janco.ragarchitect.ragarchitect.frontend.MessageFormatter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting assistant answers for the chat view with {@link MessageFormatter}, on answers of prose and fenced code
+ * blocks. {@code formatStreamed} formats every prefix the view shows while a {@code streamStep} characters long
+ * update arrives at a time, which is what a streamed answer costs in total.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageFormatBenchmark {
+
+    private static final String[] WORDS = {"the", "orchestrator", "retrieves", "snippets", "from", "each", "collection",
+            "and", "packs", "them", "into", "prompt", "before", "model", "answers", "question", "with", "context"};
+
+    @Param({"2000", "20000"})
+    private int answerChars;
+
+    @Param({"200"})
+    private int streamStep;
+
+    private String answer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(answerChars + 1024);
+        while (text.length() < answerChars) {
+            if (random.nextInt(4) == 0) {
+                text.append("```java\n").append(TokenizerBenchmark.generateCode(random, 400)).append("\n```\n");
+            } else {
+                for (int i = 0; i < 40; i++) {
+                    text.append(WORDS[random.nextInt(WORDS.length)]).append(i == 39 ? ".\n\n" : " ");
+                }
+            }
+        }
+        answer = text.substring(0, answerChars);
+    }
+
+    @Benchmark
+    public String format() {
+        return MessageFormatter.format(answer);
+    }
+
+    @Benchmark
+    public int formatStreamed() {
+        int length = 0;
+        for (int end = streamStep; end < answer.length() + streamStep; end += streamStep) {
+            length += MessageFormatter.format(answer.substring(0, Math.min(end, answer.length()))).length();
+        }
+        return length;
+    }
+}
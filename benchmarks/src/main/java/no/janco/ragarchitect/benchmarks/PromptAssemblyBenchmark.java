@@ -0,0 +1,104 @@
+package no.janco.ragarchitect.benchmarks;
+
+import no.janco.ragarchitect.ragarchitect.prompt.ChatPrompt;
+import no.janco.ragarchitect.ragarchitect.prompt.ContextPacker;
+import no.janco.ragarchitect.ragarchitect.prompt.DefaultPromptTruncator;
+import no.janco.ragarchitect.ragarchitect.prompt.OllamaPromptTruncator;
+import no.janco.ragarchitect.ragarchitect.prompt.PromptTruncator;
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerLoader;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerProfile;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt assembly in {@code Orchestrator.converse} once the snippets are reranked: {@link ContextPacker} fills the
+ * budget of {@code maxTokens}, then the backend's {@link PromptTruncator} checks the result. The truncators are also
+ * measured on their own, on a prompt within the budget and on one of twice its size.
+ * <p>
+ * Tokens are counted with a small BPE trained on generated code unless {@code -p vocabPath=<tokenizer.json>} is given,
+ * as in {@link TokenizerBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromptAssemblyBenchmark {
+
+    private static final int SNIPPET_CHARS = 1500;
+
+    @Param({""})
+    private String vocabPath;
+
+    // Snippets left after reranking, against as many as retrieval returns from both collections
+    @Param({"8", "40"})
+    private int snippets;
+
+    @Param({"8192"})
+    private int maxTokens;
+
+    private ContextPacker packer;
+    private final PromptTruncator defaultTruncator = new DefaultPromptTruncator();
+    private OllamaPromptTruncator ollamaTruncator;
+    private String header;
+    private List<ContextSnippet> candidates;
+    private String packedPrompt;
+    private String oversizedPrompt;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        String corpus = TokenizerBenchmark.generateCode(random, 1 << 20);
+        Tokenizer tokenizer = vocabPath.isEmpty()
+                ? TokenizerBenchmark.trainSyntheticVocabulary(corpus.substring(0, 1 << 16), 1500, TokenizerLoader.DEFAULT_PIECE_CACHE_CAPACITY)
+                : TokenizerLoader.load(Path.of(vocabPath), TokenizerProfile.LLAMA3, TokenizerLoader.DEFAULT_PIECE_CACHE_CAPACITY);
+
+        // The application's defaults, apart from the budget
+        packer = new ContextPacker(tokenizer, maxTokens, 1024, 64);
+        ollamaTruncator = new OllamaPromptTruncator(tokenizer, maxTokens);
+
+        header = ChatPrompt.header("How does the orchestrator decide which snippets end up in the prompt?");
+        candidates = new ArrayList<>();
+        for (int i = 0; i < snippets; i++) {
+            int start = random.nextInt(corpus.length() - SNIPPET_CHARS);
+            candidates.add(new ContextSnippet("Code snippet", corpus.substring(start, start + SNIPPET_CHARS), random.nextFloat()));
+        }
+
+        packedPrompt = packer.pack(header, candidates);
+        // Around four characters per token, so about twice the budget
+        oversizedPrompt = header + corpus.substring(0, maxTokens * 8);
+    }
+
+    @Benchmark
+    public String assemble() {
+        return ollamaTruncator.truncate(packer.pack(header, candidates));
+    }
+
+    @Benchmark
+    public String pack() {
+        return packer.pack(header, candidates);
+    }
+
+    @Benchmark
+    public String truncateDefault() {
+        return defaultTruncator.truncate(packedPrompt);
+    }
+
+    @Benchmark
+    public String truncateOllamaWithinBudget() {
+        return ollamaTruncator.truncate(packedPrompt);
+    }
+
+    @Benchmark
+    public String truncateOllamaOverBudget() {
+        return ollamaTruncator.truncate(oversizedPrompt);
+    }
+}
@@ -0,0 +1,117 @@
+package no.janco.ragarchitect.benchmarks;
+
+import no.janco.ragarchitect.ragarchitect.vector.embedded.QuantizedVectors;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recall against latency of a top 30 scan over {@link SyntheticEmbeddings}: full precision floats ({@code none})
+ * against scalar and binary {@link QuantizedVectors}, rescored with the floats at the given oversampling
+ * ({@code binary:4} is binary with four times oversampling). Recall@30 and the bytes kept per vector are printed
+ * during setup, so each latency can be read against what it costs in quality.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuantizationBenchmark {
+
+    private static final int LIMIT = 30;
+
+    @Param({"none", "scalar:1", "scalar:2", "binary:1", "binary:4", "binary:8"})
+    private String quantization;
+
+    @Param({"10000", "100000"})
+    private int points;
+
+    private float[][] vectors;
+    private float[][] queries;
+    private QuantizedVectors quantized;
+    private double oversampling;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticEmbeddings embeddings = new SyntheticEmbeddings(42);
+        vectors = embeddings.next(points);
+        queries = embeddings.next(64);
+
+        long bytesPerVector = (long) SyntheticEmbeddings.DIMENSION * Float.BYTES;
+        if (!quantization.equals("none")) {
+            String[] parts = quantization.split(":");
+            QuantizedVectors.Type type = QuantizedVectors.Type.valueOf(parts[0].toUpperCase());
+            oversampling = Double.parseDouble(parts[1]);
+            quantized = new QuantizedVectors(type, SyntheticEmbeddings.DIMENSION);
+            for (int slot = 0; slot < points; slot++) {
+                quantized.set(slot, vectors[slot]);
+            }
+            bytesPerVector = type == QuantizedVectors.Type.SCALAR
+                    ? SyntheticEmbeddings.DIMENSION + Float.BYTES
+                    : SyntheticEmbeddings.DIMENSION / Byte.SIZE;
+        }
+
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = SyntheticEmbeddings.exactNearest(vectors, query, LIMIT);
+            for (int slot : search(query)) {
+                if (exact.contains(slot)) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("%n%s over %d points: recall@%d %.3f, %d bytes scanned per vector%n", quantization, points, LIMIT,
+                found / (double) (queries.length * LIMIT), bytesPerVector);
+    }
+
+    @Benchmark
+    public int[] search() {
+        return search(queries[next++ & (queries.length - 1)]);
+    }
+
+    private int[] search(float[] query) {
+        if (quantized == null) {
+            return exactSearch(query);
+        }
+        List<QuantizedVectors.Match> matches = quantized.search(query, LIMIT, oversampling, slot -> true,
+                slot -> dot(vectors[slot], query));
+        return matches.stream().mapToInt(QuantizedVectors.Match::slot).toArray();
+    }
+
+    // Best LIMIT by insertion into a sorted array, which is rarely touched once it is full
+    private int[] exactSearch(float[] query) {
+        float[] scores = new float[LIMIT];
+        int[] slots = new int[LIMIT];
+        Arrays.fill(scores, Float.NEGATIVE_INFINITY);
+        for (int slot = 0; slot < vectors.length; slot++) {
+            float score = dot(vectors[slot], query);
+            if (score <= scores[LIMIT - 1]) {
+                continue;
+            }
+            int i = LIMIT - 1;
+            for (; i > 0 && scores[i - 1] < score; i--) {
+                scores[i] = scores[i - 1];
+                slots[i] = slots[i - 1];
+            }
+            scores[i] = score;
+            slots[i] = slot;
+        }
+        return slots;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (int i = 0; i < a.length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
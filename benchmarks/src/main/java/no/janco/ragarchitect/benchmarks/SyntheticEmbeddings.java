@@ -0,0 +1,95 @@
+package no.janco.ragarchitect.benchmarks;
+
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit vectors shaped like sentence embeddings, for benchmarks of vector search. They have the embedding model's 384
+ * dimensions and are drawn around a few hundred topic centroids, as embeddings of real chunks cluster by subject.
+ * Around its centroid a vector varies along a few dozen directions only: real embeddings have a low intrinsic
+ * dimension, and noise in all 384 would leave no neighbourhoods for an index to use.
+ */
+final class SyntheticEmbeddings {
+
+    static final int DIMENSION = 384;
+
+    private static final int CENTROIDS = 200;
+    private static final int INTRINSIC_DIMENSION = 24;
+
+    private final Random random;
+    private final float[][] centroids = new float[CENTROIDS][];
+    private final float[][] directions = new float[INTRINSIC_DIMENSION][];
+
+    SyntheticEmbeddings(long seed) {
+        random = new Random(seed);
+        for (int i = 0; i < CENTROIDS; i++) {
+            centroids[i] = randomUnitVector();
+        }
+        for (int i = 0; i < INTRINSIC_DIMENSION; i++) {
+            directions[i] = randomUnitVector();
+        }
+    }
+
+    float[][] next(int count) {
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = next();
+        }
+        return vectors;
+    }
+
+    float[] next() {
+        float[] vector = centroids[random.nextInt(CENTROIDS)].clone();
+        for (float[] direction : directions) {
+            float weight = (float) (random.nextGaussian() * 0.25);
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] += weight * direction[d];
+            }
+        }
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] += (float) (random.nextGaussian() * 0.01);
+        }
+        return normalized(vector);
+    }
+
+    /**
+     * @return The indexes of the limit vectors with the largest dot product with the query
+     */
+    static Set<Integer> exactNearest(float[][] vectors, float[] query, int limit) {
+        PriorityQueue<long[]> best = new PriorityQueue<>((a, b) -> Double.compare(Double.longBitsToDouble(a[1]), Double.longBitsToDouble(b[1])));
+        for (int i = 0; i < vectors.length; i++) {
+            double similarity = 0;
+            for (int d = 0; d < DIMENSION; d++) {
+                similarity += vectors[i][d] * query[d];
+            }
+            best.add(new long[]{i, Double.doubleToLongBits(similarity)});
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        Set<Integer> indexes = new HashSet<>();
+        best.forEach(entry -> indexes.add((int) entry[0]));
+        return indexes;
+    }
+
+    private float[] randomUnitVector() {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return normalized(vector);
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+}
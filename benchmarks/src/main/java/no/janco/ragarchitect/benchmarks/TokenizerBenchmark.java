@@ -0,0 +1,177 @@
+package no.janco.ragarchitect.benchmarks;
+
+import no.janco.ragarchitect.ragarchitect.tokenizer.BpeTokenizer;
+import no.janco.ragarchitect.ragarchitect.tokenizer.EstimatingTokenizer;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerLoader;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerProfile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * Tokens per second for exact token counting, against the character estimate it replaces, on code-like chunks.
+ * The tokens/s figure is the {@code tokens} secondary result.
+ * <p>
+ * Without a vocabulary this trains a small byte-level BPE on the generated code, which is enough to exercise the merge
+ * loop. For representative numbers pass the real one, e.g.
+ * {@code -p vocabPath=/app/models/Llama-3.2-3B-Instruct/tokenizer.json}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+
+    private static final String[] WORDS = {"public", "private", "static", "final", "class", "return", "new", "int",
+            "String", "List", "Map", "void", "if", "else", "for", "while", "null", "this", "value", "result", "index",
+            "content", "collection", "embedding", "prompt", "request", "response", "count", "tokens", "builder"};
+    private static final String[] SYMBOLS = {" = ", "(", ")", " {\n", "}\n", ";\n", ".", ", ", " + ", " < ", "    ",
+            "        ", "// ", "\"", "[]", " -> "};
+
+    @Param({""})
+    private String vocabPath;
+
+    @Param({"512", "8192"})
+    private int chunkChars;
+
+    @Param({"true", "false"})
+    private boolean pieceCache;
+
+    private BpeTokenizer tokenizer;
+    private final EstimatingTokenizer estimate = new EstimatingTokenizer();
+    private String[] chunks;
+    private int next;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class TokenCounter {
+        public long tokens;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        String corpus = generateCode(new Random(42), 1 << 20);
+        int cacheCapacity = pieceCache ? TokenizerLoader.DEFAULT_PIECE_CACHE_CAPACITY : 0;
+        tokenizer = vocabPath.isEmpty()
+                ? trainSyntheticVocabulary(corpus.substring(0, 1 << 16), 1500, cacheCapacity)
+                : TokenizerLoader.load(Path.of(vocabPath), TokenizerProfile.LLAMA3, cacheCapacity);
+
+        chunks = new String[corpus.length() / chunkChars];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = corpus.substring(i * chunkChars, (i + 1) * chunkChars);
+        }
+    }
+
+    @Benchmark
+    public int countTokens(TokenCounter counter) {
+        int tokens = tokenizer.countTokens(nextChunk());
+        counter.tokens += tokens;
+        return tokens;
+    }
+
+    @Benchmark
+    public int[] encode(TokenCounter counter) {
+        int[] tokens = tokenizer.encode(nextChunk());
+        counter.tokens += tokens.length;
+        return tokens;
+    }
+
+    @Benchmark
+    public int countTokensEstimate(TokenCounter counter) {
+        int tokens = estimate.countTokens(nextChunk());
+        counter.tokens += tokens;
+        return tokens;
+    }
+
+    private String nextChunk() {
+        String chunk = chunks[next];
+        next = (next + 1) % chunks.length;
+        return chunk;
+    }
+
+    static String generateCode(Random random, int length) {
+        StringBuilder code = new StringBuilder(length + 64);
+        while (code.length() < length) {
+            code.append(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextInt(4) == 0) {
+                // Camel case identifiers, so not every piece is a word from the list
+                String word = WORDS[random.nextInt(WORDS.length)];
+                code.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+            code.append(random.nextInt(3) == 0 ? SYMBOLS[random.nextInt(SYMBOLS.length)] : " ");
+            if (random.nextInt(20) == 0) {
+                code.append(random.nextInt(1000));
+            }
+        }
+        return code.substring(0, length);
+    }
+
+    /**
+     * Plain BPE training: repeatedly merge the most frequent adjacent pair within the pre-tokenized pieces.
+     */
+    static BpeTokenizer trainSyntheticVocabulary(String corpus, int merges, int cacheCapacity) throws Exception {
+        Map<String, Integer> pieceCounts = new HashMap<>();
+        Matcher matcher = TokenizerProfile.LLAMA3.getPreTokenizer().matcher(corpus);
+        while (matcher.find()) {
+            pieceCounts.merge(matcher.group(), 1, Integer::sum);
+        }
+        List<List<String>> pieces = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        pieceCounts.forEach((piece, count) -> {
+            List<String> symbols = new ArrayList<>();
+            piece.codePoints().forEach(c -> symbols.add(new String(Character.toChars(c))));
+            pieces.add(symbols);
+            counts.add(count);
+        });
+
+        List<String> vocabulary = new ArrayList<>();
+        for (int m = 0; m < merges; m++) {
+            Map<String, Integer> pairCounts = new HashMap<>();
+            for (int p = 0; p < pieces.size(); p++) {
+                List<String> symbols = pieces.get(p);
+                for (int i = 0; i + 1 < symbols.size(); i++) {
+                    pairCounts.merge(symbols.get(i) + '\u0000' + symbols.get(i + 1), counts.get(p), Integer::sum);
+                }
+            }
+            if (pairCounts.isEmpty()) {
+                break;
+            }
+            String best = pairCounts.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow().getKey();
+            String left = best.substring(0, best.indexOf('\u0000'));
+            String right = best.substring(best.indexOf('\u0000') + 1);
+            vocabulary.add(left + right);
+            for (List<String> symbols : pieces) {
+                for (int i = 0; i + 1 < symbols.size(); i++) {
+                    if (symbols.get(i).equals(left) && symbols.get(i + 1).equals(right)) {
+                        symbols.set(i, left + right);
+                        symbols.remove(i + 1);
+                    }
+                }
+            }
+        }
+
+        StringBuilder ranks = new StringBuilder();
+        int rank = 0;
+        for (; rank < 256; rank++) {
+            ranks.append(Base64.getEncoder().encodeToString(new byte[] {(byte) rank})).append(' ').append(rank).append('\n');
+        }
+        for (String token : vocabulary) {
+            ranks.append(Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8)))
+                    .append(' ').append(rank++).append('\n');
+        }
+        return TokenizerLoader.loadTiktoken(new ByteArrayInputStream(ranks.toString().getBytes(StandardCharsets.US_ASCII)),
+                TokenizerProfile.LLAMA3, "synthetic", cacheCapacity);
+    }
+}
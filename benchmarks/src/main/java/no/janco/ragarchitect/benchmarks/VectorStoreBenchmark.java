@@ -0,0 +1,150 @@
+package no.janco.ragarchitect.benchmarks;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.QdrantVectorStore;
+import no.janco.ragarchitect.ragarchitect.vector.VectorStore;
+import no.janco.ragarchitect.ragarchitect.vector.embedded.EmbeddedVectorStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.QueryFactory.nearest;
+import static io.qdrant.client.ValueFactory.value;
+import static io.qdrant.client.VectorsFactory.vectors;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+
+/**
+ * Latency of a chat context query, top 30 with payload, against the embedded HNSW store and against Qdrant. The
+ * recall of each against an exact search is printed during setup, so latency is compared at known quality. The
+ * vectors are {@link SyntheticEmbeddings}.
+ * <p>
+ * Only the embedded store runs by default. For Qdrant, start one on localhost (or {@code -Dqdrant.host}) and pass
+ * {@code -p store=embedded,qdrant}; the benchmark creates and drops its own collections there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorStoreBenchmark {
+
+    private static final int LIMIT = 30;
+    private static final String COLLECTION = "benchmark_vectors";
+
+    @Param({"embedded"})
+    private String store;
+
+    @Param({"10000", "100000"})
+    private int points;
+
+    private VectorStore vectorStore;
+    private QdrantClient qdrantClient;
+    private Path storeDir;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticEmbeddings embeddings = new SyntheticEmbeddings(42);
+        float[][] vectors = embeddings.next(points);
+        queries = embeddings.next(128);
+
+        vectorStore = createStore();
+        long start = System.nanoTime();
+        for (int from = 0; from < points; from += 1000) {
+            List<Points.PointStruct> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(points, from + 1000); i++) {
+                batch.add(Points.PointStruct.newBuilder()
+                        .setId(id(i))
+                        .setVectors(vectors(vectors[i]))
+                        .putPayload("content", value("chunk " + i))
+                        .build());
+            }
+            vectorStore.upsert(COLLECTION, batch).get();
+        }
+        if (qdrantClient != null) {
+            awaitIndexed();
+        }
+        System.out.printf("%n%s: %d points loaded and indexed in %d ms, recall@%d %.3f%n", store, points,
+                (System.nanoTime() - start) / 1_000_000, LIMIT, recall(vectors));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (qdrantClient != null) {
+            qdrantClient.deleteCollectionAsync(COLLECTION).get();
+            qdrantClient.close();
+        } else {
+            ((EmbeddedVectorStore) vectorStore).close();
+            try (Stream<Path> files = Files.walk(storeDir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Points.ScoredPoint> query() throws Exception {
+        return vectorStore.query(query(queries[next++ & (queries.length - 1)]), null).get();
+    }
+
+    private VectorStore createStore() throws Exception {
+        Collections.VectorParams params = Collections.VectorParams.newBuilder()
+                .setSize(SyntheticEmbeddings.DIMENSION)
+                .setDistance(Collections.Distance.Cosine)
+                .build();
+        VectorStore created;
+        if (store.equals("qdrant")) {
+            qdrantClient = new QdrantClient(QdrantGrpcClient.newBuilder(System.getProperty("qdrant.host", "localhost"), 6334, false).build());
+            if (qdrantClient.collectionExistsAsync(COLLECTION).get()) {
+                qdrantClient.deleteCollectionAsync(COLLECTION).get();
+            }
+            created = new QdrantVectorStore(qdrantClient);
+        } else {
+            storeDir = Files.createTempDirectory("vector-store-benchmark");
+            created = new EmbeddedVectorStore(storeDir.toString(), 16, 100, 64);
+        }
+        created.createCollection(COLLECTION, params).get();
+        return created;
+    }
+
+    // Qdrant builds its HNSW index in the background once a collection is large enough; queries before that are exact
+    private void awaitIndexed() throws Exception {
+        while (qdrantClient.getCollectionInfoAsync(COLLECTION).get().getStatus() != Collections.CollectionStatus.Green) {
+            Thread.sleep(500);
+        }
+    }
+
+    private double recall(float[][] vectors) throws Exception {
+        int found = 0;
+        for (float[] query : queries) {
+            Set<Integer> exact = SyntheticEmbeddings.exactNearest(vectors, query, LIMIT);
+            for (Points.ScoredPoint point : vectorStore.query(query(query), null).get()) {
+                if (exact.contains((int) point.getId().getNum())) {
+                    found++;
+                }
+            }
+        }
+        return found / (double) (queries.length * LIMIT);
+    }
+
+    private static Points.QueryPoints query(float[] vector) {
+        return Points.QueryPoints.newBuilder()
+                .setCollectionName(COLLECTION)
+                .setQuery(nearest(vector))
+                .setWithPayload(enable(true))
+                .setLimit(LIMIT)
+                .build();
+    }
+}
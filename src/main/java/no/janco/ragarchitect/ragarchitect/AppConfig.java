@@ -1,14 +1,115 @@
 package no.janco.ragarchitect.ragarchitect;
 
+import io.micrometer.java21.instrument.binder.jdk.VirtualThreadMetrics;
+import no.janco.ragarchitect.ragarchitect.inference.ConcurrencyLimiter;
+import no.janco.ragarchitect.ragarchitect.inference.InferenceHttpClient;
+import no.janco.ragarchitect.ragarchitect.tokenizer.EstimatingTokenizer;
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerLoader;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerProfile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AppConfig.class);
+
+    @Value("${inference.http.connect.timeout.ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${inference.http.response.timeout.ms:300000}")
+    private long responseTimeoutMs;
+
+    @Value("${inference.max.concurrent.requests:64}")
+    private int maxConcurrentRequests;
+
+    @Value("${inference.queue.timeout.ms:30000}")
+    private long queueTimeoutMs;
+
+    @Value("${tokenizer.profile:llama3}")
+    private String tokenizerProfile;
+
+    @Value("${tokenizer.vocab.path:}")
+    private String tokenizerVocabPath;
+
+    /**
+     * Shared by every outgoing call. Keeps connections alive between requests, and uses HTTP/2 where the server
+     * supports it, falling back to HTTP/1.1 otherwise. Over https:// HTTP/2 is agreed during the TLS handshake at no
+     * extra cost; {@link InferenceHttpClient} sends plain http:// requests as HTTP/1.1, sparing the local backends an
+     * h2c upgrade attempt on each new connection.
+     */
+    @Bean
+    public HttpClient httpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(HttpClient httpClient) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(responseTimeoutMs));
+        return new RestTemplate(requestFactory);
+    }
+
+    @Bean
+    public InferenceHttpClient inferenceHttpClient(HttpClient httpClient) {
+        return new InferenceHttpClient(httpClient, Duration.ofMillis(responseTimeoutMs));
+    }
+
+    /**
+     * Caps concurrent generations against the LLM backend, whichever way they are called. With virtual threads
+     * there is no thread pool left to act as an implicit limit, so this is what protects the backend.
+     * Only one backend is active per profile, so a single limiter is enough.
+     */
+    @Bean
+    public ConcurrencyLimiter inferenceLimiter() {
+        return new ConcurrencyLimiter("inference", maxConcurrentRequests, Duration.ofMillis(queueTimeoutMs));
+    }
+
+    // Publishes jvm.threads.virtual.pinned, recorded from JFR, so blocking that holds on to a carrier thread shows up
+    @Bean(destroyMethod = "close")
+    public VirtualThreadMetrics virtualThreadMetrics() {
+        return new VirtualThreadMetrics();
+    }
+
+    /**
+     * Counts tokens exactly when the model's vocabulary is available, and falls back to a per-character estimate
+     * otherwise so the application still starts without one.
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public Tokenizer tokenizer() {
+        if (tokenizerVocabPath.isBlank()) {
+            LOG.warn("No tokenizer.vocab.path configured, token counts are estimated");
+            return new EstimatingTokenizer();
+        }
+        Path path = Path.of(tokenizerVocabPath);
+        if (!Files.isReadable(path)) {
+            LOG.warn("Tokenizer vocabulary {} not found, token counts are estimated", path);
+            return new EstimatingTokenizer();
+        }
+        try {
+            Tokenizer tokenizer = TokenizerLoader.load(path, TokenizerProfile.fromName(tokenizerProfile));
+            LOG.info("Counting tokens with {}", tokenizer.getName());
+            return tokenizer;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to load tokenizer vocabulary {}, token counts are estimated", path, e);
+            return new EstimatingTokenizer();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package no.janco.ragarchitect.ragarchitect;
+
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import no.janco.ragarchitect.ragarchitect.vector.QdrantService;
+import no.janco.ragarchitect.ragarchitect.vector.VectorSearchService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * What the application offers its users, for the Vaadin views to call in-process and for {@link LLMController} to
+ * expose over HTTP. Everything that may take longer than a UI round trip returns a future, so neither a view nor a
+ * servlet thread waits on retrieval or generation; views push the results back with {@code UI.access}.
+ * <p>
+ * Blocking work runs on the shared {@code applicationTaskExecutor}, on virtual threads when
+ * {@code spring.threads.virtual.enabled} is set.
+ */
+@Service
+public class AssistantService {
+
+    private final Orchestrator orchestrator;
+    private final VectorSearchService vectorSearchService;
+    private final QdrantService qdrantService;
+    private final AsyncTaskExecutor taskExecutor;
+
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    public AssistantService(Orchestrator orchestrator, VectorSearchService vectorSearchService, QdrantService qdrantService,
+                            @Qualifier("applicationTaskExecutor") AsyncTaskExecutor taskExecutor) {
+        this.orchestrator = orchestrator;
+        this.vectorSearchService = vectorSearchService;
+        this.qdrantService = qdrantService;
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Answers the message with context from the indexes. Retrieval and reranking run on a worker; generation then
+     * holds no thread while the model answers.
+     */
+    public CompletableFuture<String> chat(String message) {
+        return runAsync(() -> orchestrator.converseAsync(message)).thenCompose(Function.identity());
+    }
+
+    /**
+     * Sends the prompt to the model as it is, without retrieval.
+     */
+    public CompletableFuture<String> prompt(String message) {
+        return orchestrator.promptAsync(message);
+    }
+
+    /**
+     * Same as {@link #chat(String)}, but hands the response to {@code onToken} as it is generated, from a worker
+     * thread. An exception thrown by {@code onToken} aborts generation and fails the future.
+     * @return The complete response text
+     */
+    public CompletableFuture<String> chatStream(String message, Consumer<String> onToken) {
+        return runAsync(() -> orchestrator.converseStream(message, onToken));
+    }
+
+    /**
+     * Same as {@link #prompt(String)}, streamed as {@link #chatStream(String, Consumer)} is.
+     */
+    public CompletableFuture<String> promptStream(String message, Consumer<String> onToken) {
+        return runAsync(() -> orchestrator.promptStream(message, onToken));
+    }
+
+    /**
+     * The chunks of the index most similar to the query, with their content.
+     */
+    public CompletableFuture<List<IndexContent>> searchContents(String index, String query) {
+        return runAsync(() -> vectorSearchService.searchContents(index, query));
+    }
+
+    /**
+     * The content of one chunk of the index, for the rows that were listed without it; null if it no longer exists.
+     */
+    public CompletableFuture<String> content(String index, Points.PointId pointId) {
+        return runAsync(() -> qdrantService.getContent(index, pointId));
+    }
+
+    private <T> CompletableFuture<T> runAsync(Call<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        taskExecutor.execute(() -> {
+            try {
+                result.complete(call.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+}
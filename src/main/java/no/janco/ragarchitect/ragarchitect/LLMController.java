@@ -1,37 +1,88 @@
 package no.janco.ragarchitect.ragarchitect;
 
 import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
-import no.janco.ragarchitect.ragarchitect.vector.VectorSearchService;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/llm")
 public class LLMController {
 
-    @Autowired
-    private Orchestrator orchestrator;
+    private static final Logger LOG = LoggerFactory.getLogger(LLMController.class);
 
-    @Autowired
-    private VectorSearchService vectorSearchService;
+    // Generation can take minutes on local models; the emitter is completed explicitly instead
+    private static final long STREAM_TIMEOUT_MS = 0L;
+
+    private final AssistantService assistantService;
+
+    public LLMController(AssistantService assistantService) {
+        this.assistantService = assistantService;
+    }
+
+    private interface StreamingCall {
+        CompletableFuture<String> start(Consumer<String> onToken);
+    }
 
     public record ChatRequest(String message) { }
 
     @PostMapping("/chat")
-    public String chat(@RequestBody ChatRequest request) throws ExecutionException, InterruptedException {
-        return orchestrator.converse(request.message());
+    public CompletableFuture<String> chat(@RequestBody ChatRequest request) {
+        return assistantService.chat(request.message());
     }
 
     @PostMapping("/prompt")
-    public String executePrompt(@RequestBody ChatRequest request) {
-        return orchestrator.prompt(request.message());
+    public CompletableFuture<String> executePrompt(@RequestBody ChatRequest request) {
+        return assistantService.prompt(request.message());
+    }
+
+    @PostMapping(value = "/chat/stream", produces = "text/event-stream")
+    public SseEmitter chatStream(@RequestBody ChatRequest request) {
+        return stream(onToken -> assistantService.chatStream(request.message(), onToken));
+    }
+
+    @PostMapping(value = "/prompt/stream", produces = "text/event-stream")
+    public SseEmitter executePromptStream(@RequestBody ChatRequest request) {
+        return stream(onToken -> assistantService.promptStream(request.message(), onToken));
+    }
+
+    /**
+     * Sends each chunk as a "token" event, followed by a "done" event, or an "error" event if generation fails.
+     */
+    private SseEmitter stream(StreamingCall call) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        call.start(token -> {
+            try {
+                emitter.send(SseEmitter.event().name("token").data(token));
+            } catch (IOException e) {
+                // The client went away; abort generation rather than producing text nobody reads
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((responseText, failure) -> {
+            try {
+                if (failure == null) {
+                    emitter.send(SseEmitter.event().name("done").data(""));
+                } else {
+                    LOG.warn("Streaming response failed: {}", failure.getMessage());
+                    emitter.send(SseEmitter.event().name("error").data("Error: " + failure.getMessage()));
+                }
+                emitter.complete();
+            } catch (Exception sendFailure) {
+                emitter.completeWithError(failure != null ? failure : sendFailure);
+            }
+        });
+        return emitter;
     }
 
     @GetMapping("/vector-search")
-    public List<IndexContent> searchVectorIndex(@RequestParam("index") String index, @RequestParam("query") String query) throws ExecutionException, InterruptedException {
-        return vectorSearchService.searchContents(index, query);
+    public CompletableFuture<List<IndexContent>> searchVectorIndex(@RequestParam("index") String index, @RequestParam("query") String query) {
+        return assistantService.searchContents(index, query);
     }
 }
@@ -1,61 +1,289 @@
 package no.janco.ragarchitect.ragarchitect;
 
+import io.micrometer.core.instrument.Timer;
+import no.janco.ragarchitect.ragarchitect.cache.SemanticResponseCache;
+import no.janco.ragarchitect.ragarchitect.inference.ConcurrencyLimiter;
 import no.janco.ragarchitect.ragarchitect.inference.LLMInferenceProvider;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.prompt.ChatPrompt;
+import no.janco.ragarchitect.ragarchitect.prompt.ContextPacker;
 import no.janco.ragarchitect.ragarchitect.prompt.PromptTruncator;
+import no.janco.ragarchitect.ragarchitect.rerank.RerankService;
+import no.janco.ragarchitect.ragarchitect.trace.InferenceEvent;
+import no.janco.ragarchitect.ragarchitect.trace.PromptAssemblyEvent;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
 import no.janco.ragarchitect.ragarchitect.vector.VectorSearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class Orchestrator {
 
     private static final Logger LOG = LoggerFactory.getLogger(Orchestrator.class);
 
+    // Operations counted in rag.requests.active
+    private static final String CHAT = "chat";
+    private static final String PROMPT = "prompt";
+
     private final LLMInferenceProvider inferenceHandler;
     private final VectorSearchService vectorSearchService;
     private final PromptTruncator promptTruncator;
+    private final ContextPacker contextPacker;
+    private final RerankService rerankService;
+    private final ConcurrencyLimiter inferenceLimiter;
+    private final SemanticResponseCache responseCache;
+    private final PipelineMetrics pipelineMetrics;
+
+    private final String provider;
+    private final Timer assembleTimer;
+    private final Timer truncateTimer;
+    private final Timer inferenceTimer;
 
     public Orchestrator(LLMInferenceProvider inferenceHandler, 
                        VectorSearchService vectorSearchService,
-                       PromptTruncator promptTruncator) {
+                       PromptTruncator promptTruncator,
+                       ContextPacker contextPacker,
+                       RerankService rerankService,
+                       ConcurrencyLimiter inferenceLimiter,
+                       SemanticResponseCache responseCache,
+                       PipelineMetrics pipelineMetrics) {
         this.inferenceHandler = inferenceHandler;
         this.vectorSearchService = vectorSearchService;
         this.promptTruncator = promptTruncator;
+        this.contextPacker = contextPacker;
+        this.rerankService = rerankService;
+        this.inferenceLimiter = inferenceLimiter;
+        this.responseCache = responseCache;
+        this.pipelineMetrics = pipelineMetrics;
+
+        this.provider = inferenceHandler.getClass().getSimpleName();
+        this.assembleTimer = pipelineMetrics.timer(PipelineMetrics.Stage.ASSEMBLE, "provider", provider);
+        this.truncateTimer = pipelineMetrics.timer(PipelineMetrics.Stage.TRUNCATE, "provider", provider);
+        this.inferenceTimer = pipelineMetrics.timer(PipelineMetrics.Stage.INFERENCE, "provider", provider);
     }
 
     public String converse(String message) throws ExecutionException, InterruptedException {
-        LOG.info("Received message {}", message);
+        long start = System.nanoTime();
+        pipelineMetrics.requestStarted(CHAT);
+        try {
+            Embedding question = vectorSearchService.embedQuery(message);
+            Optional<String> cached = responseCache.lookup(question);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+
+            String truncatedPrompt = buildContextPrompt(message, question);
 
-        String context = vectorSearchService.searchVector(message);
+            LOG.debug("Using inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), truncatedPrompt);
+            String responseText = infer(truncatedPrompt, false, () -> inferenceHandler.infer(truncatedPrompt));
+            LOG.debug("Received response {}", responseText);
 
-        StringBuilder srb = new StringBuilder();
-        srb.append("You are a helpful expert programmer. Use the following context to answer the question. ").append("\n")
-        .append("Do not mention the nature of these snippets or how the information was obtained. ").append("\n")
-        .append("My question is: ").append(message).append("\n") 
-        .append("This is the relevant context and snippets: ").append("\n")
-        .append(context);
-        
-        String prompt = srb.toString();
-        String truncatedPrompt = promptTruncator.truncate(prompt);
+            remember(question, responseText, start);
+            return responseText;
+        } finally {
+            pipelineMetrics.requestFinished(CHAT);
+        }
+    }
 
-        LOG.info("Using inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), truncatedPrompt);
-        String responseText = inferenceHandler.infer(truncatedPrompt);
-        LOG.info("Received response {}", responseText);
+    /**
+     * Same as {@link #converse(String)}, but does not hold the calling thread while the response is generated.
+     * Context retrieval still runs on the caller, bounded by the per-collection search deadline.
+     */
+    public CompletableFuture<String> converseAsync(String message) throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        pipelineMetrics.requestStarted(CHAT);
+        CompletableFuture<String> response;
+        try {
+            Embedding question = vectorSearchService.embedQuery(message);
+            Optional<String> cached = responseCache.lookup(question);
+            if (cached.isPresent()) {
+                response = CompletableFuture.completedFuture(cached.get());
+            } else {
+                String truncatedPrompt = buildContextPrompt(message, question);
 
-        return responseText;
+                LOG.debug("Using inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), truncatedPrompt);
+                response = inferAsync(truncatedPrompt)
+                        .thenApply(responseText -> {
+                            LOG.debug("Received response {}", responseText);
+                            remember(question, responseText, start);
+                            return responseText;
+                        });
+            }
+        } catch (RuntimeException | ExecutionException | InterruptedException e) {
+            pipelineMetrics.requestFinished(CHAT);
+            throw e;
+        }
+        return response.whenComplete((responseText, failure) -> pipelineMetrics.requestFinished(CHAT));
+    }
+
+    /**
+     * Same as {@link #converse(String)}, but hands the response to {@code onToken} as it is generated.
+     * @return The complete response text
+     */
+    public String converseStream(String message, Consumer<String> onToken) throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        pipelineMetrics.requestStarted(CHAT);
+        try {
+            Embedding question = vectorSearchService.embedQuery(message);
+            Optional<String> cached = responseCache.lookup(question);
+            if (cached.isPresent()) {
+                onToken.accept(cached.get());
+                return cached.get();
+            }
+
+            String truncatedPrompt = buildContextPrompt(message, question);
+
+            LOG.debug("Streaming from inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), truncatedPrompt);
+            String responseText = infer(truncatedPrompt, true, () -> inferenceHandler.inferStream(truncatedPrompt, onToken));
+            LOG.debug("Received response {}", responseText);
+
+            remember(question, responseText, start);
+            return responseText;
+        } finally {
+            pipelineMetrics.requestFinished(CHAT);
+        }
     }
 
 
     public String prompt(String message) {
-        LOG.info("Using inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), message);
-        String responseText = inferenceHandler.infer(message);
-        LOG.info("Received response {}", responseText);
+        LOG.debug("Using inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), message);
+        pipelineMetrics.requestStarted(PROMPT);
+        try {
+            pipelineMetrics.prompt(message);
+            String responseText = infer(message, false, () -> inferenceHandler.infer(message));
+            LOG.debug("Received response {}", responseText);
+
+            return responseText;
+        } finally {
+            pipelineMetrics.requestFinished(PROMPT);
+        }
+    }
+
+    public CompletableFuture<String> promptAsync(String message) {
+        LOG.debug("Using inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), message);
+        pipelineMetrics.requestStarted(PROMPT);
+        pipelineMetrics.prompt(message);
+        return inferAsync(message)
+                .thenApply(responseText -> {
+                    LOG.debug("Received response {}", responseText);
+                    return responseText;
+                })
+                .whenComplete((responseText, failure) -> pipelineMetrics.requestFinished(PROMPT));
+    }
 
+    public String promptStream(String message, Consumer<String> onToken) {
+        LOG.debug("Streaming from inference handler {} for prompt {}", inferenceHandler.getHandlerDetails(), message);
+        pipelineMetrics.requestStarted(PROMPT);
+        try {
+            pipelineMetrics.prompt(message);
+            String responseText = infer(message, true, () -> inferenceHandler.inferStream(message, onToken));
+            LOG.debug("Received response {}", responseText);
+
+            return responseText;
+        } finally {
+            pipelineMetrics.requestFinished(PROMPT);
+        }
+    }
+
+    // Timed and traced inside the limiter, so waiting for a free slot does not count as time spent generating
+    private String infer(String prompt, boolean streamed, Supplier<String> call) {
+        InferenceEvent event = new InferenceEvent();
+        String responseText = inferenceLimiter.run(() -> {
+            event.begin();
+            try {
+                return inferenceTimer.record(call);
+            } catch (RuntimeException e) {
+                event.failed = true;
+                trace(event, prompt, streamed, "", 0);
+                throw e;
+            } finally {
+                event.end();
+            }
+        });
+        trace(event, prompt, streamed, responseText, pipelineMetrics.response(provider, responseText));
         return responseText;
     }
 
+    private CompletableFuture<String> inferAsync(String prompt) {
+        InferenceEvent event = new InferenceEvent();
+        return inferenceLimiter.runAsync(() -> {
+                    long start = System.nanoTime();
+                    event.begin();
+                    return inferenceHandler.inferAsync(prompt).whenComplete((responseText, failure) -> {
+                        inferenceTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        event.end();
+                        if (failure != null) {
+                            event.failed = true;
+                            trace(event, prompt, false, "", 0);
+                        }
+                    });
+                })
+                .thenApply(responseText -> {
+                    trace(event, prompt, false, responseText, pipelineMetrics.response(provider, responseText));
+                    return responseText;
+                });
+    }
+
+    private void trace(InferenceEvent event, String prompt, boolean streamed, String responseText, int responseTokens) {
+        if (event.shouldCommit()) {
+            event.provider = provider;
+            event.streamed = streamed;
+            event.promptCharacters = prompt.length();
+            event.responseCharacters = responseText.length();
+            event.responseTokens = responseTokens;
+            event.commit();
+        }
+    }
+
+    private String buildContextPrompt(String message, Embedding question) throws ExecutionException, InterruptedException {
+        LOG.debug("Received message {}", message);
+
+        // Retrieval over-fetches; reranking keeps the few snippets that actually answer the question
+        List<ContextSnippet> snippets = rerankService.rerank(message, vectorSearchService.searchSnippets(message, question));
+
+        // Packing keeps the prompt within the model's budget; the truncator stays as a backstop for the backends
+        PromptAssemblyEvent event = new PromptAssemblyEvent();
+        event.begin();
+        String prompt = assembleTimer.record(() -> contextPacker.pack(ChatPrompt.header(message), snippets));
+        String truncatedPrompt = truncateTimer.record(() -> promptTruncator.truncate(prompt));
+        event.end();
+        int promptTokens = pipelineMetrics.prompt(truncatedPrompt);
+        if (event.shouldCommit()) {
+            event.snippets = snippets.size();
+            event.promptCharacters = truncatedPrompt.length();
+            event.promptTokens = promptTokens;
+            event.truncated = truncatedPrompt.length() != prompt.length();
+            event.commit();
+        }
+        return truncatedPrompt;
+    }
+
+    private void remember(Embedding question, String responseText, long startNanos) {
+        if (isAnswer(responseText)) {
+            responseCache.put(question, responseText, Duration.ofNanos(System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * The adapters report failures and empty replies as a response text, and a stream may end without a token; none
+     * of those must be served to the next asker.
+     */
+    private static boolean isAnswer(String responseText) {
+        return responseText != null
+                && !responseText.isBlank()
+                && !responseText.equals("No response")
+                && !responseText.startsWith("Error: ");
+    }
 
 }
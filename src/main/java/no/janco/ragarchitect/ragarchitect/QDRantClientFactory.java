@@ -2,14 +2,17 @@ package no.janco.ragarchitect.ragarchitect;
 
 import io.qdrant.client.QdrantClient;
 import io.qdrant.client.QdrantGrpcClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 @Configuration
 public class QDRantClientFactory {
 
     @Bean
-    public QdrantClient qdrantClient() {
-        return new QdrantClient(QdrantGrpcClient.newBuilder("qdrant", 6334, false).build());
+    @Profile("!embedded-vector-store")
+    public QdrantClient qdrantClient(@Value("${qdrant.host:qdrant}") String host, @Value("${qdrant.port:6334}") int port) {
+        return new QdrantClient(QdrantGrpcClient.newBuilder(host, port, false).build());
     }
 }
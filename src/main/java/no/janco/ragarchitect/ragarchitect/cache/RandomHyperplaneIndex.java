@@ -0,0 +1,183 @@
+package no.janco.ragarchitect.ragarchitect.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Bounded approximate nearest-neighbour index over unit vectors, using random-hyperplane locality sensitive hashing.
+ * <p>
+ * Each vector is hashed into one bucket per table by the signs of its projections onto {@code bitsPerTable} random
+ * hyperplanes. Vectors at a small angle to each other agree on most signs, so a lookup only scores the vectors that
+ * share a bucket with the query in at least one table, instead of the whole index. Candidates are then ranked by
+ * exact cosine similarity.
+ * <p>
+ * When full, the oldest entry is evicted. Not thread-safe.
+ */
+final class RandomHyperplaneIndex<T> {
+
+    private final int tables;
+    private final int bitsPerTable;
+    private final int capacity;
+    private final long seed;
+
+    // [table][bit][dimension], created on the first insert once the dimension is known
+    private float[][][] hyperplanes;
+    private final List<Map<Integer, List<Entry<T>>>> buckets = new ArrayList<>();
+    private final LinkedHashMap<Long, Entry<T>> entries = new LinkedHashMap<>();
+    private long nextId;
+
+    record Entry<T>(long id, float[] unitVector, int[] signatures, T value) { }
+
+    record Match<T>(T value, float similarity) { }
+
+    RandomHyperplaneIndex(int tables, int bitsPerTable, int capacity, long seed) {
+        if (bitsPerTable < 1 || bitsPerTable > 31) {
+            throw new IllegalArgumentException("bitsPerTable must be between 1 and 31, was " + bitsPerTable);
+        }
+        this.tables = tables;
+        this.bitsPerTable = bitsPerTable;
+        this.capacity = capacity;
+        this.seed = seed;
+        for (int t = 0; t < tables; t++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    void add(float[] vector, T value) {
+        if (hyperplanes == null || hyperplanes[0][0].length != vector.length) {
+            // First insert, or the embedding model changed; vectors of another dimension cannot be compared
+            clear();
+            hyperplanes = createHyperplanes(vector.length);
+        }
+
+        float[] unit = normalize(vector);
+        int[] signatures = new int[tables];
+        for (int t = 0; t < tables; t++) {
+            signatures[t] = signature(t, unit);
+        }
+
+        Entry<T> entry = new Entry<>(nextId++, unit, signatures, value);
+        entries.put(entry.id(), entry);
+        for (int t = 0; t < tables; t++) {
+            buckets.get(t).computeIfAbsent(signatures[t], key -> new ArrayList<>()).add(entry);
+        }
+
+        while (entries.size() > capacity) {
+            remove(entries.values().iterator().next());
+        }
+    }
+
+    /**
+     * @param minSimilarity Minimum cosine similarity for a match
+     * @param accept Filters candidates, e.g. to skip expired values
+     * @return The most similar accepted entry above the threshold
+     */
+    Optional<Match<T>> nearest(float[] vector, float minSimilarity, Predicate<T> accept) {
+        if (hyperplanes == null || hyperplanes[0][0].length != vector.length) {
+            return Optional.empty();
+        }
+
+        float[] unit = normalize(vector);
+        Set<Long> seen = new HashSet<>();
+        Entry<T> best = null;
+        float bestSimilarity = minSimilarity;
+        for (int t = 0; t < tables; t++) {
+            List<Entry<T>> bucket = buckets.get(t).get(signature(t, unit));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry<T> candidate : bucket) {
+                if (!seen.add(candidate.id())) {
+                    continue;
+                }
+                float similarity = dot(unit, candidate.unitVector());
+                if (similarity >= bestSimilarity && accept.test(candidate.value())) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        return best == null ? Optional.empty() : Optional.of(new Match<>(best.value(), bestSimilarity));
+    }
+
+    void removeIf(Predicate<T> condition) {
+        Iterator<Entry<T>> iterator = new ArrayList<>(entries.values()).iterator();
+        while (iterator.hasNext()) {
+            Entry<T> entry = iterator.next();
+            if (condition.test(entry.value())) {
+                remove(entry);
+            }
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        buckets.forEach(Map::clear);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void remove(Entry<T> entry) {
+        entries.remove(entry.id());
+        for (int t = 0; t < tables; t++) {
+            List<Entry<T>> bucket = buckets.get(t).get(entry.signatures()[t]);
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                buckets.get(t).remove(entry.signatures()[t]);
+            }
+        }
+    }
+
+    private int signature(int table, float[] unit) {
+        int signature = 0;
+        for (int bit = 0; bit < bitsPerTable; bit++) {
+            if (dot(hyperplanes[table][bit], unit) >= 0) {
+                signature |= 1 << bit;
+            }
+        }
+        return signature;
+    }
+
+    private float[][][] createHyperplanes(int dimension) {
+        Random random = new Random(seed);
+        float[][][] planes = new float[tables][bitsPerTable][dimension];
+        for (float[][] table : planes) {
+            for (float[] plane : table) {
+                for (int d = 0; d < dimension; d++) {
+                    plane[d] = (float) random.nextGaussian();
+                }
+            }
+        }
+        return planes;
+    }
+
+    private static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        float[] unit = new float[vector.length];
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                unit[i] = vector[i] / norm;
+            }
+        }
+        return unit;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
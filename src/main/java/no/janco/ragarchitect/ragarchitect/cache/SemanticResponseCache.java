@@ -0,0 +1,163 @@
+package no.janco.ragarchitect.ragarchitect.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.janco.ragarchitect.ragarchitect.trace.CacheLookupEvent;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionsChangedEvent;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers chat answers by the embedding of the question, so a question close enough to one answered before is
+ * answered again without retrieval or generation.
+ * <p>
+ * Entries expire after a fixed time and are all dropped when any collection changes, since the context an answer was
+ * generated from may no longer be what retrieval would return.
+ */
+@Component
+public class SemanticResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SemanticResponseCache.class);
+
+    // 8 tables of 8 bits find a neighbour at cosine 0.95 with ~99% probability, while scoring ~3% of the entries
+    private static final int TABLES = 8;
+    private static final int BITS_PER_TABLE = 8;
+    private static final long SEED = 42;
+
+    private final boolean enabled;
+    private final float similarityThreshold;
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RandomHyperplaneIndex<CachedResponse> index;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer savedLatency;
+
+    private record CachedResponse(String response, long createdNanos, long costNanos) { }
+
+    @Autowired
+    public SemanticResponseCache(@Value("${semantic.cache.enabled:true}") boolean enabled,
+                                 @Value("${semantic.cache.similarity.threshold:0.95}") float similarityThreshold,
+                                 @Value("${semantic.cache.max.entries:1000}") int maxEntries,
+                                 @Value("${semantic.cache.ttl.minutes:60}") long ttlMinutes,
+                                 MeterRegistry meterRegistry) {
+        this(enabled, similarityThreshold, maxEntries, Duration.ofMinutes(ttlMinutes), meterRegistry, System::nanoTime);
+    }
+
+    SemanticResponseCache(boolean enabled, float similarityThreshold, int maxEntries, Duration ttl,
+                          MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoTime = nanoTime;
+        this.index = new RandomHyperplaneIndex<>(TABLES, BITS_PER_TABLE, maxEntries, SEED);
+
+        hits = Counter.builder("semantic.cache.lookups").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("semantic.cache.lookups").tag("result", "miss").register(meterRegistry);
+        savedLatency = Timer.builder("semantic.cache.saved.latency")
+                .description("Retrieval and generation time of the original answer, avoided by each cache hit")
+                .register(meterRegistry);
+        Gauge.builder("semantic.cache.size", this, SemanticResponseCache::size).register(meterRegistry);
+        Gauge.builder("semantic.cache.hit.ratio", this, SemanticResponseCache::hitRatio).register(meterRegistry);
+    }
+
+    public Optional<String> lookup(Embedding question) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        CacheLookupEvent event = new CacheLookupEvent();
+        event.begin();
+        long now = nanoTime.getAsLong();
+        Optional<RandomHyperplaneIndex.Match<CachedResponse>> match;
+        lock.readLock().lock();
+        try {
+            match = index.nearest(question.values(), similarityThreshold, cached -> !isExpired(cached, now));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (event.shouldCommit()) {
+            event.cache = "responses";
+            event.hit = match.isPresent();
+            event.similarity = match.map(RandomHyperplaneIndex.Match::similarity).orElse(0f);
+            event.commit();
+        }
+
+        if (match.isEmpty()) {
+            misses.increment();
+            return Optional.empty();
+        }
+        CachedResponse cached = match.get().value();
+        LOG.debug("Answering from semantic cache, similarity {}", match.get().similarity());
+        hits.increment();
+        savedLatency.record(cached.costNanos(), TimeUnit.NANOSECONDS);
+        return Optional.of(cached.response());
+    }
+
+    /**
+     * @param cost How long retrieval and generation took for this answer; reported as saved on every hit
+     */
+    public void put(Embedding question, String response, Duration cost) {
+        if (!enabled || response == null || response.isBlank()) {
+            return;
+        }
+
+        long now = nanoTime.getAsLong();
+        lock.writeLock().lock();
+        try {
+            index.removeIf(cached -> isExpired(cached, now));
+            index.add(question.values(), new CachedResponse(response, now, cost.toNanos()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @EventListener
+    public void onCollectionsChanged(CollectionsChangedEvent event) {
+        LOG.info("Collections {} changed, clearing semantic cache", event.collectionNames());
+        invalidateAll();
+    }
+
+    public void invalidateAll() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double hitRatio() {
+        double lookups = hits.count() + misses.count();
+        return lookups == 0 ? 0 : hits.count() / lookups;
+    }
+
+    private boolean isExpired(CachedResponse cached, long now) {
+        return now - cached.createdNanos() > ttlNanos;
+    }
+}
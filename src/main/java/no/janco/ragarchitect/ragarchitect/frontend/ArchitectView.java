@@ -11,21 +11,18 @@ import com.vaadin.flow.component.textfield.TextArea;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.data.renderer.ComponentRenderer;
 import com.vaadin.flow.router.Route;
+import no.janco.ragarchitect.ragarchitect.AssistantService;
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
 import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
 import no.janco.ragarchitect.ragarchitect.vector.QdrantService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.client.RestTemplate;
-
-import java.util.List;
-import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Route(value = "architect", layout = MainLayout.class)
 public class ArchitectView extends VerticalLayout {
@@ -33,7 +30,8 @@ public class ArchitectView extends VerticalLayout {
     private static final Logger LOG = LoggerFactory.getLogger(ArchitectView.class);
 
     private final QdrantService qdrantService;
-    private final RestTemplate restTemplate;
+    private final AssistantService assistantService;
+    private final Tokenizer tokenizer;
 
     // Track the selected index name
     private String selectedIndexName = null;
@@ -56,13 +54,16 @@ public class ArchitectView extends VerticalLayout {
     private boolean isItemDetailsExpanded = false;
 
     // Some general state
-    private static final int MODEL_TOKEN_LIMIT = 8092;
+    private final int modelTokenLimit;
 
     @Autowired
-    public ArchitectView(QdrantService qdrantService, RestTemplate restTemplate)
+    public ArchitectView(QdrantService qdrantService, AssistantService assistantService, Tokenizer tokenizer,
+                         @Value("${prompt.max.tokens:8192}") int modelTokenLimit)
             throws ExecutionException, InterruptedException {
         this.qdrantService = qdrantService;
-        this.restTemplate = restTemplate;
+        this.assistantService = assistantService;
+        this.tokenizer = tokenizer;
+        this.modelTokenLimit = modelTokenLimit;
 
         // Set up the main layout
         this.setSizeFull();
@@ -216,9 +217,19 @@ public class ArchitectView extends VerticalLayout {
             // Clear old columns
             contentsGrid.removeAllColumns();
 
-            // Fetch data
-            List<IndexContent> contents = qdrantService.getIndexContents(indexName);
-            contentsGrid.setItems(contents);
+            // Rows are scrolled in as the grid shows them, without content, which is fetched once a row is opened
+            IndexContentsPager pager = new IndexContentsPager(qdrantService, indexName);
+            contentsGrid.setItems(query -> {
+                try {
+                    return pager.fetch(query.getOffset(), query.getLimit()).stream();
+                } catch (ExecutionException e) {
+                    LOG.error("Error scrolling contents of index {}", indexName, e);
+                    return Stream.empty();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return Stream.empty();
+                }
+            });
 
             // AREA column: narrower, no flex grow
             contentsGrid.addColumn(IndexContent::getAreaName)
@@ -254,24 +265,37 @@ public class ArchitectView extends VerticalLayout {
             return;
         }
 
-        String url = "http://localhost:8080/api/llm/vector-search?index=" + selectedIndexName + "&query=" + searchField.getValue().trim();
-
-        try {
-            ResponseEntity<List<IndexContent>> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    null,
-                    new ParameterizedTypeReference<>() {}
-            );
-            contentsGrid.setItems(response.getBody());
-        } catch (Exception e) {
-            LOG.error("Error searching contents", e);
-        }
+        String query = searchField.getValue().trim();
+        getUI().ifPresent(ui -> assistantService.searchContents(selectedIndexName, query)
+                .whenComplete((contents, failure) -> ui.access(() -> {
+                    if (failure == null) {
+                        contentsGrid.setItems(contents);
+                    } else {
+                        LOG.error("Error searching contents", failure);
+                    }
+                })));
     }
 
     private void showItemDetails(IndexContent indexContent) {
         LOG.info("Showing item details for {}", indexContent);
-        itemDetailTextArea.setValue(indexContent.getContent());
+        withContent(indexContent, itemDetailTextArea::setValue);
+    }
+
+    // Rows listed from an index come without content; it is fetched on first use and kept on the row
+    private void withContent(IndexContent indexContent, Consumer<String> onContent) {
+        if (indexContent.getContent() != null || indexContent.getPointId() == null) {
+            onContent.accept(indexContent.getContent());
+            return;
+        }
+        getUI().ifPresent(ui -> assistantService.content(selectedIndexName, indexContent.getPointId())
+                .whenComplete((content, failure) -> ui.access(() -> {
+                    if (failure == null) {
+                        indexContent.setContent(content != null ? content : "");
+                        onContent.accept(indexContent.getContent());
+                    } else {
+                        LOG.error("Error fetching content of {}", indexContent.getFilePath(), failure);
+                    }
+                })));
     }
 
     private void addItemDetailsToRawPrompt() {
@@ -280,42 +304,36 @@ public class ArchitectView extends VerticalLayout {
     }
 
     private void addToRawPrompt(IndexContent indexContent) {
-        String existingText = rawPromptTextArea.getValue();
-        rawPromptTextArea.setValue(existingText + "\n\n" + indexContent.getContent());
+        withContent(indexContent, content -> rawPromptTextArea.setValue(rawPromptTextArea.getValue() + "\n\n" + content));
     }
 
     private void sendPromptToLLM() {
         loadingIndicator.setVisible(true);
         String prompt = rawPromptTextArea.getValue();
 
-        // Send the prompt to the LLM service
-        String url = "http://localhost:8080/api/llm/prompt";
-        Map<String, String> payload = Map.of("message", prompt);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-        HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(payload, headers);
-
-        new Thread(() -> {
-            try {
-                ResponseEntity<String> response = restTemplate.postForEntity(url, requestEntity, String.class);
-                getUI().ifPresent(ui -> ui.access(() -> {
-                    responseTextArea.setValue(response.getBody());
-                    loadingIndicator.setVisible(false);
-                }));
-            } catch (Exception e) {
-                getUI().ifPresent(ui -> ui.access(() -> {
-                    responseTextArea.setValue("Error: " + e.getMessage());
-                    loadingIndicator.setVisible(false);
-                }));
-            }
-        }).start();
+        responseTextArea.clear();
+
+        // Streams in-process so the response fills in while it is being generated
+        getUI().ifPresent(ui -> {
+            StreamingTextUpdater updater = new StreamingTextUpdater(ui, responseTextArea::setValue);
+            assistantService.promptStream(prompt, updater).whenComplete((responseText, failure) -> {
+                if (failure == null) {
+                    updater.finish();
+                    ui.access(() -> loadingIndicator.setVisible(false));
+                } else {
+                    ui.access(() -> {
+                        responseTextArea.setValue("Error: " + failure.getMessage());
+                        loadingIndicator.setVisible(false);
+                    });
+                }
+            });
+        });
     }
 
     private void updateTokenUsage() {
-        int tokenCount = rawPromptTextArea.getValue().split("\\s+").length;
+        int tokenCount = tokenizer.countTokens(rawPromptTextArea.getValue());
         tokenCountTextArea.setValue("Tokens Used: " + tokenCount +
-                " / Remaining: " + (MODEL_TOKEN_LIMIT - tokenCount));
+                " / Remaining: " + (modelTokenLimit - tokenCount));
     }
 
     private void toggleItemDetailsSize() {
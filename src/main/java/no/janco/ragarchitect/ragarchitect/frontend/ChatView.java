@@ -1,9 +1,6 @@
 package no.janco.ragarchitect.ragarchitect.frontend;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vaadin.flow.component.AttachEvent;
-import com.vaadin.flow.component.DetachEvent;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.dependency.CssImport;
 import com.vaadin.flow.component.html.Div;
@@ -18,15 +15,10 @@ import com.vaadin.flow.router.Route;
 import com.vaadin.flow.router.RouterLayout;
 import com.vaadin.flow.router.RouterLink;
 import com.vaadin.flow.shared.Registration;
+import no.janco.ragarchitect.ragarchitect.AssistantService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.*;
-import org.springframework.web.client.RestTemplate;
-
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @Route("chat")
 @CssImport("./styles/chat-styles.css")
@@ -36,18 +28,15 @@ public class ChatView extends VerticalLayout implements RouterLayout {
     private TextField inputField;
     private Button sendButton;
     private ProgressBar loadingIndicator;
-    private final ExecutorService executorService;
 
-    private final RestTemplate restTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AssistantService assistantService;
 
     private static final Logger LOG = LoggerFactory.getLogger(ChatView.class);
     private static final int MAX_MESSAGES = 50; // Limit number of messages to prevent slowdown
 
     @Autowired
-    public ChatView(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-        this.executorService = Executors.newSingleThreadExecutor();
+    public ChatView(AssistantService assistantService) {
+        this.assistantService = assistantService;
 
         addClassName("chat-view");
         setSizeFull();
@@ -109,34 +98,28 @@ public class ChatView extends VerticalLayout implements RouterLayout {
         inputField.clear();
         loadingIndicator.setVisible(true);
 
-        String url = "http://localhost:8080/api/llm/chat";
-        Map<String, String> payload = Map.of("message", message);
-        
-        try {
-            String requestBody = objectMapper.writeValueAsString(payload);
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            HttpEntity<String> requestEntity = new HttpEntity<>(requestBody, headers);
-
-            executorService.submit(() -> {
-                try {
-                    ResponseEntity<String> response = restTemplate.postForEntity(url, requestEntity, String.class);
-                    if (response.getStatusCode() == HttpStatus.OK) {
-                        getUI().ifPresent(ui -> ui.access(() -> {
-                            addAssistantMessage(response.getBody());
-                            loadingIndicator.setVisible(false);
-                            limitMessages();
-                        }));
-                    } else {
-                        handleError("Error: " + response.getStatusCode());
-                    }
-                } catch (Exception e) {
-                    handleError("Error: " + e.getMessage());
+        // Calls the assistant in-process rather than through /api/llm/chat, so tokens can be rendered as they arrive
+        getUI().ifPresent(ui -> {
+            Div assistantMessage = new Div();
+            assistantMessage.addClassName("assistant-message");
+            StreamingTextUpdater updater = new StreamingTextUpdater(ui, text -> {
+                if (assistantMessage.getParent().isEmpty()) {
+                    loadingIndicator.setVisible(false);
+                    conversationLayout.add(assistantMessage);
+                    limitMessages();
                 }
+                assistantMessage.getElement().setProperty("innerHTML", "AI: " + MessageFormatter.format(text));
+                scrollToBottom();
             });
-        } catch (JsonProcessingException e) {
-            handleError("Error processing request.");
-        }
+            assistantService.chatStream(message, updater).whenComplete((responseText, failure) -> {
+                if (failure == null) {
+                    updater.finish();
+                } else {
+                    LOG.error("Error streaming chat response", failure);
+                    handleError("Error: " + failure.getMessage());
+                }
+            });
+        });
     }
 
     private void handleError(String errorMessage) {
@@ -158,20 +141,13 @@ public class ChatView extends VerticalLayout implements RouterLayout {
         Div assistantMessage = new Div();
         assistantMessage.addClassName("assistant-message");
 
-        String formattedMessage = formatMessage(message);
+        String formattedMessage = MessageFormatter.format(message);
         assistantMessage.getElement().setProperty("innerHTML", "AI: " + formattedMessage);
 
         conversationLayout.add(assistantMessage);
         scrollToBottom();
     }
 
-    private String formatMessage(String message) {
-        return message
-                .replace("\n", "<br>")
-                .replaceAll("(?s)```([a-z]*)\\n(.*?)```",
-                        "<pre class='code-block'><code>$2</code></pre>");
-    }
-
     private void limitMessages() {
         while (conversationLayout.getComponentCount() > MAX_MESSAGES) {
             conversationLayout.remove(conversationLayout.getComponentAt(0));
@@ -183,10 +159,4 @@ public class ChatView extends VerticalLayout implements RouterLayout {
             conversationLayout.getElement().executeJs("this.scrollTop = this.scrollHeight")
         ));
     }
-
-    @Override
-    protected void onDetach(DetachEvent event) {
-        super.onDetach(event);
-        executorService.shutdown();
-    }
 }
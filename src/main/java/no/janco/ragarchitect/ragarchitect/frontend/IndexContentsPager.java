@@ -0,0 +1,66 @@
+package no.janco.ragarchitect.ragarchitect.frontend;
+
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import no.janco.ragarchitect.ragarchitect.vector.QdrantService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves the rows a lazy grid asks for, by offset and limit, from a collection that can only be scrolled by cursor.
+ * The cursor at every row a scroll ended on is remembered, so the next rows continue from there instead of scrolling
+ * again from the first point; rows before a known cursor are skipped by scrolling over them once.
+ * <p>
+ * Rows come without content, see {@link QdrantService#getIndexContents}. Not thread safe; the grid calls it with the
+ * session locked.
+ */
+class IndexContentsPager {
+
+    private final QdrantService qdrantService;
+    private final String collectionName;
+
+    // Row index -> the scroll offset that starts there; row 0 starts at the null offset
+    private final NavigableMap<Integer, Points.PointId> cursors = new TreeMap<>();
+    // Number of rows, once a scroll has reached the end
+    private int size = -1;
+
+    IndexContentsPager(QdrantService qdrantService, String collectionName) {
+        this.qdrantService = qdrantService;
+        this.collectionName = collectionName;
+        cursors.put(0, null);
+    }
+
+    /**
+     * @return The rows from offset, up to limit of them; fewer only at the end of the collection
+     */
+    List<IndexContent> fetch(int offset, int limit) throws ExecutionException, InterruptedException {
+        if (size >= 0 && offset >= size) {
+            return List.of();
+        }
+
+        Map.Entry<Integer, Points.PointId> start = cursors.floorEntry(offset);
+        int row = start.getKey();
+        Points.PointId cursor = start.getValue();
+        List<IndexContent> rows = new ArrayList<>(limit);
+        while (row < offset + limit) {
+            QdrantService.IndexContentsPage page = qdrantService.getIndexContents(collectionName, cursor, offset + limit - row);
+            for (IndexContent content : page.contents()) {
+                if (row++ >= offset) {
+                    rows.add(content);
+                }
+            }
+            cursor = page.nextOffset();
+            if (cursor == null) {
+                size = row;
+                break;
+            }
+            cursors.put(row, cursor);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,21 @@
+package no.janco.ragarchitect.ragarchitect.frontend;
+
+import java.util.regex.Pattern;
+
+/**
+ * Turns an assistant response into the HTML the chat shows. Kept apart from {@link ChatView} so it can be
+ * benchmarked without Vaadin; a streamed response is formatted again on every update, so its cost grows with the
+ * length of the answer.
+ */
+public final class MessageFormatter {
+
+    private static final Pattern CODE_BLOCK = Pattern.compile("(?s)```([a-z]*)\\n(.*?)```");
+
+    private MessageFormatter() {
+    }
+
+    public static String format(String message) {
+        return CODE_BLOCK.matcher(message.replace("\n", "<br>"))
+                .replaceAll("<pre class='code-block'><code>$2</code></pre>");
+    }
+}
@@ -0,0 +1,48 @@
+package no.janco.ragarchitect.ragarchitect.frontend;
+
+import com.vaadin.flow.component.UI;
+
+import java.util.function.Consumer;
+
+/**
+ * Collects streamed response text off the UI thread and pushes it to a component. Tokens can arrive far faster than
+ * it is worth round-tripping to the browser, so pushes are coalesced to at most one per interval; {@link #finish()}
+ * pushes whatever is left.
+ */
+public class StreamingTextUpdater implements Consumer<String> {
+
+    private static final long PUSH_INTERVAL_NANOS = 50_000_000L;
+
+    private final UI ui;
+    private final Consumer<String> render;
+    private final StringBuilder text = new StringBuilder();
+    private long lastPush = System.nanoTime();
+
+    /**
+     * @param ui The UI to push through
+     * @param render Receives the full text received so far, always inside {@code ui.access}
+     */
+    public StreamingTextUpdater(UI ui, Consumer<String> render) {
+        this.ui = ui;
+        this.render = render;
+    }
+
+    @Override
+    public synchronized void accept(String chunk) {
+        text.append(chunk);
+        long now = System.nanoTime();
+        if (now - lastPush >= PUSH_INTERVAL_NANOS) {
+            lastPush = now;
+            push();
+        }
+    }
+
+    public synchronized void finish() {
+        push();
+    }
+
+    private void push() {
+        String snapshot = text.toString();
+        ui.access(() -> render.accept(snapshot));
+    }
+}
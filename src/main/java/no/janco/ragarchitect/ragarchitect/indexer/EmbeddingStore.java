@@ -0,0 +1,135 @@
+package no.janco.ragarchitect.ragarchitect.indexer;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import no.janco.ragarchitect.ragarchitect.vector.EmbeddingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content-addressed store of document embeddings on local disk, so text that was embedded once is never sent to the
+ * embedding service again, whichever collection or run it turns up in. Entries are keyed by a hash of the exact text
+ * together with the embedding model, and are never invalidated; a changed text simply has a different key.
+ * Lookups are counted as {@code embedding.store.lookups} with {@code result=hit|miss}.
+ */
+@Component
+public class EmbeddingStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingStore.class);
+
+    private final EmbeddingService embeddingService;
+    private final String modelId;
+    private final Path directory;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * @param directory Where embeddings are kept; blank to embed everything through the service, without storing
+     */
+    public EmbeddingStore(EmbeddingService embeddingService,
+                          @Value("${embedding.store.dir:}") String directory,
+                          @Value("${embedding.model.id:all-MiniLM-L6-v2}") String modelId,
+                          MeterRegistry meterRegistry) {
+        this.embeddingService = embeddingService;
+        this.modelId = modelId;
+        this.directory = directory.isBlank() ? null : Path.of(directory);
+        this.hits = Counter.builder("embedding.store.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("embedding.store.lookups").tag("result", "miss").register(meterRegistry);
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    /**
+     * @return One embedding per text, in order. Only the texts not in the store are sent to the embedding service,
+     * as one batch.
+     */
+    public List<Embedding> embed(List<String> texts) {
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            Embedding stored = read(key(texts.get(i)));
+            embeddings.add(stored);
+            if (stored == null) {
+                missing.add(i);
+            }
+        }
+        hits.increment(texts.size() - missing.size());
+        misses.increment(missing.size());
+        if (missing.isEmpty()) {
+            return embeddings;
+        }
+
+        List<Embedding> computed = embeddingService.getEmbeddings(missing.stream().map(texts::get).toList());
+        for (int i = 0; i < missing.size(); i++) {
+            int index = missing.get(i);
+            embeddings.set(index, computed.get(i));
+            write(key(texts.get(index)), computed.get(i));
+        }
+        return embeddings;
+    }
+
+    HashCode key(String text) {
+        return Hashing.sha256().newHasher()
+                .putString(modelId, StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(text, StandardCharsets.UTF_8)
+                .hash();
+    }
+
+    // Two levels of fan-out keep directories small enough for any file system
+    private Path path(HashCode key) {
+        String name = key.toString();
+        return directory.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+    }
+
+    private Embedding read(HashCode key) {
+        if (directory == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(path(key));
+            float[] values = new float[bytes.length / Float.BYTES];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(values);
+            return new Embedding(values);
+        } catch (IOException e) {
+            // Not stored yet; anything unreadable is recomputed and overwritten the same way
+            return null;
+        }
+    }
+
+    private void write(HashCode key, Embedding embedding) {
+        if (directory == null) {
+            return;
+        }
+        float[] values = embedding.values();
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(values);
+        Path target = path(key);
+        try {
+            Files.createDirectories(target.getParent());
+            // Written aside and moved into place, so a concurrent or interrupted write never leaves a partial vector
+            Path temp = Files.createTempFile(target.getParent(), key.toString(), ".tmp");
+            Files.write(temp, buffer.array());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not store embedding {}, it will be recomputed next time", key, e);
+        }
+    }
+}
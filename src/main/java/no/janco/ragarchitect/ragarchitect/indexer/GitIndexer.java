@@ -0,0 +1,478 @@
+package no.janco.ragarchitect.ragarchitect.indexer;
+
+import com.google.common.hash.Hashing;
+import io.qdrant.client.grpc.Collections.Distance;
+import io.qdrant.client.grpc.Collections.VectorParams;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionsChangedEvent;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import no.janco.ragarchitect.ragarchitect.vector.VectorStore;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.ConditionFactory.matchKeywords;
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.value;
+import static io.qdrant.client.VectorsFactory.vectors;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+import static io.qdrant.client.WithPayloadSelectorFactory.include;
+
+/**
+ * Keeps the code collection in step with a git repository, replacing a full re-clone and re-embed with an incremental
+ * update. The repository is mirrored as a bare clone and fetched on every run; the commit indexed last is diffed
+ * against the branch head, and only added and modified files are re-chunked. Each chunk's point id is derived from
+ * its area, path and chunk id, and its payload carries a hash of the content; a chunk whose hash and embedding model
+ * match the point already stored is neither re-embedded nor re-upserted. Embeddings themselves come from the
+ * {@link EmbeddingStore}, so content seen before in any collection is not sent to the embedding service again.
+ * A run that fails halfway is simply redone by the next one.
+ * <p>
+ * The indexed commit is kept in a small state collection, as a point with the same payload fields as the indexed
+ * content. If the code collection is missing, or no commit is recorded, the whole tree is compared against what the
+ * collection holds for the project, and files no longer in the tree are removed.
+ */
+@Component
+public class GitIndexer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GitIndexer.class);
+
+    // Paths or point ids per filter or delete request, keeping each well within gRPC message limits
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    @Value("${git.indexer.enabled:false}")
+    private boolean enabled;
+
+    @Value("${git.indexer.repo.url:}")
+    private String repoUrl;
+
+    @Value("${git.indexer.token:}")
+    private String token;
+
+    // Empty for the remote's default branch
+    @Value("${git.indexer.branch:}")
+    private String branch;
+
+    @Value("${git.indexer.clone.dir:/tmp/ragarchitect/repo.git}")
+    private String cloneDir;
+
+    @Value("${git.indexer.project.name:default_project}")
+    private String projectName;
+
+    @Value("${git.indexer.collection:code}")
+    private String collectionName;
+
+    @Value("${git.indexer.state.collection:indexer_state}")
+    private String stateCollectionName;
+
+    @Value("${git.indexer.vector.size:384}")
+    private int vectorSize;
+
+    // Lines per chunk
+    @Value("${git.indexer.chunk.size:2000}")
+    private int chunkSize;
+
+    // Chunks per /embed call and vector store upsert
+    @Value("${git.indexer.batch.size:32}")
+    private int batchSize;
+
+    @Value("${git.indexer.file.extensions:java,md,bpmn,xml,py,yml}")
+    private List<String> fileExtensions;
+
+    @Value("${git.indexer.ignore.paths:}")
+    private List<String> ignorePaths;
+
+    private final VectorStore vectorStore;
+    private final EmbeddingStore embeddingStore;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public GitIndexer(VectorStore vectorStore, EmbeddingStore embeddingStore,
+                      ApplicationEventPublisher eventPublisher) {
+        this.vectorStore = vectorStore;
+        this.embeddingStore = embeddingStore;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public record IndexResult(String fromCommit, String toCommit, int filesIndexed, int filesRemoved,
+                              int chunksUpserted, int chunksUnchanged) { }
+
+    // What a point already in the collection was indexed from
+    private record IndexedChunk(String contentHash, String embeddingModel) { }
+
+    private record PendingChunk(Points.PointId id, Map<String, JsonWithInt.Value> payload) { }
+
+    private record ChunkCounts(int upserted, int unchanged) { }
+
+    @Scheduled(initialDelayString = "${git.indexer.initial.delay.ms:10000}", fixedDelayString = "${git.indexer.interval.ms:300000}")
+    public void scheduledIndex() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            index();
+        } catch (IOException | GitAPIException | ExecutionException | RuntimeException e) {
+            LOG.warn("Indexing {} failed, retrying on the next run", repoUrl, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized IndexResult index() throws IOException, GitAPIException, ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        try (Git git = openMirror()) {
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(branch.isBlank() ? Constants.HEAD : Constants.R_HEADS + branch);
+            if (head == null) {
+                throw new IllegalStateException("Branch " + (branch.isBlank() ? "HEAD" : branch) + " not found in " + repoUrl);
+            }
+
+            boolean created = ensureCollection(collectionName, vectorSize, Distance.Cosine);
+            ensureCollection(stateCollectionName, 1, Distance.Dot);
+
+            // A recorded commit is only usable if the collection still holds what was indexed at it
+            Optional<ObjectId> indexed = created ? Optional.empty() : readIndexedCommit();
+            if (indexed.isPresent() && !repository.getObjectDatabase().has(indexed.get())) {
+                LOG.warn("Indexed commit {} is no longer in {}, probably after a force push", indexed.get().name(), repoUrl);
+                indexed = Optional.empty();
+            }
+            if (indexed.isPresent() && indexed.get().equals(head)) {
+                LOG.info("{} already indexed at {}", repoUrl, head.name());
+                return new IndexResult(head.name(), head.name(), 0, 0, 0, 0);
+            }
+
+            Set<String> toIndex = new LinkedHashSet<>();
+            Set<String> toRemove = new LinkedHashSet<>();
+            Map<String, Map<Points.PointId, IndexedChunk>> existing;
+            if (indexed.isPresent()) {
+                diff(repository, indexed.get(), head, toIndex, toRemove);
+                existing = loadIndexedChunks(toIndex);
+            } else {
+                LOG.info("No indexed commit recorded for {}, comparing the whole tree against the collection", repoUrl);
+                listFiles(repository, head, toIndex);
+                existing = loadIndexedChunks(null);
+                existing.keySet().stream().filter(path -> !toIndex.contains(path)).forEach(toRemove::add);
+            }
+
+            deletePaths(toRemove);
+            ChunkCounts chunks = indexFiles(repository, head, toIndex, existing);
+
+            writeIndexedCommit(head);
+            eventPublisher.publishEvent(new CollectionsChangedEvent(Set.of(collectionName)));
+
+            IndexResult result = new IndexResult(indexed.map(ObjectId::name).orElse(null), head.name(),
+                    toIndex.size(), toRemove.size(), chunks.upserted(), chunks.unchanged());
+            LOG.info("Indexed {} in {} ms: {}", repoUrl, (System.nanoTime() - start) / 1_000_000, result);
+            return result;
+        }
+    }
+
+    private Git openMirror() throws IOException, GitAPIException {
+        Path directory = Path.of(cloneDir);
+        CredentialsProvider credentials = token.isBlank() ? null : new UsernamePasswordCredentialsProvider(token, "");
+        if (Files.isDirectory(directory.resolve("objects"))) {
+            Git git = Git.open(directory.toFile());
+            git.fetch()
+                    .setCredentialsProvider(credentials)
+                    .setRefSpecs("+refs/heads/*:refs/heads/*")
+                    .setRemoveDeletedRefs(true)
+                    .call();
+            return git;
+        }
+
+        LOG.info("Cloning {} into {}", repoUrl, directory);
+        return Git.cloneRepository()
+                .setURI(repoUrl)
+                .setDirectory(directory.toFile())
+                .setBare(true)
+                .setCredentialsProvider(credentials)
+                .call();
+    }
+
+    private void diff(Repository repository, ObjectId from, ObjectId to, Set<String> toIndex, Set<String> toRemove)
+            throws IOException, GitAPIException {
+        try (Git git = new Git(repository); ObjectReader reader = repository.newObjectReader(); RevWalk walk = new RevWalk(reader)) {
+            CanonicalTreeParser oldTree = new CanonicalTreeParser(null, reader, walk.parseCommit(from).getTree());
+            CanonicalTreeParser newTree = new CanonicalTreeParser(null, reader, walk.parseCommit(to).getTree());
+            for (DiffEntry entry : git.diff().setOldTree(oldTree).setNewTree(newTree).setShowNameAndStatusOnly(true).call()) {
+                // Without rename detection a rename is a delete plus an add, which is what the index needs anyway
+                switch (entry.getChangeType()) {
+                    case ADD, COPY -> addIfIndexed(entry.getNewPath(), toIndex);
+                    case MODIFY -> addIfIndexed(entry.getNewPath(), toIndex);
+                    case DELETE -> addIfIndexed(entry.getOldPath(), toRemove);
+                    case RENAME -> {
+                        addIfIndexed(entry.getOldPath(), toRemove);
+                        addIfIndexed(entry.getNewPath(), toIndex);
+                    }
+                }
+            }
+        }
+        LOG.info("{} files changed and {} removed between {} and {}", toIndex.size(), toRemove.size(), from.name(), to.name());
+    }
+
+    private void listFiles(Repository repository, ObjectId commit, Set<String> toIndex) throws IOException {
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(walk.parseCommit(commit).getTree());
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                addIfIndexed(treeWalk.getPathString(), toIndex);
+            }
+        }
+    }
+
+    private void addIfIndexed(String path, Set<String> paths) {
+        String lowerCasePath = path.toLowerCase(Locale.ROOT);
+        boolean indexed = fileExtensions.stream().anyMatch(extension -> lowerCasePath.endsWith("." + extension.trim().toLowerCase(Locale.ROOT)))
+                && ignorePaths.stream().noneMatch(ignored -> !ignored.isBlank() && path.contains(ignored.trim()));
+        if (indexed) {
+            paths.add(path);
+        }
+    }
+
+    /**
+     * Chunks every file and upserts the chunks whose content or embedding model differs from what is in the collection
+     * under the same point id. Points left over from a file that now has fewer chunks are deleted.
+     */
+    private ChunkCounts indexFiles(Repository repository, ObjectId commit, Set<String> paths,
+                                   Map<String, Map<Points.PointId, IndexedChunk>> existing)
+            throws IOException, ExecutionException, InterruptedException {
+        List<PendingChunk> pending = new ArrayList<>();
+        List<Points.PointId> stale = new ArrayList<>();
+        int upserted = 0;
+        int unchanged = 0;
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit revCommit = walk.parseCommit(commit);
+            for (String path : paths) {
+                Map<Points.PointId, IndexedChunk> previous = existing.getOrDefault(path, Map.of());
+                Set<Points.PointId> current = new HashSet<>();
+                for (PendingChunk chunk : chunk(repository, revCommit, path)) {
+                    current.add(chunk.id());
+                    IndexedChunk before = previous.get(chunk.id());
+                    if (before != null && before.contentHash().equals(chunk.payload().get("content_hash").getStringValue())
+                            && before.embeddingModel().equals(embeddingStore.getModelId())) {
+                        unchanged++;
+                        continue;
+                    }
+                    pending.add(chunk);
+                }
+                previous.keySet().stream().filter(id -> !current.contains(id)).forEach(stale::add);
+
+                while (pending.size() >= batchSize) {
+                    upserted += upsert(pending.subList(0, batchSize));
+                }
+            }
+        }
+        if (!pending.isEmpty()) {
+            upserted += upsert(pending);
+        }
+        for (int start = 0; start < stale.size(); start += DELETE_BATCH_SIZE) {
+            vectorStore.delete(collectionName, stale.subList(start, Math.min(start + DELETE_BATCH_SIZE, stale.size()))).get();
+        }
+        LOG.info("{} chunks upserted, {} unchanged and {} removed", upserted, unchanged, stale.size());
+        return new ChunkCounts(upserted, unchanged);
+    }
+
+    private List<PendingChunk> chunk(Repository repository, RevCommit commit, String path) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(repository, path, commit.getTree())) {
+            if (treeWalk == null) {
+                return List.of();
+            }
+            byte[] bytes = repository.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE);
+            if (RawText.isBinary(bytes)) {
+                LOG.debug("Skipping binary file {}", path);
+                return List.of();
+            }
+
+            String fileName = path.substring(path.lastIndexOf('/') + 1);
+            List<String> fileChunks = splitLines(new String(bytes, StandardCharsets.UTF_8), chunkSize);
+            List<PendingChunk> chunks = new ArrayList<>(fileChunks.size());
+            for (int i = 0; i < fileChunks.size(); i++) {
+                String chunkId = fileName + "_chunk_" + i;
+                String content = fileChunks.get(i);
+                Map<String, JsonWithInt.Value> payload = new HashMap<>();
+                payload.put("item_path", value(path));
+                payload.put("chunk_id", value(chunkId));
+                payload.put("content", value(content));
+                payload.put("area", value(projectName));
+                payload.put("content_hash", value(Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString()));
+                payload.put("embedding_model", value(embeddingStore.getModelId()));
+                chunks.add(new PendingChunk(id(pointId(projectName, path, chunkId)), payload));
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * Stable across runs, so re-indexing a chunk overwrites its point in place instead of adding another.
+     */
+    static UUID pointId(String area, String itemPath, String chunkId) {
+        return UUID.nameUUIDFromBytes((area + "\0" + itemPath + "\0" + chunkId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Splits into chunks of at most {@code maxLines} lines, the same way the Python indexer does, so chunks from both
+     * look alike.
+     */
+    static List<String> splitLines(String content, int maxLines) {
+        List<String> lines = Arrays.asList(content.split("\n", -1));
+        if (lines.size() <= maxLines) {
+            return List.of(content);
+        }
+        List<String> chunks = new ArrayList<>();
+        for (int start = 0; start < lines.size(); start += maxLines) {
+            chunks.add(String.join("\n", lines.subList(start, Math.min(start + maxLines, lines.size()))));
+        }
+        return chunks;
+    }
+
+    // Embeds and upserts the given chunks, then removes them from the list they came from
+    private int upsert(List<PendingChunk> chunks) throws ExecutionException, InterruptedException {
+        List<Embedding> embeddings = embeddingStore.embed(
+                chunks.stream().map(chunk -> chunk.payload().get("content").getStringValue()).toList());
+
+        List<Points.PointStruct> points = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            points.add(Points.PointStruct.newBuilder()
+                    .setId(chunks.get(i).id())
+                    .setVectors(vectors(embeddings.get(i).values()))
+                    .putAllPayload(chunks.get(i).payload())
+                    .build());
+        }
+        vectorStore.upsert(collectionName, points).get();
+
+        int count = chunks.size();
+        chunks.clear();
+        return count;
+    }
+
+    /**
+     * @param paths The files to look up, or null for everything indexed under this project
+     * @return Per file, the points the collection holds for it
+     */
+    private Map<String, Map<Points.PointId, IndexedChunk>> loadIndexedChunks(Set<String> paths)
+            throws ExecutionException, InterruptedException {
+        Map<String, Map<Points.PointId, IndexedChunk>> chunks = new HashMap<>();
+        if (paths == null) {
+            scrollIndexedChunks(Points.Filter.newBuilder().addMust(matchKeyword("area", projectName)).build(), chunks);
+            return chunks;
+        }
+        List<String> remaining = new ArrayList<>(paths);
+        for (int start = 0; start < remaining.size(); start += DELETE_BATCH_SIZE) {
+            scrollIndexedChunks(Points.Filter.newBuilder()
+                    .addMust(matchKeyword("area", projectName))
+                    .addMust(matchKeywords("item_path", remaining.subList(start, Math.min(start + DELETE_BATCH_SIZE, remaining.size()))))
+                    .build(), chunks);
+        }
+        return chunks;
+    }
+
+    private void scrollIndexedChunks(Points.Filter filter, Map<String, Map<Points.PointId, IndexedChunk>> chunks)
+            throws ExecutionException, InterruptedException {
+        Points.PointId offset = null;
+        do {
+            Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setFilter(filter)
+                    .setLimit(1000)
+                    .setWithPayload(include(List.of("item_path", "content_hash", "embedding_model")));
+            if (offset != null) {
+                request.setOffset(offset);
+            }
+            Points.ScrollResponse response = vectorStore.scroll(request.build()).get();
+            for (Points.RetrievedPoint point : response.getResultList()) {
+                // Points written by the Python indexer have no hash, so they never match and are replaced
+                Map<String, JsonWithInt.Value> payload = point.getPayloadMap();
+                chunks.computeIfAbsent(IndexContent.stringValue(payload, "item_path"), path -> new HashMap<>())
+                        .put(point.getId(), new IndexedChunk(IndexContent.stringValue(payload, "content_hash"), IndexContent.stringValue(payload, "embedding_model")));
+            }
+            offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+        } while (offset != null);
+    }
+
+    private void deletePaths(Set<String> paths) throws ExecutionException, InterruptedException {
+        List<String> remaining = new ArrayList<>(paths);
+        for (int start = 0; start < remaining.size(); start += DELETE_BATCH_SIZE) {
+            List<String> batch = remaining.subList(start, Math.min(start + DELETE_BATCH_SIZE, remaining.size()));
+            vectorStore.delete(collectionName, Points.Filter.newBuilder()
+                    .addMust(matchKeyword("area", projectName))
+                    .addMust(matchKeywords("item_path", batch))
+                    .build()).get();
+        }
+    }
+
+    private boolean ensureCollection(String name, int size, Distance distance) throws ExecutionException, InterruptedException {
+        if (vectorStore.collectionExists(name).get()) {
+            return false;
+        }
+        LOG.info("Creating collection {}", name);
+        vectorStore.createCollection(name, VectorParams.newBuilder().setSize(size).setDistance(distance).build()).get();
+        return true;
+    }
+
+    private Optional<ObjectId> readIndexedCommit() throws ExecutionException, InterruptedException {
+        List<Points.RetrievedPoint> points = vectorStore.retrieve(Points.GetPoints.newBuilder()
+                .setCollectionName(stateCollectionName)
+                .addIds(id(statePointId()))
+                .setWithPayload(enable(true))
+                .build(), null).get();
+        if (points.isEmpty() || !points.get(0).getPayloadMap().containsKey("content")) {
+            return Optional.empty();
+        }
+        String commit = points.get(0).getPayloadMap().get("content").getStringValue();
+        return ObjectId.isId(commit) ? Optional.of(ObjectId.fromString(commit)) : Optional.empty();
+    }
+
+    // Shaped like an indexed chunk, so the state point reads like any other
+    private void writeIndexedCommit(ObjectId commit) throws ExecutionException, InterruptedException {
+        Map<String, JsonWithInt.Value> payload = new LinkedHashMap<>();
+        payload.put("area", value(projectName));
+        payload.put("item_path", value(repoUrl));
+        payload.put("chunk_id", value(collectionName + "_indexed_commit"));
+        payload.put("content", value(commit.name()));
+        vectorStore.upsert(stateCollectionName, List.of(Points.PointStruct.newBuilder()
+                .setId(id(statePointId()))
+                .setVectors(vectors(1f))
+                .putAllPayload(payload)
+                .build())).get();
+    }
+
+    private UUID statePointId() {
+        return UUID.nameUUIDFromBytes((collectionName + "|" + projectName + "|" + repoUrl).getBytes(StandardCharsets.UTF_8));
+    }
+}
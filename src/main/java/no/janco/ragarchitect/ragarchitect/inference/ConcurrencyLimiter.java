@@ -0,0 +1,190 @@
+package no.janco.ragarchitect.ragarchitect.inference;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of calls in flight against a backend. Calls beyond the cap wait for a permit, first come first
+ * served, and are rejected if none frees up within the maximum wait.
+ * <p>
+ * Waiting is done on a {@link CompletableFuture}, so asynchronous callers hold no thread while queued and blocking
+ * callers park without pinning a virtual thread's carrier.
+ */
+public class ConcurrencyLimiter implements MeterBinder {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+    private int availablePermits;
+    private Counter rejected;
+
+    public ConcurrencyLimiter(String name, int maxConcurrent, Duration maxWait) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1, was " + maxConcurrent);
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        this.availablePermits = maxConcurrent;
+    }
+
+    /**
+     * Runs a blocking call once a permit is available.
+     * @throws RejectedExecutionException If no permit became available within the maximum wait
+     */
+    public <T> T run(Supplier<T> call) {
+        CompletableFuture<Void> permit = acquire();
+        try {
+            permit.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (withdraw(permit)) {
+                throw rejection();
+            }
+            // Granted just as the wait ran out
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!withdraw(permit)) {
+                release();
+            }
+            throw new RejectedExecutionException("Interrupted while waiting for " + name + " capacity", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Permit futures are never completed exceptionally", e);
+        }
+
+        try {
+            return call.get();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Starts an asynchronous call once a permit is available; the permit is held until the returned future completes.
+     */
+    public <T> CompletableFuture<T> runAsync(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Void> permit = acquire();
+        if (!permit.isDone()) {
+            CompletableFuture.delayedExecutor(maxWait.toMillis(), TimeUnit.MILLISECONDS).execute(() -> withdraw(permit));
+        }
+
+        return permit.handle((granted, failure) -> {
+            if (failure != null) {
+                throw rejection();
+            }
+            return granted;
+        }).thenCompose(granted -> {
+            try {
+                return call.get().whenComplete((result, failure) -> release());
+            } catch (RuntimeException e) {
+                release();
+                throw e;
+            }
+        });
+    }
+
+    public int activeCalls() {
+        lock.lock();
+        try {
+            return maxConcurrent - availablePermits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queuedCalls() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("limiter.calls.active", this, ConcurrencyLimiter::activeCalls)
+                .tag("limiter", name)
+                .description("Calls currently holding a permit")
+                .register(registry);
+        Gauge.builder("limiter.calls.queued", this, ConcurrencyLimiter::queuedCalls)
+                .tag("limiter", name)
+                .description("Calls waiting for a permit")
+                .register(registry);
+        rejected = Counter.builder("limiter.calls.rejected")
+                .tag("limiter", name)
+                .description("Calls that gave up waiting for a permit")
+                .register(registry);
+    }
+
+    private CompletableFuture<Void> acquire() {
+        lock.lock();
+        try {
+            if (availablePermits > 0) {
+                availablePermits--;
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> permit = new CompletableFuture<>();
+            waiting.add(permit);
+            return permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Gives up a queued permit. Returns false if it was granted in the meantime, in which case the caller holds it
+    private boolean withdraw(CompletableFuture<Void> permit) {
+        lock.lock();
+        try {
+            // Once release() has taken it off the queue it is about to be completed, so it can no longer be withdrawn
+            if (!waiting.remove(permit)) {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (rejected != null) {
+            rejected.increment();
+        }
+        // Fails the waiting caller, synchronously for asynchronous ones, so the queue must already be updated
+        permit.cancel(false);
+        return true;
+    }
+
+    private void release() {
+        // Hand the permit straight to the next waiter; withdrawn waiters are no longer queued
+        CompletableFuture<Void> next;
+        lock.lock();
+        try {
+            next = waiting.poll();
+            if (next == null) {
+                availablePermits++;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Completed outside the lock, as this runs the waiter's continuation
+        next.complete(null);
+    }
+
+    private RejectedExecutionException rejection() {
+        return new RejectedExecutionException(
+                "No " + name + " capacity became available within " + maxWait.toMillis() + " ms");
+    }
+}
@@ -0,0 +1,51 @@
+package no.janco.ragarchitect.ragarchitect.inference;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Helpers for adapters that stream a response body through {@code RestTemplate.execute}.
+ */
+public final class HttpStreaming {
+
+    private static final int CHUNK_SIZE = 256;
+
+    private HttpStreaming() {
+    }
+
+    public static void writeJson(ClientHttpRequest request, Object body, ObjectMapper objectMapper) throws IOException {
+        request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        objectMapper.writeValue(request.getBody(), body);
+    }
+
+    public static boolean isJson(ClientHttpResponse response) {
+        MediaType contentType = response.getHeaders().getContentType();
+        return contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(contentType);
+    }
+
+    /**
+     * Reads a chunked text body, passing on whatever has arrived each time the underlying stream yields data.
+     * @return The complete body
+     */
+    public static String readText(ClientHttpResponse response, Consumer<String> onToken) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[CHUNK_SIZE];
+        try (Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                String chunk = new String(buffer, 0, read);
+                onToken.accept(chunk);
+                text.append(chunk);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package no.janco.ragarchitect.ragarchitect.inference;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking JSON POSTs against an inference backend, on the shared pooled {@link HttpClient}.
+ * No thread is held while a generation is in flight.
+ */
+public class InferenceHttpClient {
+
+    private final HttpClient httpClient;
+    private final Duration responseTimeout;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * @param httpClient The shared client, which owns connection pooling and the connect timeout
+     * @param responseTimeout How long to wait for the response headers. Non-streaming backends only answer once the
+     *                        whole generation is done, so this has to cover the slowest expected generation
+     */
+    public InferenceHttpClient(HttpClient httpClient, Duration responseTimeout) {
+        this.httpClient = httpClient;
+        this.responseTimeout = responseTimeout;
+    }
+
+    public <T> CompletableFuture<T> postJson(String url, Object body, Class<T> responseType) {
+        return postJson(url, body).thenApply(responseBody -> {
+            try {
+                return responseBody.isEmpty() ? null : objectMapper.readValue(responseBody, responseType);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * @return The raw response body; empty if the backend sent none
+     */
+    public CompletableFuture<String> postJson(String url, Object body) {
+        HttpRequest request;
+        try {
+            URI uri = URI.create(url);
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri);
+            if ("http".equalsIgnoreCase(uri.getScheme())) {
+                // Without TLS, HTTP/2 would first be offered as an h2c upgrade, which the local backends do not take
+                builder.version(HttpClient.Version.HTTP_1_1);
+            }
+            request = builder
+                    .timeout(responseTimeout)
+                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        throw new RestClientResponseException("Inference backend answered " + response.statusCode(),
+                                response.statusCode(), "", null, response.body().getBytes(StandardCharsets.UTF_8),
+                                StandardCharsets.UTF_8);
+                    }
+                    return response.body();
+                });
+    }
+}
@@ -1,7 +1,33 @@
 package no.janco.ragarchitect.ragarchitect.inference;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 public interface LLMInferenceProvider {
     public String infer(String prompt);
 
+    /**
+     * Non-blocking variant of {@link #infer(String)}; no thread is held while the backend generates.
+     * The default runs {@code infer} on the common pool, for providers without a non-blocking client.
+     * @param prompt The prompt to send for inference
+     * @return Completes with the response text, or exceptionally if the backend fails
+     */
+    public default CompletableFuture<String> inferAsync(String prompt) {
+        return CompletableFuture.supplyAsync(() -> infer(prompt));
+    }
+
+    /**
+     * Streams the response, handing each chunk of generated text to {@code onToken} as soon as the backend produces it.
+     * Providers without incremental output fall back to delivering the whole response as a single chunk.
+     * @param prompt The prompt to send for inference
+     * @param onToken Receives the generated text incrementally, in order
+     * @return The complete response text
+     */
+    public default String inferStream(String prompt, Consumer<String> onToken) {
+        String response = infer(prompt);
+        onToken.accept(response);
+        return response;
+    }
+
     public String getHandlerDetails();
 }
@@ -8,13 +8,19 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
 import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
 import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamResponseHandler;
 import software.amazon.awssdk.services.bedrockruntime.model.Message;
 
 import jakarta.annotation.PostConstruct;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 @Service
 @Profile("bedrock")
@@ -30,12 +36,18 @@ public class BedrockAdapter implements LLMInferenceProvider {
 
     private BedrockRuntimeClient client;
 
+    private BedrockRuntimeAsyncClient asyncClient;
+
     @PostConstruct
     public void initialize() {
         this.client = BedrockRuntimeClient.builder()
             .credentialsProvider(DefaultCredentialsProvider.create())
             .region(Region.of(regionId))
             .build();
+        this.asyncClient = BedrockRuntimeAsyncClient.builder()
+            .credentialsProvider(DefaultCredentialsProvider.create())
+            .region(Region.of(regionId))
+            .build();
     }
 
     @Override
@@ -53,6 +65,53 @@ public class BedrockAdapter implements LLMInferenceProvider {
         return response.output().message().content().get(0).text();
     }
 
+    @Override
+    public CompletableFuture<String> inferAsync(String prompt) {
+        Message userMessage = Message.builder()
+                .content(ContentBlock.fromText(prompt))
+                .role(ConversationRole.USER)
+                .build();
+
+        LOG.info("Sending async query {} using modelId {}", userMessage, bedrockModelId);
+        return asyncClient.converse(request -> request.modelId(bedrockModelId).messages(userMessage))
+                .thenApply(response -> response.output().message().content().get(0).text());
+    }
+
+    @Override
+    public String inferStream(String prompt, Consumer<String> onToken) {
+        Message userMessage = Message.builder()
+                .content(ContentBlock.fromText(prompt))
+                .role(ConversationRole.USER)
+                .build();
+
+        LOG.info("Streaming query {} using modelId {}", userMessage, bedrockModelId);
+        StringBuilder response = new StringBuilder();
+        ConverseStreamResponseHandler handler = ConverseStreamResponseHandler.builder()
+                .subscriber(ConverseStreamResponseHandler.Visitor.builder()
+                        .onContentBlockDelta(event -> {
+                            String text = event.delta().text();
+                            if (text != null && !text.isEmpty()) {
+                                response.append(text);
+                                onToken.accept(text);
+                            }
+                        })
+                        .build())
+                .build();
+
+        try {
+            asyncClient.converseStream(ConverseStreamRequest.builder()
+                    .modelId(bedrockModelId)
+                    .messages(userMessage)
+                    .build(), handler).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return response.toString();
+    }
+
     @Override
     public String getHandlerDetails() {
         return getClass().getName();
@@ -1,5 +1,8 @@
 package no.janco.ragarchitect.ragarchitect.inference.generic;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.janco.ragarchitect.ragarchitect.inference.HttpStreaming;
+import no.janco.ragarchitect.ragarchitect.inference.InferenceHttpClient;
 import no.janco.ragarchitect.ragarchitect.inference.LLMInferenceProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -10,6 +13,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 @Service
 @Profile("generic")
 public class GenericAdapter implements LLMInferenceProvider {
@@ -19,8 +25,13 @@ public class GenericAdapter implements LLMInferenceProvider {
 
     private final RestTemplate restTemplate;
 
-    public GenericAdapter(RestTemplate restTemplate) {
+    private final InferenceHttpClient inferenceHttpClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public GenericAdapter(RestTemplate restTemplate, InferenceHttpClient inferenceHttpClient) {
         this.restTemplate = restTemplate;
+        this.inferenceHttpClient = inferenceHttpClient;
     }
 
     @Override
@@ -39,6 +50,23 @@ public class GenericAdapter implements LLMInferenceProvider {
         return response.getBody() != null ? response.getBody() : "No response";
     }
 
+    @Override
+    public CompletableFuture<String> inferAsync(String prompt) {
+        return inferenceHttpClient.postJson(inferenceUrl, new GenericRequest(prompt))
+                .thenApply(body -> body.isEmpty() ? "No response" : body);
+    }
+
+    @Override
+    public String inferStream(String prompt, Consumer<String> onToken) {
+        GenericRequest request = new GenericRequest(prompt);
+        request.setStream(true);
+
+        // The response body is passed on as it arrives, exactly like infer() returns it in one piece
+        return restTemplate.execute(inferenceUrl, HttpMethod.POST,
+                httpRequest -> HttpStreaming.writeJson(httpRequest, request, objectMapper),
+                httpResponse -> HttpStreaming.readText(httpResponse, onToken));
+    }
+
     @Override
     public String getHandlerDetails() {
         return getClass().getName();
@@ -1,8 +1,14 @@
 package no.janco.ragarchitect.ragarchitect.inference.generic;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class GenericRequest {
     private String message;
 
+    // Only sent when streaming is requested, so services that predate streaming see an unchanged request
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean stream;
+
     public GenericRequest() {
     }
 
@@ -18,5 +24,12 @@ public class GenericRequest {
     public void setMessage(String message) {
         this.message = message;
     }
-}
 
+    public Boolean getStream() {
+        return stream;
+    }
+
+    public void setStream(Boolean stream) {
+        this.stream = stream;
+    }
+}
@@ -1,5 +1,12 @@
 package no.janco.ragarchitect.ragarchitect.inference.ollama;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.janco.ragarchitect.ragarchitect.inference.HttpStreaming;
+import no.janco.ragarchitect.ragarchitect.inference.InferenceHttpClient;
 import no.janco.ragarchitect.ragarchitect.inference.LLMInferenceProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -10,6 +17,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 @Service
 @Profile("ollama")
 public class OllamaAdapter implements LLMInferenceProvider {
@@ -22,8 +36,17 @@ public class OllamaAdapter implements LLMInferenceProvider {
 
     private final RestTemplate restTemplate;
 
-    public OllamaAdapter(RestTemplate restTemplate) {
+    private final InferenceHttpClient inferenceHttpClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final MeterRegistry meterRegistry;
+
+    public OllamaAdapter(RestTemplate restTemplate, InferenceHttpClient inferenceHttpClient, MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
+        this.inferenceHttpClient = inferenceHttpClient;
+        this.meterRegistry = meterRegistry;
     }
 
     @Override
@@ -39,11 +62,99 @@ public class OllamaAdapter implements LLMInferenceProvider {
 
         // Send request and parse response
         ResponseEntity<OllamaResponse> response = restTemplate.exchange(apiUrl, HttpMethod.POST, requestEntity, OllamaResponse.class);
+        if (response.getBody() != null) {
+            recordUsage(response.getBody());
+        }
 
         // Return only the response text
         return response.getBody() != null ? response.getBody().getResponse() : "No response";
     }
 
+    @Override
+    public CompletableFuture<String> inferAsync(String prompt) {
+        String apiUrl = ollamaServerUrl + "/api/generate";
+        OllamaRequest request = new OllamaRequest(prompt, false, ollamaServerModel);
+
+        return inferenceHttpClient.postJson(apiUrl, request, OllamaResponse.class)
+                .thenApply(response -> {
+                    if (response == null) {
+                        return "No response";
+                    }
+                    recordUsage(response);
+                    return response.getResponse();
+                });
+    }
+
+    @Override
+    public String inferStream(String prompt, Consumer<String> onToken) {
+        String apiUrl = ollamaServerUrl + "/api/generate";
+        OllamaRequest request = new OllamaRequest(prompt, true, ollamaServerModel);
+
+        // Ollama streams newline-delimited JSON objects, each carrying the next piece of the response
+        return restTemplate.execute(apiUrl, HttpMethod.POST,
+                httpRequest -> HttpStreaming.writeJson(httpRequest, request, objectMapper),
+                httpResponse -> {
+                    StringBuilder text = new StringBuilder();
+                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(httpResponse.getBody(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            if (line.isBlank()) {
+                                continue;
+                            }
+                            OllamaResponse chunk = objectMapper.readValue(line, OllamaResponse.class);
+                            if (chunk.getError() != null) {
+                                throw new RuntimeException("Ollama error: " + chunk.getError());
+                            }
+                            if (chunk.getResponse() != null && !chunk.getResponse().isEmpty()) {
+                                onToken.accept(chunk.getResponse());
+                                text.append(chunk.getResponse());
+                            }
+                            if (chunk.isDone()) {
+                                // Only the final chunk carries the counts and durations
+                                recordUsage(chunk);
+                                break;
+                            }
+                        }
+                    }
+                    return text.toString();
+                });
+    }
+
+    /**
+     * Exports what Ollama reports about a completed generation, which separates loading the model, reading the prompt
+     * and generating the answer where our own timers only see the total.
+     */
+    private void recordUsage(OllamaResponse response) {
+        String model = response.getModel() != null ? response.getModel() : ollamaServerModel;
+        Timer.builder("ollama.load.duration")
+                .description("Time Ollama spent loading the model")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(response.getLoadDuration(), TimeUnit.NANOSECONDS);
+        Timer.builder("ollama.prompt.eval.duration")
+                .description("Time Ollama spent evaluating the prompt")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(response.getPromptEvalDuration(), TimeUnit.NANOSECONDS);
+        Timer.builder("ollama.eval.duration")
+                .description("Time Ollama spent generating the response")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(response.getEvalDuration(), TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("ollama.prompt.eval.tokens")
+                .description("Prompt tokens Ollama evaluated; fewer than in the prompt when a cached prefix was reused")
+                .baseUnit("tokens")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(response.getPromptEvalCount());
+        DistributionSummary.builder("ollama.eval.tokens")
+                .description("Tokens Ollama generated")
+                .baseUnit("tokens")
+                .tag("model", model)
+                .register(meterRegistry)
+                .record(response.getEvalCount());
+    }
+
     @Override
     public String getHandlerDetails() {
         return getClass().getName();
@@ -36,6 +36,8 @@ public class OllamaResponse {
     @JsonProperty("eval_duration")
     private long evalDuration;
 
+    private String error;
+
     public String getModel() {
         return model;
     }
@@ -131,5 +133,12 @@ public class OllamaResponse {
     public void setEvalDuration(long evalDuration) {
         this.evalDuration = evalDuration;
     }
-}
 
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -1,5 +1,9 @@
 package no.janco.ragarchitect.ragarchitect.inference.vllm;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import no.janco.ragarchitect.ragarchitect.inference.HttpStreaming;
+import no.janco.ragarchitect.ragarchitect.inference.InferenceHttpClient;
 import no.janco.ragarchitect.ragarchitect.inference.LLMInferenceProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -12,6 +16,9 @@ import org.springframework.web.client.RestTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
 @Service
 @Profile("vllm")
 public class VLLMAdapter implements LLMInferenceProvider {
@@ -22,8 +29,14 @@ public class VLLMAdapter implements LLMInferenceProvider {
 
     private final RestTemplate restTemplate;
 
-    public VLLMAdapter(RestTemplate restTemplate) {
+    private final InferenceHttpClient inferenceHttpClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    public VLLMAdapter(RestTemplate restTemplate, InferenceHttpClient inferenceHttpClient) {
         this.restTemplate = restTemplate;
+        this.inferenceHttpClient = inferenceHttpClient;
     }
 
     @Override
@@ -50,6 +63,46 @@ public class VLLMAdapter implements LLMInferenceProvider {
         }
     }
 
+    @Override
+    public CompletableFuture<String> inferAsync(String prompt) {
+        String apiUrl = vllmServerUrl + "/inference";
+
+        return inferenceHttpClient.postJson(apiUrl, new VLLMRequest(prompt), VLLMResponse.class)
+                .thenApply(response -> response != null ? response.getResponse() : "No response")
+                .exceptionally(e -> {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    LOG.error("Error during vLLM inference: {}", cause.getMessage());
+                    return "Error: " + cause.getMessage();
+                });
+    }
+
+    @Override
+    public String inferStream(String prompt, Consumer<String> onToken) {
+        String apiUrl = vllmServerUrl + "/inference";
+        VLLMRequest request = new VLLMRequest(prompt);
+        request.setStream(true);
+
+        try {
+            return restTemplate.execute(apiUrl, HttpMethod.POST,
+                    httpRequest -> HttpStreaming.writeJson(httpRequest, request, objectMapper),
+                    httpResponse -> {
+                        // A server without streaming support answers with the usual JSON document
+                        if (HttpStreaming.isJson(httpResponse)) {
+                            VLLMResponse response = objectMapper.readValue(httpResponse.getBody(), VLLMResponse.class);
+                            String text = response.getResponse() != null ? response.getResponse() : "No response";
+                            onToken.accept(text);
+                            return text;
+                        }
+                        return HttpStreaming.readText(httpResponse, onToken);
+                    });
+        } catch (Exception e) {
+            LOG.error("Error during vLLM inference: {}", e.getMessage());
+            String error = "Error: " + e.getMessage();
+            onToken.accept(error);
+            return error;
+        }
+    }
+
     @Override
     public String getHandlerDetails() {
         return getClass().getName();
@@ -1,8 +1,14 @@
 package no.janco.ragarchitect.ragarchitect.inference.vllm;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class VLLMRequest {
     private String message;
 
+    // Only sent when streaming is requested, so services that predate streaming see an unchanged request
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean stream;
+
     public VLLMRequest() {
     }
 
@@ -17,4 +23,12 @@ public class VLLMRequest {
     public void setMessage(String message) {
         this.message = message;
     }
-} 
\ No newline at end of file
+
+    public Boolean getStream() {
+        return stream;
+    }
+
+    public void setStream(Boolean stream) {
+        this.stream = stream;
+    }
+}
@@ -0,0 +1,99 @@
+package no.janco.ragarchitect.ragarchitect.lexical;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits text into search terms the way identifiers are written in code. Every identifier is a term as a whole, and
+ * so is each word of it when it is camelCase, PascalCase, snake_case or mixes letters and digits, so
+ * {@code getIndexContents} matches a search for "index contents" as well as for the exact name.
+ */
+final class CodeTerms {
+
+    // Single characters are too common in code to tell documents apart
+    private static final int MIN_TERM_LENGTH = 2;
+
+    private CodeTerms() {
+    }
+
+    static void forEach(String text, Consumer<String> consumer) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !isIdentifierChar(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && isIdentifierChar(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                identifier(text, start, i, consumer);
+            }
+        }
+    }
+
+    private static void identifier(String text, int start, int end, Consumer<String> consumer) {
+        // Leading and trailing underscores (__init__, _private) carry no meaning of their own
+        while (start < end && text.charAt(start) == '_') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) == '_') {
+            end--;
+        }
+        emit(text, start, end, consumer);
+
+        boolean compound = false;
+        for (int i = start + 1; i < end && !compound; i++) {
+            compound = isBoundary(text, i, end);
+        }
+        if (!compound) {
+            return;
+        }
+        int wordStart = start;
+        for (int i = start + 1; i <= end; i++) {
+            if (i == end || isBoundary(text, i, end)) {
+                emit(text, wordStart, i, consumer);
+                wordStart = i;
+            }
+        }
+    }
+
+    // Whether a new word starts at index i of an identifier ending at end
+    private static boolean isBoundary(String text, int i, int end) {
+        char previous = text.charAt(i - 1);
+        char current = text.charAt(i);
+        if (current == '_') {
+            return true;
+        }
+        if (previous == '_') {
+            return false;
+        }
+        if (Character.isLowerCase(previous) && Character.isUpperCase(current)) {
+            return true;
+        }
+        if (Character.isDigit(previous) != Character.isDigit(current)) {
+            return true;
+        }
+        // The last capital of an acronym starts the next word: HTTPClient is HTTP and Client
+        return i + 1 < end && Character.isUpperCase(previous) && Character.isUpperCase(current)
+                && Character.isLowerCase(text.charAt(i + 1));
+    }
+
+    private static void emit(String text, int start, int end, Consumer<String> consumer) {
+        // Words of snake_case names start at their underscore
+        while (start < end && text.charAt(start) == '_') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) == '_') {
+            end--;
+        }
+        if (end - start >= MIN_TERM_LENGTH) {
+            consumer.accept(text.substring(start, end).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,282 @@
+package no.janco.ragarchitect.ragarchitect.lexical;
+
+import io.qdrant.client.grpc.Points;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Immutable BM25 inverted index over the points of one collection, for finding exact identifiers and error codes that
+ * dense retrieval only matches approximately. Terms come from {@link CodeTerms}; postings are kept as plain int
+ * arrays of ascending document numbers. Only documents containing one of the query's rare terms are scored, so the
+ * cost of a query follows how selective it is rather than the size of the collection. A query without a rare term
+ * finds nothing: a document that only shares common words with a question is no evidence of relevance, and its
+ * lexical rank would still earn it a place in the fused results.
+ * <p>
+ * The content itself is not kept: a hit carries the point id and path, and the content of the hits kept after fusion
+ * is fetched from the vector store along with the dense matches'.
+ */
+public final class LexicalIndex {
+
+    // The usual BM25 parameters: term frequency saturation and document length normalization
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    // Terms in more than this share of the documents, or in more than one document of a small collection, only add to
+    // the score of documents matched by a rare term
+    private static final float COMMON_TERM_RATIO = 0.05f;
+
+    // Words of the question around the identifiers it asks about, which would otherwise be rare in code
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how", "if", "in", "is",
+            "it", "me", "my", "of", "on", "or", "so", "that", "the", "this", "to", "what", "when", "where", "which",
+            "who", "why", "with", "you");
+
+    private final Map<String, Postings> postings;
+    private final Points.PointId[] ids;
+    private final String[] paths;
+    // k1 * (1 - b + b * length / average length), per document
+    private final float[] lengthNorms;
+
+    public record Hit(Points.PointId id, String path, float score) { }
+
+    private record Postings(int[] documents, int[] frequencies) { }
+
+    private LexicalIndex(Map<String, Postings> postings, Points.PointId[] ids, String[] paths, float[] lengthNorms) {
+        this.postings = postings;
+        this.ids = ids;
+        this.paths = paths;
+        this.lengthNorms = lengthNorms;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return Up to limit documents containing at least one of the query's rare terms, best match first
+     */
+    public List<Hit> search(String query, int limit) {
+        Set<String> terms = new HashSet<>();
+        CodeTerms.forEach(query, term -> {
+            if (!STOPWORDS.contains(term)) {
+                terms.add(term);
+            }
+        });
+        float commonDocuments = Math.max(1, ids.length * COMMON_TERM_RATIO);
+        List<Postings> rare = new ArrayList<>();
+        List<Postings> common = new ArrayList<>();
+        for (String term : terms) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null) {
+                (termPostings.documents().length > commonDocuments ? common : rare).add(termPostings);
+            }
+        }
+        if (rare.isEmpty()) {
+            return List.of();
+        }
+
+        int rarePostings = 0;
+        for (Postings termPostings : rare) {
+            rarePostings += termPostings.documents().length;
+        }
+        // No more documents can match than the index holds
+        Scores scores = new Scores(Math.min(rarePostings, ids.length));
+        for (Postings termPostings : rare) {
+            float idf = idf(termPostings);
+            for (int i = 0; i < termPostings.documents().length; i++) {
+                int document = termPostings.documents()[i];
+                scores.add(document, termScore(idf, termPostings.frequencies()[i], document));
+            }
+        }
+        // Looking up the few matched documents is far cheaper than walking postings that cover most of the index
+        for (Postings termPostings : common) {
+            float idf = idf(termPostings);
+            for (int i = 0; i < scores.size(); i++) {
+                int slot = scores.slot(i);
+                int document = scores.document(slot);
+                int position = Arrays.binarySearch(termPostings.documents(), document);
+                if (position >= 0) {
+                    scores.addAt(slot, termScore(idf, termPostings.frequencies()[position], document));
+                }
+            }
+        }
+
+        // Keeps the slots of the best documents seen so far, worst on top
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, (a, b) -> Float.compare(scores.score(a), scores.score(b)));
+        for (int i = 0; i < scores.size() && limit > 0; i++) {
+            int slot = scores.slot(i);
+            if (best.size() < limit) {
+                best.add(slot);
+            } else if (scores.score(slot) > scores.score(best.peek())) {
+                best.poll();
+                best.add(slot);
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int slot = best.poll();
+            int document = scores.document(slot);
+            hits.add(new Hit(ids[document], paths[document], scores.score(slot)));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    private float idf(Postings termPostings) {
+        int documentFrequency = termPostings.documents().length;
+        return (float) Math.log(1 + (ids.length - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private float termScore(float idf, int frequency, int document) {
+        return idf * frequency * (K1 + 1) / (frequency + lengthNorms[document]);
+    }
+
+    public static final class Builder {
+
+        private final Map<String, PostingsBuilder> postings = new HashMap<>();
+        private final List<Points.PointId> ids = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+        // A file is split into many chunks; they share one copy of its path
+        private final Map<String, String> distinctPaths = new HashMap<>();
+        private int[] lengths = new int[1024];
+
+        private Builder() {
+        }
+
+        /**
+         * @param path Indexed along with the content, so file and class names are found as well; may be empty
+         * @param content Only its terms are kept
+         */
+        public Builder add(Points.PointId id, String path, String content) {
+            int document = ids.size();
+            ids.add(id);
+            paths.add(distinctPaths.computeIfAbsent(path, p -> p));
+
+            Map<String, int[]> frequencies = new HashMap<>();
+            CodeTerms.forEach(path, term -> frequencies.computeIfAbsent(term, t -> new int[1])[0]++);
+            CodeTerms.forEach(content, term -> frequencies.computeIfAbsent(term, t -> new int[1])[0]++);
+
+            int length = 0;
+            for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new PostingsBuilder()).add(document, entry.getValue()[0]);
+                length += entry.getValue()[0];
+            }
+            if (document == lengths.length) {
+                lengths = Arrays.copyOf(lengths, lengths.length * 2);
+            }
+            lengths[document] = length;
+            return this;
+        }
+
+        public LexicalIndex build() {
+            int documents = ids.size();
+            long totalLength = 0;
+            for (int i = 0; i < documents; i++) {
+                totalLength += lengths[i];
+            }
+            float averageLength = documents == 0 ? 1 : Math.max(1, (float) totalLength / documents);
+            float[] lengthNorms = new float[documents];
+            for (int i = 0; i < documents; i++) {
+                lengthNorms[i] = K1 * (1 - B + B * lengths[i] / averageLength);
+            }
+
+            Map<String, Postings> built = new HashMap<>(postings.size() * 4 / 3 + 1);
+            postings.forEach((term, builder) -> built.put(term, builder.build()));
+            return new LexicalIndex(built, ids.toArray(new Points.PointId[0]), paths.toArray(new String[0]), lengthNorms);
+        }
+    }
+
+    /**
+     * Scores of the documents a query matches, in an open addressing table sized to the postings walked rather than
+     * to the whole index. Matches are listed in the order they were first scored, which follows the ascending order of
+     * the postings, so later lookups into other postings stay close together.
+     */
+    private static final class Scores {
+
+        private final int[] documents;
+        private final float[] scores;
+        private final int mask;
+        // Slots in the order their documents were added
+        private final int[] order;
+        private int size;
+
+        // At most half full, so probe sequences stay short
+        Scores(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(8, expected * 2) - 1) << 1;
+            documents = new int[capacity];
+            Arrays.fill(documents, -1);
+            scores = new float[capacity];
+            mask = capacity - 1;
+            order = new int[expected];
+        }
+
+        int size() {
+            return size;
+        }
+
+        // The slot of the i-th document added
+        int slot(int i) {
+            return order[i];
+        }
+
+        int document(int slot) {
+            return documents[slot];
+        }
+
+        float score(int slot) {
+            return scores[slot];
+        }
+
+        void add(int document, float score) {
+            // Once the table is as large as the index this is a plain array
+            int slot = document & mask;
+            while (documents[slot] != document) {
+                if (documents[slot] < 0) {
+                    documents[slot] = document;
+                    order[size++] = slot;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            scores[slot] += score;
+        }
+
+        void addAt(int slot, float score) {
+            scores[slot] += score;
+        }
+    }
+
+    private static final class PostingsBuilder {
+
+        private int[] documents = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        void add(int document, int frequency) {
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            documents[size] = document;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        Postings build() {
+            return new Postings(Arrays.copyOf(documents, size), Arrays.copyOf(frequencies, size));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package no.janco.ragarchitect.ragarchitect.lexical;
+
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionCatalog;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionsChangedEvent;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import no.janco.ragarchitect.ragarchitect.vector.VectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static io.qdrant.client.WithPayloadSelectorFactory.include;
+
+/**
+ * Keeps a {@link LexicalIndex} in memory for each collection used as chat context, built from the same
+ * {@code content} and {@code item_path} payloads as the vectors. Indexes are built in the background, on startup and
+ * again whenever a {@link CollectionsChangedEvent} reports the collection as changed; until then searches are answered
+ * from the previous index, or not at all. The catalog only reports a change in point count, so a reindex that ends
+ * with as many points as before goes unnoticed; every index is therefore also rebuilt once it reaches
+ * {@code search.lexical.max.age.ms}.
+ */
+@Component
+public class LexicalIndexService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LexicalIndexService.class);
+
+    private static final int SCROLL_PAGE_SIZE = 1000;
+
+    private final VectorStore vectorStore;
+
+    private final CollectionCatalog collectionCatalog;
+
+    @Value("${search.lexical.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search.lexical.collections:code,confluence}")
+    private List<String> collectionNames;
+
+    // Zero or less rebuilds only on reported changes
+    @Value("${search.lexical.max.age.ms:1800000}")
+    private long maxAgeMs;
+
+    private final Map<String, LexicalIndex> indexes = new ConcurrentHashMap<>();
+    // System.nanoTime() when each collection's index was last built
+    private final Map<String, Long> builtAt = new ConcurrentHashMap<>();
+
+    // Collections whose index is missing or out of date; all of them until the first build
+    private final Set<String> stale = ConcurrentHashMap.newKeySet();
+    private volatile boolean initialized;
+
+    public LexicalIndexService(VectorStore vectorStore, CollectionCatalog collectionCatalog) {
+        this.vectorStore = vectorStore;
+        this.collectionCatalog = collectionCatalog;
+    }
+
+    /**
+     * @return The best lexical matches in the collection, or nothing if it has no index (yet)
+     */
+    public List<LexicalIndex.Hit> search(String collectionName, String query, int limit) {
+        LexicalIndex index = indexes.get(collectionName);
+        if (index == null) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        List<LexicalIndex.Hit> hits = index.search(query, limit);
+        LOG.debug("Lexical search in {} found {} hits in {} µs", collectionName, hits.size(), (System.nanoTime() - start) / 1000);
+        return hits;
+    }
+
+    @EventListener
+    public void onCollectionsChanged(CollectionsChangedEvent event) {
+        event.collectionNames().stream().filter(collectionNames::contains).forEach(stale::add);
+    }
+
+    @Scheduled(fixedDelayString = "${search.lexical.refresh.ms:10000}")
+    public void scheduledRefresh() {
+        if (!enabled) {
+            return;
+        }
+        if (!initialized) {
+            stale.addAll(collectionNames);
+            initialized = true;
+        }
+        if (maxAgeMs > 0) {
+            long now = System.nanoTime();
+            builtAt.forEach((collectionName, built) -> {
+                if (now - built >= maxAgeMs * 1_000_000) {
+                    stale.add(collectionName);
+                }
+            });
+        }
+        for (String collectionName : List.copyOf(stale)) {
+            // Cleared first, so a change reported while building leads to another build
+            stale.remove(collectionName);
+            try {
+                rebuild(collectionName);
+            } catch (ExecutionException e) {
+                LOG.warn("Could not build lexical index for {}, keeping the previous one", collectionName, e);
+                stale.add(collectionName);
+            } catch (InterruptedException e) {
+                stale.add(collectionName);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void rebuild(String collectionName) throws ExecutionException, InterruptedException {
+        if (!collectionCatalog.contains(collectionName)) {
+            builtAt.remove(collectionName);
+            if (indexes.remove(collectionName) != null) {
+                LOG.info("Collection {} is gone, dropped its lexical index", collectionName);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        LexicalIndex.Builder builder = LexicalIndex.builder();
+        Points.PointId offset = null;
+        do {
+            Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setLimit(SCROLL_PAGE_SIZE)
+                    .setWithPayload(include(List.of("item_path", "content")));
+            if (offset != null) {
+                request.setOffset(offset);
+            }
+            Points.ScrollResponse response = vectorStore.scroll(request.build()).get();
+            for (Points.RetrievedPoint point : response.getResultList()) {
+                Map<String, JsonWithInt.Value> payload = point.getPayloadMap();
+                builder.add(point.getId(), IndexContent.stringValue(payload, "item_path"), IndexContent.stringValue(payload, "content"));
+            }
+            offset = response.hasNextPageOffset() ? response.getNextPageOffset() : null;
+        } while (offset != null);
+
+        LexicalIndex index = builder.build();
+        indexes.put(collectionName, index);
+        builtAt.put(collectionName, start);
+        LOG.info("Built lexical index for {} with {} points in {} ms", collectionName, index.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,120 @@
+package no.janco.ragarchitect.ragarchitect.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where the time of a chat request goes, stage by stage, so a slow answer can be traced to the embedding, a collection,
+ * prompt assembly or the model. Every stage is timed under {@code rag.stage.duration}, tagged by {@code stage} and by
+ * the provider or collection involved; its percentiles and histogram buckets are set under
+ * {@code management.metrics.distribution}.
+ * <p>
+ * Alongside: requests in flight ({@code rag.requests.active}, by operation), chunks retrieved per collection
+ * ({@code rag.retrieved.chunks}), and the size of prompts ({@code rag.prompt.chars}, {@code rag.prompt.tokens}) and
+ * responses ({@code rag.response.tokens}), counted with the application's tokenizer.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String STAGE_DURATION = "rag.stage.duration";
+
+    public enum Stage {
+        EMBED, SEARCH, FETCH, ASSEMBLE, TRUNCATE, INFERENCE;
+
+        String tagValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Tokenizer tokenizer;
+
+    private final Map<String, AtomicInteger> activeRequests = new ConcurrentHashMap<>();
+
+    private final DistributionSummary promptChars;
+    private final DistributionSummary promptTokens;
+
+    public PipelineMetrics(MeterRegistry meterRegistry, Tokenizer tokenizer) {
+        this.meterRegistry = meterRegistry;
+        this.tokenizer = tokenizer;
+        promptChars = DistributionSummary.builder("rag.prompt.chars")
+                .description("Characters in each prompt sent to the model")
+                .baseUnit("characters")
+                .register(meterRegistry);
+        promptTokens = DistributionSummary.builder("rag.prompt.tokens")
+                .description("Tokens in each prompt sent to the model")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param tags Key and value pairs, naming the provider or collection the stage ran against
+     */
+    public Timer timer(Stage stage, String... tags) {
+        return Timer.builder(STAGE_DURATION)
+                .description("Time spent in each stage of a chat request")
+                .tag("stage", stage.tagValue())
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    public void requestStarted(String operation) {
+        active(operation).incrementAndGet();
+    }
+
+    public void requestFinished(String operation) {
+        active(operation).decrementAndGet();
+    }
+
+    public void retrievedChunks(String collectionName, int chunks) {
+        DistributionSummary.builder("rag.retrieved.chunks")
+                .description("Chunks each request kept from a collection")
+                .tag("collection", collectionName)
+                .register(meterRegistry)
+                .record(chunks);
+    }
+
+    /**
+     * @return The number of tokens in the prompt
+     */
+    public int prompt(String prompt) {
+        int tokens = tokenizer.countTokens(prompt);
+        promptChars.record(prompt.length());
+        promptTokens.record(tokens);
+        return tokens;
+    }
+
+    /**
+     * @return The number of tokens in the response
+     */
+    public int response(String provider, String response) {
+        int tokens = tokenizer.countTokens(response);
+        DistributionSummary.builder("rag.response.tokens")
+                .description("Tokens in each response from the model")
+                .baseUnit("tokens")
+                .tag("provider", provider)
+                .register(meterRegistry)
+                .record(tokens);
+        return tokens;
+    }
+
+    private AtomicInteger active(String operation) {
+        return activeRequests.computeIfAbsent(operation, name -> {
+            AtomicInteger count = new AtomicInteger();
+            Gauge.builder("rag.requests.active", count, AtomicInteger::get)
+                    .description("Requests being answered, from retrieval until the response is complete")
+                    .tag("operation", name)
+                    .register(meterRegistry);
+            return count;
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package no.janco.ragarchitect.ragarchitect.prompt;
+
+/**
+ * The instructions and question a chat prompt starts with, before {@link ContextPacker} appends the context. Shared by
+ * the orchestrator and the prompt assembly benchmark, so the benchmark measures the prompt that is actually sent.
+ */
+public final class ChatPrompt {
+
+    private ChatPrompt() {
+    }
+
+    public static String header(String question) {
+        return "You are a helpful expert programmer. Use the following context to answer the question. \n"
+                + "Do not mention the nature of these snippets or how the information was obtained. \n"
+                + "My question is: " + question + "\n"
+                + "This is the relevant context and snippets: \n";
+    }
+}
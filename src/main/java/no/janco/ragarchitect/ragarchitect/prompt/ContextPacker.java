@@ -0,0 +1,93 @@
+package no.janco.ragarchitect.ragarchitect.prompt;
+
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fills the model's context window with retrieved snippets, most relevant first, leaving room for the question and the
+ * answer. A snippet that does not fit whole is cut at a line break, or left out if too little of it would remain; the
+ * remaining budget then goes to the next snippets, which may be shorter.
+ */
+@Component
+public class ContextPacker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContextPacker.class);
+
+    private final Tokenizer tokenizer;
+    private final int maxTokens;
+    private final int reservedAnswerTokens;
+    private final int minSnippetTokens;
+
+    public ContextPacker(Tokenizer tokenizer,
+                         @Value("${prompt.max.tokens:8192}") int maxTokens,
+                         @Value("${prompt.reserved.answer.tokens:1024}") int reservedAnswerTokens,
+                         @Value("${prompt.min.snippet.tokens:64}") int minSnippetTokens) {
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+        this.reservedAnswerTokens = reservedAnswerTokens;
+        this.minSnippetTokens = minSnippetTokens;
+    }
+
+    /**
+     * @param prompt The instructions and question the context is appended to
+     * @param snippets Candidate context, in any order; packed by {@link ContextSnippet#score()} across collections,
+     *                 which without reranking means by rank within each collection
+     * @return The prompt followed by as much of the context as fits the budget
+     */
+    public String pack(String prompt, List<ContextSnippet> snippets) {
+        int budget = maxTokens - reservedAnswerTokens - tokenizer.countTokens(prompt);
+
+        List<ContextSnippet> byScore = new ArrayList<>(snippets);
+        byScore.sort(Comparator.comparingDouble(ContextSnippet::score).reversed());
+
+        StringBuilder packed = new StringBuilder(prompt);
+        int used = 0;
+        int included = 0;
+        int trimmed = 0;
+        for (ContextSnippet snippet : byScore) {
+            String header = "\n" + snippet.label() + ": ";
+            int headerTokens = tokenizer.countTokens(header);
+            int available = budget - used - headerTokens;
+            if (available <= 0) {
+                continue;
+            }
+
+            String content = snippet.content();
+            int contentTokens = tokenizer.countTokens(content);
+            if (contentTokens > available) {
+                if (available < minSnippetTokens) {
+                    continue;
+                }
+                content = trimToLine(content, available);
+                contentTokens = tokenizer.countTokens(content);
+                if (contentTokens < minSnippetTokens) {
+                    continue;
+                }
+                trimmed++;
+            }
+
+            packed.append(header).append(content);
+            used += headerTokens + contentTokens;
+            included++;
+        }
+
+        LOG.debug("Packed {} of {} snippets ({} trimmed) into {} of {} context tokens",
+                included, snippets.size(), trimmed, used, Math.max(0, budget));
+        return packed.toString();
+    }
+
+    private String trimToLine(String content, int maxTokens) {
+        String prefix = tokenizer.truncate(content, maxTokens);
+        int lineEnd = prefix.lastIndexOf('\n');
+        // A single very long line is kept as cut by the tokenizer rather than dropped altogether
+        return lineEnd > 0 ? prefix.substring(0, lineEnd) : prefix;
+    }
+}
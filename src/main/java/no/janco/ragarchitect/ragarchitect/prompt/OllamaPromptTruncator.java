@@ -1,7 +1,9 @@
 package no.janco.ragarchitect.ragarchitect.prompt;
 
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
@@ -9,8 +11,14 @@ import org.springframework.stereotype.Service;
 @Profile("ollama")
 public class OllamaPromptTruncator implements PromptTruncator {
     private static final Logger logger = LoggerFactory.getLogger(OllamaPromptTruncator.class);
-    private static final int MAX_TOKENS = 8092; // adjust based on your model's context window (TODO - Use context window description from ollama)
-    private static final double TOKENS_PER_CHAR_ESTIMATE = 0.35; // rough average (TODO - Use accurate estimation from ollama)
+
+    private final Tokenizer tokenizer;
+    private final int maxTokens; // adjust based on your model's context window (TODO - Use context window description from ollama)
+
+    public OllamaPromptTruncator(Tokenizer tokenizer, @Value("${prompt.max.tokens:8192}") int maxTokens) {
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+    }
 
     @Override
     public String truncate(String prompt) {
@@ -18,16 +26,15 @@ public class OllamaPromptTruncator implements PromptTruncator {
             return prompt;
         }
 
-        int estimatedTokens = (int) (prompt.length() * TOKENS_PER_CHAR_ESTIMATE);
-        if (estimatedTokens <= MAX_TOKENS) {
-            logger.debug("Prompt within token limits ({} tokens), no truncation needed", estimatedTokens);
+        int tokens = tokenizer.countTokens(prompt);
+        if (tokens <= maxTokens) {
+            logger.debug("Prompt within token limits ({} tokens), no truncation needed", tokens);
             return prompt;
         }
 
-        int maxLength = (int) (MAX_TOKENS / TOKENS_PER_CHAR_ESTIMATE);
-        String truncatedPrompt = prompt.substring(0, Math.min(maxLength, prompt.length()));
-        logger.info("Prompt truncated from {} to {} characters (estimated tokens: {} -> {})", 
-            prompt.length(), truncatedPrompt.length(), estimatedTokens, MAX_TOKENS);
+        String truncatedPrompt = tokenizer.truncate(prompt, maxTokens);
+        logger.info("Prompt truncated from {} to {} characters (tokens: {} -> {}, counted with {})",
+            prompt.length(), truncatedPrompt.length(), tokens, maxTokens, tokenizer.getName());
         return truncatedPrompt;
     }
-} 
\ No newline at end of file
+}
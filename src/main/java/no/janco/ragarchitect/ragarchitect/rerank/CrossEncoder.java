@@ -0,0 +1,17 @@
+package no.janco.ragarchitect.ragarchitect.rerank;
+
+import java.util.List;
+
+/**
+ * Scores how well passages answer a query by reading each together with the query, rather than comparing separately
+ * computed embeddings. Slower than vector similarity, so it is only run on a few candidates, but more precise.
+ */
+public interface CrossEncoder {
+
+    /**
+     * @return A relevance score per passage, in the same order; higher is more relevant
+     */
+    float[] score(String query, List<String> passages);
+
+    String getDetails();
+}
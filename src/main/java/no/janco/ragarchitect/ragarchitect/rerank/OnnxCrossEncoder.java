@@ -0,0 +1,120 @@
+package no.janco.ragarchitect.ragarchitect.rerank;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import jakarta.annotation.PreDestroy;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerLoader;
+import no.janco.ragarchitect.ragarchitect.tokenizer.WordPieceTokenizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A BERT cross-encoder, such as ms-marco-MiniLM-L-6-v2, run in-process on CPU with ONNX Runtime. Expects the model
+ * directory as downloaded from Hugging Face: {@code vocab.txt} and {@code onnx/model.onnx} (or {@code model.onnx}).
+ * Each passage is read as the second segment after the query, and its score is the model's single relevance logit.
+ * <p>
+ * Runs on the caller's thread; {@link RerankService} decides how many run at once.
+ */
+@Service
+@Profile("onnx-reranker")
+public class OnnxCrossEncoder implements CrossEncoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OnnxCrossEncoder.class);
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final WordPieceTokenizer tokenizer;
+    private final Path modelPath;
+    private final int maxTokens;
+
+    /**
+     * @param maxTokens Sequence length of query and passage together; passages are cut to fit
+     */
+    public OnnxCrossEncoder(@Value("${rerank.model.path:/app/models/ms-marco-MiniLM-L-6-v2}") String modelPath,
+                            @Value("${rerank.onnx.intra.op.threads:1}") int intraOpThreads,
+                            @Value("${rerank.onnx.max.tokens:256}") int maxTokens) throws IOException, OrtException {
+        this.modelPath = Path.of(modelPath);
+        this.maxTokens = maxTokens;
+        this.tokenizer = TokenizerLoader.loadWordPiece(this.modelPath.resolve("vocab.txt"), true);
+
+        Path modelFile = Files.exists(this.modelPath.resolve("onnx/model.onnx"))
+                ? this.modelPath.resolve("onnx/model.onnx")
+                : this.modelPath.resolve("model.onnx");
+        this.environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setIntraOpNumThreads(intraOpThreads);
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            this.session = environment.createSession(modelFile.toString(), options);
+        }
+        LOG.info("Loaded cross-encoder {} with inputs {}", modelFile, session.getInputNames());
+    }
+
+    @Override
+    public float[] score(String query, List<String> passages) {
+        int[][][] pairs = new int[passages.size()][][];
+        int sequenceLength = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = tokenizer.encodePair(query, passages.get(i), maxTokens);
+            sequenceLength = Math.max(sequenceLength, pairs[i][0].length);
+        }
+
+        // Padded on the right to the longest pair in the batch
+        long[] inputIds = new long[pairs.length * sequenceLength];
+        long[] attentionMask = new long[inputIds.length];
+        long[] tokenTypeIds = new long[inputIds.length];
+        Arrays.fill(inputIds, tokenizer.padId());
+        for (int i = 0; i < pairs.length; i++) {
+            for (int j = 0; j < pairs[i][0].length; j++) {
+                inputIds[i * sequenceLength + j] = pairs[i][0][j];
+                attentionMask[i * sequenceLength + j] = 1;
+                tokenTypeIds[i * sequenceLength + j] = pairs[i][1][j];
+            }
+        }
+        long[] shape = {pairs.length, sequenceLength};
+
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(inputIds), shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, LongBuffer.wrap(attentionMask), shape));
+            if (session.getInputNames().contains("token_type_ids")) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(tokenTypeIds), shape));
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                float[][] logits = (float[][]) result.get(0).getValue();
+                float[] scores = new float[logits.length];
+                for (int i = 0; i < logits.length; i++) {
+                    scores[i] = logits[i][0];
+                }
+                return scores;
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("Failed to score passages with " + modelPath, e);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    @Override
+    public String getDetails() {
+        return "ONNX Runtime cross-encoder (" + modelPath + ")";
+    }
+
+    @PreDestroy
+    public void close() throws OrtException {
+        session.close();
+    }
+}
@@ -0,0 +1,148 @@
+package no.janco.ragarchitect.ragarchitect.rerank;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reorders retrieved snippets by a {@link CrossEncoder}'s judgement of how well each answers the question, and keeps
+ * only the best {@code rerank.top.n}, so the prompt carries fewer and better chunks. Active with a cross-encoder
+ * (the {@code onnx-reranker} profile); without one, snippets pass through unchanged.
+ * <p>
+ * Candidates are scored in batches on a small fixed pool with a bounded queue, so reranking never takes more CPU
+ * than it was given. It must also finish within {@code rerank.budget.ms}: when it does not, or the queue is full,
+ * the request goes on with the snippets as retrieved rather than wait. Outcomes are counted under
+ * {@code rerank.requests}, by result.
+ */
+@Service
+public class RerankService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RerankService.class);
+
+    private final CrossEncoder crossEncoder;
+    private final int topN;
+    private final long budgetNanos;
+    private final int batchSize;
+    private final ThreadPoolExecutor workers;
+
+    private final Counter reranked;
+    private final Counter overBudget;
+    private final Counter saturated;
+    private final Counter failed;
+    private final Timer duration;
+
+    /**
+     * @param topN Snippets kept after reranking
+     * @param queueSize Batches waiting for a worker, across all requests, before further requests skip reranking
+     */
+    public RerankService(Optional<CrossEncoder> crossEncoder,
+                         @Value("${rerank.top.n:8}") int topN,
+                         @Value("${rerank.budget.ms:500}") long budgetMs,
+                         @Value("${rerank.batch.size:8}") int batchSize,
+                         @Value("${rerank.workers:2}") int workerThreads,
+                         @Value("${rerank.queue.size:16}") int queueSize,
+                         MeterRegistry meterRegistry) {
+        this.crossEncoder = crossEncoder.orElse(null);
+        this.topN = topN;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        this.batchSize = batchSize;
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), Thread.ofPlatform().name("rerank-", 0).daemon().factory());
+
+        reranked = Counter.builder("rerank.requests").tag("result", "reranked").register(meterRegistry);
+        overBudget = Counter.builder("rerank.requests").tag("result", "over_budget").register(meterRegistry);
+        saturated = Counter.builder("rerank.requests").tag("result", "saturated").register(meterRegistry);
+        failed = Counter.builder("rerank.requests").tag("result", "failed").register(meterRegistry);
+        duration = Timer.builder("rerank.duration")
+                .description("Time to score the candidates of a request, when it finished within the budget")
+                .register(meterRegistry);
+        if (this.crossEncoder != null) {
+            LOG.info("Reranking with {}, keeping the best {} within {} ms", this.crossEncoder.getDetails(), topN, budgetMs);
+        }
+    }
+
+    /**
+     * @param candidates Retrieved snippets, in any order
+     * @return The best snippets by the cross-encoder, best first, scored by the probability it gives them of being
+     *         relevant; or the candidates as given if there is no cross-encoder or it could not finish in time
+     */
+    public List<ContextSnippet> rerank(String question, List<ContextSnippet> candidates) {
+        if (crossEncoder == null || candidates.size() <= 1) {
+            return candidates;
+        }
+
+        long start = System.nanoTime();
+        List<Future<float[]>> batches = new ArrayList<>();
+        try {
+            for (int from = 0; from < candidates.size(); from += batchSize) {
+                List<String> passages = candidates.subList(from, Math.min(candidates.size(), from + batchSize)).stream()
+                        .map(ContextSnippet::content)
+                        .toList();
+                batches.add(workers.submit(() -> crossEncoder.score(question, passages)));
+            }
+
+            List<ContextSnippet> scored = new ArrayList<>(candidates.size());
+            for (int i = 0; i < batches.size(); i++) {
+                float[] scores = batches.get(i).get(budgetNanos - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+                for (int j = 0; j < scores.length; j++) {
+                    ContextSnippet candidate = candidates.get(i * batchSize + j);
+                    scored.add(new ContextSnippet(candidate.label(), candidate.content(), sigmoid(scores[j])));
+                }
+            }
+
+            scored.sort(Comparator.comparingDouble(ContextSnippet::score).reversed());
+            long elapsed = System.nanoTime() - start;
+            duration.record(elapsed, TimeUnit.NANOSECONDS);
+            reranked.increment();
+            LOG.debug("Reranked {} snippets in {} ms", candidates.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+            return List.copyOf(scored.subList(0, Math.min(topN, scored.size())));
+        } catch (RejectedExecutionException e) {
+            saturated.increment();
+            LOG.info("Reranking queue is full, using {} snippets as retrieved", candidates.size());
+        } catch (TimeoutException e) {
+            overBudget.increment();
+            LOG.info("Reranking {} snippets exceeded {} ms, using them as retrieved", candidates.size(),
+                    TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+        } catch (ExecutionException e) {
+            failed.increment();
+            LOG.warn("Reranking failed, using {} snippets as retrieved", candidates.size(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Takes batches nobody waits for any more out of the queue; one already running finishes on its own
+            for (Future<float[]> batch : batches) {
+                if (batch.cancel(false)) {
+                    workers.remove((Runnable) batch);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    @PreDestroy
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private static float sigmoid(float logit) {
+        return (float) (1 / (1 + Math.exp(-logit)));
+    }
+}
@@ -0,0 +1,256 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ * Byte pair encoding tokenizer, producing the same tokens as the model's own tokenizer for a given vocabulary.
+ * <p>
+ * Text is first split into pieces by the profile's pre-tokenizer. Each piece starts out as single bytes (or, for
+ * SentencePiece, single characters), and the adjacent pair whose merged bytes have the lowest merge rank is merged
+ * repeatedly until no mergeable pair is left. Results are cached per piece, so identifiers and keywords that recur
+ * throughout code are only merged once.
+ * <p>
+ * Thread-safe once constructed.
+ */
+public final class BpeTokenizer implements Tokenizer {
+
+    private static final int NO_RANK = Integer.MAX_VALUE;
+    private static final char SENTENCEPIECE_SPACE = '▁';
+
+    private final String name;
+    private final TokenizerProfile profile;
+    private final ByteRangeTable mergeRanks;
+    private final ByteRangeTable tokenIds;
+    private final int[] byteFallbackIds;
+
+    private final Map<String, int[]> pieceCache = new ConcurrentHashMap<>();
+    private final int pieceCacheCapacity;
+
+    /**
+     * @param mergeRanks Merge priority of each multi-byte token, lowest first; for tiktoken style vocabularies this is
+     *                   the same table as {@code tokenIds}
+     * @param tokenIds Id of every token, by its bytes
+     * @param byteFallbackIds Ids of the 256 single-byte tokens used for bytes no other token covers, or null if every
+     *                        byte is a token in {@code tokenIds}
+     * @param pieceCacheCapacity Number of distinct pieces to keep merge results for; 0 disables the cache
+     */
+    BpeTokenizer(String name, TokenizerProfile profile, ByteRangeTable mergeRanks, ByteRangeTable tokenIds,
+                 int[] byteFallbackIds, int pieceCacheCapacity) {
+        this.name = name;
+        this.profile = profile;
+        this.mergeRanks = mergeRanks;
+        this.tokenIds = tokenIds;
+        this.byteFallbackIds = byteFallbackIds;
+        this.pieceCacheCapacity = pieceCacheCapacity;
+    }
+
+    public int[] encode(String text) {
+        int[] tokens = new int[Math.max(16, text.length() / 3)];
+        int count = 0;
+        PieceIterator pieces = new PieceIterator(text);
+        while (pieces.next()) {
+            int[] pieceTokens = tokens(pieces.piece());
+            if (count + pieceTokens.length > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(tokens.length * 2, count + pieceTokens.length));
+            }
+            System.arraycopy(pieceTokens, 0, tokens, count, pieceTokens.length);
+            count += pieceTokens.length;
+        }
+        return Arrays.copyOf(tokens, count);
+    }
+
+    @Override
+    public int countTokens(String text) {
+        int count = 0;
+        PieceIterator pieces = new PieceIterator(text);
+        while (pieces.next()) {
+            count += tokens(pieces.piece()).length;
+        }
+        return count;
+    }
+
+    /**
+     * Cuts at a piece boundary, so a word is never split into a fragment the model would tokenize differently.
+     */
+    @Override
+    public String truncate(String text, int maxTokens) {
+        int count = 0;
+        PieceIterator pieces = new PieceIterator(text);
+        while (pieces.next()) {
+            count += tokens(pieces.piece()).length;
+            if (count > maxTokens) {
+                return text.substring(0, pieces.startInText());
+            }
+        }
+        return text;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    int vocabularySize() {
+        return tokenIds.size();
+    }
+
+    private int[] tokens(String piece) {
+        int[] cached = pieceCache.get(piece);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] bytes = piece.getBytes(StandardCharsets.UTF_8);
+        int wholePiece = tokenIds.get(bytes);
+        int[] tokens = wholePiece != ByteRangeTable.ABSENT ? new int[] {wholePiece} : merge(bytes);
+
+        // Not evicting; once full, only the pieces seen so far are cached, which in practice are the frequent ones
+        if (pieceCache.size() < pieceCacheCapacity) {
+            pieceCache.put(piece, tokens);
+        }
+        return tokens;
+    }
+
+    private int[] merge(byte[] bytes) {
+        // boundaries[0..count) are the start offsets of the current symbols, followed by the end of the piece
+        int[] boundaries = initialBoundaries(bytes);
+        int count = boundaries.length;
+
+        // ranks[i] is the merge rank of symbols i and i + 1
+        int[] ranks = new int[Math.max(0, count - 2)];
+        for (int i = 0; i < count - 2; i++) {
+            ranks[i] = rank(bytes, boundaries[i], boundaries[i + 2]);
+        }
+
+        while (count > 2) {
+            int best = 0;
+            for (int i = 1; i < count - 2; i++) {
+                if (ranks[i] < ranks[best]) {
+                    best = i;
+                }
+            }
+            if (ranks[best] == NO_RANK) {
+                break;
+            }
+
+            // Merge symbols best and best + 1 by dropping the boundary between them
+            System.arraycopy(boundaries, best + 2, boundaries, best + 1, count - best - 2);
+            if (best + 2 < count - 2) {
+                System.arraycopy(ranks, best + 2, ranks, best + 1, count - best - 4);
+            }
+            count--;
+            if (best < count - 2) {
+                ranks[best] = rank(bytes, boundaries[best], boundaries[best + 2]);
+            }
+            if (best > 0) {
+                ranks[best - 1] = rank(bytes, boundaries[best - 1], boundaries[best + 1]);
+            }
+        }
+
+        int[] tokens = new int[count - 1];
+        int tokenCount = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int id = tokenIds.get(bytes, boundaries[i], boundaries[i + 1] - boundaries[i]);
+            if (id != ByteRangeTable.ABSENT) {
+                tokens[tokenCount++] = id;
+                continue;
+            }
+            // A character outside the SentencePiece vocabulary is spelled out as one token per UTF-8 byte
+            int length = boundaries[i + 1] - boundaries[i];
+            tokens = Arrays.copyOf(tokens, tokens.length + length - 1);
+            for (int b = boundaries[i]; b < boundaries[i + 1]; b++) {
+                tokens[tokenCount++] = byteFallbackIds != null ? byteFallbackIds[bytes[b] & 0xff] : ByteRangeTable.ABSENT;
+            }
+        }
+        return tokens;
+    }
+
+    private int[] initialBoundaries(byte[] bytes) {
+        if (!profile.isSentencePiece()) {
+            int[] boundaries = new int[bytes.length + 1];
+            for (int i = 0; i <= bytes.length; i++) {
+                boundaries[i] = i;
+            }
+            return boundaries;
+        }
+
+        // SentencePiece merges characters, so start from UTF-8 character boundaries rather than single bytes
+        int[] boundaries = new int[bytes.length + 1];
+        int count = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if ((bytes[i] & 0xc0) != 0x80) {
+                boundaries[count++] = i;
+            }
+        }
+        boundaries[count++] = bytes.length;
+        return Arrays.copyOf(boundaries, count);
+    }
+
+    private int rank(byte[] bytes, int start, int end) {
+        int rank = mergeRanks.get(bytes, start, end - start);
+        return rank == ByteRangeTable.ABSENT ? NO_RANK : rank;
+    }
+
+    /**
+     * Walks the pieces of a text. For SentencePiece, spaces are replaced by the word marker and a piece starts at
+     * every marker; both keep the offsets in the transformed text one to one with the original, apart from the
+     * marker prepended to the whole text.
+     */
+    private final class PieceIterator {
+
+        private final String text;
+        private final Matcher matcher;
+        private final String sentencePieceText;
+        private int start;
+        private int end;
+
+        PieceIterator(String text) {
+            this.text = text;
+            if (profile.isSentencePiece()) {
+                this.matcher = null;
+                this.sentencePieceText = text.isEmpty() ? "" : SENTENCEPIECE_SPACE + text.replace(' ', SENTENCEPIECE_SPACE);
+            } else {
+                this.matcher = profile.getPreTokenizer().matcher(text);
+                this.sentencePieceText = null;
+            }
+        }
+
+        boolean next() {
+            if (matcher == null) {
+                start = end;
+                if (start >= sentencePieceText.length()) {
+                    return false;
+                }
+                int next = sentencePieceText.indexOf(SENTENCEPIECE_SPACE, start + 1);
+                end = next < 0 ? sentencePieceText.length() : next;
+                return true;
+            }
+
+            int previousEnd = end;
+            if (previousEnd < text.length() && matcher.find(previousEnd)) {
+                // The patterns cover every character, but never silently drop text if one does not
+                start = matcher.start() > previousEnd ? previousEnd : matcher.start();
+                end = matcher.start() > previousEnd ? matcher.start() : matcher.end();
+                return true;
+            }
+            if (previousEnd < text.length()) {
+                start = previousEnd;
+                end = text.length();
+                return true;
+            }
+            return false;
+        }
+
+        String piece() {
+            return matcher == null ? sentencePieceText.substring(start, end) : text.substring(start, end);
+        }
+
+        int startInText() {
+            return matcher == null ? Math.max(0, start - 1) : start;
+        }
+    }
+}
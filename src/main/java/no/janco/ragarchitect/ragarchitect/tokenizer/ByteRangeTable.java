@@ -0,0 +1,83 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from byte sequences to ints, looked up by a range of a larger array so the tokenizer's inner
+ * loop never has to copy out a key.
+ */
+final class ByteRangeTable {
+
+    static final int ABSENT = -1;
+
+    private byte[][] keys;
+    private int[] values;
+    private int size;
+
+    ByteRangeTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new byte[capacity][];
+        values = new int[capacity];
+    }
+
+    int get(byte[] buffer, int offset, int length) {
+        int mask = keys.length - 1;
+        for (int slot = hash(buffer, offset, length) & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = keys[slot];
+            if (key == null) {
+                return ABSENT;
+            }
+            if (key.length == length && Arrays.equals(key, 0, length, buffer, offset, offset + length)) {
+                return values[slot];
+            }
+        }
+    }
+
+    int get(byte[] key) {
+        return get(key, 0, key.length);
+    }
+
+    void putIfAbsent(byte[] key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key, 0, key.length) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == null) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+            if (Arrays.equals(keys[slot], key)) {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new int[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                putIfAbsent(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // FNV-1a, with a final mix so short keys still spread over the high bits used by large tables
+    private static int hash(byte[] buffer, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (buffer[i] & 0xff)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,26 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+/**
+ * Character based estimate, for when no vocabulary is available for the model in use. Errs on neither side
+ * consistently, so budgets based on it need some headroom.
+ */
+public class EstimatingTokenizer implements Tokenizer {
+
+    private static final double TOKENS_PER_CHAR_ESTIMATE = 0.35;
+
+    @Override
+    public int countTokens(String text) {
+        return (int) Math.ceil(text.length() * TOKENS_PER_CHAR_ESTIMATE);
+    }
+
+    @Override
+    public String truncate(String text, int maxTokens) {
+        int maxLength = (int) (maxTokens / TOKENS_PER_CHAR_ESTIMATE);
+        return text.length() <= maxLength ? text : text.substring(0, maxLength);
+    }
+
+    @Override
+    public String getName() {
+        return "estimate (" + TOKENS_PER_CHAR_ESTIMATE + " tokens/char)";
+    }
+}
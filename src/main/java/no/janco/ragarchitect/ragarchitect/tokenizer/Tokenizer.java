@@ -0,0 +1,19 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+public interface Tokenizer {
+    /**
+     * @param text The text to count
+     * @return The number of tokens the model sees for this text, not counting any special tokens it adds
+     */
+    int countTokens(String text);
+
+    /**
+     * Cuts the text down to at most {@code maxTokens} tokens, keeping the start.
+     * @param text The text to truncate
+     * @param maxTokens The token budget
+     * @return The longest prefix within the budget, or the text itself if it already fits
+     */
+    String truncate(String text, int maxTokens);
+
+    String getName();
+}
@@ -0,0 +1,179 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Builds a {@link BpeTokenizer} from the vocabulary files models are distributed with:
+ * <ul>
+ *     <li>a Hugging Face {@code tokenizer.json}, for byte-level and SentencePiece BPE models</li>
+ *     <li>a tiktoken rank file, one base64 encoded token and its rank per line, as shipped with Llama 3</li>
+ * </ul>
+ * and a {@link WordPieceTokenizer} from a BERT {@code vocab.txt}, for the embedding model.
+ */
+public final class TokenizerLoader {
+
+    // Enough for the identifiers, keywords and whitespace runs of a large code base
+    public static final int DEFAULT_PIECE_CACHE_CAPACITY = 100_000;
+
+    private static final int[] BYTE_LEVEL_DECODER = byteLevelDecoder();
+
+    private TokenizerLoader() {
+    }
+
+    public static BpeTokenizer load(Path path, TokenizerProfile profile) throws IOException {
+        return load(path, profile, DEFAULT_PIECE_CACHE_CAPACITY);
+    }
+
+    public static BpeTokenizer load(Path path, TokenizerProfile profile, int pieceCacheCapacity) throws IOException {
+        String name = profile.name().toLowerCase() + " (" + path.getFileName() + ")";
+        try (InputStream in = Files.newInputStream(path)) {
+            return path.getFileName().toString().endsWith(".json")
+                    ? loadHuggingFace(in, profile, name, pieceCacheCapacity)
+                    : loadTiktoken(in, profile, name, pieceCacheCapacity);
+        }
+    }
+
+    /**
+     * In a tiktoken file the rank of a token is both its id and its merge priority, so one table serves as both.
+     */
+    public static BpeTokenizer loadTiktoken(InputStream in, TokenizerProfile profile, String name,
+                                            int pieceCacheCapacity) throws IOException {
+        if (profile.isSentencePiece()) {
+            throw new IllegalArgumentException("tiktoken rank files are byte-level, not SentencePiece");
+        }
+
+        ByteRangeTable ranks = new ByteRangeTable(1 << 16);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            int space = line.indexOf(' ');
+            if (space < 0) {
+                throw new IOException("Malformed tiktoken line " + lineNumber + ": " + line);
+            }
+            ranks.putIfAbsent(Base64.getDecoder().decode(line.substring(0, space)),
+                    Integer.parseInt(line.substring(space + 1).trim()));
+        }
+        return new BpeTokenizer(name, profile, ranks, ranks, null, pieceCacheCapacity);
+    }
+
+    /**
+     * Merge priority is keyed by the bytes a merge produces rather than by the pair, the same as tiktoken. For the
+     * BPE vocabularies models ship with, every token has one merge producing it, so the two are equivalent.
+     */
+    static BpeTokenizer loadHuggingFace(InputStream in, TokenizerProfile profile, String name,
+                                        int pieceCacheCapacity) throws IOException {
+        JsonNode model = new ObjectMapper().readTree(in).path("model");
+        if (!"BPE".equals(model.path("type").asText("BPE"))) {
+            throw new IOException("Unsupported tokenizer model type " + model.path("type").asText());
+        }
+
+        JsonNode vocab = model.path("vocab");
+        ByteRangeTable tokenIds = new ByteRangeTable(vocab.size());
+        int[] byteFallbackIds = profile.isSentencePiece() ? new int[256] : null;
+        if (byteFallbackIds != null) {
+            Arrays.fill(byteFallbackIds, ByteRangeTable.ABSENT);
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = vocab.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            String token = entry.getKey();
+            int id = entry.getValue().asInt();
+            if (byteFallbackIds != null && isByteFallbackToken(token)) {
+                byteFallbackIds[Integer.parseInt(token.substring(3, 5), 16)] = id;
+                continue;
+            }
+            tokenIds.putIfAbsent(tokenBytes(token, profile), id);
+        }
+
+        JsonNode merges = model.path("merges");
+        ByteRangeTable mergeRanks = new ByteRangeTable(merges.size());
+        for (int rank = 0; rank < merges.size(); rank++) {
+            JsonNode merge = merges.get(rank);
+            String left;
+            String right;
+            // Older files store each merge as "left right", newer ones as a two element array
+            if (merge.isArray()) {
+                left = merge.get(0).asText();
+                right = merge.get(1).asText();
+            } else {
+                String pair = merge.asText();
+                int space = pair.indexOf(' ', 1);
+                left = pair.substring(0, space);
+                right = pair.substring(space + 1);
+            }
+            mergeRanks.putIfAbsent(tokenBytes(left + right, profile), rank);
+        }
+        return new BpeTokenizer(name, profile, mergeRanks, tokenIds, byteFallbackIds, pieceCacheCapacity);
+    }
+
+    /**
+     * Reads a BERT {@code vocab.txt}, one token per line, the line number being its id.
+     * @param lowerCase Whether the model is uncased, as all-MiniLM-L6-v2 is
+     */
+    public static WordPieceTokenizer loadWordPiece(Path path, boolean lowerCase) throws IOException {
+        Map<String, Integer> vocabulary = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int id = 0;
+            while ((line = reader.readLine()) != null) {
+                vocabulary.putIfAbsent(line, id++);
+            }
+        }
+        return new WordPieceTokenizer("wordpiece (" + path.getFileName() + ")", vocabulary, lowerCase);
+    }
+
+    private static boolean isByteFallbackToken(String token) {
+        return token.length() == 6 && token.startsWith("<0x") && token.endsWith(">");
+    }
+
+    /**
+     * Byte-level vocabularies spell each byte as a printable character; SentencePiece ones are plain UTF-8 with
+     * {@code ▁} for a space, which the tokenizer matches as is.
+     */
+    private static byte[] tokenBytes(String token, TokenizerProfile profile) {
+        if (profile.isSentencePiece()) {
+            return token.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[token.length()];
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            int b = c < BYTE_LEVEL_DECODER.length ? BYTE_LEVEL_DECODER[c] : -1;
+            if (b < 0) {
+                // Not a byte-level token, e.g. an added special token; it can never match encoded text
+                return token.getBytes(StandardCharsets.UTF_8);
+            }
+            bytes[i] = (byte) b;
+        }
+        return bytes;
+    }
+
+    // Inverse of GPT-2's bytes_to_unicode: printable bytes map to themselves, the rest to code points from 256 up
+    private static int[] byteLevelDecoder() {
+        int[] decoder = new int[512];
+        Arrays.fill(decoder, -1);
+        int next = 256;
+        for (int b = 0; b < 256; b++) {
+            boolean printable = (b >= '!' && b <= '~') || (b >= 0xa1 && b <= 0xac) || (b >= 0xae && b <= 0xff);
+            decoder[printable ? b : next++] = b;
+        }
+        return decoder;
+    }
+}
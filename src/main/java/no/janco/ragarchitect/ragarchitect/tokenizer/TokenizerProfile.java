@@ -0,0 +1,43 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * How a model family splits text before byte pair merging, and how its vocabulary files are laid out.
+ */
+public enum TokenizerProfile {
+
+    /** Llama 3.x, also used by OpenAI's cl100k models. Byte-level BPE. */
+    LLAMA3(Pattern.compile("(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+            Pattern.UNICODE_CHARACTER_CLASS)),
+
+    /** GPT-2 and the many models that reuse its tokenizer. Byte-level BPE. */
+    GPT2(Pattern.compile("'s|'t|'re|'ve|'m|'ll|'d| ?\\p{L}+| ?\\p{N}+| ?[^\\s\\p{L}\\p{N}]+|\\s+(?!\\S)|\\s+",
+            Pattern.UNICODE_CHARACTER_CLASS)),
+
+    /** SentencePiece BPE models such as Llama 2, Mistral and CodeLlama, loaded from their tokenizer.json. */
+    SENTENCEPIECE(null);
+
+    private final Pattern preTokenizer;
+
+    TokenizerProfile(Pattern preTokenizer) {
+        this.preTokenizer = preTokenizer;
+    }
+
+    /**
+     * @return The pattern splitting text into pieces that are merged independently, or null for SentencePiece,
+     * which splits on word starts instead
+     */
+    public Pattern getPreTokenizer() {
+        return preTokenizer;
+    }
+
+    public boolean isSentencePiece() {
+        return this == SENTENCEPIECE;
+    }
+
+    public static TokenizerProfile fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
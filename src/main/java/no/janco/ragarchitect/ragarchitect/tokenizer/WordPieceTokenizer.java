@@ -0,0 +1,201 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * BERT's WordPiece tokenizer, as used by sentence-transformers models such as all-MiniLM-L6-v2, producing the input
+ * ids the model is run on. Text is cleaned, optionally lower cased with accents stripped, and split on whitespace and
+ * punctuation; each word is then split greedily into the longest pieces in the vocabulary, continuation pieces
+ * prefixed with {@code ##}. A word that can't be split that way becomes {@code [UNK]}.
+ */
+public final class WordPieceTokenizer {
+
+    // Longer words are not worth splitting and become [UNK], as in the reference implementation
+    private static final int MAX_WORD_CHARS = 100;
+
+    private final String name;
+    private final Map<String, Integer> vocabulary;
+    private final boolean lowerCase;
+    private final int clsId;
+    private final int sepId;
+    private final int unkId;
+    private final int padId;
+
+    WordPieceTokenizer(String name, Map<String, Integer> vocabulary, boolean lowerCase) {
+        this.name = name;
+        this.vocabulary = vocabulary;
+        this.lowerCase = lowerCase;
+        this.clsId = specialToken("[CLS]");
+        this.sepId = specialToken("[SEP]");
+        this.unkId = specialToken("[UNK]");
+        this.padId = specialToken("[PAD]");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int padId() {
+        return padId;
+    }
+
+    /**
+     * @param maxLength The model's maximum sequence length, including the two special tokens
+     * @return {@code [CLS]}, the text's pieces up to the maximum length, and {@code [SEP]}
+     */
+    public int[] encode(String text, int maxLength) {
+        int[] pieces = pieces(text, maxLength - 2);
+        int[] ids = new int[pieces.length + 2];
+        ids[0] = clsId;
+        System.arraycopy(pieces, 0, ids, 1, pieces.length);
+        ids[ids.length - 1] = sepId;
+        return ids;
+    }
+
+    /**
+     * Encodes two texts as one sequence, the way cross-encoders take a query and a passage.
+     * @param maxLength The model's maximum sequence length, including the three special tokens; tokens are cut from
+     *                  the end of the longer text until both fit, as BERT's "longest first" truncation does
+     * @return {@code [CLS]}, the first text's pieces, {@code [SEP]}, the second text's pieces and {@code [SEP]}, in
+     *         the first row; the segment of each token (0 for the first text, 1 for the second) in the second row
+     */
+    public int[][] encodePair(String first, String second, int maxLength) {
+        int available = maxLength - 3;
+        int[] firstPieces = pieces(first, available);
+        int[] secondPieces = pieces(second, available);
+        int firstLength = firstPieces.length;
+        int secondLength = secondPieces.length;
+        while (firstLength + secondLength > available) {
+            if (firstLength > secondLength) {
+                firstLength--;
+            } else {
+                secondLength--;
+            }
+        }
+
+        int[] ids = new int[firstLength + secondLength + 3];
+        int[] segments = new int[ids.length];
+        ids[0] = clsId;
+        System.arraycopy(firstPieces, 0, ids, 1, firstLength);
+        ids[firstLength + 1] = sepId;
+        System.arraycopy(secondPieces, 0, ids, firstLength + 2, secondLength);
+        ids[ids.length - 1] = sepId;
+        Arrays.fill(segments, firstLength + 2, segments.length, 1);
+        return new int[][]{ids, segments};
+    }
+
+    // The text's pieces, without special tokens; stops splitting once there are enough
+    private int[] pieces(String text, int maxPieces) {
+        int[] ids = new int[Math.max(0, Math.min(maxPieces, text.length()))];
+        int count = 0;
+
+        String cleaned = clean(text);
+        int length = cleaned.length();
+        int i = 0;
+        while (i < length && count < maxPieces) {
+            char c = cleaned.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            if (!isPunctuation(c)) {
+                while (end < length && !Character.isWhitespace(cleaned.charAt(end)) && !isPunctuation(cleaned.charAt(end))) {
+                    end++;
+                }
+            }
+            for (int id : wordPieces(cleaned.substring(i, end))) {
+                if (count == maxPieces) {
+                    break;
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, Math.min(maxPieces, Math.max(1, ids.length * 2)));
+                }
+                ids[count++] = id;
+            }
+            i = end;
+        }
+        return count == ids.length ? ids : Arrays.copyOf(ids, count);
+    }
+
+    private int[] wordPieces(String word) {
+        if (word.length() > MAX_WORD_CHARS) {
+            return new int[]{unkId};
+        }
+        int[] pieces = new int[word.length()];
+        int count = 0;
+        int start = 0;
+        while (start < word.length()) {
+            Integer id = null;
+            int end = word.length();
+            for (; end > start; end--) {
+                String piece = start == 0 ? word.substring(start, end) : "##" + word.substring(start, end);
+                id = vocabulary.get(piece);
+                if (id != null) {
+                    break;
+                }
+            }
+            if (id == null) {
+                return new int[]{unkId};
+            }
+            pieces[count++] = id;
+            start = end;
+        }
+        return Arrays.copyOf(pieces, count);
+    }
+
+    // Drops control characters, normalizes whitespace, spaces out CJK characters and applies the casing of the model
+    private String clean(String text) {
+        String normalized = text;
+        if (lowerCase) {
+            normalized = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        }
+        StringBuilder cleaned = new StringBuilder(normalized.length());
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == 0 || c == 0xFFFD) {
+                continue;
+            }
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                cleaned.append(' ');
+            } else if (Character.isISOControl(c) || Character.getType(c) == Character.FORMAT) {
+                continue;
+            } else if (lowerCase && Character.getType(c) == Character.NON_SPACING_MARK) {
+                // Accents, separated from their letters by the NFD normalization
+                continue;
+            } else if (isCjk(c)) {
+                cleaned.append(' ').append(c).append(' ');
+            } else {
+                cleaned.append(c);
+            }
+        }
+        return cleaned.toString();
+    }
+
+    private static boolean isPunctuation(char c) {
+        // All non-alphanumeric ASCII counts as punctuation in BERT, $ and ^ included
+        if ((c >= 33 && c <= 47) || (c >= 58 && c <= 64) || (c >= 91 && c <= 96) || (c >= 123 && c <= 126)) {
+            return true;
+        }
+        int type = Character.getType(c);
+        return type == Character.CONNECTOR_PUNCTUATION || type == Character.DASH_PUNCTUATION
+                || type == Character.START_PUNCTUATION || type == Character.END_PUNCTUATION
+                || type == Character.INITIAL_QUOTE_PUNCTUATION || type == Character.FINAL_QUOTE_PUNCTUATION
+                || type == Character.OTHER_PUNCTUATION;
+    }
+
+    private static boolean isCjk(char c) {
+        return (c >= 0x4E00 && c <= 0x9FFF) || (c >= 0x3400 && c <= 0x4DBF) || (c >= 0xF900 && c <= 0xFAFF);
+    }
+
+    private int specialToken(String token) {
+        Integer id = vocabulary.get(token);
+        if (id == null) {
+            throw new IllegalArgumentException("Vocabulary " + name + " has no " + token + " token");
+        }
+        return id;
+    }
+}
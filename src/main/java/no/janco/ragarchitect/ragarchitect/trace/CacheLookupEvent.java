@@ -0,0 +1,32 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A lookup in the embedding cache or the semantic response cache.
+ */
+@Name("ragarchitect.CacheLookup")
+@Label("Cache Lookup")
+@Category(PipelineRecording.CATEGORY)
+@Description("A lookup in the embedding or semantic response cache")
+@Enabled(false)
+@StackTrace(false)
+public class CacheLookupEvent extends Event {
+
+    @Label("Cache")
+    @Description("embeddings or responses")
+    public String cache;
+
+    @Label("Hit")
+    public boolean hit;
+
+    @Label("Similarity")
+    @Description("Of the cached question that answered, for response cache hits")
+    public float similarity;
+}
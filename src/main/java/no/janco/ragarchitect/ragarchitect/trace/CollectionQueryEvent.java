@@ -0,0 +1,42 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One request to the vector store for chat context, from when it is sent until its result arrives: the nearest
+ * neighbour search of a collection, or the lookup of the content of the matches that were kept.
+ */
+@Name("ragarchitect.CollectionQuery")
+@Label("Collection Query")
+@Category(PipelineRecording.CATEGORY)
+@Description("A search of, or content lookup in, one collection")
+@Enabled(false)
+@StackTrace(false)
+public class CollectionQueryEvent extends Event {
+
+    @Label("Collection")
+    public String collection;
+
+    @Label("Phase")
+    @Description("search or fetch")
+    public String phase;
+
+    @Label("Hits")
+    public int hits;
+
+    @Label("Top Score")
+    public float topScore;
+
+    @Label("Lowest Score")
+    public float lowestScore;
+
+    @Label("Failed")
+    @Description("Failed or ran into its deadline; the request went on without it")
+    public boolean failed;
+}
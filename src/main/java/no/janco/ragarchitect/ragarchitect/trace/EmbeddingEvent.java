@@ -0,0 +1,34 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One call to the embedding provider, for a single question or a batch. Cache hits do not reach the provider; they
+ * are recorded as {@link CacheLookupEvent}s.
+ */
+@Name("ragarchitect.Embedding")
+@Label("Embedding")
+@Category(PipelineRecording.CATEGORY)
+@Description("A call to the embedding provider")
+@Enabled(false)
+@StackTrace(false)
+public class EmbeddingEvent extends Event {
+
+    @Label("Provider")
+    public String provider;
+
+    @Label("Texts")
+    public int texts;
+
+    @Label("Characters")
+    public long characters;
+
+    @Label("Failed")
+    public boolean failed;
+}
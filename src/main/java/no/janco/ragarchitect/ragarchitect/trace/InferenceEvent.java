@@ -0,0 +1,40 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One generation by the LLM backend, from when it got a slot in the inference limiter until the response was
+ * complete.
+ */
+@Name("ragarchitect.Inference")
+@Label("Inference")
+@Category(PipelineRecording.CATEGORY)
+@Description("A generation by the LLM backend")
+@Enabled(false)
+@StackTrace(false)
+public class InferenceEvent extends Event {
+
+    @Label("Provider")
+    public String provider;
+
+    @Label("Streamed")
+    public boolean streamed;
+
+    @Label("Prompt Characters")
+    public long promptCharacters;
+
+    @Label("Response Characters")
+    public long responseCharacters;
+
+    @Label("Response Tokens")
+    public int responseTokens;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,74 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Records the pipeline's JFR events while {@code trace.jfr.enabled} is set. The events are disabled by default, so
+ * without a recording they cost a check of a flag; with one, each is a few fields written to a thread-local buffer.
+ * <p>
+ * The recording keeps the last {@code trace.jfr.max.age.minutes} on disk and is written to {@code trace.jfr.file}
+ * on shutdown; {@code jcmd <pid> JFR.dump name=ragarchitect-pipeline filename=...} takes a copy at any time.
+ * Summarize a recording with {@link PipelineTraceAnalyzer}. A recording started with {@code -XX:StartFlightRecording}
+ * picks the events up too when its settings enable them.
+ */
+@Component
+public class PipelineRecording {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipelineRecording.class);
+
+    static final String CATEGORY = "RAG Architect";
+
+    static final String NAME = "ragarchitect-pipeline";
+
+    static final List<Class<? extends Event>> EVENTS = List.of(EmbeddingEvent.class, CollectionQueryEvent.class,
+            PromptAssemblyEvent.class, InferenceEvent.class, CacheLookupEvent.class);
+
+    @Value("${trace.jfr.enabled:false}")
+    private boolean enabled;
+
+    @Value("${trace.jfr.file:pipeline.jfr}")
+    private String file;
+
+    @Value("${trace.jfr.max.age.minutes:60}")
+    private long maxAgeMinutes;
+
+    private Recording recording;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        recording = new Recording();
+        recording.setName(NAME);
+        for (Class<? extends Event> event : EVENTS) {
+            recording.enable(event).withoutThreshold();
+        }
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+        recording.setDestination(Path.of(file));
+        recording.start();
+        LOG.info("Recording pipeline events, written to {} on shutdown", Path.of(file).toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            // Writes the recording to its destination
+            recording.stop();
+            recording.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Summarizes the pipeline events in a JFR recording into a latency breakdown per stage: embedding calls and cache
+ * lookups, each collection's searches and content lookups, prompt assembly and inference per provider.
+ * <p>
+ * Uses nothing but the JDK, so it runs straight from source on any machine the recording is copied to:
+ * <pre>
+ * java src/main/java/no/janco/ragarchitect/ragarchitect/trace/PipelineTraceAnalyzer.java pipeline.jfr
+ * </pre>
+ */
+public final class PipelineTraceAnalyzer {
+
+    // Event types in pipeline order, which is also the order of the report
+    private static final List<String> EVENT_TYPES = List.of("ragarchitect.CacheLookup", "ragarchitect.Embedding",
+            "ragarchitect.CollectionQuery", "ragarchitect.PromptAssembly", "ragarchitect.Inference");
+
+    /**
+     * @param detail A stage specific figure, e.g. the mean number of hits of a collection search
+     */
+    public record StageSummary(String stage, int count, int failed, Duration mean, Duration p50, Duration p95,
+                               Duration p99, Duration max, String detail) { }
+
+    private PipelineTraceAnalyzer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java PipelineTraceAnalyzer.java <recording.jfr>");
+            System.exit(2);
+        }
+        System.out.print(format(summarize(Path.of(args[0]))));
+    }
+
+    public static List<StageSummary> summarize(Path recording) throws IOException {
+        Map<String, Stage> stages = new HashMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String type = event.getEventType().getName();
+                if (EVENT_TYPES.contains(type)) {
+                    stages.computeIfAbsent(stageOf(type, event), name -> new Stage(name, type)).add(event);
+                }
+            }
+        }
+        return stages.values().stream()
+                .sorted(Comparator.comparingInt((Stage stage) -> EVENT_TYPES.indexOf(stage.type)).thenComparing(stage -> stage.name))
+                .map(Stage::summary)
+                .toList();
+    }
+
+    public static String format(List<StageSummary> summaries) {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%-32s %7s %7s %9s %9s %9s %9s %9s  %s%n",
+                "stage", "count", "failed", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms", "detail"));
+        for (StageSummary summary : summaries) {
+            report.append(String.format(Locale.ROOT, "%-32s %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                    summary.stage(), summary.count(), summary.failed(), millis(summary.mean()), millis(summary.p50()),
+                    millis(summary.p95()), millis(summary.p99()), millis(summary.max()), summary.detail()));
+        }
+        return report.toString();
+    }
+
+    private static String stageOf(String type, RecordedEvent event) {
+        return switch (type) {
+            case "ragarchitect.CacheLookup" -> "cache " + event.getString("cache");
+            case "ragarchitect.Embedding" -> "embedding " + event.getString("provider");
+            case "ragarchitect.CollectionQuery" -> event.getString("phase") + " " + event.getString("collection");
+            case "ragarchitect.PromptAssembly" -> "prompt assembly";
+            default -> "inference " + event.getString("provider");
+        };
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1e6;
+    }
+
+    private static final class Stage {
+        private final String name;
+        private final String type;
+        private final List<Long> nanos = new ArrayList<>();
+        private int failed;
+        // Sum of the stage's detail figure over its events
+        private double detail;
+
+        Stage(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        void add(RecordedEvent event) {
+            nanos.add(event.getDuration().toNanos());
+            if (event.hasField("failed") && event.getBoolean("failed")) {
+                failed++;
+            }
+            detail += switch (type) {
+                case "ragarchitect.CacheLookup" -> event.getBoolean("hit") ? 1 : 0;
+                case "ragarchitect.Embedding" -> event.getInt("texts");
+                case "ragarchitect.CollectionQuery" -> event.getInt("hits");
+                case "ragarchitect.PromptAssembly" -> event.getInt("promptTokens");
+                default -> event.getInt("responseTokens");
+            };
+        }
+
+        StageSummary summary() {
+            long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            double mean = detail / sorted.length;
+            String detailText = switch (type) {
+                case "ragarchitect.CacheLookup" -> String.format(Locale.ROOT, "%.0f%% hits", 100 * mean);
+                case "ragarchitect.Embedding" -> String.format(Locale.ROOT, "%.1f texts per call", mean);
+                case "ragarchitect.CollectionQuery" -> String.format(Locale.ROOT, "%.1f hits", mean);
+                case "ragarchitect.PromptAssembly" -> String.format(Locale.ROOT, "%.0f prompt tokens", mean);
+                default -> String.format(Locale.ROOT, "%.0f response tokens", mean);
+            };
+            return new StageSummary(name, sorted.length, failed,
+                    Duration.ofNanos((long) Arrays.stream(sorted).average().orElse(0)),
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                    Duration.ofNanos(sorted[sorted.length - 1]), detailText);
+        }
+
+        // Nearest rank
+        private static Duration percentile(long[] sorted, double quantile) {
+            int rank = (int) Math.ceil(quantile * sorted.length);
+            return Duration.ofNanos(sorted[Math.max(0, rank - 1)]);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Packing the retrieved snippets into the prompt and truncating it for the backend.
+ */
+@Name("ragarchitect.PromptAssembly")
+@Label("Prompt Assembly")
+@Category(PipelineRecording.CATEGORY)
+@Description("Packing context into the prompt and truncating it")
+@Enabled(false)
+@StackTrace(false)
+public class PromptAssemblyEvent extends Event {
+
+    @Label("Snippets")
+    @Description("Snippets offered to the packer")
+    public int snippets;
+
+    @Label("Prompt Characters")
+    public long promptCharacters;
+
+    @Label("Prompt Tokens")
+    public int promptTokens;
+
+    @Label("Truncated")
+    @Description("Whether the truncator had to cut the packed prompt")
+    public boolean truncated;
+}
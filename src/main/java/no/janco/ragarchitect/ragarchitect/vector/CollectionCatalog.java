@@ -0,0 +1,140 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps an in-memory snapshot of the vector store's collections and their metadata, so request paths can check which
+ * collections exist without a round trip to the store. The snapshot is refreshed in the background and entries are
+ * dropped as soon as a query reports the collection as missing.
+ * <p>
+ * A {@link CollectionsChangedEvent} is published whenever a refresh finds collections added, removed or with a
+ * changed point count, which is how re-indexing shows up from here.
+ */
+@Component
+public class CollectionCatalog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CollectionCatalog.class);
+
+    private final VectorStore vectorStore;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Replaced wholesale on every change; readers never see a partially updated catalog
+    private volatile Map<String, CollectionMetadata> collections;
+
+    public CollectionCatalog(VectorStore vectorStore, ApplicationEventPublisher eventPublisher) {
+        this.vectorStore = vectorStore;
+        this.eventPublisher = eventPublisher;
+    }
+
+    public record CollectionMetadata(String name, long vectorSize, long pointCount) { }
+
+    public List<String> getCollectionNames() throws ExecutionException, InterruptedException {
+        return List.copyOf(snapshot().keySet());
+    }
+
+    public boolean contains(String collectionName) throws ExecutionException, InterruptedException {
+        return snapshot().containsKey(collectionName);
+    }
+
+    public Optional<CollectionMetadata> getMetadata(String collectionName) throws ExecutionException, InterruptedException {
+        return Optional.ofNullable(snapshot().get(collectionName));
+    }
+
+    /**
+     * Drops a collection from the catalog, typically after a query reported it as not found. The next refresh adds it
+     * back if it has been recreated in the meantime.
+     */
+    public synchronized void invalidate(String collectionName) {
+        Map<String, CollectionMetadata> current = collections;
+        if (current == null || !current.containsKey(collectionName)) {
+            return;
+        }
+
+        LOG.info("Removing collection {} from catalog", collectionName);
+        Map<String, CollectionMetadata> updated = new LinkedHashMap<>(current);
+        updated.remove(collectionName);
+        collections = Collections.unmodifiableMap(updated);
+        eventPublisher.publishEvent(new CollectionsChangedEvent(Set.of(collectionName)));
+    }
+
+    @Scheduled(fixedDelayString = "${vector.catalog.refresh.ms:30000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (ExecutionException e) {
+            LOG.warn("Could not refresh collection catalog, keeping previous snapshot", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void refresh() throws ExecutionException, InterruptedException {
+        List<String> names = vectorStore.listCollections().get();
+
+        List<ListenableFuture<CollectionMetadata>> metadataRequests = new ArrayList<>();
+        for (String name : names) {
+            metadataRequests.add(vectorStore.getCollectionMetadata(name));
+        }
+        List<CollectionMetadata> metadata = Futures.successfulAsList(metadataRequests).get();
+
+        Map<String, CollectionMetadata> updated = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (metadata.get(i) == null) {
+                // Deleted between the listing and the info call, or temporarily unavailable
+                LOG.warn("No collection info for {}, leaving it out of the catalog", name);
+                continue;
+            }
+            updated.put(name, metadata.get(i));
+        }
+
+        Set<String> changed;
+        synchronized (this) {
+            changed = changedCollections(collections, updated);
+            collections = Collections.unmodifiableMap(updated);
+        }
+        LOG.debug("Collection catalog refreshed: {}", updated.values());
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new CollectionsChangedEvent(changed));
+        }
+    }
+
+    private static Set<String> changedCollections(Map<String, CollectionMetadata> previous, Map<String, CollectionMetadata> current) {
+        if (previous == null) {
+            // Initial load; nothing can have been derived from the collections yet
+            return Set.of();
+        }
+        Set<String> names = new HashSet<>(previous.keySet());
+        names.addAll(current.keySet());
+        names.removeIf(name -> Objects.equals(previous.get(name), current.get(name)));
+        return names;
+    }
+
+    private Map<String, CollectionMetadata> snapshot() throws ExecutionException, InterruptedException {
+        Map<String, CollectionMetadata> current = collections;
+        if (current == null) {
+            // First use before the background refresh has completed
+            refresh();
+            current = collections;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,10 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import java.util.Set;
+
+/**
+ * Published when collections are created, dropped or re-indexed, so anything derived from their contents can be
+ * discarded.
+ * @param collectionNames The collections that changed
+ */
+public record CollectionsChangedEvent(Set<String> collectionNames) { }
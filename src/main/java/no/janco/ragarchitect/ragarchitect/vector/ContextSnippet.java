@@ -0,0 +1,13 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+/**
+ * One retrieved chunk of chat context.
+ * @param label What kind of snippet this is, as shown to the model, e.g. "Code snippet"
+ * @param content The chunk text
+ * @param score How relevant the snippet is, higher is better. As retrieved, its reciprocal rank fusion score within
+ *              its collection: it follows the snippet's rank in the dense and lexical results rather than its
+ *              similarity, so across collections it interleaves them by rank, favouring snippets both retrievers
+ *              found. After reranking, the cross-encoder's probability that the snippet answers the question, which
+ *              compares across collections as it is.
+ */
+public record ContextSnippet(String label, String content, float score) { }
@@ -0,0 +1,49 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.Arrays;
+
+/**
+ * A dense embedding vector backed by a primitive {@code float[]}.
+ * <p>
+ * {@link #values()} exposes the backing array without copying, as it is handed straight to Qdrant query building on
+ * the hot path. Callers must treat it as read-only.
+ */
+@JsonDeserialize(using = EmbeddingDeserializer.class)
+public final class Embedding {
+
+    private final float[] values;
+
+    public Embedding(float[] values) {
+        this.values = values;
+    }
+
+    public static Embedding of(float... values) {
+        return new Embedding(values);
+    }
+
+    public float[] values() {
+        return values;
+    }
+
+    public int dimension() {
+        return values.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Embedding other && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        // Deliberately not printing the values; a 384-dimension vector in a log line is noise
+        return "Embedding[dimension=" + values.length + "]";
+    }
+}
@@ -0,0 +1,119 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent single-text embedding requests into batched calls. The first request opens a window; everything
+ * that arrives within the window (or until the batch is full) is sent as one call and the results are handed back to
+ * the individual callers.
+ * <p>
+ * Batches are dispatched one at a time. While a batch is in flight, new requests queue up and go out together in the
+ * next one, so the batch size grows with load instead of the number of calls.
+ */
+public class EmbeddingBatcher implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingBatcher.class);
+
+    private final Function<List<String>, List<Embedding>> batchCall;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+
+    private volatile boolean running = true;
+
+    private record PendingEmbedding(String text, CompletableFuture<Embedding> result) { }
+
+    public EmbeddingBatcher(Function<List<String>, List<Embedding>> batchCall, Duration window, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1, was " + maxBatchSize);
+        }
+        this.batchCall = batchCall;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.dispatcher = Thread.ofPlatform().daemon().name("embedding-batcher").start(this::dispatchLoop);
+    }
+
+    public CompletableFuture<Embedding> submit(String text) {
+        PendingEmbedding pending = new PendingEmbedding(text, new CompletableFuture<>());
+        queue.add(pending);
+        // Lost the race against close(); the dispatcher may already have drained the queue
+        if (!running && queue.remove(pending)) {
+            pending.result().completeExceptionally(new IllegalStateException("Embedding batcher is shut down"));
+        }
+        return pending.result();
+    }
+
+    public Embedding embed(String text) {
+        try {
+            return submit(text).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void dispatchLoop() {
+        List<PendingEmbedding> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingEmbedding next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                dispatch(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Anything still queued, or collected into a batch that was interrupted before dispatch, is abandoned
+        queue.drainTo(batch);
+        batch.forEach(pending -> pending.result().completeExceptionally(new CancellationException("Embedding batcher shut down")));
+    }
+
+    private void dispatch(List<PendingEmbedding> batch) {
+        List<String> texts = batch.stream().map(PendingEmbedding::text).toList();
+        LOG.debug("Dispatching embedding batch of {}", texts.size());
+
+        try {
+            List<Embedding> embeddings = batchCall.apply(texts);
+            if (embeddings.size() != batch.size()) {
+                throw new IllegalStateException("Expected " + batch.size() + " embeddings but received " + embeddings.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(embeddings.get(i));
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+    }
+}
@@ -0,0 +1,72 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import no.janco.ragarchitect.ragarchitect.trace.CacheLookupEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Size and time bounded cache of query embeddings. Entries are keyed by a hash of the normalized text together with
+ * the embedding model, so switching models never serves vectors from the old one.
+ * Hit, miss and eviction counts are published as the {@code cache.*} metrics with {@code cache=embeddings}.
+ */
+@Component
+public class EmbeddingCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Cache<HashCode, float[]> cache;
+    private final String modelId;
+
+    public EmbeddingCache(@Value("${embedding.cache.max.size:10000}") long maxSize,
+                          @Value("${embedding.cache.ttl.minutes:60}") long ttlMinutes,
+                          @Value("${embedding.model.id:all-MiniLM-L6-v2}") String modelId,
+                          MeterRegistry meterRegistry) {
+        this.modelId = modelId;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, cache, "embeddings");
+    }
+
+    public float[] getIfPresent(String text) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        event.begin();
+        float[] embedding = cache.getIfPresent(key(text));
+        if (event.shouldCommit()) {
+            event.cache = "embeddings";
+            event.hit = embedding != null;
+            event.commit();
+        }
+        return embedding;
+    }
+
+    public void put(String text, float[] embedding) {
+        cache.put(key(text), embedding);
+    }
+
+    HashCode key(String text) {
+        return Hashing.murmur3_128().newHasher()
+                .putString(modelId, StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(normalize(text), StandardCharsets.UTF_8)
+                .hash();
+    }
+
+    static String normalize(String text) {
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(composed.strip()).replaceAll(" ");
+    }
+}
@@ -0,0 +1,51 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads a JSON number array straight into a {@code float[]}, without going through boxed {@code Float} values or an
+ * intermediate list. Numbers are parsed from the parser's character buffer rather than via
+ * {@link JsonParser#getFloatValue()}, which would allocate a {@code String} per value. The fast parser used here is
+ * correctly rounded, so results are identical to {@link Float#parseFloat(String)}.
+ */
+public class EmbeddingDeserializer extends StdDeserializer<Embedding> {
+
+    private static final long serialVersionUID = 1L;
+
+    // Matches all-MiniLM-L6-v2, so the common case fills the buffer exactly once
+    private static final int INITIAL_CAPACITY = 384;
+
+    public EmbeddingDeserializer() {
+        super(Embedding.class);
+    }
+
+    @Override
+    public Embedding deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            return (Embedding) context.handleUnexpectedToken(Embedding.class, parser);
+        }
+
+        float[] buffer = new float[INITIAL_CAPACITY];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                return context.reportInputMismatch(this, "Expected a number in the embedding array, got %s", token);
+            }
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = NumberInput.parseFloat(
+                    parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), true);
+        }
+
+        return new Embedding(size == buffer.length ? buffer : Arrays.copyOf(buffer, size));
+    }
+}
@@ -0,0 +1,18 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import java.util.List;
+
+/**
+ * Computes embeddings with the configured model. {@link EmbeddingService} puts caching and request coalescing in
+ * front of it; the provider itself is selected by profile.
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * @param texts The texts to embed, sent as one batch where the provider supports it
+     * @return One embedding per text, in order
+     */
+    public List<Embedding> embed(List<String> texts);
+
+    public String getProviderDetails();
+}
@@ -1,54 +1,95 @@
 package no.janco.ragarchitect.ragarchitect.vector;
 
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.trace.EmbeddingEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class EmbeddingService {
 
     private static final Logger LOG = LoggerFactory.getLogger(EmbeddingService.class);
-    private final RestTemplate restTemplate;
-    private static final String EMBEDDING_URL = "http://embedding-service:8080/embed";
+    private final EmbeddingProvider embeddingProvider;
 
-    public EmbeddingService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    // 0 disables coalescing and sends every getEmbedding call on its own
+    @Value("${embedding.batch.window.ms:0}")
+    private long batchWindowMs;
+
+    @Value("${embedding.batch.max.size:32}")
+    private int maxBatchSize;
+
+    private EmbeddingBatcher batcher;
 
-    public List<Float> getEmbedding(String prompt) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private final EmbeddingCache embeddingCache;
 
-        String requestJson = "{\"sentences\": [\"" + prompt.replace("\"", "\\\"") + "\"]}";
+    private final String provider;
 
-        HttpEntity<String> entity = new HttpEntity<>(requestJson, headers);
+    private final Timer cachedTimer;
 
-        ResponseEntity<EmbeddingResponse> response = restTemplate.postForEntity(
-                EMBEDDING_URL, entity, EmbeddingResponse.class
-        );
+    private final Timer embeddedTimer;
+
+    public EmbeddingService(EmbeddingProvider embeddingProvider, EmbeddingCache embeddingCache, PipelineMetrics pipelineMetrics) {
+        this.embeddingProvider = embeddingProvider;
+        this.embeddingCache = embeddingCache;
+        this.provider = embeddingProvider.getClass().getSimpleName();
+        this.cachedTimer = pipelineMetrics.timer(PipelineMetrics.Stage.EMBED, "provider", provider, "cached", "true");
+        this.embeddedTimer = pipelineMetrics.timer(PipelineMetrics.Stage.EMBED, "provider", provider, "cached", "false");
+    }
 
-        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-            LOG.info("Amount of embeddings {}", response.getBody().getEmbeddings().size());
-            return response.getBody().getEmbeddings().get(0);
-        } else {
-            throw new RuntimeException("Failed to get embedding");
+    @PostConstruct
+    public void startBatcher() {
+        LOG.info("Embedding with {}", embeddingProvider.getProviderDetails());
+        if (batchWindowMs > 0) {
+            LOG.info("Coalescing embedding requests within {} ms, up to {} per batch", batchWindowMs, maxBatchSize);
+            batcher = new EmbeddingBatcher(this::getEmbeddings, Duration.ofMillis(batchWindowMs), maxBatchSize);
         }
     }
 
-    public static class EmbeddingResponse {
-        private List<List<Float>> embeddings;
+    @PreDestroy
+    public void stopBatcher() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
 
-        public List<List<Float>> getEmbeddings() {
-            return embeddings;
+    public Embedding getEmbedding(String prompt) {
+        long start = System.nanoTime();
+        float[] cached = embeddingCache.getIfPresent(prompt);
+        if (cached != null) {
+            cachedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new Embedding(cached);
         }
 
-        public void setEmbeddings(List<List<Float>> embeddings) {
-            this.embeddings = embeddings;
+        Embedding embedding = batcher != null ? batcher.embed(prompt) : getEmbeddings(List.of(prompt)).get(0);
+        embeddingCache.put(prompt, embedding.values());
+        embeddedTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return embedding;
+    }
+
+    public List<Embedding> getEmbeddings(List<String> prompts) {
+        EmbeddingEvent event = new EmbeddingEvent();
+        event.begin();
+        try {
+            return embeddingProvider.embed(prompts);
+        } catch (RuntimeException e) {
+            event.failed = true;
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.provider = provider;
+                event.texts = prompts.size();
+                event.characters = prompts.stream().mapToLong(String::length).sum();
+                event.commit();
+            }
         }
     }
 }
-
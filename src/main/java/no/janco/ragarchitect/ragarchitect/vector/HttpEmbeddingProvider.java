@@ -0,0 +1,70 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.*;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+
+/**
+ * Embeds through the Python embedding service ({@code embedding_service_script.py}). Used unless the
+ * {@code onnx-embedding} profile runs the model in-process instead.
+ */
+@Service
+@Profile("!onnx-embedding")
+public class HttpEmbeddingProvider implements EmbeddingProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpEmbeddingProvider.class);
+    private static final String DEFAULT_EMBEDDING_URL = "http://embedding-service:8080/embed";
+
+    @Value("${embedding.service.url:" + DEFAULT_EMBEDDING_URL + "}")
+    private String embeddingUrl = DEFAULT_EMBEDDING_URL;
+
+    private final RestTemplate restTemplate;
+
+    public HttpEmbeddingProvider(RestTemplate restTemplate) {
+        this.restTemplate = restTemplate;
+    }
+
+    @Override
+    public List<Embedding> embed(List<String> texts) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        HttpEntity<EmbeddingRequest> entity = new HttpEntity<>(new EmbeddingRequest(texts), headers);
+
+        ResponseEntity<EmbeddingResponse> response = restTemplate.postForEntity(
+                embeddingUrl, entity, EmbeddingResponse.class
+        );
+
+        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
+            LOG.info("Amount of embeddings {}", response.getBody().getEmbeddings().size());
+            return response.getBody().getEmbeddings();
+        } else {
+            throw new RuntimeException("Failed to get embedding");
+        }
+    }
+
+    @Override
+    public String getProviderDetails() {
+        return "HTTP embedding service at " + embeddingUrl;
+    }
+
+    public record EmbeddingRequest(List<String> sentences) { }
+
+    public static class EmbeddingResponse {
+        private List<Embedding> embeddings;
+
+        public List<Embedding> getEmbeddings() {
+            return embeddings;
+        }
+
+        public void setEmbeddings(List<Embedding> embeddings) {
+            this.embeddings = embeddings;
+        }
+    }
+}
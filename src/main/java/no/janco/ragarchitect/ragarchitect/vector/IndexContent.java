@@ -1,13 +1,21 @@
 package no.janco.ragarchitect.ragarchitect.vector;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+
+import java.util.Map;
 
 public class IndexContent {
     private String areaName;
     private String itemPath;
     private String chunkId;
     private String content;
+    // Set when the content is left out and has to be fetched by id
+    @JsonIgnore
+    private Points.PointId pointId;
 
     // Default constructor for Jackson
     public IndexContent() {}
@@ -28,9 +36,28 @@ public class IndexContent {
     public String getFilePath() { return itemPath; }
     public String getChunkId() { return chunkId; }
     public String getContent() { return content; }
+    public Points.PointId getPointId() { return pointId; }
+
+    /**
+     * Reads a chunk from its Qdrant payload. Fields the query left out are empty, apart from content, which is null
+     * until it is fetched.
+     */
+    public static IndexContent fromPayload(Map<String, JsonWithInt.Value> payload) {
+        JsonWithInt.Value content = payload.get("content");
+        return new IndexContent(stringValue(payload, "area"), stringValue(payload, "item_path"),
+                stringValue(payload, "chunk_id"), content == null ? null : content.getStringValue());
+    }
+
+    /**
+     * @return The string value of the payload field, or an empty string if the field is missing
+     */
+    public static String stringValue(Map<String, JsonWithInt.Value> payload, String key) {
+        return payload.getOrDefault(key, JsonWithInt.Value.getDefaultInstance()).getStringValue();
+    }
 
     public void setAreaName(String projectName) { this.areaName = projectName; }
     public void setFilePath(String itemPath) { this.itemPath = itemPath; }
     public void setChunkId(String chunkId) { this.chunkId = chunkId; }
     public void setContent(String content) { this.content = content; }
+    public void setPointId(Points.PointId pointId) { this.pointId = pointId; }
 }
@@ -1,56 +1,90 @@
 package no.janco.ragarchitect.ragarchitect.vector;
 
-import io.qdrant.client.QdrantClient;
 import io.qdrant.client.grpc.Points;
 import io.qdrant.client.grpc.Points.GetPoints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
+
+import static io.qdrant.client.WithPayloadSelectorFactory.include;
 
 @Service
 public class QdrantService {
 
-    private final QdrantClient qdrantClient;
+    private final VectorStore vectorStore;
+    private final CollectionCatalog collectionCatalog;
+    private final String indexerStateCollection;
 
-    public QdrantService(QdrantClient qdrantClient) {
-        this.qdrantClient = qdrantClient;
+    public QdrantService(VectorStore vectorStore, CollectionCatalog collectionCatalog,
+                         @Value("${git.indexer.state.collection:indexer_state}") String indexerStateCollection) {
+        this.vectorStore = vectorStore;
+        this.collectionCatalog = collectionCatalog;
+        this.indexerStateCollection = indexerStateCollection;
     }
 
-    // Fetches available indexes (collections)
+    // Fetches available indexes (collections), leaving out the git indexer's bookkeeping
     public List<String> getIndexes() throws ExecutionException, InterruptedException {
-        return qdrantClient.listCollectionsAsync().get();
+        return collectionCatalog.getCollectionNames().stream()
+                .filter(name -> !name.equals(indexerStateCollection))
+                .toList();
     }
 
-    public List<IndexContent> getIndexContents(String collectionName) throws ExecutionException, InterruptedException {
-        Points.ScrollPoints request = Points.ScrollPoints.newBuilder()
+    /**
+     * One page of the collection's points in id order, without their content, which can be many kilobytes per chunk;
+     * fetch it with {@link #getContent} for the chunks that are opened.
+     * @param offset Where the page starts, from the previous page's {@link IndexContentsPage#nextOffset()}, or null for
+     *               the first page
+     */
+    public IndexContentsPage getIndexContents(String collectionName, @Nullable Points.PointId offset, int limit)
+            throws ExecutionException, InterruptedException {
+        Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
                 .setCollectionName(collectionName)
-                .setLimit(150) // Fetch up to 150 items
-                .build();
+                .setLimit(limit)
+                .setWithPayload(include(List.of("area", "item_path", "chunk_id")));
+        if (offset != null) {
+            request.setOffset(offset);
+        }
 
-        Points.ScrollResponse response = qdrantClient.scrollAsync(request).get();
+        Points.ScrollResponse response = vectorStore.scroll(request.build()).get();
 
-        return response.getResultList().stream()
+        List<IndexContent> contents = response.getResultList().stream()
                 .map(point -> {
-                    String projectName = point.getPayloadMap().get("area").getStringValue();
-                    String itemPath = point.getPayloadMap().get("item_path").getStringValue();
-                    String chunkId = point.getPayloadMap().get("chunk_id").getStringValue();
-                    String content = point.getPayloadMap().get("content").getStringValue();
-                    return new IndexContent(projectName, itemPath, chunkId, content);
+                    IndexContent content = IndexContent.fromPayload(point.getPayloadMap());
+                    content.setPointId(point.getId());
+                    return content;
                 })
-                .collect(Collectors.toList());
+                .toList();
+        return new IndexContentsPage(contents, response.hasNextPageOffset() ? response.getNextPageOffset() : null);
     }
 
+    /**
+     * @param nextOffset Where the next page starts, or null if this was the last one
+     */
+    public record IndexContentsPage(List<IndexContent> contents, @Nullable Points.PointId nextOffset) { }
 
+    /**
+     * @return The content of the point, or null if it no longer exists
+     */
+    @Nullable
+    public String getContent(String collectionName, Points.PointId pointId) throws ExecutionException, InterruptedException {
+        List<Points.RetrievedPoint> points = vectorStore.retrieve(GetPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .addIds(pointId)
+                .setWithPayload(include(List.of("content")))
+                .build(), Duration.ofSeconds(10)).get();
+        return points.isEmpty() ? null : IndexContent.stringValue(points.get(0).getPayloadMap(), "content");
+    }
 
     // Fetch details of a specific item
     public String getItemDetails(String collectionName, String itemId) throws ExecutionException, InterruptedException {
         Points.PointId pointId = Points.PointId.newBuilder().setUuid(itemId).build();
         GetPoints pointToGet = GetPoints.newBuilder().setCollectionName(collectionName).setIds(0, pointId).build();
 
-        List<Points.RetrievedPoint> response = qdrantClient.retrieveAsync(pointToGet, Duration.ofSeconds(10)).get();
+        List<Points.RetrievedPoint> response = vectorStore.retrieve(pointToGet, Duration.ofSeconds(10)).get();
 
         return response.isEmpty() ? "No details found" : response.get(0).toString(); // Convert to string for now
     }
@@ -0,0 +1,93 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.springframework.context.annotation.Profile;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The Qdrant server, over gRPC.
+ */
+@Service
+@Profile("!embedded-vector-store")
+public class QdrantVectorStore implements VectorStore {
+
+    private final QdrantClient qdrantClient;
+
+    public QdrantVectorStore(QdrantClient qdrantClient) {
+        this.qdrantClient = qdrantClient;
+    }
+
+    @Override
+    public ListenableFuture<List<String>> listCollections() {
+        return qdrantClient.listCollectionsAsync();
+    }
+
+    @Override
+    public ListenableFuture<CollectionCatalog.CollectionMetadata> getCollectionMetadata(String collectionName) {
+        return Futures.transform(qdrantClient.getCollectionInfoAsync(collectionName),
+                info -> new CollectionCatalog.CollectionMetadata(collectionName, vectorSize(info), info.getPointsCount()),
+                MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public ListenableFuture<Boolean> collectionExists(String collectionName) {
+        return qdrantClient.collectionExistsAsync(collectionName);
+    }
+
+    @Override
+    public ListenableFuture<Collections.CollectionOperationResponse> createCollection(String collectionName, Collections.VectorParams vectorParams) {
+        return qdrantClient.createCollectionAsync(collectionName, vectorParams);
+    }
+
+    @Override
+    public ListenableFuture<Collections.CollectionOperationResponse> updateQuantization(String collectionName, Collections.QuantizationConfigDiff quantization) {
+        return qdrantClient.updateCollectionAsync(Collections.UpdateCollection.newBuilder()
+                .setCollectionName(collectionName)
+                .setQuantizationConfig(quantization)
+                .build());
+    }
+
+    @Override
+    public ListenableFuture<Points.UpdateResult> upsert(String collectionName, List<Points.PointStruct> points) {
+        return qdrantClient.upsertAsync(collectionName, points);
+    }
+
+    @Override
+    public ListenableFuture<Points.UpdateResult> delete(String collectionName, List<Points.PointId> ids) {
+        return qdrantClient.deleteAsync(collectionName, ids);
+    }
+
+    @Override
+    public ListenableFuture<Points.UpdateResult> delete(String collectionName, Points.Filter filter) {
+        return qdrantClient.deleteAsync(collectionName, filter);
+    }
+
+    @Override
+    public ListenableFuture<Points.ScrollResponse> scroll(Points.ScrollPoints request) {
+        return qdrantClient.scrollAsync(request);
+    }
+
+    @Override
+    public ListenableFuture<List<Points.ScoredPoint>> query(Points.QueryPoints request, @Nullable Duration timeout) {
+        return qdrantClient.queryAsync(request, timeout);
+    }
+
+    @Override
+    public ListenableFuture<List<Points.RetrievedPoint>> retrieve(Points.GetPoints request, @Nullable Duration timeout) {
+        return qdrantClient.retrieveAsync(request, timeout);
+    }
+
+    private static long vectorSize(Collections.CollectionInfo info) {
+        Collections.VectorsConfig vectorsConfig = info.getConfig().getParams().getVectorsConfig();
+        return vectorsConfig.hasParams() ? vectorsConfig.getParams().getSize() : 0;
+    }
+}
@@ -0,0 +1,152 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Which collections are searched through quantized vectors, from {@code vector.quantization.collections}: a list of
+ * {@code collection:scalar} or {@code collection:binary}, optionally followed by {@code :oversampling} for that
+ * collection. A quantized search ranks by the compact vectors, then rescores the best {@code limit * oversampling}
+ * candidates with the original vectors.
+ * <p>
+ * The quantization is applied to each listed collection on startup, and again whenever the catalog reports the
+ * collection as changed: an indexer that drops and recreates a collection leaves it unquantized, possibly between two
+ * catalog refreshes, so a change in point count is all there is to go by. Setting the same quantization again does not
+ * rebuild what is already quantized. Queries against the listed collections carry the matching
+ * {@link Points.SearchParams}.
+ */
+@Component
+public class QuantizationSettings {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QuantizationSettings.class);
+
+    public enum Quantization { SCALAR, BINARY }
+
+    public record CollectionQuantization(Quantization quantization, double oversampling) { }
+
+    private final VectorStore vectorStore;
+
+    private final CollectionCatalog collectionCatalog;
+
+    private final Map<String, CollectionQuantization> collections;
+
+    private final boolean rescore;
+
+    private final boolean alwaysRam;
+
+    // Collections whose quantization has been set since startup
+    private final Set<String> applied = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param oversampling For collections that do not set their own
+     * @param alwaysRam Whether Qdrant keeps the quantized vectors in memory even when the originals are on disk
+     */
+    public QuantizationSettings(VectorStore vectorStore, CollectionCatalog collectionCatalog,
+                                @Value("${vector.quantization.collections:}") List<String> collections,
+                                @Value("${vector.quantization.oversampling:2.0}") double oversampling,
+                                @Value("${vector.quantization.rescore:true}") boolean rescore,
+                                @Value("${vector.quantization.always.ram:true}") boolean alwaysRam) {
+        this.vectorStore = vectorStore;
+        this.collectionCatalog = collectionCatalog;
+        this.collections = parse(collections, oversampling);
+        this.rescore = rescore;
+        this.alwaysRam = alwaysRam;
+    }
+
+    /**
+     * @return The search parameters for a query against the collection, or null if it is not quantized
+     */
+    @Nullable
+    public Points.SearchParams searchParams(String collectionName) {
+        CollectionQuantization quantization = collections.get(collectionName);
+        if (quantization == null) {
+            return null;
+        }
+        return Points.SearchParams.newBuilder()
+                .setQuantization(Points.QuantizationSearchParams.newBuilder()
+                        .setRescore(rescore)
+                        .setOversampling(quantization.oversampling()))
+                .build();
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void applyAll() {
+        for (String collectionName : collections.keySet()) {
+            if (!applied.contains(collectionName)) {
+                apply(collectionName);
+            }
+        }
+    }
+
+    @EventListener
+    public void onCollectionsChanged(CollectionsChangedEvent event) {
+        for (String collectionName : event.collectionNames()) {
+            if (collections.containsKey(collectionName)) {
+                apply(collectionName);
+            }
+        }
+    }
+
+    void apply(String collectionName) {
+        try {
+            if (!collectionCatalog.contains(collectionName)) {
+                // Applied when the catalog reports the collection as created
+                applied.remove(collectionName);
+                return;
+            }
+            vectorStore.updateQuantization(collectionName, config(collections.get(collectionName).quantization())).get();
+            applied.add(collectionName);
+            LOG.info("Collection {} quantized as {}", collectionName, collections.get(collectionName));
+        } catch (ExecutionException e) {
+            LOG.warn("Could not set quantization of collection {}, searching it unquantized", collectionName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Collections.QuantizationConfigDiff config(Quantization quantization) {
+        return switch (quantization) {
+            case SCALAR -> Collections.QuantizationConfigDiff.newBuilder()
+                    .setScalar(Collections.ScalarQuantization.newBuilder()
+                            .setType(Collections.QuantizationType.Int8)
+                            .setAlwaysRam(alwaysRam))
+                    .build();
+            case BINARY -> Collections.QuantizationConfigDiff.newBuilder()
+                    .setBinary(Collections.BinaryQuantization.newBuilder()
+                            .setAlwaysRam(alwaysRam))
+                    .build();
+        };
+    }
+
+    private static Map<String, CollectionQuantization> parse(List<String> entries, double defaultOversampling) {
+        Map<String, CollectionQuantization> parsed = new LinkedHashMap<>();
+        for (String entry : entries) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":");
+            if (parts.length < 2 || parts.length > 3) {
+                throw new IllegalArgumentException("Expected collection:scalar|binary[:oversampling] in vector.quantization.collections, got " + entry);
+            }
+            Quantization quantization = Quantization.valueOf(parts[1].toUpperCase(Locale.ROOT));
+            double oversampling = parts.length == 3 ? Double.parseDouble(parts[2]) : defaultOversampling;
+            parsed.put(parts[0], new CollectionQuantization(quantization, oversampling));
+        }
+        return Map.copyOf(parsed);
+    }
+}
@@ -1,106 +1,305 @@
 package no.janco.ragarchitect.ragarchitect.vector;
 
-import io.qdrant.client.QdrantClient;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.qdrant.client.grpc.JsonWithInt;
 import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.lexical.LexicalIndex;
+import no.janco.ragarchitect.ragarchitect.lexical.LexicalIndexService;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.trace.CollectionQueryEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static io.qdrant.client.QueryFactory.nearest;
 import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+import static io.qdrant.client.WithPayloadSelectorFactory.include;
 
 @Component
 public class VectorSearchService {
 
     private static final Logger LOG = LoggerFactory.getLogger(VectorSearchService.class);
 
-    private QdrantClient qdrantClient;
+    // Collections queried for chat context, in the order their snippets are added to the prompt
+    static final List<CollectionQuery> COLLECTION_QUERIES = List.of(
+            new CollectionQuery("code", "Code snippet", 30, 0.3f),
+            new CollectionQuery("confluence", "Confluence snippet", 10, 0.2f)
+    );
+
+    @Value("${vector.search.timeout.ms:2000}")
+    private long collectionTimeoutMs;
+
+    // Reciprocal rank fusion constant; larger values flatten the difference between the top ranks
+    @Value("${search.rrf.k:60}")
+    private int rrfK;
+
+    // Whether the chat context queries leave out content, which is then fetched only for the snippets that are kept
+    @Value("${vector.search.lazy.content:true}")
+    private boolean lazyContent;
+
+    // Small payload fields returned by the chat context queries when content is fetched afterwards
+    private static final List<String> RANKING_FIELDS = List.of("item_path", "chunk_id", "area");
+
+    private final VectorStore vectorStore;
 
     private final EmbeddingService embeddingService;
 
-    public VectorSearchService(EmbeddingService embeddingService, QdrantClient qdRantClient) {
+    private final CollectionCatalog collectionCatalog;
+
+    private final LexicalIndexService lexicalIndexService;
+
+    private final QuantizationSettings quantizationSettings;
+
+    private final PipelineMetrics pipelineMetrics;
+
+    public VectorSearchService(EmbeddingService embeddingService, VectorStore vectorStore, CollectionCatalog collectionCatalog,
+                               LexicalIndexService lexicalIndexService, QuantizationSettings quantizationSettings,
+                               PipelineMetrics pipelineMetrics) {
         this.embeddingService = embeddingService;
-        this.qdrantClient = qdRantClient;
+        this.vectorStore = vectorStore;
+        this.collectionCatalog = collectionCatalog;
+        this.lexicalIndexService = lexicalIndexService;
+        this.quantizationSettings = quantizationSettings;
+        this.pipelineMetrics = pipelineMetrics;
     }
 
-    public String searchVector(String message) throws ExecutionException, InterruptedException {
+    public record CollectionQuery(String collectionName, String snippetLabel, int limit, float scoreThreshold) { }
 
-        List<Float> vector = embeddingService.getEmbedding(message);
-        LOG.info("Received vector {}", vector);
+    public String searchVector(String message) throws ExecutionException, InterruptedException {
+        return searchVector(message, embedQuery(message));
+    }
 
-        // Get available indexes
-        List<String> availableIndexes = qdrantClient.listCollectionsAsync().get();
-        LOG.info("Available indexes: {}", availableIndexes);
+    public Embedding embedQuery(String message) {
+        Embedding vector = embeddingService.getEmbedding(message);
+        LOG.debug("Received vector {}", vector);
+        return vector;
+    }
 
+    /**
+     * Retrieves chat context for an already embedded question, for callers that need the embedding themselves.
+     */
+    public String searchVector(String message, Embedding vector) throws ExecutionException, InterruptedException {
         StringBuilder srb = new StringBuilder();
-        
-        // Only query code index if it exists
-        if (availableIndexes.contains("code")) {
-            LOG.info("Querying code index");
-            List<Points.ScoredPoint> codePoints = qdrantClient.queryAsync(Points.QueryPoints.newBuilder()
-                    .setCollectionName("code")
-                    .setQuery(nearest(vector))
-                    .setWithPayload(enable(true))
-                    .setLimit(30)
-                    .setScoreThreshold(0.3f)
-                    .build()).get();
-            
-            for (Points.ScoredPoint point : codePoints) {
-                String code = point.getPayloadMap().get("content").getStringValue();
-                srb.append("\nCode snippet: ").append(code);
+        for (ContextSnippet snippet : searchSnippets(message, vector)) {
+            srb.append("\n").append(snippet.label()).append(": ").append(snippet.content());
+        }
+
+        return srb.toString();
+    }
+
+    /**
+     * Same as {@link #searchVector(String, Embedding)}, but keeps the snippets apart, with their scores, so the caller
+     * can decide which of them to use. Each collection's dense matches are fused with its lexical matches for the
+     * message by reciprocal rank fusion, so a snippet's score is its fused score rather than its similarity. Only
+     * messages with a term that is rare in the collection have lexical matches; common words alone add nothing.
+     * <p>
+     * With {@code vector.search.lazy.content}, the dense queries return only ids and small payload fields, and the
+     * content of the snippets that survive fusion is fetched afterwards in one lookup per collection; the content of
+     * matches that are dropped is never sent. Lexical matches never carry content, so theirs is fetched the same way.
+     * @return The snippets of each collection in turn, each collection's best match first
+     */
+    public List<ContextSnippet> searchSnippets(String message, Embedding vector) throws ExecutionException, InterruptedException {
+
+        // Fire all collection queries before waiting on any of them
+        List<CollectionQuery> queries = new ArrayList<>();
+        List<ListenableFuture<List<Points.ScoredPoint>>> pending = new ArrayList<>();
+        for (CollectionQuery query : COLLECTION_QUERIES) {
+            if (collectionCatalog.contains(query.collectionName())) {
+                LOG.debug("Querying {} index", query.collectionName());
+                queries.add(query);
+                pending.add(queryCollection(query, vector));
+            } else {
+                LOG.info("{} index not found, skipping", query.collectionName());
             }
-        } else {
-            LOG.info("Code index not found, skipping");
         }
-        
-        // Only query confluence index if it exists
-        if (availableIndexes.contains("confluence")) {
-            LOG.info("Querying confluence index");
-            List<Points.ScoredPoint> confluencePoints = qdrantClient.queryAsync(Points.QueryPoints.newBuilder()
-                    .setCollectionName("confluence")
-                    .setQuery(nearest(vector))
-                    .setWithPayload(enable(true))
-                    .setLimit(10)
-                    .setScoreThreshold(0.2f)
-                    .build()).get();
-            
-            for (Points.ScoredPoint point : confluencePoints) {
-                String textChunk = point.getPayloadMap().get("content").getStringValue();
-                srb.append("\nConfluence snippet: ").append(textChunk);
+
+        // The lexical side is in memory and runs while the dense queries are in flight
+        List<List<LexicalIndex.Hit>> lexicalResults = new ArrayList<>();
+        for (CollectionQuery query : queries) {
+            lexicalResults.add(lexicalIndexService.search(query.collectionName(), message, query.limit()));
+        }
+
+        // Each query is bounded by its own deadline and degrades to an empty result, so this never fails
+        List<List<Points.ScoredPoint>> results = Futures.allAsList(pending).get();
+
+        List<Map<Points.PointId, ContextSnippet>> fused = new ArrayList<>();
+        List<ListenableFuture<Map<Points.PointId, String>>> contents = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            Map<Points.PointId, ContextSnippet> kept = fuse(queries.get(i), results.get(i), lexicalResults.get(i));
+            fused.add(kept);
+            contents.add(fetchContents(queries.get(i).collectionName(), kept));
+        }
+
+        List<Map<Points.PointId, String>> fetched = Futures.allAsList(contents).get();
+        List<ContextSnippet> snippets = new ArrayList<>();
+        for (int i = 0; i < fused.size(); i++) {
+            int before = snippets.size();
+            for (Map.Entry<Points.PointId, ContextSnippet> entry : fused.get(i).entrySet()) {
+                ContextSnippet snippet = entry.getValue();
+                if (snippet.content() != null) {
+                    snippets.add(snippet);
+                } else if (fetched.get(i).containsKey(entry.getKey())) {
+                    snippets.add(new ContextSnippet(snippet.label(), fetched.get(i).get(entry.getKey()), snippet.score()));
+                }
+                // Otherwise the point was deleted since the query, or its lookup failed
             }
-        } else {
-            LOG.info("Confluence index not found, skipping");
+            pipelineMetrics.retrievedChunks(queries.get(i).collectionName(), snippets.size() - before);
         }
 
-        return srb.toString();
+        return snippets;
+    }
+
+    // Reciprocal rank fusion: each list contributes 1 / (k + rank) for every point it contains. Lexical matches, and
+    // dense matches queried without content, have none until it is fetched
+    private Map<Points.PointId, ContextSnippet> fuse(CollectionQuery query, List<Points.ScoredPoint> dense, List<LexicalIndex.Hit> lexical) {
+        Map<Points.PointId, ContextSnippet> fused = new LinkedHashMap<>();
+        for (int rank = 0; rank < dense.size(); rank++) {
+            Points.ScoredPoint point = dense.get(rank);
+            JsonWithInt.Value content = point.getPayloadMap().get("content");
+            addRank(fused, point.getId(), query.snippetLabel(), content == null ? null : content.getStringValue(), rank);
+        }
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            LexicalIndex.Hit hit = lexical.get(rank);
+            addRank(fused, hit.id(), query.snippetLabel(), null, rank);
+        }
+
+        Map<Points.PointId, ContextSnippet> kept = new LinkedHashMap<>();
+        fused.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.comparingDouble(ContextSnippet::score).reversed()))
+                .limit(query.limit())
+                .forEach(entry -> kept.put(entry.getKey(), entry.getValue()));
+        return kept;
+    }
+
+    private void addRank(Map<Points.PointId, ContextSnippet> fused, Points.PointId id, String label, String content, int rank) {
+        float score = 1f / (rrfK + rank + 1);
+        fused.merge(id, new ContextSnippet(label, content, score), (existing, added) -> new ContextSnippet(label,
+                existing.content() != null ? existing.content() : added.content(), existing.score() + score));
+    }
+
+    // One lookup for the kept snippets that still lack their content; a failure drops them rather than the request
+    private ListenableFuture<Map<Points.PointId, String>> fetchContents(String collectionName, Map<Points.PointId, ContextSnippet> kept) {
+        List<Points.PointId> missing = kept.entrySet().stream()
+                .filter(entry -> entry.getValue().content() == null)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (missing.isEmpty()) {
+            return Futures.immediateFuture(Map.of());
+        }
+
+        ListenableFuture<List<Points.RetrievedPoint>> future = vectorStore.retrieve(Points.GetPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .addAllIds(missing)
+                .setWithPayload(include(List.of("content")))
+                .build(), Duration.ofMillis(collectionTimeoutMs));
+        timeUntilDone(future, PipelineMetrics.Stage.FETCH, collectionName);
+
+        ListenableFuture<Map<Points.PointId, String>> contents = Futures.transform(future, points -> {
+            Map<Points.PointId, String> byId = new HashMap<>();
+            for (Points.RetrievedPoint point : points) {
+                JsonWithInt.Value content = point.getPayloadMap().get("content");
+                if (content != null) {
+                    byId.put(point.getId(), content.getStringValue());
+                }
+            }
+            return byId;
+        }, MoreExecutors.directExecutor());
+
+        return Futures.catching(contents, Exception.class, e -> {
+            LOG.warn("Fetching content of {} snippets from {} index failed or exceeded {} ms, continuing without them",
+                    missing.size(), collectionName, collectionTimeoutMs, e);
+            return Map.of();
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<Points.ScoredPoint>> queryCollection(CollectionQuery query, Embedding vector) {
+        ListenableFuture<List<Points.ScoredPoint>> future = vectorStore.query(withSearchParams(Points.QueryPoints.newBuilder()
+                .setCollectionName(query.collectionName())
+                .setQuery(nearest(vector.values()))
+                .setWithPayload(lazyContent ? include(RANKING_FIELDS) : enable(true))
+                .setLimit(query.limit())
+                .setScoreThreshold(query.scoreThreshold())).build(), Duration.ofMillis(collectionTimeoutMs));
+        timeUntilDone(future, PipelineMetrics.Stage.SEARCH, query.collectionName());
+
+        return Futures.catching(future, Exception.class, e -> {
+            if (Status.fromThrowable(e).getCode() == Status.Code.NOT_FOUND) {
+                collectionCatalog.invalidate(query.collectionName());
+            }
+            LOG.warn("Query against {} index failed or exceeded {} ms, continuing without it",
+                    query.collectionName(), collectionTimeoutMs, e);
+            return List.of();
+        }, MoreExecutors.directExecutor());
+    }
+
+    // Failed calls are timed and traced too, under their own outcome, so a collection running into its deadline shows up
+    private void timeUntilDone(ListenableFuture<? extends List<?>> future, PipelineMetrics.Stage stage, String collectionName) {
+        long start = System.nanoTime();
+        CollectionQueryEvent event = new CollectionQueryEvent();
+        event.begin();
+        future.addListener(() -> {
+            List<?> points = List.of();
+            String outcome;
+            try {
+                points = Futures.getDone(future);
+                outcome = "success";
+            } catch (ExecutionException | CancellationException e) {
+                outcome = "failure";
+            }
+            pipelineMetrics.timer(stage, "collection", collectionName, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (event.shouldCommit()) {
+                event.collection = collectionName;
+                event.phase = stage == PipelineMetrics.Stage.SEARCH ? "search" : "fetch";
+                event.hits = points.size();
+                event.failed = outcome.equals("failure");
+                // Search results come best first
+                if (!points.isEmpty() && points.get(0) instanceof Points.ScoredPoint top
+                        && points.get(points.size() - 1) instanceof Points.ScoredPoint lowest) {
+                    event.topScore = top.getScore();
+                    event.lowestScore = lowest.getScore();
+                }
+                event.commit();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    // Quantized collections are searched through their quantized vectors, with the configured rescoring
+    private Points.QueryPoints.Builder withSearchParams(Points.QueryPoints.Builder request) {
+        Points.SearchParams params = quantizationSettings.searchParams(request.getCollectionName());
+        return params == null ? request : request.setParams(params);
     }
 
     public List<IndexContent> searchContents(String index, String query) throws ExecutionException, InterruptedException {
-        List<Float> vector = embeddingService.getEmbedding(query);
-        LOG.info("Searching in all files for: {}", query);
+        Embedding vector = embeddingService.getEmbedding(query);
+        LOG.debug("Searching in all files for: {}", query);
 
         List<IndexContent> results = new ArrayList<>();
 
-            List<Points.ScoredPoint> points = qdrantClient.queryAsync(Points.QueryPoints.newBuilder()
+            List<Points.ScoredPoint> points = vectorStore.query(withSearchParams(Points.QueryPoints.newBuilder()
                     .setCollectionName(index)
-                    .setQuery(nearest(vector))
-                    .setWithPayload(enable(true))
+                    .setQuery(nearest(vector.values()))
+                    .setWithPayload(include(List.of("area", "item_path", "chunk_id", "content")))
                     .setLimit(20) // Adjust limit as needed
-                    .setScoreThreshold(0.1f) // Adjust similarity threshold
-                    .build()).get();
+                    .setScoreThreshold(0.1f)) // Adjust similarity threshold
+                    .build(), null).get();
 
             for (Points.ScoredPoint point : points) {
-                String projectName = point.getPayloadMap().get("area").getStringValue();
-                String itemPath = point.getPayloadMap().get("item_path").getStringValue();
-                String chunkId = point.getPayloadMap().get("chunk_id").getStringValue();
-                String content = point.getPayloadMap().get("content").getStringValue();
-
-                results.add(new IndexContent(projectName, itemPath, chunkId, content));
-
+                results.add(IndexContent.fromPayload(point.getPayloadMap()));
         }
 
         return results;
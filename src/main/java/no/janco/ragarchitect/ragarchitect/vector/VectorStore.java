@@ -0,0 +1,55 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Where collections of points are stored and searched. Requests and results are Qdrant's own messages, so the
+ * application reads the same either way; {@link QdrantVectorStore} sends them to the Qdrant server, while the
+ * embedded store ({@code embedded-vector-store} profile) answers them in-process for deployments without one.
+ * <p>
+ * A missing collection fails with a gRPC {@code NOT_FOUND} status from both, which is how callers tell it apart from
+ * other failures.
+ */
+public interface VectorStore {
+
+    ListenableFuture<List<String>> listCollections();
+
+    ListenableFuture<CollectionCatalog.CollectionMetadata> getCollectionMetadata(String collectionName);
+
+    ListenableFuture<Boolean> collectionExists(String collectionName);
+
+    ListenableFuture<Collections.CollectionOperationResponse> createCollection(String collectionName, Collections.VectorParams vectorParams);
+
+    /**
+     * Sets how the collection's vectors are quantized for search, or disables quantization. Queries then use the
+     * quantized vectors, as directed by the quantization part of their {@link Points.SearchParams}.
+     */
+    ListenableFuture<Collections.CollectionOperationResponse> updateQuantization(String collectionName, Collections.QuantizationConfigDiff quantization);
+
+    /**
+     * Inserts the points, replacing any with the same id.
+     */
+    ListenableFuture<Points.UpdateResult> upsert(String collectionName, List<Points.PointStruct> points);
+
+    ListenableFuture<Points.UpdateResult> delete(String collectionName, List<Points.PointId> ids);
+
+    ListenableFuture<Points.UpdateResult> delete(String collectionName, Points.Filter filter);
+
+    ListenableFuture<Points.ScrollResponse> scroll(Points.ScrollPoints request);
+
+    /**
+     * @param timeout Deadline for the query, or null for none
+     */
+    ListenableFuture<List<Points.ScoredPoint>> query(Points.QueryPoints request, @Nullable Duration timeout);
+
+    /**
+     * @param timeout Deadline for the lookup, or null for none
+     */
+    ListenableFuture<List<Points.RetrievedPoint>> retrieve(Points.GetPoints request, @Nullable Duration timeout);
+}
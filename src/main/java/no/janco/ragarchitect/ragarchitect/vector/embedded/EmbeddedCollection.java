@@ -0,0 +1,497 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntPredicate;
+
+import static no.janco.ragarchitect.ragarchitect.vector.embedded.VectorSegments.SEGMENT_SLOTS;
+
+/**
+ * One collection of the {@link EmbeddedVectorStore}, in a directory of its own:
+ * <ul>
+ *     <li>{@code collection.properties}: the vector size and distance, and the quantization if any</li>
+ *     <li>{@code vectors-NNNN.f32}: the vectors by slot, see {@link VectorSegments}</li>
+ *     <li>{@code points.log}: every upsert and delete in order, with the point's id and payload and its vector's slot</li>
+ *     <li>{@code graph.bin}: the {@link HnswGraph}, as of the log's length when the collection was last closed</li>
+ * </ul>
+ * An upsert writes the point to a new slot, leaving its previous slot dead. Only ids and log offsets are kept on the
+ * heap; payloads are read back from the log when a point is returned. Opening a collection replays the log to find
+ * the live slots, then loads the graph and adds what was written after it; after a crash the graph is rebuilt. The
+ * {@link QuantizedVectors} of a quantized collection are only kept in memory, and rebuilt from the vectors on open.
+ * <p>
+ * The vectors of an upsert are forced to disk before its log record is written, so whatever part of the log survives
+ * a process crash or a power loss only refers to vectors that were stored. The log itself is left to the operating
+ * system until the collection is closed, so the last upserts and deletes before a power loss may be lost.
+ */
+final class EmbeddedCollection implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedCollection.class);
+
+    private static final String PROPERTIES_FILE = "collection.properties";
+    private static final String LOG_FILE = "points.log";
+    private static final String GRAPH_FILE = "graph.bin";
+
+    // Log records: type, slot, then the length and bytes of the point without its vector, or of the deleted id
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = 9;
+    private static final long DEAD = -1;
+
+    // The order Qdrant scrolls in: numeric ids first, then UUIDs
+    private static final Comparator<Points.PointId> ID_ORDER = Comparator.comparing(Points.PointId::hasUuid)
+            .thenComparingLong(Points.PointId::getNum)
+            .thenComparing(Points.PointId::getUuid);
+
+    private final String name;
+    private final Path directory;
+    private final int dimension;
+    private final boolean cosine;
+    private final VectorSegments vectors;
+    private final HnswGraph graph;
+    private volatile QuantizedVectors quantized;
+
+    private final Object logLock = new Object();
+    private volatile FileChannel log;
+    private volatile boolean closed;
+
+    // Live points, each with its slot
+    private final ConcurrentSkipListMap<Points.PointId, Integer> slots = new ConcurrentSkipListMap<>(ID_ORDER);
+    // Per slot, where its upsert record starts in the log, or DEAD; pages of SEGMENT_SLOTS, shared between copies
+    private volatile AtomicLongArray[] recordOffsets = new AtomicLongArray[0];
+    private volatile int pointCount;
+
+    // Owned by the writer
+    private int nextSlot;
+    private long logSize;
+
+    private EmbeddedCollection(String name, Path directory, int dimension, boolean cosine, int m, int efConstruction) throws IOException {
+        this.name = name;
+        this.directory = directory;
+        this.dimension = dimension;
+        this.cosine = cosine;
+        this.vectors = new VectorSegments(directory, dimension);
+        this.graph = new HnswGraph(vectors, m, efConstruction);
+        this.log = openLog();
+    }
+
+    static boolean exists(Path directory) {
+        return Files.exists(directory.resolve(PROPERTIES_FILE));
+    }
+
+    static EmbeddedCollection create(Path directory, String name, Collections.VectorParams vectorParams, int m, int efConstruction)
+            throws IOException {
+        if (vectorParams.getDistance() != Collections.Distance.Cosine && vectorParams.getDistance() != Collections.Distance.Dot) {
+            throw new IllegalArgumentException("The embedded vector store supports cosine and dot product distance, not "
+                    + vectorParams.getDistance());
+        }
+        Files.createDirectories(directory);
+        Properties properties = new Properties();
+        properties.setProperty("vector.size", Long.toString(vectorParams.getSize()));
+        properties.setProperty("distance", vectorParams.getDistance().name());
+        storeProperties(directory, name, properties);
+        return open(directory, name, m, efConstruction);
+    }
+
+    static EmbeddedCollection open(Path directory, String name, int m, int efConstruction) throws IOException {
+        Properties properties = readProperties(directory);
+        EmbeddedCollection collection = new EmbeddedCollection(name, directory,
+                Integer.parseInt(properties.getProperty("vector.size")),
+                Collections.Distance.valueOf(properties.getProperty("distance")) == Collections.Distance.Cosine,
+                m, efConstruction);
+        String quantization = properties.getProperty("quantization");
+        collection.load(quantization == null ? null : QuantizedVectors.Type.valueOf(quantization));
+        return collection;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    int pointCount() {
+        return pointCount;
+    }
+
+    QuantizedVectors.Type quantization() {
+        QuantizedVectors current = quantized;
+        return current == null ? null : current.type();
+    }
+
+    /**
+     * Quantizes every live vector, replacing any previous quantization, and keeps new vectors quantized from then on.
+     * @param type The quantization, or null to drop it
+     */
+    synchronized void quantize(QuantizedVectors.Type type) throws IOException {
+        if (type == quantization()) {
+            return;
+        }
+        Properties properties = readProperties(directory);
+        if (type == null) {
+            properties.remove("quantization");
+        } else {
+            properties.setProperty("quantization", type.name());
+        }
+        storeProperties(directory, name, properties);
+        quantized = type == null ? null : quantizeLiveSlots(type);
+        LOG.info("Collection {} quantization set to {}", name, type);
+    }
+
+    synchronized void upsert(List<Points.PointStruct> points) throws IOException {
+        // Everything is checked before anything is written
+        float[][] pointVectors = new float[points.size()][];
+        for (int i = 0; i < points.size(); i++) {
+            pointVectors[i] = vectorOf(points.get(i));
+        }
+
+        // Vectors go in first, and reach the disk before the log records do, so a log record never refers to a slot
+        // without its vector, even after a power loss
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(buffer);
+        int firstSlot = nextSlot;
+        long[] offsets = new long[points.size()];
+        QuantizedVectors quantizedVectors = quantized;
+        for (int i = 0; i < points.size(); i++) {
+            vectors.write(firstSlot + i, pointVectors[i]);
+            if (quantizedVectors != null) {
+                quantizedVectors.set(firstSlot + i, pointVectors[i]);
+            }
+            byte[] bytes = points.get(i).toBuilder().clearVectors().build().toByteArray();
+            offsets[i] = logSize + records.size();
+            records.writeByte(UPSERT);
+            records.writeInt(firstSlot + i);
+            records.writeInt(bytes.length);
+            records.write(bytes);
+        }
+        vectors.force(firstSlot, points.size());
+        appendToLog(buffer.toByteArray());
+        nextSlot += points.size();
+
+        for (int i = 0; i < points.size(); i++) {
+            place(points.get(i).getId(), firstSlot + i, offsets[i]);
+            graph.insert(firstSlot + i);
+        }
+    }
+
+    synchronized void delete(Collection<Points.PointId> ids) throws IOException {
+        Map<Points.PointId, Integer> deleted = new LinkedHashMap<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(buffer);
+        for (Points.PointId id : ids) {
+            Integer slot = slots.get(id);
+            if (slot != null && deleted.putIfAbsent(id, slot) == null) {
+                byte[] bytes = id.toByteArray();
+                records.writeByte(DELETE);
+                records.writeInt(slot);
+                records.writeInt(bytes.length);
+                records.write(bytes);
+            }
+        }
+        if (deleted.isEmpty()) {
+            return;
+        }
+        appendToLog(buffer.toByteArray());
+        deleted.forEach(this::remove);
+    }
+
+    /**
+     * Approximate nearest neighbours, from the graph.
+     */
+    List<HnswGraph.Neighbor> search(float[] query, int limit, int ef) {
+        return graph.search(normalized(query), limit, ef, this::isLive);
+    }
+
+    /**
+     * Exact nearest neighbours among the live slots accepted, by comparing against every one of them.
+     */
+    List<HnswGraph.Neighbor> exactSearch(float[] query, int limit, IntPredicate accept) {
+        float[] normalized = normalized(query);
+        float[] scratch = new float[dimension];
+        PriorityQueue<HnswGraph.Neighbor> best = new PriorityQueue<>(Comparator.comparingDouble(HnswGraph.Neighbor::similarity));
+        for (int slot : slots.values()) {
+            if (!accept.test(slot)) {
+                continue;
+            }
+            best.add(new HnswGraph.Neighbor(slot, vectors.dot(slot, normalized, scratch)));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<HnswGraph.Neighbor> neighbors = new ArrayList<>(best);
+        neighbors.sort(Comparator.comparingDouble(HnswGraph.Neighbor::similarity).reversed());
+        return neighbors;
+    }
+
+    /**
+     * Nearest neighbours among the live slots accepted, by scanning the quantized vectors; see
+     * {@link QuantizedVectors#search}. Only for a quantized collection.
+     * @param rescore Whether the best candidates are rescored against the original vectors
+     */
+    List<HnswGraph.Neighbor> quantizedSearch(float[] query, int limit, double oversampling, boolean rescore, IntPredicate accept) {
+        QuantizedVectors quantizedVectors = quantized;
+        if (quantizedVectors == null) {
+            throw new IllegalStateException("Collection " + name + " is not quantized");
+        }
+        float[] normalized = normalized(query);
+        float[] scratch = new float[dimension];
+        List<QuantizedVectors.Match> matches = quantizedVectors.search(normalized, limit, oversampling,
+                slot -> isLive(slot) && accept.test(slot), rescore ? slot -> vectors.dot(slot, normalized, scratch) : null);
+        return matches.stream().map(match -> new HnswGraph.Neighbor(match.slot(), match.score())).toList();
+    }
+
+    /**
+     * @return The live points from the given id on, in id order
+     */
+    NavigableMap<Points.PointId, Integer> pointsFrom(Points.PointId from) {
+        return from == null ? slots : slots.tailMap(from, true);
+    }
+
+    Integer slot(Points.PointId id) {
+        return slots.get(id);
+    }
+
+    /**
+     * @return The point in the slot, without its vector, or null if the slot is dead
+     */
+    Points.PointStruct point(int slot) throws IOException {
+        long offset = recordOffset(slot);
+        if (offset == DEAD) {
+            return null;
+        }
+        ByteBuffer header = readLog(offset, RECORD_HEADER_BYTES);
+        return Points.PointStruct.parseFrom(readLog(offset + RECORD_HEADER_BYTES, header.getInt(5)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            vectors.flush();
+            log.close();
+            // Written whole under another name first, so a crash never leaves half a graph to be loaded
+            Path graphFile = directory.resolve(GRAPH_FILE);
+            Path partial = directory.resolve(GRAPH_FILE + ".partial");
+            graph.save(partial, logSize, nextSlot);
+            Files.move(partial, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private void load(QuantizedVectors.Type quantization) throws IOException {
+        long start = System.nanoTime();
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(LOG_FILE))))) {
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                try {
+                    int slot = in.readInt();
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    if (type == UPSERT) {
+                        place(Points.PointStruct.parseFrom(bytes).getId(), slot, offset);
+                    } else if (type == DELETE) {
+                        remove(Points.PointId.parseFrom(bytes), slot);
+                    } else {
+                        throw new IOException("Unknown record type " + type + " at " + offset + " in " + directory.resolve(LOG_FILE));
+                    }
+                    offset += RECORD_HEADER_BYTES + bytes.length;
+                    nextSlot = Math.max(nextSlot, slot + 1);
+                } catch (EOFException e) {
+                    LOG.warn("Log of collection {} ends in an incomplete record at {}, probably from a crash; dropping it", name, offset);
+                    break;
+                }
+            }
+        }
+        // Anything after the last complete record would otherwise be in the way of the next one
+        log.truncate(offset);
+        logSize = offset;
+
+        if (quantization != null) {
+            quantized = quantizeLiveSlots(quantization);
+        }
+
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        int linked = Files.exists(graphFile) ? graph.load(graphFile, logSize) : -1;
+        if (linked < 0) {
+            LOG.info("Building graph of collection {}, it was not closed cleanly", name);
+            linked = 0;
+        }
+        for (int slot = linked; slot < nextSlot; slot++) {
+            if (isLive(slot)) {
+                graph.insert(slot);
+            }
+        }
+        LOG.info("Opened collection {} with {} points in {} ms", name, pointCount, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private QuantizedVectors quantizeLiveSlots(QuantizedVectors.Type type) {
+        QuantizedVectors quantizedVectors = new QuantizedVectors(type, dimension);
+        float[] vector = new float[dimension];
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (isLive(slot)) {
+                vectors.read(slot, vector);
+                quantizedVectors.set(slot, vector);
+            }
+        }
+        return quantizedVectors;
+    }
+
+    private static Properties readProperties(Path directory) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(directory.resolve(PROPERTIES_FILE))) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static void storeProperties(Path directory, String name, Properties properties) throws IOException {
+        try (OutputStream out = Files.newOutputStream(directory.resolve(PROPERTIES_FILE))) {
+            properties.store(out, "Embedded vector store collection " + name);
+        }
+    }
+
+    private void place(Points.PointId id, int slot, long offset) {
+        setRecordOffset(slot, offset);
+        Integer previous = slots.put(id, slot);
+        if (previous != null) {
+            setRecordOffset(previous, DEAD);
+        } else {
+            pointCount++;
+        }
+    }
+
+    private void remove(Points.PointId id, int slot) {
+        if (slots.remove(id, slot)) {
+            setRecordOffset(slot, DEAD);
+            pointCount--;
+        }
+    }
+
+    private boolean isLive(int slot) {
+        return recordOffset(slot) != DEAD;
+    }
+
+    private long recordOffset(int slot) {
+        AtomicLongArray[] pages = recordOffsets;
+        int page = slot / SEGMENT_SLOTS;
+        return page < pages.length ? pages[page].get(slot % SEGMENT_SLOTS) : DEAD;
+    }
+
+    private void setRecordOffset(int slot, long offset) {
+        AtomicLongArray[] pages = recordOffsets;
+        int page = slot / SEGMENT_SLOTS;
+        if (page >= pages.length) {
+            AtomicLongArray[] grown = Arrays.copyOf(pages, page + 1);
+            for (int i = pages.length; i <= page; i++) {
+                grown[i] = new AtomicLongArray(SEGMENT_SLOTS);
+                for (int j = 0; j < SEGMENT_SLOTS; j++) {
+                    grown[i].setPlain(j, DEAD);
+                }
+            }
+            recordOffsets = grown;
+            pages = grown;
+        }
+        pages[page].set(slot % SEGMENT_SLOTS, offset);
+    }
+
+    private float[] vectorOf(Points.PointStruct point) {
+        if (!point.getVectors().hasVector()) {
+            throw new IllegalArgumentException("Point " + point.getId() + " has no single unnamed vector");
+        }
+        Points.Vector vector = point.getVectors().getVector();
+        List<Float> data = vector.hasDense() ? vector.getDense().getDataList() : vector.getDataList();
+        if (data.size() != dimension) {
+            throw new IllegalArgumentException("Point " + point.getId() + " has a vector of size " + data.size()
+                    + ", collection " + name + " takes " + dimension);
+        }
+        float[] values = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            values[i] = data.get(i);
+        }
+        return normalized(values);
+    }
+
+    // Cosine similarity is the dot product of normalized vectors, so with cosine distance vectors are stored normalized
+    private float[] normalized(float[] vector) {
+        if (!cosine) {
+            return vector;
+        }
+        double norm = Math.sqrt(VectorSegments.dot(vector, vector));
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private void appendToLog(byte[] records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        FileChannel channel = logChannel();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, logSize + buffer.position());
+        }
+        logSize += records.length;
+    }
+
+    private ByteBuffer readLog(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        FileChannel channel = logChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Log of collection " + name + " ends before " + (position + length));
+            }
+        }
+        return buffer.flip();
+    }
+
+    // An interrupted read or write closes the channel for every thread using it, so it is reopened on next use
+    private FileChannel logChannel() throws IOException {
+        FileChannel channel = log;
+        if (!channel.isOpen() && !closed) {
+            synchronized (logLock) {
+                if (!log.isOpen()) {
+                    log = openLog();
+                }
+                channel = log;
+            }
+        }
+        return channel;
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+}
@@ -0,0 +1,411 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import jakarta.annotation.PreDestroy;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionCatalog;
+import no.janco.ragarchitect.ragarchitect.vector.VectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps collections on local disk and searches them in-process, for small and medium deployments that would rather
+ * not run a Qdrant server, and without a network hop on the chat path. Enabled by the {@code embedded-vector-store}
+ * profile. Each collection is a directory under {@code vector.store.dir} (see {@link EmbeddedCollection}), opened on
+ * first use; searches go through an {@link HnswGraph}, except filtered and exact ones, which compare against every
+ * point the filter matches. In a quantized collection those comparisons scan the {@link QuantizedVectors} instead,
+ * and so do unfiltered searches, unless the query's search parameters ask to ignore quantization.
+ * <p>
+ * What the application asks of a vector store is supported, not all of Qdrant: a single unnamed dense vector per
+ * point with cosine or dot product distance, nearest queries, filters of keyword, integer and boolean matches and
+ * id conditions, and scalar (int8) or binary quantization. Anything else fails with {@code INVALID_ARGUMENT}.
+ * Requests run on the calling thread, so the futures returned are already complete.
+ * <p>
+ * Only the backend's own {@link no.janco.ragarchitect.ragarchitect.indexer.GitIndexer} writes here. The Python
+ * indexers write to a Qdrant server, so the collections only they fill, such as {@code confluence}, do not exist in
+ * this store and are skipped when chat context is gathered.
+ */
+@Service
+@Profile("embedded-vector-store")
+public class EmbeddedVectorStore implements VectorStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedVectorStore.class);
+
+    // Collection names become directory names
+    private static final Pattern COLLECTION_NAME = Pattern.compile("[A-Za-z0-9_-]+");
+
+    // Qdrant's default when a request leaves the limit out
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final Path directory;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+
+    private final Map<String, EmbeddedCollection> collections = new ConcurrentHashMap<>();
+
+    /**
+     * @param m Links per node and layer of the graph; more gives better recall for more memory and slower inserts
+     * @param efConstruction Candidates considered when linking a new node
+     * @param efSearch Candidates kept while searching, at least the query's limit; more gives better recall
+     */
+    public EmbeddedVectorStore(@Value("${vector.store.dir:/tmp/ragarchitect/vectors}") String directory,
+                               @Value("${vector.store.hnsw.m:16}") int m,
+                               @Value("${vector.store.hnsw.ef.construction:100}") int efConstruction,
+                               @Value("${vector.store.hnsw.ef.search:64}") int efSearch) throws IOException {
+        this.directory = Path.of(directory);
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        Files.createDirectories(this.directory);
+        LOG.info("Embedded vector store in {}", this.directory);
+    }
+
+    @Override
+    public ListenableFuture<List<String>> listCollections() {
+        return run(() -> {
+            try (Stream<Path> paths = Files.list(directory)) {
+                return paths.filter(EmbeddedCollection::exists)
+                        .map(path -> path.getFileName().toString())
+                        .sorted()
+                        .toList();
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<CollectionCatalog.CollectionMetadata> getCollectionMetadata(String collectionName) {
+        return run(() -> {
+            EmbeddedCollection collection = collection(collectionName);
+            return new CollectionCatalog.CollectionMetadata(collectionName, collection.dimension(), collection.pointCount());
+        });
+    }
+
+    @Override
+    public ListenableFuture<Boolean> collectionExists(String collectionName) {
+        return run(() -> collections.containsKey(collectionName) || EmbeddedCollection.exists(collectionPath(collectionName)));
+    }
+
+    @Override
+    public ListenableFuture<Collections.CollectionOperationResponse> createCollection(String collectionName, Collections.VectorParams vectorParams) {
+        return run(() -> {
+            synchronized (this) {
+                Path path = collectionPath(collectionName);
+                if (EmbeddedCollection.exists(path)) {
+                    throw Status.ALREADY_EXISTS.withDescription("Collection " + collectionName + " already exists").asRuntimeException();
+                }
+                collections.put(collectionName, EmbeddedCollection.create(path, collectionName, vectorParams, m, efConstruction));
+            }
+            LOG.info("Created collection {} with vector size {}", collectionName, vectorParams.getSize());
+            return Collections.CollectionOperationResponse.newBuilder().setResult(true).build();
+        });
+    }
+
+    @Override
+    public ListenableFuture<Collections.CollectionOperationResponse> updateQuantization(String collectionName, Collections.QuantizationConfigDiff quantization) {
+        return run(() -> {
+            collection(collectionName).quantize(switch (quantization.getQuantizationCase()) {
+                case SCALAR -> QuantizedVectors.Type.SCALAR;
+                case BINARY -> QuantizedVectors.Type.BINARY;
+                case DISABLED -> null;
+                default -> throw new IllegalArgumentException("The embedded vector store does not support "
+                        + quantization.getQuantizationCase() + " quantization");
+            });
+            return Collections.CollectionOperationResponse.newBuilder().setResult(true).build();
+        });
+    }
+
+    @Override
+    public ListenableFuture<Points.UpdateResult> upsert(String collectionName, List<Points.PointStruct> points) {
+        return run(() -> {
+            collection(collectionName).upsert(points);
+            return completed();
+        });
+    }
+
+    @Override
+    public ListenableFuture<Points.UpdateResult> delete(String collectionName, List<Points.PointId> ids) {
+        return run(() -> {
+            collection(collectionName).delete(ids);
+            return completed();
+        });
+    }
+
+    @Override
+    public ListenableFuture<Points.UpdateResult> delete(String collectionName, Points.Filter filter) {
+        return run(() -> {
+            EmbeddedCollection collection = collection(collectionName);
+            List<Points.PointId> matching = new ArrayList<>();
+            for (int slot : collection.pointsFrom(null).values()) {
+                Points.PointStruct point = collection.point(slot);
+                if (point != null && matches(filter, point)) {
+                    matching.add(point.getId());
+                }
+            }
+            collection.delete(matching);
+            return completed();
+        });
+    }
+
+    @Override
+    public ListenableFuture<Points.ScrollResponse> scroll(Points.ScrollPoints request) {
+        return run(() -> {
+            EmbeddedCollection collection = collection(request.getCollectionName());
+            int limit = request.hasLimit() ? request.getLimit() : DEFAULT_LIMIT;
+            Points.ScrollResponse.Builder response = Points.ScrollResponse.newBuilder();
+            for (int slot : collection.pointsFrom(request.hasOffset() ? request.getOffset() : null).values()) {
+                Points.PointStruct point = collection.point(slot);
+                if (point == null || (request.hasFilter() && !matches(request.getFilter(), point))) {
+                    continue;
+                }
+                if (response.getResultCount() == limit) {
+                    response.setNextPageOffset(point.getId());
+                    break;
+                }
+                response.addResult(Points.RetrievedPoint.newBuilder()
+                        .setId(point.getId())
+                        .putAllPayload(payload(point, request.getWithPayload(), true)));
+            }
+            return response.build();
+        });
+    }
+
+    /**
+     * The timeout is not applied; an in-process search has no network to wait for.
+     */
+    @Override
+    public ListenableFuture<List<Points.ScoredPoint>> query(Points.QueryPoints request, @Nullable Duration timeout) {
+        return run(() -> {
+            EmbeddedCollection collection = collection(request.getCollectionName());
+            float[] vector = queryVector(request);
+            int limit = request.hasLimit() ? (int) request.getLimit() : DEFAULT_LIMIT;
+            int offset = request.hasOffset() ? (int) request.getOffset() : 0;
+
+            IntPredicate accept = !request.hasFilter() ? slot -> true : slot -> {
+                try {
+                    Points.PointStruct point = collection.point(slot);
+                    return point != null && matches(request.getFilter(), point);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read point in slot " + slot + " of " + request.getCollectionName(), e);
+                }
+            };
+            // Qdrant's defaults: no oversampling, and rescoring
+            Points.QuantizationSearchParams quantization = request.getParams().getQuantization();
+            List<HnswGraph.Neighbor> neighbors;
+            if (collection.quantization() != null && !quantization.getIgnore()) {
+                neighbors = collection.quantizedSearch(vector, offset + limit,
+                        quantization.hasOversampling() ? quantization.getOversampling() : 1,
+                        !quantization.hasRescore() || quantization.getRescore(), accept);
+            } else if (request.hasFilter() || request.getParams().getExact()) {
+                neighbors = collection.exactSearch(vector, offset + limit, accept);
+            } else {
+                neighbors = collection.search(vector, offset + limit, efSearch);
+            }
+
+            List<Points.ScoredPoint> points = new ArrayList<>(limit);
+            for (int i = offset; i < neighbors.size(); i++) {
+                HnswGraph.Neighbor neighbor = neighbors.get(i);
+                if (request.hasScoreThreshold() && neighbor.similarity() < request.getScoreThreshold()) {
+                    break;
+                }
+                Points.PointStruct point = collection.point(neighbor.node());
+                if (point == null) {
+                    // Replaced or deleted since the search
+                    continue;
+                }
+                points.add(Points.ScoredPoint.newBuilder()
+                        .setId(point.getId())
+                        .putAllPayload(payload(point, request.getWithPayload(), false))
+                        .setScore(neighbor.similarity())
+                        .build());
+            }
+            return points;
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<Points.RetrievedPoint>> retrieve(Points.GetPoints request, @Nullable Duration timeout) {
+        return run(() -> {
+            EmbeddedCollection collection = collection(request.getCollectionName());
+            List<Points.RetrievedPoint> points = new ArrayList<>();
+            for (Points.PointId id : request.getIdsList()) {
+                Integer slot = collection.slot(id);
+                Points.PointStruct point = slot == null ? null : collection.point(slot);
+                if (point != null) {
+                    points.add(Points.RetrievedPoint.newBuilder()
+                            .setId(point.getId())
+                            .putAllPayload(payload(point, request.getWithPayload(), true))
+                            .build());
+                }
+            }
+            return points;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        collections.forEach((name, collection) -> {
+            try {
+                collection.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close collection {}", name, e);
+            }
+        });
+    }
+
+    private EmbeddedCollection collection(String collectionName) throws IOException {
+        EmbeddedCollection collection = collections.get(collectionName);
+        if (collection != null) {
+            return collection;
+        }
+        synchronized (this) {
+            collection = collections.get(collectionName);
+            if (collection == null) {
+                Path path = collectionPath(collectionName);
+                if (!EmbeddedCollection.exists(path)) {
+                    throw Status.NOT_FOUND.withDescription("Collection " + collectionName + " not found").asRuntimeException();
+                }
+                collection = EmbeddedCollection.open(path, collectionName, m, efConstruction);
+                collections.put(collectionName, collection);
+            }
+            return collection;
+        }
+    }
+
+    private Path collectionPath(String collectionName) {
+        if (!COLLECTION_NAME.matcher(collectionName).matches()) {
+            throw new IllegalArgumentException("Invalid collection name " + collectionName);
+        }
+        return directory.resolve(collectionName);
+    }
+
+    private static float[] queryVector(Points.QueryPoints request) {
+        if (!request.getQuery().hasNearest() || !request.getQuery().getNearest().hasDense()) {
+            throw new IllegalArgumentException("The embedded vector store only supports nearest queries by dense vector");
+        }
+        List<Float> data = request.getQuery().getNearest().getDense().getDataList();
+        float[] vector = new float[data.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = data.get(i);
+        }
+        return vector;
+    }
+
+    /**
+     * @param byDefault Whether the payload is returned if the request does not say; Qdrant returns it from scroll
+     *                  and retrieve, but not from query
+     */
+    private static Map<String, JsonWithInt.Value> payload(Points.PointStruct point, Points.WithPayloadSelector selector, boolean byDefault) {
+        return switch (selector.getSelectorOptionsCase()) {
+            case ENABLE -> selector.getEnable() ? point.getPayloadMap() : Map.of();
+            case INCLUDE -> selected(point.getPayloadMap(), selector.getInclude().getFieldsList(), true);
+            case EXCLUDE -> selected(point.getPayloadMap(), selector.getExclude().getFieldsList(), false);
+            case SELECTOROPTIONS_NOT_SET -> byDefault ? point.getPayloadMap() : Map.of();
+        };
+    }
+
+    private static Map<String, JsonWithInt.Value> selected(Map<String, JsonWithInt.Value> payload, List<String> fields, boolean include) {
+        Map<String, JsonWithInt.Value> selected = new LinkedHashMap<>();
+        payload.forEach((key, value) -> {
+            if (fields.contains(key) == include) {
+                selected.put(key, value);
+            }
+        });
+        return selected;
+    }
+
+    private static boolean matches(Points.Filter filter, Points.PointStruct point) {
+        for (Points.Condition condition : filter.getMustList()) {
+            if (!matches(condition, point)) {
+                return false;
+            }
+        }
+        for (Points.Condition condition : filter.getMustNotList()) {
+            if (matches(condition, point)) {
+                return false;
+            }
+        }
+        if (filter.getShouldCount() == 0) {
+            return true;
+        }
+        for (Points.Condition condition : filter.getShouldList()) {
+            if (matches(condition, point)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Points.Condition condition, Points.PointStruct point) {
+        return switch (condition.getConditionOneOfCase()) {
+            case FIELD -> {
+                if (!condition.getField().hasMatch()) {
+                    throw new IllegalArgumentException("The embedded vector store only supports match conditions on fields");
+                }
+                JsonWithInt.Value value = point.getPayloadMap().get(condition.getField().getKey());
+                yield value != null && matches(condition.getField().getMatch(), value);
+            }
+            case HAS_ID -> condition.getHasId().getHasIdList().contains(point.getId());
+            case FILTER -> matches(condition.getFilter(), point);
+            default -> throw new IllegalArgumentException("The embedded vector store does not support "
+                    + condition.getConditionOneOfCase() + " conditions");
+        };
+    }
+
+    // A list matches if any of its values does, as in Qdrant
+    private static boolean matches(Points.Match match, JsonWithInt.Value value) {
+        if (value.hasListValue()) {
+            return value.getListValue().getValuesList().stream().anyMatch(element -> matches(match, element));
+        }
+        return switch (match.getMatchValueCase()) {
+            case KEYWORD -> value.hasStringValue() && value.getStringValue().equals(match.getKeyword());
+            case KEYWORDS -> value.hasStringValue() && match.getKeywords().getStringsList().contains(value.getStringValue());
+            case EXCEPT_KEYWORDS -> value.hasStringValue() && !match.getExceptKeywords().getStringsList().contains(value.getStringValue());
+            case INTEGER -> value.hasIntegerValue() && value.getIntegerValue() == match.getInteger();
+            case INTEGERS -> value.hasIntegerValue() && match.getIntegers().getIntegersList().contains(value.getIntegerValue());
+            case BOOLEAN -> value.hasBoolValue() && value.getBoolValue() == match.getBoolean();
+            default -> throw new IllegalArgumentException("The embedded vector store does not support "
+                    + match.getMatchValueCase() + " matches");
+        };
+    }
+
+    private static Points.UpdateResult completed() {
+        return Points.UpdateResult.newBuilder().setStatus(Points.UpdateStatus.Completed).build();
+    }
+
+    // Failures are reported through the future, with the gRPC status Qdrant would have answered with
+    private static <T> ListenableFuture<T> run(Callable<T> request) {
+        try {
+            return Futures.immediateFuture(request.call());
+        } catch (StatusRuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        } catch (IllegalArgumentException e) {
+            return Futures.immediateFailedFuture(Status.INVALID_ARGUMENT.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+        } catch (Exception e) {
+            return Futures.immediateFailedFuture(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+import static no.janco.ragarchitect.ragarchitect.vector.embedded.LongHeap.node;
+import static no.janco.ragarchitect.ragarchitect.vector.embedded.LongHeap.pack;
+import static no.janco.ragarchitect.ragarchitect.vector.embedded.LongHeap.similarity;
+import static no.janco.ragarchitect.ragarchitect.vector.embedded.VectorSegments.SEGMENT_SLOTS;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over the vectors in a {@link VectorSegments}, for
+ * approximate nearest neighbour search by dot product. Nodes are slots. Each node links to up to {@code m} others on
+ * every layer it reaches, twice that on the bottom layer, chosen by the paper's heuristic so the links point in
+ * different directions instead of into one cluster. A search descends greedily through the sparse upper layers and
+ * then searches the bottom layer best first, keeping the {@code ef} best nodes seen.
+ * <p>
+ * One thread inserts at a time, while any number of threads search. Link lists are immutable arrays replaced whole,
+ * and a node's own lists are in place before any other node links to it, so a search never follows a half-built node.
+ */
+final class HnswGraph {
+
+    private static final int[] NO_LINKS = new int[0];
+
+    private final VectorSegments vectors;
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    // Bottom layer links of every node, in pages of SEGMENT_SLOTS; grown by the writer, pages are shared between copies
+    private volatile AtomicReferenceArray<int[]>[] bottom;
+    // Only about one node in m reaches the upper layers, so their links are kept by layer and node instead
+    private final Map<Long, int[]> upper = new ConcurrentHashMap<>();
+
+    private record EntryPoint(int node, int level) { }
+
+    private volatile EntryPoint entryPoint;
+
+    private final Queue<SearchContext> contexts = new ConcurrentLinkedQueue<>();
+
+    record Neighbor(int node, float similarity) { }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    HnswGraph(VectorSegments vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.bottom = new AtomicReferenceArray[0];
+    }
+
+    /**
+     * Links a node whose vector has been written. Called by the single writer only.
+     */
+    void insert(int node) {
+        SearchContext context = acquire();
+        try {
+            float[] vector = new float[vectors.dimension()];
+            vectors.read(node, vector);
+            ensureCapacity(node);
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+
+            EntryPoint entry = entryPoint;
+            if (entry == null) {
+                setLinks(node, 0, NO_LINKS);
+                entryPoint = new EntryPoint(node, level);
+                return;
+            }
+
+            int current = entry.node();
+            for (int layer = entry.level(); layer > level; layer--) {
+                current = node(searchLayer(context, vector, new int[]{current}, 1, layer)[0]);
+            }
+            int[][] links = new int[Math.min(level, entry.level()) + 1][];
+            int[] entries = {current};
+            for (int layer = links.length - 1; layer >= 0; layer--) {
+                long[] candidates = searchLayer(context, vector, entries, efConstruction, layer);
+                links[layer] = selectNeighbors(context, candidates, maxLinks(layer));
+                entries = new int[candidates.length];
+                for (int i = 0; i < candidates.length; i++) {
+                    entries[i] = node(candidates[i]);
+                }
+            }
+
+            for (int layer = 0; layer < links.length; layer++) {
+                setLinks(node, layer, links[layer]);
+            }
+            for (int layer = 0; layer < links.length; layer++) {
+                for (int neighbor : links[layer]) {
+                    link(context, neighbor, node, layer);
+                }
+            }
+            if (level > entry.level()) {
+                entryPoint = new EntryPoint(node, level);
+            }
+        } finally {
+            contexts.add(context);
+        }
+    }
+
+    /**
+     * @param accept Whether a node may be returned; the ones that may not are still searched through
+     * @return Up to limit accepted nodes, most similar first
+     */
+    List<Neighbor> search(float[] query, int limit, int ef, IntPredicate accept) {
+        EntryPoint entry = entryPoint;
+        if (entry == null || limit <= 0) {
+            return List.of();
+        }
+        SearchContext context = acquire();
+        try {
+            int current = entry.node();
+            for (int layer = entry.level(); layer > 0; layer--) {
+                current = node(searchLayer(context, query, new int[]{current}, 1, layer)[0]);
+            }
+            long[] found = searchLayer(context, query, new int[]{current}, Math.max(ef, limit), 0);
+
+            List<Neighbor> neighbors = new ArrayList<>(Math.min(limit, found.length));
+            for (int i = 0; i < found.length && neighbors.size() < limit; i++) {
+                if (accept.test(node(found[i]))) {
+                    neighbors.add(new Neighbor(node(found[i]), similarity(found[i])));
+                }
+            }
+            return neighbors;
+        } finally {
+            contexts.add(context);
+        }
+    }
+
+    // Best-first search of one layer; returns the ef most similar nodes found, best first
+    private long[] searchLayer(SearchContext context, float[] query, int[] entries, int ef, int layer) {
+        context.reset(bottom.length * SEGMENT_SLOTS);
+        // Inverted, so the most similar candidate is on top of the min-heap
+        LongHeap candidates = context.candidates;
+        // The worst of the results so far is on top
+        LongHeap results = context.results;
+        for (int entry : entries) {
+            if (context.visit(entry)) {
+                long packed = pack(vectors.dot(entry, query, context.scratch), entry);
+                candidates.push(~packed);
+                results.push(packed);
+                if (results.size() > ef) {
+                    results.pop();
+                }
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            long candidate = ~candidates.pop();
+            if (results.size() >= ef && candidate < results.peek()) {
+                // Nothing left to expand can improve on the results
+                break;
+            }
+            for (int neighbor : links(node(candidate), layer)) {
+                if (!context.visit(neighbor)) {
+                    continue;
+                }
+                long packed = pack(vectors.dot(neighbor, query, context.scratch), neighbor);
+                if (results.size() < ef || packed > results.peek()) {
+                    candidates.push(~packed);
+                    results.push(packed);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+
+        long[] found = new long[results.size()];
+        for (int i = found.length - 1; i >= 0; i--) {
+            found[i] = results.pop();
+        }
+        return found;
+    }
+
+    /**
+     * Keeps a candidate only if it is more similar to the base node than to every candidate kept before it, so a
+     * node's links reach out in different directions. Candidates are given best first.
+     */
+    private int[] selectNeighbors(SearchContext context, long[] candidates, int max) {
+        int[] selected = new int[max];
+        int count = 0;
+        for (int i = 0; i < candidates.length && count < max; i++) {
+            int node = node(candidates[i]);
+            vectors.read(node, context.other);
+            boolean diverse = true;
+            for (int j = 0; j < count && diverse; j++) {
+                diverse = vectors.dot(selected[j], context.other, context.scratch) < similarity(candidates[i]);
+            }
+            if (diverse) {
+                selected[count++] = node;
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    // Adds a link from neighbor to node, re-selecting the neighbor's links if it already has as many as it may
+    private void link(SearchContext context, int neighbor, int node, int layer) {
+        int[] current = links(neighbor, layer);
+        if (current.length < maxLinks(layer)) {
+            int[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = node;
+            setLinks(neighbor, layer, updated);
+            return;
+        }
+
+        vectors.read(neighbor, context.base);
+        long[] candidates = new long[current.length + 1];
+        for (int i = 0; i < current.length; i++) {
+            candidates[i] = pack(vectors.dot(current[i], context.base, context.scratch), current[i]);
+        }
+        candidates[current.length] = pack(vectors.dot(node, context.base, context.scratch), node);
+        Arrays.sort(candidates);
+        for (int i = 0, j = candidates.length - 1; i < j; i++, j--) {
+            long swap = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = swap;
+        }
+        setLinks(neighbor, layer, selectNeighbors(context, candidates, maxLinks(layer)));
+    }
+
+    /**
+     * Writes the links of nodes up to the given one, so reopening a collection need not rebuild the graph. Called by
+     * the single writer, or with no writer at all.
+     * @param version Identifies the data the graph was built over; {@link #load} only accepts a matching file
+     */
+    void save(Path file, long version, int nodes) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            EntryPoint entry = entryPoint;
+            out.writeLong(version);
+            out.writeInt(nodes);
+            out.writeInt(entry == null ? -1 : entry.node());
+            out.writeInt(entry == null ? -1 : entry.level());
+            for (int node = 0; node < nodes; node++) {
+                if (!contains(node)) {
+                    out.writeInt(0);
+                    continue;
+                }
+                int layers = 1;
+                while (upper.containsKey(upperKey(node, layers))) {
+                    layers++;
+                }
+                out.writeInt(layers);
+                for (int layer = 0; layer < layers; layer++) {
+                    int[] links = links(node, layer);
+                    out.writeInt(links.length);
+                    for (int link : links) {
+                        out.writeInt(link);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a graph written by {@link #save} into this empty one.
+     * @return The number of nodes covered, from 0 up, or -1 if the file was written for another version
+     */
+    int load(Path file, long version) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readLong() != version) {
+                return -1;
+            }
+            int nodes = in.readInt();
+            int entryNode = in.readInt();
+            int entryLevel = in.readInt();
+            for (int node = 0; node < nodes; node++) {
+                int layers = in.readInt();
+                if (layers > 0) {
+                    ensureCapacity(node);
+                }
+                for (int layer = 0; layer < layers; layer++) {
+                    int[] links = new int[in.readInt()];
+                    for (int i = 0; i < links.length; i++) {
+                        links[i] = in.readInt();
+                    }
+                    setLinks(node, layer, links);
+                }
+            }
+            entryPoint = entryNode < 0 ? null : new EntryPoint(entryNode, entryLevel);
+            return nodes;
+        }
+    }
+
+    private boolean contains(int node) {
+        AtomicReferenceArray<int[]>[] pages = bottom;
+        int page = node / SEGMENT_SLOTS;
+        return page < pages.length && pages[page].get(node % SEGMENT_SLOTS) != null;
+    }
+
+    private int maxLinks(int layer) {
+        return layer == 0 ? 2 * m : m;
+    }
+
+    private int[] links(int node, int layer) {
+        if (layer > 0) {
+            return upper.getOrDefault(upperKey(node, layer), NO_LINKS);
+        }
+        AtomicReferenceArray<int[]>[] pages = bottom;
+        int page = node / SEGMENT_SLOTS;
+        int[] links = page < pages.length ? pages[page].get(node % SEGMENT_SLOTS) : null;
+        return links == null ? NO_LINKS : links;
+    }
+
+    private void setLinks(int node, int layer, int[] links) {
+        if (layer > 0) {
+            upper.put(upperKey(node, layer), links);
+        } else {
+            bottom[node / SEGMENT_SLOTS].set(node % SEGMENT_SLOTS, links);
+        }
+    }
+
+    private void ensureCapacity(int node) {
+        AtomicReferenceArray<int[]>[] pages = bottom;
+        int page = node / SEGMENT_SLOTS;
+        if (page >= pages.length) {
+            AtomicReferenceArray<int[]>[] grown = Arrays.copyOf(pages, page + 1);
+            for (int i = pages.length; i <= page; i++) {
+                grown[i] = new AtomicReferenceArray<>(SEGMENT_SLOTS);
+            }
+            bottom = grown;
+        }
+    }
+
+    private static long upperKey(int node, int layer) {
+        return ((long) layer << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private SearchContext acquire() {
+        SearchContext context = contexts.poll();
+        return context != null ? context : new SearchContext(vectors.dimension());
+    }
+
+    // Buffers for one search at a time, pooled rather than thread local since searches run on virtual threads
+    private static final class SearchContext {
+
+        final float[] scratch;
+        final float[] other;
+        final float[] base;
+        final LongHeap candidates = new LongHeap();
+        final LongHeap results = new LongHeap();
+        // A node is visited in this search if its entry equals the generation
+        private int[] visited = new int[0];
+        private int generation;
+
+        SearchContext(int dimension) {
+            this.scratch = new float[dimension];
+            this.other = new float[dimension];
+            this.base = new float[dimension];
+        }
+
+        void reset(int capacity) {
+            if (visited.length < capacity) {
+                visited = Arrays.copyOf(visited, capacity);
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+            candidates.clear();
+            results.clear();
+        }
+
+        boolean visit(int node) {
+            if (node >= visited.length) {
+                // Linked by an insert that grew the graph after this search started
+                visited = Arrays.copyOf(visited, Math.max(node + 1, visited.length * 2));
+            }
+            if (visited[node] == generation) {
+                return false;
+            }
+            visited[node] = generation;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import java.util.Arrays;
+
+/**
+ * Min-heap of longs, for ranking nodes by similarity without an object per node: see {@link #pack}. Not thread-safe.
+ */
+final class LongHeap {
+
+    private long[] values = new long[64];
+    private int size;
+
+    void push(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (values[parent] <= value) {
+                break;
+            }
+            values[i] = values[parent];
+            i = parent;
+        }
+        values[i] = value;
+    }
+
+    long peek() {
+        return values[0];
+    }
+
+    long pop() {
+        long top = values[0];
+        long last = values[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && values[child + 1] < values[child]) {
+                child++;
+            }
+            if (values[child] >= last) {
+                break;
+            }
+            values[i] = values[child];
+            i = child;
+        }
+        values[i] = last;
+        return top;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    // Similarity and node in one long that orders by similarity
+    static long pack(float similarity, int node) {
+        int bits = Float.floatToRawIntBits(similarity);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return ((long) bits << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    static float similarity(long packed) {
+        int bits = (int) (packed >>> 32);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return Float.intBitsToFloat(bits);
+    }
+
+    static int node(long packed) {
+        return (int) packed;
+    }
+}
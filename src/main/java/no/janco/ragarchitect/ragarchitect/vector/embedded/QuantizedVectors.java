@@ -0,0 +1,205 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Compact copies of float vectors, addressed by slot, for scanning many vectors quickly and then rescoring the best
+ * few against the originals. Works for any vectors held in the JVM; the embedded store keeps one per quantized
+ * collection next to its {@link VectorSegments}.
+ * <ul>
+ *     <li>{@link Type#SCALAR}: each component as a signed byte, scaled by the vector's largest component. A quarter
+ *     of the size, and scores within about a percent of the exact ones, but without SIMD instructions a byte is
+ *     compared no faster than a float, so it saves memory rather than time</li>
+ *     <li>{@link Type#BINARY}: only the sign of each component, one bit each. A thirty-second of the size and compared
+ *     by counting differing bits, but only a rough ranking, so it needs oversampling and rescoring</li>
+ * </ul>
+ * One writer at a time sets slots; searches may run concurrently and see every slot set before they started.
+ */
+public final class QuantizedVectors {
+
+    public enum Type { SCALAR, BINARY }
+
+    public record Match(int slot, float score) { }
+
+    /**
+     * The exact score of a slot, typically the dot product of the query with its original vector.
+     */
+    @FunctionalInterface
+    public interface Rescorer {
+        float score(int slot);
+    }
+
+    private static final int PAGE_SLOTS = 1 << 14;
+
+    private final Type type;
+    private final int dimension;
+    // Longs per binary vector
+    private final int words;
+
+    // Pages of PAGE_SLOTS vectors, only ever grown by copy; the pages themselves are shared between copies
+    private volatile byte[][] bytePages = new byte[0][];
+    private volatile float[][] scalePages = new float[0][];
+    private volatile long[][] bitPages = new long[0][];
+    // Written last by set, so a search that reads it first sees everything below it
+    private volatile int size;
+
+    public QuantizedVectors(Type type, int dimension) {
+        this.type = type;
+        this.dimension = dimension;
+        this.words = (dimension + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * Called by the single writer only.
+     */
+    public void set(int slot, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector has " + vector.length + " components, expected " + dimension);
+        }
+        ensureCapacity(slot);
+        int page = slot / PAGE_SLOTS;
+        int index = slot % PAGE_SLOTS;
+        if (type == Type.SCALAR) {
+            scalePages[page][index] = quantize(vector, bytePages[page], index * dimension);
+        } else {
+            binarize(vector, bitPages[page], index * words);
+        }
+        if (slot >= size) {
+            size = slot + 1;
+        }
+    }
+
+    /**
+     * Ranks every accepted slot by its quantized score, then, with a rescorer, rescores the best
+     * {@code limit * oversampling} of them exactly and keeps the best {@code limit}. Without one the quantized scores
+     * are returned as they are: for scalar vectors an estimate of the dot product, for binary ones the fraction of
+     * signs that agree, from -1 to 1.
+     * @param oversampling How many times the limit to rescore, at least 1; binary vectors need several
+     * @return Up to limit matches, best first
+     */
+    public List<Match> search(float[] query, int limit, double oversampling, IntPredicate accept, @Nullable Rescorer rescorer) {
+        int scanned = size;
+        int candidates = rescorer == null ? limit : (int) Math.ceil(limit * Math.max(1, oversampling));
+        if (limit <= 0 || scanned == 0) {
+            return List.of();
+        }
+
+        LongHeap best = new LongHeap();
+        if (type == Type.SCALAR) {
+            byte[] code = new byte[dimension];
+            float scale = quantize(query, code, 0);
+            byte[][] pages = bytePages;
+            float[][] scales = scalePages;
+            for (int slot = 0; slot < scanned; slot++) {
+                if (accept.test(slot)) {
+                    int page = slot / PAGE_SLOTS;
+                    int index = slot % PAGE_SLOTS;
+                    float score = scale * scales[page][index] * dot(code, pages[page], index * dimension);
+                    offer(best, LongHeap.pack(score, slot), candidates);
+                }
+            }
+        } else {
+            long[] bits = new long[words];
+            binarize(query, bits, 0);
+            long[][] pages = bitPages;
+            for (int slot = 0; slot < scanned; slot++) {
+                if (accept.test(slot)) {
+                    int differing = hamming(bits, pages[slot / PAGE_SLOTS], (slot % PAGE_SLOTS) * words);
+                    offer(best, LongHeap.pack(1 - 2f * differing / dimension, slot), candidates);
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            long packed = best.pop();
+            int slot = LongHeap.node(packed);
+            matches.add(new Match(slot, rescorer == null ? LongHeap.similarity(packed) : rescorer.score(slot)));
+        }
+        matches.sort(Comparator.comparingDouble(Match::score).reversed());
+        return matches.size() > limit ? List.copyOf(matches.subList(0, limit)) : matches;
+    }
+
+    // Keeps the best count packed scores, the worst of them on top
+    private static void offer(LongHeap best, long packed, int count) {
+        if (best.size() < count) {
+            best.push(packed);
+        } else if (packed > best.peek()) {
+            best.pop();
+            best.push(packed);
+        }
+    }
+
+    // Symmetric quantization to [-127, 127]; returns the scale that turns the bytes back into components
+    private static float quantize(float[] vector, byte[] into, int offset) {
+        float max = 0;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        if (max == 0) {
+            Arrays.fill(into, offset, offset + vector.length, (byte) 0);
+            return 0;
+        }
+        float scale = max / 127;
+        for (int i = 0; i < vector.length; i++) {
+            into[offset + i] = (byte) Math.round(vector[i] / scale);
+        }
+        return scale;
+    }
+
+    private void binarize(float[] vector, long[] into, int offset) {
+        Arrays.fill(into, offset, offset + words, 0L);
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > 0) {
+                into[offset + i / Long.SIZE] |= 1L << (i % Long.SIZE);
+            }
+        }
+    }
+
+    // A plain loop, which the JIT vectorizes; unrolling it by hand into several sums keeps it from doing so
+    private static int dot(byte[] query, byte[] codes, int offset) {
+        int sum = 0;
+        for (int i = 0; i < query.length; i++) {
+            sum += query[i] * codes[offset + i];
+        }
+        return sum;
+    }
+
+    private int hamming(long[] query, long[] bits, int offset) {
+        int differing = 0;
+        for (int i = 0; i < words; i++) {
+            differing += Long.bitCount(query[i] ^ bits[offset + i]);
+        }
+        return differing;
+    }
+
+    private void ensureCapacity(int slot) {
+        int page = slot / PAGE_SLOTS;
+        if (type == Type.SCALAR && page >= bytePages.length) {
+            byte[][] bytes = Arrays.copyOf(bytePages, page + 1);
+            float[][] scales = Arrays.copyOf(scalePages, page + 1);
+            for (int i = bytePages.length; i <= page; i++) {
+                bytes[i] = new byte[PAGE_SLOTS * dimension];
+                scales[i] = new float[PAGE_SLOTS];
+            }
+            bytePages = bytes;
+            scalePages = scales;
+        } else if (type == Type.BINARY && page >= bitPages.length) {
+            long[][] bits = Arrays.copyOf(bitPages, page + 1);
+            for (int i = bitPages.length; i <= page; i++) {
+                bits[i] = new long[PAGE_SLOTS * words];
+            }
+            bitPages = bits;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fixed-size float vectors addressed by slot, in memory-mapped segment files of {@link #SEGMENT_SLOTS} vectors each.
+ * The vectors live in the page cache rather than on the heap, and a reopened collection reads them in place instead
+ * of loading them. One writer at a time writes slots; readers may read any slot concurrently, and see a written
+ * slot once the writer has published it to them through some other volatile write.
+ */
+final class VectorSegments {
+
+    static final int SEGMENT_SLOTS = 1 << 14;
+
+    private final Path directory;
+    private final int dimension;
+
+    private record Segment(MappedByteBuffer bytes, FloatBuffer floats) { }
+
+    // Only ever grows, replaced by a longer copy; the segments themselves are shared
+    private volatile Segment[] segments;
+
+    VectorSegments(Path directory, int dimension) throws IOException {
+        this.directory = directory;
+        this.dimension = dimension;
+        List<Segment> existing = new ArrayList<>();
+        while (Files.exists(segmentPath(existing.size()))) {
+            existing.add(map(existing.size()));
+        }
+        this.segments = existing.toArray(new Segment[0]);
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Called by the single writer only.
+     */
+    void write(int slot, float[] vector) throws IOException {
+        int index = slot / SEGMENT_SLOTS;
+        Segment[] current = segments;
+        if (index >= current.length) {
+            int mapped = current.length;
+            current = Arrays.copyOf(current, index + 1);
+            for (int i = mapped; i <= index; i++) {
+                current[i] = map(i);
+            }
+            segments = current;
+        }
+        current[index].floats().put((slot % SEGMENT_SLOTS) * dimension, vector);
+    }
+
+    void read(int slot, float[] into) {
+        segments[slot / SEGMENT_SLOTS].floats().get((slot % SEGMENT_SLOTS) * dimension, into);
+    }
+
+    /**
+     * @param scratch Room for one vector, overwritten
+     */
+    float dot(int slot, float[] query, float[] scratch) {
+        read(slot, scratch);
+        return dot(query, scratch);
+    }
+
+    static float dot(float[] a, float[] b) {
+        // Independent sums, so the additions are not one long dependency chain
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+        int i = 0;
+        for (; i + 7 < a.length; i += 8) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+            s4 += a[i + 4] * b[i + 4];
+            s5 += a[i + 5] * b[i + 5];
+            s6 += a[i + 6] * b[i + 6];
+            s7 += a[i + 7] * b[i + 7];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3) + (s4 + s5) + (s6 + s7);
+    }
+
+    /**
+     * Writes the slots from firstSlot on to the storage device, returning once they are there. Called by the single
+     * writer only, after writing them.
+     */
+    void force(int firstSlot, int count) {
+        Segment[] current = segments;
+        int slot = firstSlot;
+        int end = firstSlot + count;
+        while (slot < end) {
+            int inSegment = Math.min(end - slot, SEGMENT_SLOTS - slot % SEGMENT_SLOTS);
+            int bytesPerSlot = dimension * Float.BYTES;
+            current[slot / SEGMENT_SLOTS].bytes().force((slot % SEGMENT_SLOTS) * bytesPerSlot, inSegment * bytesPerSlot);
+            slot += inSegment;
+        }
+    }
+
+    void flush() {
+        for (Segment segment : segments) {
+            segment.bytes().force();
+        }
+    }
+
+    private Segment map(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_SLOTS * dimension * Float.BYTES);
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            return new Segment(bytes, bytes.asFloatBuffer());
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("vectors-%04d.f32", index));
+    }
+}
@@ -0,0 +1,190 @@
+package no.janco.ragarchitect.ragarchitect.vector.onnx;
+
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import jakarta.annotation.PreDestroy;
+import no.janco.ragarchitect.ragarchitect.tokenizer.TokenizerLoader;
+import no.janco.ragarchitect.ragarchitect.tokenizer.WordPieceTokenizer;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import no.janco.ragarchitect.ragarchitect.vector.EmbeddingProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the sentence-transformers embedding model in-process on CPU with ONNX Runtime, in place of the Python
+ * embedding service. Expects the model directory as downloaded from Hugging Face: {@code vocab.txt} and
+ * {@code onnx/model.onnx} (or {@code model.onnx}).
+ * <p>
+ * Texts are embedded in batches on a fixed pool of platform threads, so concurrent callers queue for the CPU instead
+ * of oversubscribing it, and virtual threads are never pinned by the native call. The output matches the model's
+ * sentence-transformers pipeline: token embeddings mean-pooled over the attention mask, then L2 normalized.
+ */
+@Service
+@Profile("onnx-embedding")
+public class OnnxEmbeddingProvider implements EmbeddingProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OnnxEmbeddingProvider.class);
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final WordPieceTokenizer tokenizer;
+    private final ExecutorService workers;
+    private final Path modelPath;
+    private final int maxTokens;
+    private final int batchSize;
+    private final boolean normalize;
+
+    /**
+     * @param workerThreads Batches run concurrently; 0 for one per available processor
+     * @param maxTokens Sequence length the model was trained with; longer texts are cut
+     */
+    public OnnxEmbeddingProvider(@Value("${embedding.model.path:/app/models/all-MiniLM-L6-v2}") String modelPath,
+                                 @Value("${embedding.onnx.workers:0}") int workerThreads,
+                                 @Value("${embedding.onnx.intra.op.threads:1}") int intraOpThreads,
+                                 @Value("${embedding.onnx.batch.size:32}") int batchSize,
+                                 @Value("${embedding.onnx.max.tokens:256}") int maxTokens,
+                                 @Value("${embedding.onnx.normalize:true}") boolean normalize) throws IOException, OrtException {
+        this.modelPath = Path.of(modelPath);
+        this.maxTokens = maxTokens;
+        this.batchSize = batchSize;
+        this.normalize = normalize;
+        this.tokenizer = TokenizerLoader.loadWordPiece(this.modelPath.resolve("vocab.txt"), true);
+
+        Path modelFile = Files.exists(this.modelPath.resolve("onnx/model.onnx"))
+                ? this.modelPath.resolve("onnx/model.onnx")
+                : this.modelPath.resolve("model.onnx");
+        this.environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setIntraOpNumThreads(intraOpThreads);
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            this.session = environment.createSession(modelFile.toString(), options);
+        }
+
+        int threads = workerThreads > 0 ? workerThreads : Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("onnx-embedding-", 0).daemon().factory());
+        LOG.info("Loaded embedding model {} with inputs {}, {} workers", modelFile, session.getInputNames(), threads);
+    }
+
+    @Override
+    public List<Embedding> embed(List<String> texts) {
+        List<Future<List<Embedding>>> batches = new ArrayList<>();
+        for (int start = 0; start < texts.size(); start += batchSize) {
+            List<String> batch = texts.subList(start, Math.min(texts.size(), start + batchSize));
+            batches.add(workers.submit(() -> embedBatch(batch)));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        try {
+            for (Future<List<Embedding>> batch : batches) {
+                embeddings.addAll(batch.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batches.forEach(batch -> batch.cancel(true));
+            throw new IllegalStateException("Interrupted while embedding", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to embed with " + modelPath, e.getCause());
+        }
+        return embeddings;
+    }
+
+    @Override
+    public String getProviderDetails() {
+        return "ONNX Runtime (" + modelPath + ")";
+    }
+
+    @PreDestroy
+    public void close() throws OrtException {
+        workers.shutdownNow();
+        session.close();
+    }
+
+    private List<Embedding> embedBatch(List<String> texts) throws OrtException {
+        int[][] ids = new int[texts.size()][];
+        int sequenceLength = 0;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tokenizer.encode(texts.get(i), maxTokens);
+            sequenceLength = Math.max(sequenceLength, ids[i].length);
+        }
+
+        // Padded on the right to the longest text in the batch; the mask keeps the padding out of the result
+        long[] inputIds = new long[ids.length * sequenceLength];
+        long[] attentionMask = new long[ids.length * sequenceLength];
+        Arrays.fill(inputIds, tokenizer.padId());
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = 0; j < ids[i].length; j++) {
+                inputIds[i * sequenceLength + j] = ids[i][j];
+                attentionMask[i * sequenceLength + j] = 1;
+            }
+        }
+        long[] shape = {ids.length, sequenceLength};
+
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(inputIds), shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, LongBuffer.wrap(attentionMask), shape));
+            // BERT exports take segment ids as well; a single sentence is all segment 0
+            if (session.getInputNames().contains("token_type_ids")) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(new long[inputIds.length]), shape));
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                float[][][] tokenEmbeddings = (float[][][]) result.get(0).getValue();
+                int[] lengths = new int[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    lengths[i] = ids[i].length;
+                }
+                return meanPool(tokenEmbeddings, lengths, normalize);
+            }
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    /**
+     * @param lengths The number of real tokens of each text; the rest of its row is padding
+     */
+    static List<Embedding> meanPool(float[][][] tokenEmbeddings, int[] lengths, boolean normalize) {
+        List<Embedding> embeddings = new ArrayList<>(lengths.length);
+        for (int i = 0; i < lengths.length; i++) {
+            float[] pooled = new float[tokenEmbeddings[i][0].length];
+            for (int token = 0; token < lengths[i]; token++) {
+                float[] values = tokenEmbeddings[i][token];
+                for (int d = 0; d < pooled.length; d++) {
+                    pooled[d] += values[d];
+                }
+            }
+            double norm = 0;
+            for (int d = 0; d < pooled.length; d++) {
+                pooled[d] /= lengths[i];
+                norm += pooled[d] * pooled[d];
+            }
+            if (normalize && norm > 0) {
+                float scale = (float) (1 / Math.sqrt(norm));
+                for (int d = 0; d < pooled.length; d++) {
+                    pooled[d] *= scale;
+                }
+            }
+            embeddings.add(new Embedding(pooled));
+        }
+        return embeddings;
+    }
+}
@@ -0,0 +1,137 @@
+package no.janco.ragarchitect.ragarchitect;
+
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import no.janco.ragarchitect.ragarchitect.vector.QdrantService;
+import no.janco.ragarchitect.ragarchitect.vector.VectorSearchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AssistantServiceTest {
+
+    @Mock
+    private Orchestrator orchestrator;
+
+    @Mock
+    private VectorSearchService vectorSearchService;
+
+    @Mock
+    private QdrantService qdrantService;
+
+    private AssistantService assistantService;
+
+    @BeforeEach
+    void setUp() {
+        assistantService = new AssistantService(orchestrator, vectorSearchService, qdrantService, new SimpleAsyncTaskExecutor());
+    }
+
+    @Test
+    void chat_ShouldRetrieveOnAWorker_AndCompleteWithTheResponse() throws Exception {
+        // Arrange
+        Thread caller = Thread.currentThread();
+        List<Thread> retrievalThreads = new ArrayList<>();
+        when(orchestrator.converseAsync("question")).thenAnswer(invocation -> {
+            retrievalThreads.add(Thread.currentThread());
+            return CompletableFuture.completedFuture("answer");
+        });
+
+        // Act
+        CompletableFuture<String> response = assistantService.chat("question");
+
+        // Assert
+        assertEquals("answer", response.get(1, TimeUnit.SECONDS));
+        assertEquals(1, retrievalThreads.size());
+        assertNotSame(caller, retrievalThreads.get(0));
+    }
+
+    @Test
+    void chatStream_ShouldStreamOnAWorker_AndCompleteWithTheResponse() throws Exception {
+        // Arrange
+        Thread caller = Thread.currentThread();
+        List<Thread> tokenThreads = new ArrayList<>();
+        when(orchestrator.converseStream(eq("question"), any())).thenAnswer(invocation -> {
+            Consumer<String> onToken = invocation.getArgument(1);
+            onToken.accept("ans");
+            onToken.accept("wer");
+            return "answer";
+        });
+
+        // Act
+        CompletableFuture<String> response = assistantService.chatStream("question", token -> tokenThreads.add(Thread.currentThread()));
+
+        // Assert
+        assertEquals("answer", response.get(1, TimeUnit.SECONDS));
+        assertEquals(2, tokenThreads.size());
+        assertNotSame(caller, tokenThreads.get(0));
+    }
+
+    @Test
+    void promptStream_ShouldFail_WhenTheConsumerAbortsGeneration() {
+        // Arrange
+        when(orchestrator.promptStream(eq("prompt"), any())).thenAnswer(invocation -> {
+            Consumer<String> onToken = invocation.getArgument(1);
+            onToken.accept("token");
+            return "never returned";
+        });
+
+        // Act
+        CompletableFuture<String> response = assistantService.promptStream("prompt", token -> {
+            throw new UncheckedIOException(new IOException("Client went away"));
+        });
+
+        // Assert
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> response.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(UncheckedIOException.class, failure.getCause());
+    }
+
+    @Test
+    void searchContents_ShouldCompleteWithTheMatches() throws Exception {
+        // Arrange
+        List<IndexContent> matches = List.of(new IndexContent("area", "Orchestrator.java", "1", "class Orchestrator"));
+        when(vectorSearchService.searchContents("code", "orchestrator")).thenReturn(matches);
+
+        // Act
+        CompletableFuture<List<IndexContent>> result = assistantService.searchContents("code", "orchestrator");
+
+        // Assert
+        assertSame(matches, result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void content_ShouldFetchOnAWorker() throws Exception {
+        // Arrange
+        Thread caller = Thread.currentThread();
+        Points.PointId pointId = Points.PointId.newBuilder().setNum(7).build();
+        List<Thread> fetchThreads = new ArrayList<>();
+        when(qdrantService.getContent("code", pointId)).thenAnswer(invocation -> {
+            fetchThreads.add(Thread.currentThread());
+            return "class Orchestrator";
+        });
+
+        // Act
+        CompletableFuture<String> content = assistantService.content("code", pointId);
+
+        // Assert
+        assertEquals("class Orchestrator", content.get(1, TimeUnit.SECONDS));
+        assertNotSame(caller, fetchThreads.get(0));
+    }
+}
@@ -1,7 +1,16 @@
 package no.janco.ragarchitect.ragarchitect;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.cache.SemanticResponseCache;
+import no.janco.ragarchitect.ragarchitect.inference.ConcurrencyLimiter;
 import no.janco.ragarchitect.ragarchitect.inference.LLMInferenceProvider;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.prompt.ContextPacker;
 import no.janco.ragarchitect.ragarchitect.prompt.PromptTruncator;
+import no.janco.ragarchitect.ragarchitect.rerank.RerankService;
+import no.janco.ragarchitect.ragarchitect.tokenizer.EstimatingTokenizer;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
 import no.janco.ragarchitect.ragarchitect.vector.VectorSearchService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,10 +18,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,11 +44,28 @@ class OrchestratorTest {
     @Mock
     private PromptTruncator promptTruncator;
 
+    @Mock
+    private SemanticResponseCache responseCache;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private Orchestrator orchestrator;
 
+    private static final Embedding QUESTION = Embedding.of(0.1f, 0.2f, 0.3f);
+
+    private static ContextSnippet snippet(String content) {
+        return new ContextSnippet("Code snippet", content, 0.5f);
+    }
+
     @BeforeEach
     void setUp() {
-        orchestrator = new Orchestrator(inferenceHandler, vectorSearchService, promptTruncator);
+        ContextPacker contextPacker = new ContextPacker(new EstimatingTokenizer(), 8192, 1024, 16);
+        // Without a cross-encoder, reranking passes the snippets through
+        RerankService rerankService = new RerankService(Optional.empty(), 8, 500, 8, 1, 4, new SimpleMeterRegistry());
+        orchestrator = new Orchestrator(inferenceHandler, vectorSearchService, promptTruncator, contextPacker, rerankService,
+                new ConcurrencyLimiter("inference", 4, Duration.ofSeconds(1)), responseCache,
+                new PipelineMetrics(meterRegistry, new EstimatingTokenizer()));
+        lenient().when(vectorSearchService.embedQuery(anyString())).thenReturn(QUESTION);
     }
 
     @Test
@@ -42,7 +76,7 @@ class OrchestratorTest {
         String expectedResponse = "The Orchestrator class coordinates interactions between components.";
         String truncatedPrompt = "You are a helpful expert programmer...";
         
-        when(vectorSearchService.searchVector(message)).thenReturn(context);
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of(snippet(context)));
         when(promptTruncator.truncate(anyString())).thenReturn(truncatedPrompt);
         when(inferenceHandler.infer(anyString())).thenReturn(expectedResponse);
         when(inferenceHandler.getHandlerDetails()).thenReturn("TestHandler");
@@ -52,11 +86,32 @@ class OrchestratorTest {
 
         // Assert
         assertEquals(expectedResponse, response);
-        verify(vectorSearchService).searchVector(message);
+        verify(vectorSearchService).embedQuery(message);
+        verify(vectorSearchService).searchSnippets(anyString(), eq(QUESTION));
         verify(promptTruncator).truncate(anyString());
         verify(inferenceHandler).infer(truncatedPrompt);
     }
 
+    @Test
+    void converse_ShouldTimeEachStage_AndMeasurePromptAndResponse() throws ExecutionException, InterruptedException {
+        // Arrange
+        String truncatedPrompt = "You are a helpful expert programmer...";
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of(snippet("context")));
+        when(promptTruncator.truncate(anyString())).thenReturn(truncatedPrompt);
+        when(inferenceHandler.infer(anyString())).thenReturn("An answer");
+
+        // Act
+        orchestrator.converse("What is the purpose of the Orchestrator class?");
+
+        // Assert
+        for (String stage : List.of("assemble", "truncate", "inference")) {
+            assertEquals(1, meterRegistry.get(PipelineMetrics.STAGE_DURATION).tag("stage", stage).timer().count(), stage);
+        }
+        assertEquals(truncatedPrompt.length(), meterRegistry.get("rag.prompt.chars").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("rag.response.tokens").summary().count());
+        assertEquals(0, meterRegistry.get("rag.requests.active").tag("operation", "chat").gauge().value());
+    }
+
     @Test
     void converse_ShouldHandleEmptyContext() throws ExecutionException, InterruptedException {
         // Arrange
@@ -64,7 +119,7 @@ class OrchestratorTest {
         String expectedResponse = "Simple answer";
         String truncatedPrompt = "You are a helpful expert programmer...";
         
-        when(vectorSearchService.searchVector(message)).thenReturn("");
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of());
         when(promptTruncator.truncate(anyString())).thenReturn(truncatedPrompt);
         when(inferenceHandler.infer(anyString())).thenReturn(expectedResponse);
         when(inferenceHandler.getHandlerDetails()).thenReturn("TestHandler");
@@ -74,7 +129,8 @@ class OrchestratorTest {
 
         // Assert
         assertEquals(expectedResponse, response);
-        verify(vectorSearchService).searchVector(message);
+        verify(vectorSearchService).embedQuery(message);
+        verify(vectorSearchService).searchSnippets(anyString(), eq(QUESTION));
         verify(promptTruncator).truncate(anyString());
         verify(inferenceHandler).infer(truncatedPrompt);
     }
@@ -83,7 +139,7 @@ class OrchestratorTest {
     void converse_ShouldHandleVectorSearchException() throws ExecutionException, InterruptedException {
         // Arrange
         String message = "Test message";
-        when(vectorSearchService.searchVector(message)).thenThrow(new ExecutionException("Vector search failed", new RuntimeException()));
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenThrow(new ExecutionException("Vector search failed", new RuntimeException()));
 
         // Act & Assert
         assertThrows(ExecutionException.class, () -> orchestrator.converse(message));
@@ -98,7 +154,7 @@ class OrchestratorTest {
         String context = "Test context";
         String truncatedPrompt = "You are a helpful expert programmer...";
         
-        when(vectorSearchService.searchVector(message)).thenReturn(context);
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of(snippet(context)));
         when(promptTruncator.truncate(anyString())).thenReturn(truncatedPrompt);
         when(inferenceHandler.infer(anyString())).thenThrow(new RuntimeException("Inference failed"));
 
@@ -122,7 +178,7 @@ class OrchestratorTest {
         // Assert
         assertEquals(expectedResponse, response);
         verify(inferenceHandler).infer(message);
-        verify(vectorSearchService, never()).searchVector(anyString());
+        verify(vectorSearchService, never()).searchSnippets(anyString(), any(Embedding.class));
         verify(promptTruncator, never()).truncate(anyString());
     }
 
@@ -134,7 +190,100 @@ class OrchestratorTest {
 
         // Act & Assert
         assertThrows(RuntimeException.class, () -> orchestrator.prompt(message));
-        verify(vectorSearchService, never()).searchVector(anyString());
+        verify(vectorSearchService, never()).searchSnippets(anyString(), any(Embedding.class));
         verify(promptTruncator, never()).truncate(anyString());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void converseStream_ShouldStreamTruncatedPromptResponse() throws ExecutionException, InterruptedException {
+        // Arrange
+        String message = "What is the purpose of the Orchestrator class?";
+        String truncatedPrompt = "You are a helpful expert programmer...";
+
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of(snippet("Some context")));
+        when(promptTruncator.truncate(anyString())).thenReturn(truncatedPrompt);
+        when(inferenceHandler.getHandlerDetails()).thenReturn("TestHandler");
+        when(inferenceHandler.inferStream(eq(truncatedPrompt), any())).thenAnswer(invocation -> {
+            Consumer<String> onToken = invocation.getArgument(1);
+            onToken.accept("It ");
+            onToken.accept("coordinates.");
+            return "It coordinates.";
+        });
+        List<String> chunks = new ArrayList<>();
+
+        // Act
+        String response = orchestrator.converseStream(message, chunks::add);
+
+        // Assert
+        assertEquals("It coordinates.", response);
+        assertEquals(List.of("It ", "coordinates."), chunks);
+        verify(inferenceHandler, never()).infer(anyString());
+    }
+
+    @Test
+    void promptAsync_ShouldUseNonBlockingInference() throws Exception {
+        // Arrange
+        String message = "Raw prompt";
+        when(inferenceHandler.getHandlerDetails()).thenReturn("TestHandler");
+        when(inferenceHandler.inferAsync(message)).thenReturn(CompletableFuture.completedFuture("Raw response"));
+
+        // Act
+        String response = orchestrator.promptAsync(message).get();
+
+        // Assert
+        assertEquals("Raw response", response);
+        verify(inferenceHandler, never()).infer(anyString());
+    }
+
+    @Test
+    void converse_ShouldAnswerFromCache_WithoutRetrievalOrInference() throws ExecutionException, InterruptedException {
+        // Arrange
+        String message = "How does the Orchestrator work?";
+        when(responseCache.lookup(QUESTION)).thenReturn(Optional.of("Cached answer"));
+
+        // Act
+        String response = orchestrator.converse(message);
+
+        // Assert
+        assertEquals("Cached answer", response);
+        verify(vectorSearchService, never()).searchSnippets(anyString(), any(Embedding.class));
+        verify(inferenceHandler, never()).infer(anyString());
+        verify(responseCache, never()).put(any(), anyString(), any());
+    }
+
+    @Test
+    void converse_ShouldCacheGeneratedAnswer_ButNotErrors() throws ExecutionException, InterruptedException {
+        // Arrange
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of(snippet("Some context")));
+        when(promptTruncator.truncate(anyString())).thenReturn("prompt");
+        when(inferenceHandler.infer("prompt")).thenReturn("Generated answer", "Error: backend unavailable", "No response", " ");
+        when(inferenceHandler.inferStream(eq("prompt"), any())).thenReturn("");
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            orchestrator.converse("How does the Orchestrator work?");
+        }
+        orchestrator.converseStream("How does the Orchestrator work?", token -> { });
+
+        // Assert - only the generated answer; errors, placeholders and a stream without tokens are not answers
+        verify(responseCache).put(eq(QUESTION), eq("Generated answer"), any(Duration.class));
+        verify(responseCache, times(1)).put(any(), anyString(), any());
+    }
+
+    @Test
+    void converse_ShouldPackMostRelevantContextFirst() throws ExecutionException, InterruptedException {
+        // Arrange
+        when(vectorSearchService.searchSnippets(anyString(), eq(QUESTION))).thenReturn(List.of(
+                new ContextSnippet("Code snippet", "class Orchestrator { }", 0.4f),
+                new ContextSnippet("Confluence snippet", "The Orchestrator answers chat questions.", 0.8f)));
+        when(promptTruncator.truncate(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(inferenceHandler.infer(anyString())).thenReturn("answer");
+
+        // Act
+        orchestrator.converse("What does the Orchestrator do?");
+
+        // Assert
+        verify(inferenceHandler).infer(argThat(prompt -> prompt.contains("My question is: What does the Orchestrator do?")
+                && prompt.indexOf("Confluence snippet: The Orchestrator answers") < prompt.indexOf("Code snippet: class Orchestrator")));
+    }
+}
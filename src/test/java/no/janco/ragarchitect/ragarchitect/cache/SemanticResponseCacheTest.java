@@ -0,0 +1,127 @@
+package no.janco.ragarchitect.ragarchitect.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionsChangedEvent;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticResponseCacheTest {
+
+    private static final int DIMENSION = 384;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Random random = new Random(7);
+    private SemanticResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SemanticResponseCache(true, 0.95f, 100, Duration.ofMinutes(60), meterRegistry, clock::get);
+    }
+
+    @Test
+    void lookup_ShouldReturnAnswer_ForNearDuplicateQuestion() {
+        // Arrange
+        Embedding question = randomEmbedding();
+        cache.put(question, "The Orchestrator combines retrieval and generation", Duration.ofSeconds(4));
+        for (int i = 0; i < 50; i++) {
+            cache.put(randomEmbedding(), "Unrelated answer " + i, Duration.ofSeconds(1));
+        }
+
+        // Act
+        Optional<String> answer = cache.lookup(perturb(question, 0.05f));
+
+        // Assert
+        assertEquals(Optional.of("The Orchestrator combines retrieval and generation"), answer);
+        assertEquals(1.0, meterRegistry.get("semantic.cache.lookups").tag("result", "hit").counter().count());
+        assertEquals(4.0, meterRegistry.get("semantic.cache.saved.latency").timer().totalTime(TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lookup_ShouldMiss_ForDifferentQuestion() {
+        // Arrange
+        cache.put(randomEmbedding(), "Some answer", Duration.ofSeconds(1));
+
+        // Act
+        Optional<String> answer = cache.lookup(randomEmbedding());
+
+        // Assert
+        assertTrue(answer.isEmpty());
+        assertEquals(1.0, meterRegistry.get("semantic.cache.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void lookup_ShouldMiss_WhenEntryHasExpired() {
+        // Arrange
+        Embedding question = randomEmbedding();
+        cache.put(question, "Some answer", Duration.ofSeconds(1));
+
+        // Act
+        clock.addAndGet(Duration.ofMinutes(61).toNanos());
+
+        // Assert
+        assertTrue(cache.lookup(question).isEmpty());
+    }
+
+    @Test
+    void onCollectionsChanged_ShouldDropAllAnswers() {
+        // Arrange
+        Embedding question = randomEmbedding();
+        cache.put(question, "Some answer", Duration.ofSeconds(1));
+
+        // Act
+        cache.onCollectionsChanged(new CollectionsChangedEvent(Set.of("code")));
+
+        // Assert
+        assertEquals(0, cache.size());
+        assertTrue(cache.lookup(question).isEmpty());
+    }
+
+    @Test
+    void put_ShouldEvictOldestEntries_WhenFull() {
+        // Arrange
+        Embedding first = randomEmbedding();
+        cache.put(first, "First answer", Duration.ofSeconds(1));
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            cache.put(randomEmbedding(), "Answer " + i, Duration.ofSeconds(1));
+        }
+
+        // Assert
+        assertEquals(100, cache.size());
+        assertTrue(cache.lookup(first).isEmpty());
+    }
+
+    private Embedding randomEmbedding() {
+        float[] values = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            values[i] = (float) random.nextGaussian();
+        }
+        return new Embedding(values);
+    }
+
+    // Adds noise of the given magnitude relative to the vector's own length, keeping cosine similarity around 1 - noise²/2
+    private Embedding perturb(Embedding embedding, float noise) {
+        float[] values = embedding.values().clone();
+        double norm = 0;
+        for (float value : values) {
+            norm += value * value;
+        }
+        double scale = noise * Math.sqrt(norm / DIMENSION);
+        for (int i = 0; i < DIMENSION; i++) {
+            values[i] += (float) (random.nextGaussian() * scale);
+        }
+        return new Embedding(values);
+    }
+}
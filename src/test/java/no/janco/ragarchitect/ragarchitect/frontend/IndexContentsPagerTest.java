@@ -0,0 +1,80 @@
+package no.janco.ragarchitect.ragarchitect.frontend;
+
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.IndexContent;
+import no.janco.ragarchitect.ragarchitect.vector.QdrantService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IndexContentsPagerTest {
+
+    private static final int POINTS = 120;
+
+    @Mock
+    private QdrantService qdrantService;
+
+    private IndexContentsPager pager;
+
+    private final List<Integer> scrolledFrom = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // A collection of points numbered 0 to 119, scrolled in id order
+        lenient().when(qdrantService.getIndexContents(eq("code"), any(), anyInt())).thenAnswer(invocation -> {
+            Points.PointId offset = invocation.getArgument(1);
+            int from = offset == null ? 0 : (int) offset.getNum();
+            int to = Math.min(POINTS, from + (int) invocation.getArgument(2));
+            scrolledFrom.add(from);
+            List<IndexContent> contents = IntStream.range(from, to)
+                    .mapToObj(i -> new IndexContent("area", "file" + i, "chunk" + i, null))
+                    .toList();
+            return new QdrantService.IndexContentsPage(contents, to < POINTS ? Points.PointId.newBuilder().setNum(to).build() : null);
+        });
+        pager = new IndexContentsPager(qdrantService, "code");
+    }
+
+    @Test
+    void fetch_ShouldContinueFromTheLastCursor_AsTheGridScrolls() throws Exception {
+        // Act
+        List<IndexContent> first = pager.fetch(0, 50);
+        List<IndexContent> second = pager.fetch(50, 50);
+        List<IndexContent> last = pager.fetch(100, 50);
+
+        // Assert - each page is one scroll, starting where the previous one ended
+        assertEquals(List.of("file0", "file49"), List.of(first.get(0).getFilePath(), first.get(49).getFilePath()));
+        assertEquals("file50", second.get(0).getFilePath());
+        assertEquals(20, last.size());
+        assertEquals(List.of(0, 50, 100), scrolledFrom);
+    }
+
+    @Test
+    void fetch_ShouldScrollOverSkippedRows_AndStopAtTheEnd() throws Exception {
+        // Act
+        List<IndexContent> middle = pager.fetch(60, 10);
+        List<IndexContent> beyond = pager.fetch(200, 50);
+        List<IndexContent> again = pager.fetch(60, 10);
+
+        // Assert - jumping ahead scrolls from the start once; later the cursor after row 70 is reused
+        assertEquals("file60", middle.get(0).getFilePath());
+        assertEquals(10, middle.size());
+        assertTrue(beyond.isEmpty());
+        assertEquals("file60", again.get(0).getFilePath());
+        assertEquals(List.of(0, 70, 0), scrolledFrom);
+        verify(qdrantService, times(2)).getIndexContents(eq("code"), isNull(), eq(70));
+    }
+}
@@ -0,0 +1,93 @@
+package no.janco.ragarchitect.ragarchitect.indexer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import no.janco.ragarchitect.ragarchitect.vector.EmbeddingService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmbeddingStoreTest {
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @TempDir
+    private Path tempDir;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(embeddingService.getEmbeddings(anyList())).thenAnswer(invocation ->
+                invocation.<List<String>>getArgument(0).stream().map(text -> Embedding.of(text.length(), 0.5f, -1f)).toList());
+    }
+
+    @Test
+    void embed_ShouldOnlySendMissingTexts_AndKeepOrder() {
+        // Arrange
+        EmbeddingStore store = new EmbeddingStore(embeddingService, tempDir.toString(), "model-a", meterRegistry);
+        store.embed(List.of("b"));
+
+        // Act
+        List<Embedding> embeddings = store.embed(List.of("aaa", "b", "cc"));
+
+        // Assert
+        assertEquals(List.of(Embedding.of(3f, 0.5f, -1f), Embedding.of(1f, 0.5f, -1f), Embedding.of(2f, 0.5f, -1f)), embeddings);
+        verify(embeddingService).getEmbeddings(List.of("aaa", "cc"));
+        assertEquals(1, meterRegistry.get("embedding.store.lookups").tag("result", "hit").counter().count());
+        assertEquals(3, meterRegistry.get("embedding.store.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void embed_ShouldReuseStoredEmbeddings_AcrossInstances() {
+        // Arrange
+        new EmbeddingStore(embeddingService, tempDir.toString(), "model-a", meterRegistry).embed(List.of("text"));
+        clearInvocations(embeddingService);
+
+        // Act
+        List<Embedding> embeddings = new EmbeddingStore(embeddingService, tempDir.toString(), "model-a", meterRegistry)
+                .embed(List.of("text"));
+
+        // Assert
+        assertEquals(List.of(Embedding.of(4f, 0.5f, -1f)), embeddings);
+        verifyNoInteractions(embeddingService);
+    }
+
+    @Test
+    void embed_ShouldNotReuseEmbeddings_FromAnotherModel() {
+        // Arrange
+        new EmbeddingStore(embeddingService, tempDir.toString(), "model-a", meterRegistry).embed(List.of("text"));
+
+        // Act
+        new EmbeddingStore(embeddingService, tempDir.toString(), "model-b", meterRegistry).embed(List.of("text"));
+
+        // Assert
+        verify(embeddingService, times(2)).getEmbeddings(List.of("text"));
+    }
+
+    @Test
+    void embed_ShouldEmbedEverything_WhenNoDirectoryIsSet() {
+        // Arrange
+        EmbeddingStore store = new EmbeddingStore(embeddingService, "", "model-a", meterRegistry);
+
+        // Act
+        store.embed(List.of("text"));
+        store.embed(List.of("text"));
+
+        // Assert
+        verify(embeddingService, times(2)).getEmbeddings(List.of("text"));
+    }
+}
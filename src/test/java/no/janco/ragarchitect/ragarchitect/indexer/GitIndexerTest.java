@@ -0,0 +1,291 @@
+package no.janco.ragarchitect.ragarchitect.indexer;
+
+import com.google.common.util.concurrent.Futures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionsChangedEvent;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import no.janco.ragarchitect.ragarchitect.vector.EmbeddingService;
+import no.janco.ragarchitect.ragarchitect.vector.VectorStore;
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.qdrant.client.ValueFactory.value;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GitIndexerTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @TempDir
+    private Path tempDir;
+
+    private Git upstream;
+    private GitIndexer gitIndexer;
+
+    // What the indexer has written to the code and state collections
+    private final Map<Points.PointId, Points.PointStruct> codePoints = new LinkedHashMap<>();
+    private final Map<String, Points.PointStruct> statePoints = new HashMap<>();
+    private final Set<String> existingCollections = new HashSet<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        upstream = Git.init().setDirectory(tempDir.resolve("upstream").toFile()).call();
+
+        EmbeddingStore embeddingStore = new EmbeddingStore(embeddingService, tempDir.resolve("embeddings").toString(),
+                "test-model", new SimpleMeterRegistry());
+        gitIndexer = new GitIndexer(vectorStore, embeddingStore, eventPublisher);
+        ReflectionTestUtils.setField(gitIndexer, "enabled", true);
+        ReflectionTestUtils.setField(gitIndexer, "repoUrl", tempDir.resolve("upstream").toUri().toString());
+        ReflectionTestUtils.setField(gitIndexer, "token", "");
+        ReflectionTestUtils.setField(gitIndexer, "branch", "");
+        ReflectionTestUtils.setField(gitIndexer, "cloneDir", tempDir.resolve("mirror.git").toString());
+        ReflectionTestUtils.setField(gitIndexer, "projectName", "ragarchitect");
+        ReflectionTestUtils.setField(gitIndexer, "collectionName", "code");
+        ReflectionTestUtils.setField(gitIndexer, "stateCollectionName", "indexer_state");
+        ReflectionTestUtils.setField(gitIndexer, "vectorSize", 3);
+        ReflectionTestUtils.setField(gitIndexer, "chunkSize", 2000);
+        ReflectionTestUtils.setField(gitIndexer, "batchSize", 2);
+        ReflectionTestUtils.setField(gitIndexer, "fileExtensions", List.of("java", "md"));
+        ReflectionTestUtils.setField(gitIndexer, "ignorePaths", List.of("src/test"));
+
+        lenient().when(vectorStore.collectionExists(anyString()))
+                .thenAnswer(invocation -> Futures.immediateFuture(existingCollections.contains(invocation.<String>getArgument(0))));
+        lenient().when(vectorStore.createCollection(anyString(), any(Collections.VectorParams.class))).thenAnswer(invocation -> {
+            existingCollections.add(invocation.getArgument(0));
+            return Futures.immediateFuture(Collections.CollectionOperationResponse.getDefaultInstance());
+        });
+        lenient().when(vectorStore.upsert(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Points.PointStruct> points = invocation.getArgument(1);
+            for (Points.PointStruct point : points) {
+                if (invocation.getArgument(0).equals("indexer_state")) {
+                    statePoints.put(point.getId().getUuid(), point);
+                } else {
+                    codePoints.put(point.getId(), point);
+                }
+            }
+            return Futures.immediateFuture(Points.UpdateResult.getDefaultInstance());
+        });
+        lenient().when(vectorStore.delete(eq("code"), any(Points.Filter.class))).thenAnswer(invocation -> {
+            codePoints.values().removeIf(point -> matches(invocation.getArgument(1), point));
+            return Futures.immediateFuture(Points.UpdateResult.getDefaultInstance());
+        });
+        lenient().when(vectorStore.delete(eq("code"), anyList())).thenAnswer(invocation -> {
+            invocation.<List<Points.PointId>>getArgument(1).forEach(codePoints::remove);
+            return Futures.immediateFuture(Points.UpdateResult.getDefaultInstance());
+        });
+        lenient().when(vectorStore.scroll(any(Points.ScrollPoints.class))).thenAnswer(invocation -> {
+            Points.ScrollPoints request = invocation.getArgument(0);
+            Points.ScrollResponse.Builder response = Points.ScrollResponse.newBuilder();
+            codePoints.values().stream().filter(point -> matches(request.getFilter(), point)).forEach(point ->
+                    response.addResult(Points.RetrievedPoint.newBuilder().setId(point.getId()).putAllPayload(point.getPayloadMap())));
+            return Futures.immediateFuture(response.build());
+        });
+        lenient().when(vectorStore.retrieve(any(Points.GetPoints.class), any())).thenAnswer(invocation -> {
+            Points.GetPoints request = invocation.getArgument(0);
+            Points.PointStruct point = statePoints.get(request.getIds(0).getUuid());
+            return Futures.immediateFuture(point == null ? List.of() : List.of(Points.RetrievedPoint.newBuilder()
+                    .setId(point.getId())
+                    .putAllPayload(point.getPayloadMap())
+                    .build()));
+        });
+        lenient().when(embeddingService.getEmbeddings(anyList())).thenAnswer(invocation ->
+                invocation.<List<String>>getArgument(0).stream().map(text -> Embedding.of(1f, 2f, 3f)).toList());
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.close();
+    }
+
+    // Handles the filters the indexer uses: an area, optionally with a list of paths
+    private static boolean matches(Points.Filter filter, Points.PointStruct point) {
+        String area = filter.getMust(0).getField().getMatch().getKeyword();
+        return area.equals(point.getPayloadMap().get("area").getStringValue())
+                && (filter.getMustCount() == 1 || filter.getMust(1).getField().getMatch().getKeywords().getStringsList()
+                        .contains(point.getPayloadMap().get("item_path").getStringValue()));
+    }
+
+    private Map<String, List<String>> indexedContent() {
+        Map<String, List<String>> content = new HashMap<>();
+        codePoints.values().forEach(point -> content.computeIfAbsent(point.getPayloadMap().get("item_path").getStringValue(),
+                path -> new ArrayList<>()).add(point.getPayloadMap().get("content").getStringValue()));
+        return content;
+    }
+
+    private String commit(Map<String, String> files, String... removed) throws Exception {
+        Path workTree = upstream.getRepository().getWorkTree().toPath();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Path path = workTree.resolve(file.getKey());
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, file.getValue());
+            upstream.add().addFilepattern(file.getKey()).call();
+        }
+        for (String path : removed) {
+            upstream.rm().addFilepattern(path).call();
+        }
+        return upstream.commit().setMessage("change").setAuthor("test", "test@example.com").call().name();
+    }
+
+    @Test
+    void index_ShouldIndexWholeTreeOnFirstRun_AndRecordCommit() throws Exception {
+        // Arrange
+        String head = commit(Map.of(
+                "src/main/A.java", "class A { }",
+                "src/main/B.java", "class B { }",
+                "README.md", "# Readme",
+                "src/test/ATest.java", "class ATest { }",
+                "logo.svg", "<svg/>"));
+
+        // Act
+        GitIndexer.IndexResult result = gitIndexer.index();
+
+        // Assert
+        assertEquals(head, result.toCommit());
+        assertNull(result.fromCommit());
+        assertEquals(3, result.chunksUpserted());
+        assertEquals(Set.of("src/main/A.java", "src/main/B.java", "README.md"), indexedContent().keySet());
+        assertEquals(head, statePoints.values().iterator().next().getPayloadMap().get("content").getStringValue());
+        verify(eventPublisher).publishEvent(new CollectionsChangedEvent(Set.of("code")));
+    }
+
+    @Test
+    void index_ShouldOnlyReembedChangedFiles_AndRemoveDeletedOnes() throws Exception {
+        // Arrange
+        commit(Map.of("A.java", "class A { }", "B.java", "class B { }", "C.java", "class C { }"));
+        gitIndexer.index();
+        clearInvocations(embeddingService);
+        String head = commit(Map.of("A.java", "class A { int changed; }", "D.java", "class D { }"), "B.java");
+
+        // Act
+        GitIndexer.IndexResult result = gitIndexer.index();
+
+        // Assert
+        assertEquals(2, result.filesIndexed());
+        assertEquals(1, result.filesRemoved());
+        verify(embeddingService).getEmbeddings(List.of("class A { int changed; }", "class D { }"));
+        verifyNoMoreInteractions(embeddingService);
+        assertEquals(Map.of(
+                "A.java", List.of("class A { int changed; }"),
+                "C.java", List.of("class C { }"),
+                "D.java", List.of("class D { }")), indexedContent());
+        assertEquals(head, statePoints.values().iterator().next().getPayloadMap().get("content").getStringValue());
+    }
+
+    @Test
+    void index_ShouldDoNothing_WhenHeadIsAlreadyIndexed() throws Exception {
+        // Arrange
+        commit(Map.of("A.java", "class A { }"));
+        gitIndexer.index();
+        clearInvocations(embeddingService, eventPublisher);
+
+        // Act
+        GitIndexer.IndexResult result = gitIndexer.index();
+
+        // Assert
+        assertEquals(0, result.filesIndexed());
+        verifyNoInteractions(embeddingService, eventPublisher);
+    }
+
+    @Test
+    void index_ShouldReindexEverything_WhenCollectionWasDropped() throws Exception {
+        // Arrange
+        commit(Map.of("A.java", "class A { }"));
+        gitIndexer.index();
+        commit(Map.of("B.java", "class B { }"));
+        existingCollections.remove("code");
+        codePoints.clear();
+        clearInvocations(embeddingService);
+
+        // Act
+        GitIndexer.IndexResult result = gitIndexer.index();
+
+        // Assert - A was embedded before, so only B goes to the embedding service
+        assertNull(result.fromCommit());
+        assertEquals(Set.of("A.java", "B.java"), indexedContent().keySet());
+        verify(embeddingService).getEmbeddings(List.of("class B { }"));
+        verifyNoMoreInteractions(embeddingService);
+    }
+
+    @Test
+    void index_ShouldSkipUnchangedChunks_AndReplaceOthers_WhenComparingWholeTree() throws Exception {
+        // Arrange - the recorded commit is lost, a point was left by the Python indexer, and one by a file since removed
+        commit(Map.of("A.java", "class A { }", "B.java", "class B { }"));
+        gitIndexer.index();
+        statePoints.clear();
+        Points.PointStruct unhashed = Points.PointStruct.newBuilder()
+                .setId(Points.PointId.newBuilder().setNum(0))
+                .putPayload("area", value("ragarchitect"))
+                .putPayload("item_path", value("A.java"))
+                .putPayload("content", value("class A { }"))
+                .build();
+        Points.PointStruct removed = Points.PointStruct.newBuilder()
+                .setId(Points.PointId.newBuilder().setNum(1))
+                .putPayload("area", value("ragarchitect"))
+                .putPayload("item_path", value("Gone.java"))
+                .putPayload("content", value("class Gone { }"))
+                .build();
+        codePoints.put(unhashed.getId(), unhashed);
+        codePoints.put(removed.getId(), removed);
+        clearInvocations(embeddingService);
+        clearInvocations(vectorStore);
+
+        // Act
+        GitIndexer.IndexResult result = gitIndexer.index();
+
+        // Assert - nothing is upserted again, only the two foreign points are removed
+        assertEquals(0, result.chunksUpserted());
+        assertEquals(2, result.chunksUnchanged());
+        assertEquals(1, result.filesRemoved());
+        assertEquals(Map.of("A.java", List.of("class A { }"), "B.java", List.of("class B { }")), indexedContent());
+        verify(vectorStore, never()).upsert(eq("code"), anyList());
+        verifyNoInteractions(embeddingService);
+    }
+
+    @Test
+    void pointId_ShouldBeStableAndDistinctPerChunk() {
+        // Act & Assert
+        assertEquals(GitIndexer.pointId("area", "A.java", "A.java_chunk_0"), GitIndexer.pointId("area", "A.java", "A.java_chunk_0"));
+        assertNotEquals(GitIndexer.pointId("area", "A.java", "A.java_chunk_0"), GitIndexer.pointId("area", "A.java", "A.java_chunk_1"));
+        assertNotEquals(GitIndexer.pointId("area", "A.java", "A.java_chunk_0"), GitIndexer.pointId("other", "A.java", "A.java_chunk_0"));
+    }
+
+    @Test
+    void splitLines_ShouldChunkByLineCount() {
+        // Act & Assert
+        assertEquals(List.of("a\nb\nc"), GitIndexer.splitLines("a\nb\nc", 3));
+        assertEquals(List.of("a\nb", "c\nd", "e"), GitIndexer.splitLines("a\nb\nc\nd\ne", 2));
+    }
+}
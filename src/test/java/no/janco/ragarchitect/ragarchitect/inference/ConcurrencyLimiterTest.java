@@ -0,0 +1,115 @@
+package no.janco.ragarchitect.ragarchitect.inference;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    @Test
+    void run_ShouldNeverExceedMaxConcurrent() throws Exception {
+        // Arrange
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 2, Duration.ofSeconds(10));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Act
+            for (int i = 0; i < 20; i++) {
+                callers.submit(() -> limiter.run(() -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return inFlight.decrementAndGet();
+                }));
+            }
+        }
+
+        // Assert
+        assertEquals(2, maxInFlight.get());
+        assertEquals(0, limiter.activeCalls());
+        assertEquals(0, limiter.queuedCalls());
+    }
+
+    @Test
+    void run_ShouldReject_WhenNoPermitFreesUpInTime() throws Exception {
+        // Arrange
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, Duration.ofMillis(50));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        limiter.bindTo(registry);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> holder = callers.submit(() -> limiter.run(() -> {
+                holding.countDown();
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            holding.await();
+
+            // Act
+            assertThrows(RejectedExecutionException.class, () -> limiter.run(() -> "too late"));
+
+            // Assert - the abandoned waiter is gone and the held permit is unaffected
+            assertEquals(0, limiter.queuedCalls());
+            assertEquals(1, limiter.activeCalls());
+            assertEquals(1.0, registry.get("limiter.calls.rejected").tag("limiter", "test").counter().count());
+            release.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals("next", limiter.run(() -> "next"));
+    }
+
+    @Test
+    void runAsync_ShouldHoldPermitUntilFutureCompletes() throws Exception {
+        // Arrange
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, Duration.ofSeconds(5));
+        CompletableFuture<String> firstCall = new CompletableFuture<>();
+
+        // Act
+        CompletableFuture<String> first = limiter.runAsync(() -> firstCall);
+        CompletableFuture<String> second = limiter.runAsync(() -> CompletableFuture.completedFuture("second"));
+
+        // Assert - the second call only starts once the first has completed, and no thread waited for it
+        assertEquals(1, limiter.queuedCalls());
+        assertFalse(second.isDone());
+        firstCall.complete("first");
+        assertEquals("first", first.get(1, TimeUnit.SECONDS));
+        assertEquals("second", second.get(1, TimeUnit.SECONDS));
+        assertEquals(0, limiter.activeCalls());
+    }
+
+    @Test
+    void runAsync_ShouldFail_WhenQueuedPastMaxWait() {
+        // Arrange
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 1, Duration.ofMillis(50));
+        limiter.runAsync(CompletableFuture::new);
+
+        // Act
+        CompletableFuture<String> queued = limiter.runAsync(() -> CompletableFuture.completedFuture("never"));
+
+        // Assert
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, thrown.getCause());
+        assertEquals(0, limiter.queuedCalls());
+    }
+}
@@ -0,0 +1,104 @@
+package no.janco.ragarchitect.ragarchitect.inference;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InferenceHttpClientTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    public static class Reply {
+        public String response;
+    }
+
+    @Test
+    void postJson_ShouldDeserializeResponse() throws Exception {
+        // Arrange
+        respond("/inference", 200, "{\"response\": \"Test response\", \"ignored\": 1}");
+        server.start();
+        InferenceHttpClient client = new InferenceHttpClient(httpClient, Duration.ofSeconds(5));
+
+        // Act
+        Reply reply = client.postJson(baseUrl + "/inference", Map.of("message", "hi"), Reply.class).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals("Test response", reply.response);
+    }
+
+    @Test
+    void postJson_ShouldFail_WhenBackendReturnsError() {
+        // Arrange
+        respond("/inference", 503, "overloaded");
+        server.start();
+        InferenceHttpClient client = new InferenceHttpClient(httpClient, Duration.ofSeconds(5));
+
+        // Act
+        ExecutionException thrown = assertThrows(ExecutionException.class,
+                () -> client.postJson(baseUrl + "/inference", Map.of("message", "hi")).get(5, TimeUnit.SECONDS));
+
+        // Assert
+        RestClientResponseException cause = assertInstanceOf(RestClientResponseException.class, thrown.getCause());
+        assertEquals(503, cause.getStatusCode().value());
+        assertEquals("overloaded", cause.getResponseBodyAsString());
+    }
+
+    @Test
+    void postJson_ShouldNotOfferH2cUpgrade_OverPlainHttp() throws Exception {
+        // Arrange
+        AtomicReference<String> upgrade = new AtomicReference<>("not seen");
+        server.createContext("/inference", exchange -> {
+            upgrade.set(exchange.getRequestHeaders().getFirst("Upgrade"));
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        HttpClient http2Client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        InferenceHttpClient client = new InferenceHttpClient(http2Client, Duration.ofSeconds(5));
+
+        // Act
+        client.postJson(baseUrl + "/inference", Map.of("message", "hi")).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertNull(upgrade.get());
+    }
+
+    private void respond(String path, int status, String body) {
+        server.createContext(path, exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+    }
+}
@@ -1,5 +1,6 @@
 package no.janco.ragarchitect.ragarchitect.inference.generic;
 
+import no.janco.ragarchitect.ragarchitect.inference.InferenceHttpClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,6 +13,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -23,6 +26,9 @@ class GenericAdapterTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private InferenceHttpClient inferenceHttpClient;
+
     private GenericAdapter genericAdapter;
 
     private static final String TEST_INFERENCE_URL = "http://test-server/inference";
@@ -31,7 +37,7 @@ class GenericAdapterTest {
 
     @BeforeEach
     void setUp() {
-        genericAdapter = new GenericAdapter(restTemplate);
+        genericAdapter = new GenericAdapter(restTemplate, inferenceHttpClient);
         ReflectionTestUtils.setField(genericAdapter, "inferenceUrl", TEST_INFERENCE_URL);
     }
 
@@ -138,4 +144,17 @@ class GenericAdapterTest {
             eq(String.class)
         );
     }
-} 
\ No newline at end of file
+
+    @Test
+    void inferAsync_ShouldReturnNoResponse_WhenBodyIsEmpty() throws Exception {
+        // Arrange
+        when(inferenceHttpClient.postJson(eq(TEST_INFERENCE_URL), any(GenericRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(""));
+
+        // Act
+        String result = genericAdapter.inferAsync(TEST_PROMPT).get();
+
+        // Assert
+        assertEquals("No response", result);
+    }
+}
@@ -1,5 +1,7 @@
 package no.janco.ragarchitect.ragarchitect.inference.ollama;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.inference.InferenceHttpClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -8,14 +10,24 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 @ExtendWith(MockitoExtension.class)
 class OllamaAdapterTest {
@@ -23,6 +35,11 @@ class OllamaAdapterTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Mock
+    private InferenceHttpClient inferenceHttpClient;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private OllamaAdapter ollamaAdapter;
 
     private static final String TEST_SERVER_URL = "http://test-ollama-server";
@@ -33,7 +50,7 @@ class OllamaAdapterTest {
 
     @BeforeEach
     void setUp() {
-        ollamaAdapter = new OllamaAdapter(restTemplate);
+        ollamaAdapter = new OllamaAdapter(restTemplate, inferenceHttpClient, meterRegistry);
         ReflectionTestUtils.setField(ollamaAdapter, "ollamaServerUrl", TEST_SERVER_URL);
         ReflectionTestUtils.setField(ollamaAdapter, "ollamaServerModel", TEST_MODEL);
     }
@@ -158,4 +175,56 @@ class OllamaAdapterTest {
             eq(OllamaResponse.class)
         );
     }
-} 
\ No newline at end of file
+
+    @Test
+    void inferStream_ShouldEmitEachChunk_UntilDone() {
+        // Arrange - the streaming path needs a real request/response, so use a mock server instead of the mock template
+        RestTemplate streamingTemplate = new RestTemplate();
+        MockRestServiceServer server = MockRestServiceServer.bindTo(streamingTemplate).build();
+        OllamaAdapter streamingAdapter = new OllamaAdapter(streamingTemplate, inferenceHttpClient, meterRegistry);
+        ReflectionTestUtils.setField(streamingAdapter, "ollamaServerUrl", TEST_SERVER_URL);
+        ReflectionTestUtils.setField(streamingAdapter, "ollamaServerModel", TEST_MODEL);
+
+        String ndjson = """
+                {"model":"test-model","response":"Test","done":false}
+                {"model":"test-model","response":" response","done":false}
+                {"model":"test-model","response":"","done":true,"total_duration":1234,"prompt_eval_count":42,"prompt_eval_duration":3000000,"eval_count":2,"eval_duration":5000000}
+                """;
+        server.expect(requestTo(EXPECTED_API_URL))
+                .andExpect(jsonPath("$.stream").value(true))
+                .andExpect(jsonPath("$.model").value(TEST_MODEL))
+                .andRespond(withSuccess(ndjson, MediaType.parseMediaType("application/x-ndjson")));
+        List<String> chunks = new ArrayList<>();
+
+        // Act
+        String result = streamingAdapter.inferStream(TEST_PROMPT, chunks::add);
+
+        // Assert
+        assertEquals(TEST_RESPONSE, result);
+        assertEquals(List.of("Test", " response"), chunks);
+        server.verify();
+        // Ollama's own accounting, from the final chunk
+        assertEquals(42, meterRegistry.get("ollama.prompt.eval.tokens").tag("model", TEST_MODEL).summary().totalAmount());
+        assertEquals(2, meterRegistry.get("ollama.eval.tokens").summary().totalAmount());
+        assertEquals(5, meterRegistry.get("ollama.eval.duration").timer().totalTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void inferAsync_ShouldReturnResponse_WithoutStreaming() throws Exception {
+        // Arrange
+        OllamaResponse responseBody = new OllamaResponse();
+        responseBody.setResponse(TEST_RESPONSE);
+        when(inferenceHttpClient.postJson(eq(EXPECTED_API_URL), any(OllamaRequest.class), eq(OllamaResponse.class)))
+                .thenReturn(CompletableFuture.completedFuture(responseBody));
+
+        // Act
+        String result = ollamaAdapter.inferAsync(TEST_PROMPT).get();
+
+        // Assert
+        assertEquals(TEST_RESPONSE, result);
+        verify(inferenceHttpClient).postJson(eq(EXPECTED_API_URL),
+                argThat((OllamaRequest request) -> !request.isStream() && request.getModel().equals(TEST_MODEL)),
+                eq(OllamaResponse.class));
+        verifyNoInteractions(restTemplate);
+    }
+}
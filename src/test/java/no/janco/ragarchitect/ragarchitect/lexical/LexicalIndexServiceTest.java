@@ -0,0 +1,115 @@
+package no.janco.ragarchitect.ragarchitect.lexical;
+
+import com.google.common.util.concurrent.Futures;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionCatalog;
+import no.janco.ragarchitect.ragarchitect.vector.CollectionsChangedEvent;
+import no.janco.ragarchitect.ragarchitect.vector.VectorStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static io.qdrant.client.ValueFactory.value;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LexicalIndexServiceTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private CollectionCatalog collectionCatalog;
+
+    private LexicalIndexService lexicalIndexService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lexicalIndexService = new LexicalIndexService(vectorStore, collectionCatalog);
+        ReflectionTestUtils.setField(lexicalIndexService, "enabled", true);
+        ReflectionTestUtils.setField(lexicalIndexService, "collectionNames", List.of("code"));
+        lenient().when(collectionCatalog.contains(anyString())).thenReturn(true);
+    }
+
+    @Test
+    void scheduledRefresh_ShouldIndexEveryPageOfTheCollection() {
+        // Arrange
+        Points.PointId secondPage = Points.PointId.newBuilder().setNum(2).build();
+        when(vectorStore.scroll(argThat(request -> request != null && !request.hasOffset())))
+                .thenReturn(Futures.immediateFuture(Points.ScrollResponse.newBuilder()
+                        .addResult(point(1, "Alpha.java", "class Alpha { }"))
+                        .setNextPageOffset(secondPage)
+                        .build()));
+        when(vectorStore.scroll(argThat(request -> request != null && request.hasOffset())))
+                .thenReturn(Futures.immediateFuture(Points.ScrollResponse.newBuilder()
+                        .addResult(point(2, "Beta.java", "class Beta { }"))
+                        .build()));
+
+        // Act
+        lexicalIndexService.scheduledRefresh();
+
+        // Assert
+        assertEquals(2, lexicalIndexService.search("code", "Alpha Beta", 10).size());
+        assertEquals(2, lexicalIndexService.search("code", "Beta.java", 10).get(0).id().getNum());
+        assertEquals(List.of(), lexicalIndexService.search("confluence", "Beta.java", 10));
+    }
+
+    @Test
+    void scheduledRefresh_ShouldOnlyRebuildChangedCollections() {
+        // Arrange
+        when(vectorStore.scroll(any(Points.ScrollPoints.class)))
+                .thenReturn(Futures.immediateFuture(Points.ScrollResponse.newBuilder()
+                        .addResult(point(1, "Alpha.java", "class Alpha { }"))
+                        .build()));
+        lexicalIndexService.scheduledRefresh();
+        lexicalIndexService.scheduledRefresh();
+        verify(vectorStore, times(1)).scroll(any(Points.ScrollPoints.class));
+
+        // Act
+        lexicalIndexService.onCollectionsChanged(new CollectionsChangedEvent(Set.of("code", "other")));
+        lexicalIndexService.scheduledRefresh();
+
+        // Assert
+        verify(vectorStore, times(2)).scroll(any(Points.ScrollPoints.class));
+    }
+
+    @Test
+    void scheduledRefresh_ShouldRebuildIndex_OnceItReachesMaxAge() throws Exception {
+        // Arrange - a reindex that keeps the point count raises no change event
+        ReflectionTestUtils.setField(lexicalIndexService, "maxAgeMs", 1L);
+        when(vectorStore.scroll(any(Points.ScrollPoints.class)))
+                .thenReturn(Futures.immediateFuture(Points.ScrollResponse.newBuilder()
+                        .addResult(point(1, "Alpha.java", "class Alpha { }"))
+                        .build()))
+                .thenReturn(Futures.immediateFuture(Points.ScrollResponse.newBuilder()
+                        .addResult(point(1, "A.java", "class Renamed { }"))
+                        .build()));
+        lexicalIndexService.scheduledRefresh();
+        Thread.sleep(5);
+
+        // Act
+        lexicalIndexService.scheduledRefresh();
+
+        // Assert
+        verify(vectorStore, times(2)).scroll(any(Points.ScrollPoints.class));
+        assertEquals(1, lexicalIndexService.search("code", "Renamed", 10).size());
+    }
+
+    private static Points.RetrievedPoint point(long id, String path, String content) {
+        return Points.RetrievedPoint.newBuilder()
+                .setId(Points.PointId.newBuilder().setNum(id))
+                .putPayload("item_path", value(path))
+                .putPayload("content", value(content))
+                .build();
+    }
+}
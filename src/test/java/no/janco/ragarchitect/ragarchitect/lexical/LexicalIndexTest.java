@@ -0,0 +1,104 @@
+package no.janco.ragarchitect.ragarchitect.lexical;
+
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexicalIndexTest {
+
+    @Test
+    void terms_ShouldSplitIdentifiers_AndKeepThemWhole() {
+        // Act
+        List<String> terms = new ArrayList<>();
+        CodeTerms.forEach("QdrantService.getIndexContents(max_batch_size, HTTPClient) ERR42 __init__ x", terms::add);
+
+        // Assert
+        assertEquals(List.of("qdrantservice", "qdrant", "service", "getindexcontents", "get", "index", "contents",
+                "max_batch_size", "max", "batch", "size", "httpclient", "http", "client", "err42", "err", "42", "init"), terms);
+    }
+
+    @Test
+    void search_ShouldFindExactIdentifier_AmongSimilarCode() {
+        // Arrange
+        LexicalIndex index = LexicalIndex.builder()
+                .add(id(1), "src/QdrantService.java", "public List<IndexContent> getIndexContents(String index)")
+                .add(id(2), "src/VectorSearchService.java", "public List<IndexContent> searchContents(String index, String query)")
+                .add(id(3), "src/LLMController.java", "List<String> indexes = qdrantService.getCollectionNames();")
+                .build();
+
+        // Act
+        List<LexicalIndex.Hit> hits = index.search("QdrantService.getIndexContents", 10);
+
+        // Assert
+        assertEquals(id(1), hits.get(0).id());
+        assertEquals("src/QdrantService.java", hits.get(0).path());
+        assertTrue(hits.stream().allMatch(hit -> hit.score() > 0));
+    }
+
+    @Test
+    void search_ShouldOnlyReturnDocumentsWithARareTerm() {
+        // Arrange
+        LexicalIndex index = LexicalIndex.builder()
+                .add(id(1), "", "return the value")
+                .add(id(2), "", "return the ERR_QUOTA_EXCEEDED code")
+                .add(id(3), "", "return the result")
+                .build();
+
+        // Act
+        List<LexicalIndex.Hit> hits = index.search("why does it return ERR_QUOTA_EXCEEDED", 2);
+
+        // Assert - sharing only "return" with the question does not make a match
+        assertEquals(1, hits.size());
+        assertEquals(id(2), hits.get(0).id());
+    }
+
+    @Test
+    void search_ShouldKeepBestOfManyMatches() {
+        // Arrange - every 25th document mentions the term, the later ones more often
+        LexicalIndex.Builder builder = LexicalIndex.builder();
+        for (int i = 1; i <= 500; i++) {
+            String mentions = i % 25 == 0 ? "quota ".repeat(1 + i / 50) : "";
+            builder.add(id(i), "", mentions + "filler text number " + i);
+        }
+        LexicalIndex index = builder.build();
+
+        // Act
+        List<LexicalIndex.Hit> hits = index.search("quota", 3);
+
+        // Assert - the documents with the most mentions, best first
+        assertEquals(3, hits.size());
+        assertTrue(hits.stream().allMatch(hit -> hit.id().getNum() == 500 || hit.id().getNum() / 50 == 9));
+        assertTrue(hits.get(0).score() >= hits.get(1).score() && hits.get(1).score() >= hits.get(2).score());
+    }
+
+    @Test
+    void search_ShouldReturnNothing_WhenNoTermMatches() {
+        // Arrange
+        LexicalIndex index = LexicalIndex.builder().add(id(1), "A.java", "class A { }").build();
+
+        // Act & Assert
+        assertEquals(List.of(), index.search("completely unrelated", 10));
+        assertEquals(List.of(), LexicalIndex.builder().build().search("anything", 10));
+    }
+
+    @Test
+    void search_ShouldReturnNothing_WhenOnlyCommonTermsAndStopwordsMatch() {
+        // Arrange - "return" is in every document, "why" in one
+        LexicalIndex index = LexicalIndex.builder()
+                .add(id(1), "", "return the value")
+                .add(id(2), "", "return why the code failed")
+                .add(id(3), "", "return the result")
+                .build();
+
+        // Act & Assert
+        assertEquals(List.of(), index.search("why does it return", 10));
+    }
+
+    private static Points.PointId id(long number) {
+        return Points.PointId.newBuilder().setNum(number).build();
+    }
+}
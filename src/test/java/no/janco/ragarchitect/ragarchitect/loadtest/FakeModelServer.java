@@ -0,0 +1,181 @@
+package no.janco.ragarchitect.ragarchitect.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stand-in for the HTTP services behind the application, on a local port: the embedding service ({@code /embed}) and
+ * the generation endpoints of Ollama ({@code /api/generate}), vLLM ({@code /inference}) and the generic adapter
+ * ({@code /generate}).
+ * <p>
+ * Embeddings are unit vectors seeded by the text, so a repeated question embeds the same, as with the real model.
+ * A generation waits for its first token, then produces the rest one token interval apart, streamed as each backend
+ * streams when the request asks for it; a share of generations fails with a server error instead.
+ */
+class FakeModelServer implements AutoCloseable {
+
+    private static final int DIMENSION = 384;
+    private static final String[] WORDS = {"the", "orchestrator", "sends", "each", "question", "with", "its", "context",
+            "to", "model", "and", "streams", "answer", "back", "while", "cache", "keeps", "recent", "embeddings"};
+
+    /**
+     * @param firstToken Time until the first token, covering prompt evaluation
+     * @param tokenInterval Time between further tokens
+     * @param errorRate Share of generations that fail, between 0 and 1
+     */
+    record Generation(LatencyDistribution firstToken, LatencyDistribution tokenInterval, int tokens, double errorRate) { }
+
+    private enum Backend { OLLAMA, VLLM, GENERIC }
+
+    private final LatencyDistribution embedLatency;
+    private final Generation generation;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    FakeModelServer(LatencyDistribution embedLatency, Generation generation) throws IOException {
+        this.embedLatency = embedLatency;
+        this.generation = generation;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/embed", this::embed);
+        server.createContext("/api/generate", exchange -> generate(exchange, Backend.OLLAMA));
+        server.createContext("/inference", exchange -> generate(exchange, Backend.VLLM));
+        server.createContext("/generate", exchange -> generate(exchange, Backend.GENERIC));
+        server.start();
+    }
+
+    String url() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            List<float[]> embeddings = new ArrayList<>();
+            for (JsonNode sentence : request.path("sentences")) {
+                embeddings.add(embedding(sentence.asText()));
+            }
+            embedLatency.sleep();
+            send(exchange, 200, "application/json", objectMapper.writeValueAsBytes(Map.of("embeddings", embeddings)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void generate(HttpExchange exchange, Backend backend) throws IOException {
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            boolean stream = request.path("stream").asBoolean(false);
+            int promptChars = request.path(backend == Backend.OLLAMA ? "prompt" : "message").asText().length();
+
+            long start = System.nanoTime();
+            generation.firstToken().sleep();
+            if (ThreadLocalRandom.current().nextDouble() < generation.errorRate()) {
+                send(exchange, 500, "application/json", objectMapper.writeValueAsBytes(Map.of("error", "simulated failure")));
+                return;
+            }
+
+            if (!stream) {
+                StringBuilder text = new StringBuilder();
+                for (int i = 0; i < generation.tokens(); i++) {
+                    if (i > 0) {
+                        generation.tokenInterval().sleep();
+                    }
+                    text.append(token());
+                }
+                byte[] body = switch (backend) {
+                    case OLLAMA -> objectMapper.writeValueAsBytes(ollamaChunk(text.toString(), true, promptChars, start));
+                    case VLLM -> objectMapper.writeValueAsBytes(Map.of("response", text.toString()));
+                    case GENERIC -> text.toString().getBytes(StandardCharsets.UTF_8);
+                };
+                send(exchange, 200, backend == Backend.GENERIC ? "text/plain" : "application/json", body);
+                return;
+            }
+
+            // Ollama streams newline-delimited JSON, the others plain text
+            exchange.getResponseHeaders().set("Content-Type", backend == Backend.OLLAMA ? "application/x-ndjson" : "text/plain");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            for (int i = 0; i < generation.tokens(); i++) {
+                if (i > 0) {
+                    generation.tokenInterval().sleep();
+                }
+                if (backend == Backend.OLLAMA) {
+                    body.write(objectMapper.writeValueAsBytes(ollamaChunk(token(), false, promptChars, start)));
+                    body.write('\n');
+                } else {
+                    body.write(token().getBytes(StandardCharsets.UTF_8));
+                }
+                body.flush();
+            }
+            if (backend == Backend.OLLAMA) {
+                body.write(objectMapper.writeValueAsBytes(ollamaChunk("", true, promptChars, start)));
+                body.write('\n');
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<String, Object> ollamaChunk(String response, boolean done, int promptChars, long startNanos) {
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("model", "loadtest");
+        chunk.put("response", response);
+        chunk.put("done", done);
+        if (done) {
+            long total = System.nanoTime() - startNanos;
+            chunk.put("total_duration", total);
+            chunk.put("prompt_eval_count", promptChars / 4);
+            chunk.put("eval_count", generation.tokens());
+            chunk.put("eval_duration", total);
+        }
+        return chunk;
+    }
+
+    private static String token() {
+        return WORDS[ThreadLocalRandom.current().nextInt(WORDS.length)] + " ";
+    }
+
+    private static float[] embedding(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+}
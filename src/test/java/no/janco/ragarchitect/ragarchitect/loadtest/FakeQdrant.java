@@ -0,0 +1,235 @@
+package no.janco.ragarchitect.ragarchitect.loadtest;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.CollectionsGrpc;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import io.qdrant.client.grpc.PointsGrpc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.ValueFactory.value;
+
+/**
+ * Stand-in for the Qdrant server, over gRPC on a local port, with the collections the chat context is drawn from
+ * filled with synthetic chunks. Every call is answered after a sampled latency, without holding a thread meanwhile.
+ * <p>
+ * Queries do not search: they return a run of points from a random position with falling scores, which costs the
+ * application what a real result would. Collection info, retrieve by id and scroll behave like Qdrant's, so the
+ * catalog, content lookups and lexical index work as they would against the real server.
+ */
+class FakeQdrant implements AutoCloseable {
+
+    static final List<String> COLLECTIONS = List.of("code", "confluence");
+
+    private static final int VECTOR_SIZE = 384;
+    private static final String[] WORDS = {"orchestrator", "collection", "embedding", "snippet", "prompt", "service",
+            "request", "response", "index", "query", "vector", "token", "cache", "limiter", "stream", "adapter",
+            "public", "class", "return", "String", "List", "final", "void", "new"};
+
+    private final LatencyDistribution latency;
+    private final Map<String, List<Points.PointStruct>> collections = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Server server;
+
+    FakeQdrant(int pointsPerCollection, int contentChars, LatencyDistribution latency) throws IOException {
+        this.latency = latency;
+        Random random = new Random(42);
+        for (String collection : COLLECTIONS) {
+            List<Points.PointStruct> points = new ArrayList<>(pointsPerCollection);
+            for (int i = 0; i < pointsPerCollection; i++) {
+                points.add(Points.PointStruct.newBuilder()
+                        .setId(id(i))
+                        .putPayload("area", value("loadtest"))
+                        .putPayload("item_path", value(collection + "/Item" + (i / 10) + ".java"))
+                        .putPayload("chunk_id", value(String.valueOf(i % 10)))
+                        .putPayload("content", value(text(random, contentChars)))
+                        .build());
+            }
+            collections.put(collection, points);
+        }
+        server = ServerBuilder.forPort(0)
+                .addService(new CollectionsService())
+                .addService(new PointsService())
+                .build()
+                .start();
+    }
+
+    int port() {
+        return server.getPort();
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private class CollectionsService extends CollectionsGrpc.CollectionsImplBase {
+
+        @Override
+        public void list(Collections.ListCollectionsRequest request, StreamObserver<Collections.ListCollectionsResponse> observer) {
+            respond(observer, () -> {
+                Collections.ListCollectionsResponse.Builder response = Collections.ListCollectionsResponse.newBuilder();
+                collections.keySet().forEach(name -> response.addCollections(Collections.CollectionDescription.newBuilder().setName(name)));
+                return response.build();
+            });
+        }
+
+        @Override
+        public void get(Collections.GetCollectionInfoRequest request, StreamObserver<Collections.GetCollectionInfoResponse> observer) {
+            respond(observer, () -> Collections.GetCollectionInfoResponse.newBuilder()
+                    .setResult(Collections.CollectionInfo.newBuilder()
+                            .setStatus(Collections.CollectionStatus.Green)
+                            .setPointsCount(points(request.getCollectionName()).size())
+                            .setConfig(Collections.CollectionConfig.newBuilder()
+                                    .setParams(Collections.CollectionParams.newBuilder()
+                                            .setVectorsConfig(Collections.VectorsConfig.newBuilder()
+                                                    .setParams(Collections.VectorParams.newBuilder()
+                                                            .setSize(VECTOR_SIZE)
+                                                            .setDistance(Collections.Distance.Cosine))))))
+                    .build());
+        }
+
+        @Override
+        public void collectionExists(Collections.CollectionExistsRequest request, StreamObserver<Collections.CollectionExistsResponse> observer) {
+            respond(observer, () -> Collections.CollectionExistsResponse.newBuilder()
+                    .setResult(Collections.CollectionExists.newBuilder().setExists(collections.containsKey(request.getCollectionName())))
+                    .build());
+        }
+
+        @Override
+        public void update(Collections.UpdateCollection request, StreamObserver<Collections.CollectionOperationResponse> observer) {
+            respond(observer, () -> {
+                points(request.getCollectionName());
+                return Collections.CollectionOperationResponse.newBuilder().setResult(true).build();
+            });
+        }
+    }
+
+    private class PointsService extends PointsGrpc.PointsImplBase {
+
+        @Override
+        public void query(Points.QueryPoints request, StreamObserver<Points.QueryResponse> observer) {
+            respond(observer, () -> {
+                List<Points.PointStruct> points = points(request.getCollectionName());
+                int limit = request.hasLimit() ? (int) request.getLimit() : 10;
+                int start = ThreadLocalRandom.current().nextInt(points.size());
+                Points.QueryResponse.Builder response = Points.QueryResponse.newBuilder();
+                for (int rank = 0; rank < Math.min(limit, points.size()); rank++) {
+                    float score = 0.9f - rank * 0.01f;
+                    if (request.hasScoreThreshold() && score < request.getScoreThreshold()) {
+                        break;
+                    }
+                    Points.PointStruct point = points.get((start + rank) % points.size());
+                    response.addResult(Points.ScoredPoint.newBuilder()
+                            .setId(point.getId())
+                            .setScore(score)
+                            .putAllPayload(payload(point, request.getWithPayload(), false)));
+                }
+                return response.build();
+            });
+        }
+
+        @Override
+        public void get(Points.GetPoints request, StreamObserver<Points.GetResponse> observer) {
+            respond(observer, () -> {
+                List<Points.PointStruct> points = points(request.getCollectionName());
+                Points.GetResponse.Builder response = Points.GetResponse.newBuilder();
+                for (Points.PointId id : request.getIdsList()) {
+                    if (id.getNum() < points.size()) {
+                        response.addResult(retrieved(points.get((int) id.getNum()), request.getWithPayload()));
+                    }
+                }
+                return response.build();
+            });
+        }
+
+        @Override
+        public void scroll(Points.ScrollPoints request, StreamObserver<Points.ScrollResponse> observer) {
+            respond(observer, () -> {
+                List<Points.PointStruct> points = points(request.getCollectionName());
+                int offset = request.hasOffset() ? (int) request.getOffset().getNum() : 0;
+                int end = Math.min(points.size(), offset + (request.hasLimit() ? request.getLimit() : 10));
+                Points.ScrollResponse.Builder response = Points.ScrollResponse.newBuilder();
+                for (Points.PointStruct point : points.subList(Math.min(offset, end), end)) {
+                    response.addResult(retrieved(point, request.getWithPayload()));
+                }
+                if (end < points.size()) {
+                    response.setNextPageOffset(id(end));
+                }
+                return response.build();
+            });
+        }
+    }
+
+    private List<Points.PointStruct> points(String collectionName) {
+        List<Points.PointStruct> points = collections.get(collectionName);
+        if (points == null) {
+            throw Status.NOT_FOUND.withDescription("Collection `" + collectionName + "` doesn't exist!").asRuntimeException();
+        }
+        return points;
+    }
+
+    // Answers once the sampled latency has passed, or with the failure the supplier throws
+    private <T> void respond(StreamObserver<T> observer, Supplier<T> response) {
+        scheduler.schedule(() -> {
+            try {
+                observer.onNext(response.get());
+                observer.onCompleted();
+            } catch (RuntimeException e) {
+                observer.onError(e);
+            }
+        }, latency.sampleNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static Points.RetrievedPoint retrieved(Points.PointStruct point, Points.WithPayloadSelector selector) {
+        return Points.RetrievedPoint.newBuilder()
+                .setId(point.getId())
+                .putAllPayload(payload(point, selector, true))
+                .build();
+    }
+
+    // As Qdrant selects payload: returned by default from scroll and retrieve, but not from query
+    private static Map<String, JsonWithInt.Value> payload(Points.PointStruct point, Points.WithPayloadSelector selector, boolean byDefault) {
+        return switch (selector.getSelectorOptionsCase()) {
+            case ENABLE -> selector.getEnable() ? point.getPayloadMap() : Map.of();
+            case INCLUDE -> selected(point.getPayloadMap(), selector.getInclude().getFieldsList(), true);
+            case EXCLUDE -> selected(point.getPayloadMap(), selector.getExclude().getFieldsList(), false);
+            case SELECTOROPTIONS_NOT_SET -> byDefault ? point.getPayloadMap() : Map.of();
+        };
+    }
+
+    private static Map<String, JsonWithInt.Value> selected(Map<String, JsonWithInt.Value> payload, List<String> fields, boolean include) {
+        Map<String, JsonWithInt.Value> selected = new LinkedHashMap<>();
+        payload.forEach((key, value) -> {
+            if (fields.contains(key) == include) {
+                selected.put(key, value);
+            }
+        });
+        return selected;
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(8) == 0 ? "\n" : " ");
+        }
+        return text.substring(0, length);
+    }
+}
@@ -0,0 +1,45 @@
+package no.janco.ragarchitect.ragarchitect.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A latency for a stand-in server to simulate, in milliseconds: {@code 20} or {@code fixed:20} for a constant,
+ * {@code uniform:10-50} for an even spread, or {@code lognormal:200:0.5} for the long tail of real service times,
+ * given by its median and the sigma of its logarithm.
+ */
+record LatencyDistribution(Kind kind, double first, double second) {
+
+    enum Kind { FIXED, UNIFORM, LOGNORMAL }
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.strip().split(":");
+        try {
+            return switch (parts[0]) {
+                case "fixed" -> new LatencyDistribution(Kind.FIXED, Double.parseDouble(parts[1]), 0);
+                case "uniform" -> {
+                    String[] range = parts[1].split("-");
+                    yield new LatencyDistribution(Kind.UNIFORM, Double.parseDouble(range[0]), Double.parseDouble(range[1]));
+                }
+                case "lognormal" -> new LatencyDistribution(Kind.LOGNORMAL, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                default -> new LatencyDistribution(Kind.FIXED, Double.parseDouble(parts[0]), 0);
+            };
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid latency '" + spec + "', expected e.g. 20, uniform:10-50 or lognormal:200:0.5", e);
+        }
+    }
+
+    long sampleNanos() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double millis = switch (kind) {
+            case FIXED -> first;
+            case UNIFORM -> first + random.nextDouble() * (second - first);
+            case LOGNORMAL -> first * Math.exp(second * random.nextGaussian());
+        };
+        return (long) (Math.max(0, millis) * 1_000_000);
+    }
+
+    void sleep() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(sampleNanos());
+    }
+}
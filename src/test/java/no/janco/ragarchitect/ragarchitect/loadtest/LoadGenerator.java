@@ -0,0 +1,178 @@
+package no.janco.ragarchitect.ragarchitect.loadtest;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the application with an open workload: requests arrive at an average rate with exponentially distributed
+ * gaps, whether or not earlier ones have finished, the way independent users arrive. A slow application therefore
+ * builds up requests in flight instead of quietly receiving fewer, which is what shows where capacity ends.
+ * <p>
+ * Latency is measured from each request's scheduled arrival, so any delay in sending it counts too. Requests arriving
+ * during the warmup are sent but not reported.
+ */
+class LoadGenerator {
+
+    /**
+     * What a request is sent to. {@code chat} and {@code vector-search} are the plain calls; {@code chat-stream}
+     * reads the whole event stream of {@code /api/llm/chat/stream}.
+     */
+    enum Endpoint {
+        CHAT("chat"), CHAT_STREAM("chat-stream"), VECTOR_SEARCH("vector-search");
+
+        final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+
+        static Endpoint fromLabel(String label) {
+            for (Endpoint endpoint : values()) {
+                if (endpoint.label.equals(label)) {
+                    return endpoint;
+                }
+            }
+            throw new IllegalArgumentException("Unknown endpoint '" + label + "', expected chat, chat-stream or vector-search");
+        }
+    }
+
+    private final URI baseUri;
+    private final Map<Endpoint, Integer> mix;
+    private final List<String> questions;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Random random = new Random(42);
+
+    /**
+     * @param mix Relative weight of each endpoint
+     * @param questions Asked in random order; fewer of them means more repeats for the caches to answer
+     */
+    LoadGenerator(URI baseUri, Map<Endpoint, Integer> mix, List<String> questions, Duration requestTimeout) {
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.questions = questions;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @param spec Weights such as {@code chat:8,vector-search:2}
+     */
+    static Map<Endpoint, Integer> parseMix(String spec) {
+        Map<Endpoint, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] weight = part.strip().split(":");
+            mix.put(Endpoint.fromLabel(weight[0]), weight.length > 1 ? Integer.parseInt(weight[1]) : 1);
+        }
+        return mix;
+    }
+
+    /**
+     * Sends requests for the warmup and then the duration, and waits for those in flight to finish or time out.
+     * @param rate Average arrivals per second
+     */
+    LoadReport run(double rate, Duration warmup, Duration duration) {
+        List<LoadReport.Result> results = new ArrayList<>();
+        long start = System.nanoTime();
+        long measuredFrom = start + warmup.toNanos();
+        long end = measuredFrom + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long arrival = start;
+            while (true) {
+                arrival += (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+                if (arrival >= end) {
+                    break;
+                }
+                long wait = arrival - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Endpoint endpoint = pickEndpoint();
+                String question = questions.get(random.nextInt(questions.size()));
+                long scheduled = arrival;
+                boolean measured = arrival >= measuredFrom;
+                executor.execute(() -> {
+                    LoadReport.Result result = send(endpoint, question, scheduled);
+                    if (measured) {
+                        synchronized (results) {
+                            results.add(result);
+                        }
+                    }
+                });
+            }
+        }
+        // Closing the executor waited for the requests in flight, each bounded by the request timeout
+        return new LoadReport(List.copyOf(results), rate, duration);
+    }
+
+    private LoadReport.Result send(Endpoint endpoint, String question, long scheduledNanos) {
+        String error;
+        try {
+            HttpResponse<String> response = httpClient.send(request(endpoint, question), HttpResponse.BodyHandlers.ofString());
+            error = errorOf(endpoint, response);
+        } catch (HttpTimeoutException e) {
+            error = "timeout";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "interrupted";
+        } catch (Exception e) {
+            error = e.getClass().getSimpleName();
+        }
+        return new LoadReport.Result(endpoint, System.nanoTime() - scheduledNanos, error);
+    }
+
+    private HttpRequest request(Endpoint endpoint, String question) {
+        String json = "{\"message\": \"" + question.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+        HttpRequest.Builder request = switch (endpoint) {
+            case CHAT -> HttpRequest.newBuilder(baseUri.resolve("/api/llm/chat"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json));
+            case CHAT_STREAM -> HttpRequest.newBuilder(baseUri.resolve("/api/llm/chat/stream"))
+                    .header("Content-Type", "application/json")
+                    .header("Accept", "text/event-stream")
+                    .POST(HttpRequest.BodyPublishers.ofString(json));
+            case VECTOR_SEARCH -> HttpRequest.newBuilder(baseUri.resolve("/api/llm/vector-search?index=code&query="
+                    + URLEncoder.encode(question, StandardCharsets.UTF_8)));
+        };
+        return request.timeout(requestTimeout).build();
+    }
+
+    // The vLLM adapter reports a failed generation as an "Error: " response, and the stream as an error event
+    private static String errorOf(Endpoint endpoint, HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            return "HTTP " + response.statusCode();
+        }
+        if (endpoint == Endpoint.CHAT && response.body().startsWith("Error: ")) {
+            return "error response";
+        }
+        if (endpoint == Endpoint.CHAT_STREAM && response.body().contains("event:error")) {
+            return "error event";
+        }
+        return null;
+    }
+
+    private Endpoint pickEndpoint() {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+        for (Map.Entry<Endpoint, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty endpoint mix");
+    }
+}
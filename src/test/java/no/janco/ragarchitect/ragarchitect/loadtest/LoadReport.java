@@ -0,0 +1,74 @@
+package no.janco.ragarchitect.ragarchitect.loadtest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput, latency percentiles and errors of a {@link LoadGenerator} run, per endpoint and in total. Throughput
+ * counts the successful responses to requests that arrived within the measured duration.
+ */
+class LoadReport {
+
+    /**
+     * @param error What went wrong, or null for a successful response
+     */
+    record Result(LoadGenerator.Endpoint endpoint, long latencyNanos, String error) { }
+
+    private final List<Result> results;
+    private final double offeredRate;
+    private final Duration duration;
+
+    LoadReport(List<Result> results, double offeredRate, Duration duration) {
+        this.results = results;
+        this.offeredRate = offeredRate;
+        this.duration = duration;
+    }
+
+    double errorRate() {
+        return results.isEmpty() ? 0 : results.stream().filter(result -> result.error() != null).count() / (double) results.size();
+    }
+
+    String format() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "Offered %.1f requests/s for %d s, %d requests arrived%n", offeredRate, duration.toSeconds(), results.size()));
+        report.append(String.format(Locale.ROOT, "%-14s %8s %8s %8s %12s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "error %", "ok/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (LoadGenerator.Endpoint endpoint : LoadGenerator.Endpoint.values()) {
+            List<Result> ofEndpoint = results.stream().filter(result -> result.endpoint() == endpoint).toList();
+            if (!ofEndpoint.isEmpty()) {
+                row(report, endpoint.label, ofEndpoint);
+            }
+        }
+        row(report, "total", results);
+
+        Map<String, Long> errors = results.stream()
+                .filter(result -> result.error() != null)
+                .collect(Collectors.groupingBy(result -> result.endpoint().label + ": " + result.error(), TreeMap::new, Collectors.counting()));
+        errors.forEach((error, count) -> report.append(String.format(Locale.ROOT, "  %d x %s%n", count, error)));
+        return report.toString();
+    }
+
+    private void row(StringBuilder report, String label, List<Result> rows) {
+        long errors = rows.stream().filter(result -> result.error() != null).count();
+        // Percentiles of the successful responses; a fast failure must not make latency look better
+        long[] latencies = rows.stream().filter(result -> result.error() == null).mapToLong(Result::latencyNanos).sorted().toArray();
+        report.append(String.format(Locale.ROOT, "%-14s %8d %8d %8.1f %12.2f %9.1f %9.1f %9.1f %9.1f%n",
+                label, rows.size(), errors, rows.isEmpty() ? 0 : 100.0 * errors / rows.size(),
+                latencies.length / (double) duration.toSeconds(),
+                percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6));
+    }
+
+    // Nearest rank, in milliseconds
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,153 @@
+package no.janco.ragarchitect.ragarchitect.loadtest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ActiveProfilesResolver;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Capacity test of the whole application, booted against local stand-ins for Qdrant ({@link FakeQdrant}), the
+ * embedding service and the LLM backend ({@link FakeModelServer}), so the effect of concurrency limits, pools and
+ * caches on throughput and latency can be measured without GPUs or network. Skipped unless {@code -Dloadtest=true}:
+ * <pre>
+ * mvn test -Dtest=LoadTest -Dloadtest=true -Dloadtest.rate=20 -Dloadtest.duration.seconds=60 -Dloadtest.backend=vllm
+ * </pre>
+ * The workload, system properties with their defaults:
+ * <ul>
+ *     <li>{@code loadtest.rate=10}: average requests per second, arriving independently of the responses</li>
+ *     <li>{@code loadtest.warmup.seconds=10}, {@code loadtest.duration.seconds=30}</li>
+ *     <li>{@code loadtest.mix=chat:8,vector-search:2}: endpoint weights, of chat, chat-stream and vector-search</li>
+ *     <li>{@code loadtest.questions=500}: distinct questions asked, which sets how often the caches can answer</li>
+ *     <li>{@code loadtest.request.timeout.seconds=60}</li>
+ *     <li>{@code loadtest.max.error.rate=0.01}: the test fails above this share of failed requests</li>
+ * </ul>
+ * The stand-ins, with latencies as {@link LatencyDistribution} specs in milliseconds:
+ * <ul>
+ *     <li>{@code loadtest.backend=ollama}: the adapter profile, one of ollama, vllm and generic</li>
+ *     <li>{@code loadtest.qdrant.latency=lognormal:5:0.5}, {@code loadtest.qdrant.points=2000},
+ *     {@code loadtest.qdrant.content.chars=1000}</li>
+ *     <li>{@code loadtest.embed.latency=lognormal:10:0.3}</li>
+ *     <li>{@code loadtest.llm.first.token=lognormal:300:0.5}, {@code loadtest.llm.token.interval=20},
+ *     {@code loadtest.llm.tokens=200}, {@code loadtest.llm.error.rate=0}</li>
+ * </ul>
+ * Any application property can be overridden the same way, e.g. {@code -Dinference.max.concurrent.requests=8} or
+ * {@code -Dsemantic.cache.enabled=false}. The report lists throughput, latency percentiles and errors per endpoint,
+ * followed by the time the application spent in each pipeline stage.
+ * <p>
+ * The stand-ins and the load generator run in the test's JVM, next to the application. They do little work, but on a
+ * machine with few cores their CPU use still counts against the application's capacity.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "management.server.port=0",
+        "git.indexer.enabled=false",
+        "vaadin.launch-browser=false"
+})
+@ActiveProfiles(resolver = LoadTest.Backend.class)
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class LoadTest {
+
+    private static FakeQdrant qdrant;
+    private static FakeModelServer models;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    static class Backend implements ActiveProfilesResolver {
+        @Override
+        public String[] resolve(Class<?> testClass) {
+            return new String[] {setting("loadtest.backend", "ollama")};
+        }
+    }
+
+    @DynamicPropertySource
+    static void standIns(DynamicPropertyRegistry registry) throws IOException {
+        qdrant = new FakeQdrant(Integer.parseInt(setting("loadtest.qdrant.points", "2000")),
+                Integer.parseInt(setting("loadtest.qdrant.content.chars", "1000")),
+                LatencyDistribution.parse(setting("loadtest.qdrant.latency", "lognormal:5:0.5")));
+        models = new FakeModelServer(LatencyDistribution.parse(setting("loadtest.embed.latency", "lognormal:10:0.3")),
+                new FakeModelServer.Generation(
+                        LatencyDistribution.parse(setting("loadtest.llm.first.token", "lognormal:300:0.5")),
+                        LatencyDistribution.parse(setting("loadtest.llm.token.interval", "20")),
+                        Integer.parseInt(setting("loadtest.llm.tokens", "200")),
+                        Double.parseDouble(setting("loadtest.llm.error.rate", "0"))));
+
+        registry.add("qdrant.host", () -> "localhost");
+        registry.add("qdrant.port", qdrant::port);
+        registry.add("embedding.service.url", () -> models.url() + "/embed");
+        registry.add("ollama.server.url", models::url);
+        registry.add("vllm.server.url", models::url);
+        registry.add("generic.server.url", () -> models.url() + "/generate");
+    }
+
+    @AfterAll
+    static void stopStandIns() {
+        if (qdrant != null) {
+            qdrant.close();
+        }
+        if (models != null) {
+            models.close();
+        }
+    }
+
+    @Test
+    void run() {
+        // Arrange
+        List<String> questions = IntStream.range(0, Integer.parseInt(setting("loadtest.questions", "500")))
+                .mapToObj(i -> "How does the orchestrator handle case " + i + " when the collection is busy?")
+                .toList();
+        LoadGenerator generator = new LoadGenerator(URI.create("http://localhost:" + port),
+                LoadGenerator.parseMix(setting("loadtest.mix", "chat:8,vector-search:2")), questions,
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.request.timeout.seconds", "60"))));
+        double maxErrorRate = Double.parseDouble(setting("loadtest.max.error.rate", "0.01"));
+
+        // Act
+        LoadReport report = generator.run(Double.parseDouble(setting("loadtest.rate", "10")),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.warmup.seconds", "10"))),
+                Duration.ofSeconds(Long.parseLong(setting("loadtest.duration.seconds", "30"))));
+
+        // Assert
+        System.out.println(report.format() + stages());
+        assertTrue(report.errorRate() <= maxErrorRate,
+                String.format(Locale.ROOT, "Error rate %.3f above %.3f", report.errorRate(), maxErrorRate));
+    }
+
+    // Server side, over the warmup and the measured run together
+    private String stages() {
+        List<Timer> timers = new ArrayList<>(meterRegistry.find(PipelineMetrics.STAGE_DURATION).timers());
+        timers.sort(Comparator.comparing(timer -> timer.getId().getTags().toString()));
+        StringBuilder stages = new StringBuilder(String.format(Locale.ROOT, "%n%-60s %8s %9s %9s%n", "stage", "count", "mean ms", "max ms"));
+        for (Timer timer : timers) {
+            stages.append(String.format(Locale.ROOT, "%-60s %8d %9.1f %9.1f%n", timer.getId().getTags(), timer.count(),
+                    timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS)));
+        }
+        return stages.toString();
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty(name, defaultValue);
+    }
+}
@@ -0,0 +1,100 @@
+package no.janco.ragarchitect.ragarchitect.prompt;
+
+import no.janco.ragarchitect.ragarchitect.tokenizer.Tokenizer;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextPackerTest {
+
+    // One token per character keeps the budgets in these tests easy to follow
+    private static final Tokenizer CHARACTERS = new Tokenizer() {
+        @Override
+        public int countTokens(String text) {
+            return text.length();
+        }
+
+        @Override
+        public String truncate(String text, int maxTokens) {
+            return text.length() <= maxTokens ? text : text.substring(0, maxTokens);
+        }
+
+        @Override
+        public String getName() {
+            return "characters";
+        }
+    };
+
+    private ContextPacker contextPacker;
+
+    @BeforeEach
+    void setUp() {
+        contextPacker = new ContextPacker(CHARACTERS, 100, 20, 5);
+    }
+
+    @Test
+    void pack_ShouldOrderSnippetsByScore() {
+        // Arrange
+        List<ContextSnippet> snippets = List.of(
+                new ContextSnippet("A", "low", 0.3f),
+                new ContextSnippet("B", "high", 0.9f));
+
+        // Act
+        String prompt = contextPacker.pack("Q?", snippets);
+
+        // Assert
+        assertEquals("Q?\nB: high\nA: low", prompt);
+    }
+
+    @Test
+    void pack_ShouldReserveRoomForQuestionAndAnswer() {
+        // Arrange - 100 tokens, less 20 for the answer and 10 for the prompt, leaves 70 for context
+        String question = "0123456789";
+        List<ContextSnippet> snippets = List.of(
+                new ContextSnippet("A", "x".repeat(40), 0.9f),
+                new ContextSnippet("B", "y".repeat(40), 0.8f),
+                new ContextSnippet("C", "z".repeat(10), 0.7f));
+
+        // Act
+        String prompt = contextPacker.pack(question, snippets);
+
+        // Assert - B does not fit whole and has no line break to cut at, so it is cut mid-line; C no longer fits
+        assertTrue(prompt.length() <= 80, "Prompt was " + prompt.length() + " tokens");
+        assertTrue(prompt.startsWith(question + "\nA: " + "x".repeat(40) + "\nB: yyy"));
+        assertFalse(prompt.contains("C: "));
+    }
+
+    @Test
+    void pack_ShouldTrimAtLineBreak_AndSkipSnippetsTooShortToBeUseful() {
+        // Arrange - 74 tokens of context budget
+        contextPacker = new ContextPacker(CHARACTERS, 96, 20, 6);
+        String code = "line one\nline two\nline three\nline four\n";
+        List<ContextSnippet> snippets = List.of(
+                new ContextSnippet("A", "a".repeat(40), 0.9f),
+                new ContextSnippet("B", code, 0.8f),
+                new ContextSnippet("C", "c".repeat(30), 0.7f),
+                new ContextSnippet("D", "d", 0.6f));
+
+        // Act
+        String prompt = contextPacker.pack("Q?", snippets);
+
+        // Assert - B keeps only whole lines, C would be cut below the minimum, D still fits whole
+        assertEquals("Q?\nA: " + "a".repeat(40) + "\nB: line one\nline two\nD: d", prompt);
+    }
+
+    @Test
+    void pack_ShouldReturnPromptAlone_WhenNothingFits() {
+        // Arrange
+        contextPacker = new ContextPacker(CHARACTERS, 10, 20, 5);
+
+        // Act
+        String prompt = contextPacker.pack("A long question", List.of(new ContextSnippet("A", "content", 0.9f)));
+
+        // Assert
+        assertEquals("A long question", prompt);
+    }
+}
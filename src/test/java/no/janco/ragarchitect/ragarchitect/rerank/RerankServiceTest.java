@@ -0,0 +1,144 @@
+package no.janco.ragarchitect.ragarchitect.rerank;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.vector.ContextSnippet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RerankServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private RerankService rerankService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (rerankService != null) {
+            rerankService.close();
+        }
+    }
+
+    @Test
+    void rerank_ShouldKeepTheBestSnippets_ByCrossEncoderScore() {
+        // Arrange - scores each passage by how often it mentions the question's subject, two passages per batch
+        rerankService = new RerankService(Optional.of(encoder((query, passages) -> {
+            float[] scores = new float[passages.size()];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = passages.get(i).split("Orchestrator", -1).length - 2;
+            }
+            return scores;
+        })), 2, 1000, 2, 2, 8, meterRegistry);
+        List<ContextSnippet> candidates = List.of(
+                snippet("class Orchestrator", 0.9f),
+                snippet("unrelated", 0.8f),
+                snippet("Orchestrator calls Orchestrator", 0.4f));
+
+        // Act
+        List<ContextSnippet> reranked = rerankService.rerank("What does the Orchestrator do?", candidates);
+
+        // Assert
+        assertEquals(List.of("Orchestrator calls Orchestrator", "class Orchestrator"),
+                reranked.stream().map(ContextSnippet::content).toList());
+        assertEquals(1 / (1 + Math.exp(-1)), reranked.get(0).score(), 1e-6);
+        assertEquals(0.5f, reranked.get(1).score(), 1e-6);
+        assertEquals(1, meterRegistry.counter("rerank.requests", "result", "reranked").count());
+    }
+
+    @Test
+    void rerank_ShouldUseSnippetsAsRetrieved_WhenOverBudget() {
+        // Arrange
+        rerankService = new RerankService(Optional.of(encoder((query, passages) -> {
+            sleep(500);
+            return new float[passages.size()];
+        })), 2, 50, 8, 1, 8, meterRegistry);
+        List<ContextSnippet> candidates = List.of(snippet("first", 0.9f), snippet("second", 0.8f), snippet("third", 0.7f));
+
+        // Act
+        long start = System.nanoTime();
+        List<ContextSnippet> reranked = rerankService.rerank("question", candidates);
+
+        // Assert
+        assertSame(candidates, reranked);
+        assertTrue(System.nanoTime() - start < 400_000_000L, "Waited past the budget");
+        assertEquals(1, meterRegistry.counter("rerank.requests", "result", "over_budget").count());
+    }
+
+    @Test
+    void rerank_ShouldUseSnippetsAsRetrieved_WhenQueueIsFull() throws Exception {
+        // Arrange - one worker held by the first batch, room in the queue for one more, one passage per batch
+        CountDownLatch release = new CountDownLatch(1);
+        rerankService = new RerankService(Optional.of(encoder((query, passages) -> {
+            await(release);
+            return new float[passages.size()];
+        })), 2, 1000, 1, 1, 1, meterRegistry);
+        List<ContextSnippet> candidates = List.of(snippet("first", 0.9f), snippet("second", 0.8f), snippet("third", 0.7f));
+
+        // Act
+        List<ContextSnippet> reranked = rerankService.rerank("question", candidates);
+        release.countDown();
+
+        // Assert
+        assertSame(candidates, reranked);
+        assertEquals(1, meterRegistry.counter("rerank.requests", "result", "saturated").count());
+    }
+
+    @Test
+    void rerank_ShouldPassSnippetsThrough_WithoutCrossEncoder() {
+        // Arrange
+        rerankService = new RerankService(Optional.empty(), 1, 1000, 8, 1, 8, meterRegistry);
+        List<ContextSnippet> candidates = List.of(snippet("first", 0.9f), snippet("second", 0.8f));
+
+        // Act & Assert
+        assertSame(candidates, rerankService.rerank("question", candidates));
+    }
+
+    private static ContextSnippet snippet(String content, float score) {
+        return new ContextSnippet("Code snippet", content, score);
+    }
+
+    private interface Scorer {
+        float[] score(String query, List<String> passages);
+    }
+
+    private static CrossEncoder encoder(Scorer scorer) {
+        return new CrossEncoder() {
+            @Override
+            public float[] score(String query, List<String> passages) {
+                return scorer.score(query, passages);
+            }
+
+            @Override
+            public String getDetails() {
+                return "test";
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
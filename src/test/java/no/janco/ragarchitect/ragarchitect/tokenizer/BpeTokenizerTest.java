@@ -0,0 +1,119 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BpeTokenizerTest {
+
+    // Every single byte has its own value as rank, followed by the given merges in priority order
+    private static BpeTokenizer tiktoken(int pieceCacheCapacity, String... merges) throws IOException {
+        Map<String, Integer> ranks = new LinkedHashMap<>();
+        for (int b = 0; b < 256; b++) {
+            ranks.put(Base64.getEncoder().encodeToString(new byte[] {(byte) b}), b);
+        }
+        for (String merge : merges) {
+            ranks.put(Base64.getEncoder().encodeToString(merge.getBytes(StandardCharsets.UTF_8)), ranks.size());
+        }
+        StringBuilder file = new StringBuilder();
+        ranks.forEach((token, rank) -> file.append(token).append(' ').append(rank).append('\n'));
+        return TokenizerLoader.loadTiktoken(new ByteArrayInputStream(file.toString().getBytes(StandardCharsets.US_ASCII)),
+                TokenizerProfile.LLAMA3, "test", pieceCacheCapacity);
+    }
+
+    @Test
+    void encode_ShouldApplyLowestRankedMergeFirst() throws Exception {
+        // Arrange
+        BpeTokenizer abFirst = tiktoken(0, "ab", "bc");
+        BpeTokenizer bcFirst = tiktoken(0, "bc", "ab");
+
+        // Act & Assert
+        assertArrayEquals(new int[] {256, 'c'}, abFirst.encode("abc"));
+        assertArrayEquals(new int[] {'a', 256}, bcFirst.encode("abc"));
+    }
+
+    @Test
+    void encode_ShouldSplitOnPreTokenizerPieces() throws Exception {
+        // Arrange
+        BpeTokenizer tokenizer = tiktoken(100, "ab", " a", " ab", "ba");
+
+        // Act
+        int[] tokens = tokenizer.encode("ab ab\n");
+
+        // Assert - "ba" never merges across the piece boundary between "ab" and " ab"
+        assertArrayEquals(new int[] {256, 258, '\n'}, tokens);
+        assertEquals(3, tokenizer.countTokens("ab ab\n"));
+        assertEquals(0, tokenizer.countTokens(""));
+    }
+
+    @Test
+    void countTokens_ShouldMatchWithAndWithoutPieceCache() throws Exception {
+        // Arrange
+        BpeTokenizer cached = tiktoken(1000, "in", "int", " in", " int", "ou", "out");
+        BpeTokenizer uncached = tiktoken(0, "in", "int", " in", " int", "ou", "out");
+        String code = "int count = 0; for (int i = 0; i < out.length; i++) { count += out[i]; } // æøå 漢字";
+
+        // Act & Assert - twice, so the second pass is served from the cache
+        assertArrayEquals(uncached.encode(code), cached.encode(code));
+        assertArrayEquals(uncached.encode(code), cached.encode(code));
+        assertEquals(uncached.countTokens(code), cached.countTokens(code));
+    }
+
+    @Test
+    void truncate_ShouldKeepWholePiecesWithinBudget() throws Exception {
+        // Arrange
+        BpeTokenizer tokenizer = tiktoken(100, "ab", " a", " ab");
+
+        // Act & Assert
+        assertEquals("ab ab", tokenizer.truncate("ab ab ab", 2));
+        assertEquals("ab ab ab", tokenizer.truncate("ab ab ab", 3));
+        assertEquals("", tokenizer.truncate("ab ab ab", 0));
+    }
+
+    @Test
+    void load_ShouldReadByteLevelTokenizerJson(@TempDir Path dir) throws Exception {
+        // Arrange - Ġ is how byte-level vocabularies spell a space
+        Path file = dir.resolve("tokenizer.json");
+        Files.writeString(file, """
+                {"model": {"type": "BPE",
+                  "vocab": {"h": 0, "e": 1, "l": 2, "o": 3, "Ġ": 4, "he": 5, "ll": 6, "hell": 7},
+                  "merges": ["h e", ["l", "l"], "he ll"]}}
+                """);
+
+        // Act
+        BpeTokenizer tokenizer = TokenizerLoader.load(file, TokenizerProfile.GPT2);
+
+        // Assert
+        assertArrayEquals(new int[] {7, 3, 4, 7, 3}, tokenizer.encode("hello hello"));
+        assertEquals(8, tokenizer.vocabularySize());
+    }
+
+    @Test
+    void load_ShouldReadSentencePieceTokenizerJsonWithByteFallback(@TempDir Path dir) throws Exception {
+        // Arrange
+        Path file = dir.resolve("tokenizer.json");
+        Files.writeString(file, """
+                {"model": {"type": "BPE",
+                  "vocab": {"<0xC3>": 3, "<0xA9>": 4, "▁": 256, "h": 257, "i": 258, "▁h": 259, "▁hi": 260},
+                  "merges": ["▁ h", "▁h i"]}}
+                """);
+
+        // Act
+        BpeTokenizer tokenizer = TokenizerLoader.load(file, TokenizerProfile.SENTENCEPIECE);
+
+        // Assert - é is not in the vocabulary, so it is spelled out as its two UTF-8 bytes
+        assertArrayEquals(new int[] {260, 260}, tokenizer.encode("hi hi"));
+        assertArrayEquals(new int[] {260, 256, 3, 4}, tokenizer.encode("hi é"));
+        assertEquals("hi hi", tokenizer.truncate("hi hi hi", 2));
+    }
+}
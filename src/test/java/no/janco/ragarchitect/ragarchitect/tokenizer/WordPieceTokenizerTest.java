@@ -0,0 +1,72 @@
+package no.janco.ragarchitect.ragarchitect.tokenizer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordPieceTokenizerTest {
+
+    private static final List<String> VOCABULARY = List.of("[PAD]", "[UNK]", "[CLS]", "[SEP]",
+            "get", "##index", "##contents", "index", "the", "cafe", "(", ")", ".", "!", "un", "##related", "中");
+
+    @TempDir
+    private Path tempDir;
+
+    private WordPieceTokenizer load() throws Exception {
+        Path vocab = tempDir.resolve("vocab.txt");
+        Files.write(vocab, VOCABULARY);
+        return TokenizerLoader.loadWordPiece(vocab, true);
+    }
+
+    @Test
+    void encode_ShouldSplitWordsIntoLongestPieces_AndAddSpecialTokens() throws Exception {
+        // Act
+        int[] ids = load().encode("The getIndexContents() index!", 64);
+
+        // Assert - [CLS] the get ##index ##contents ( ) index ! [SEP]
+        assertArrayEquals(new int[]{2, 8, 4, 5, 6, 10, 11, 7, 13, 3}, ids);
+    }
+
+    @Test
+    void encode_ShouldStripAccents_AndSpaceOutCjk() throws Exception {
+        // Act
+        int[] ids = load().encode("Café中unrelated", 64);
+
+        // Assert - [CLS] cafe 中 un ##related [SEP]
+        assertArrayEquals(new int[]{2, 9, 16, 14, 15, 3}, ids);
+    }
+
+    @Test
+    void encode_ShouldUseUnknown_ForWordsThatCannotBeSplit() throws Exception {
+        // Act
+        int[] ids = load().encode("the xyz", 64);
+
+        // Assert
+        assertArrayEquals(new int[]{2, 8, 1, 3}, ids);
+    }
+
+    @Test
+    void encodePair_ShouldSeparateSegments_AndCutTheLongerTextFirst() throws Exception {
+        // Act
+        int[][] pair = load().encodePair("the index", "the cafe the cafe", 8);
+
+        // Assert - [CLS] the index [SEP] the cafe the [SEP]: the passage loses a piece, the query keeps both
+        assertArrayEquals(new int[]{2, 8, 7, 3, 8, 9, 8, 3}, pair[0]);
+        assertArrayEquals(new int[]{0, 0, 0, 0, 1, 1, 1, 1}, pair[1]);
+    }
+
+    @Test
+    void encode_ShouldTruncateToMaxLength_KeepingSeparator() throws Exception {
+        // Act
+        int[] ids = load().encode("the the the the the", 4);
+
+        // Assert
+        assertArrayEquals(new int[]{2, 8, 8, 3}, ids);
+        assertEquals(0, load().padId());
+    }
+}
@@ -0,0 +1,103 @@
+package no.janco.ragarchitect.ragarchitect.trace;
+
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineTraceAnalyzerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void summarize_ShouldBreakDownEachStage_InPipelineOrder() throws Exception {
+        // Arrange
+        Path file = tempDir.resolve("pipeline.jfr");
+        try (Recording recording = new Recording()) {
+            for (Class<? extends Event> event : PipelineRecording.EVENTS) {
+                recording.enable(event).withoutThreshold();
+            }
+            recording.start();
+            inference("OllamaAdapter", 40, false, Duration.ofMillis(20));
+            inference("OllamaAdapter", 60, true, Duration.ZERO);
+            collectionQuery("code", "search", 30, false);
+            collectionQuery("code", "fetch", 8, false);
+            collectionQuery("confluence", "search", 0, true);
+            cacheLookup("embeddings", true);
+            cacheLookup("embeddings", false);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // Act
+        List<PipelineTraceAnalyzer.StageSummary> summaries = PipelineTraceAnalyzer.summarize(file);
+
+        // Assert
+        assertEquals(List.of("cache embeddings", "fetch code", "search code", "search confluence", "inference OllamaAdapter"),
+                summaries.stream().map(PipelineTraceAnalyzer.StageSummary::stage).toList());
+        PipelineTraceAnalyzer.StageSummary inference = summaries.get(4);
+        assertEquals(2, inference.count());
+        assertEquals(1, inference.failed());
+        assertEquals("50 response tokens", inference.detail());
+        assertTrue(inference.max().compareTo(Duration.ofMillis(20)) >= 0);
+        assertEquals(inference.max(), inference.p99());
+        assertTrue(inference.p50().compareTo(inference.max()) <= 0);
+        assertEquals(1, summaries.get(3).failed());
+        assertEquals("30.0 hits", summaries.get(2).detail());
+        assertEquals("50% hits", summaries.get(0).detail());
+    }
+
+    @Test
+    void format_ShouldPrintOneRowPerStage() {
+        // Arrange
+        Duration millis = Duration.ofMillis(12);
+        List<PipelineTraceAnalyzer.StageSummary> summaries = List.of(new PipelineTraceAnalyzer.StageSummary(
+                "search code", 3, 0, millis, millis, millis, millis, millis, "30.0 hits"));
+
+        // Act
+        String report = PipelineTraceAnalyzer.format(summaries);
+
+        // Assert
+        List<String> lines = report.lines().toList();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("stage"));
+        assertTrue(lines.get(1).startsWith("search code"));
+        assertTrue(lines.get(1).contains("12.0"));
+        assertTrue(lines.get(1).endsWith("30.0 hits"));
+    }
+
+    private static void inference(String provider, int responseTokens, boolean failed, Duration duration) throws InterruptedException {
+        InferenceEvent event = new InferenceEvent();
+        event.begin();
+        Thread.sleep(duration.toMillis());
+        event.provider = provider;
+        event.responseTokens = responseTokens;
+        event.failed = failed;
+        event.commit();
+    }
+
+    private static void collectionQuery(String collection, String phase, int hits, boolean failed) {
+        CollectionQueryEvent event = new CollectionQueryEvent();
+        event.begin();
+        event.collection = collection;
+        event.phase = phase;
+        event.hits = hits;
+        event.failed = failed;
+        event.commit();
+    }
+
+    private static void cacheLookup(String cache, boolean hit) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        event.begin();
+        event.cache = cache;
+        event.hit = hit;
+        event.commit();
+    }
+}
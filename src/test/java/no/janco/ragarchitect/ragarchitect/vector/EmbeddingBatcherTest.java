@@ -0,0 +1,166 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.tokenizer.EstimatingTokenizer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingBatcherTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddingBatcherTest.class);
+
+    @Test
+    void submit_ShouldCoalesceConcurrentRequestsIntoOneBatch() throws Exception {
+        // Arrange
+        List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(texts -> {
+            batches.add(texts);
+            return texts.stream().map(text -> Embedding.of(text.length())).toList();
+        }, Duration.ofMillis(200), 10)) {
+
+            // Act
+            CompletableFuture<Embedding> first = batcher.submit("a");
+            CompletableFuture<Embedding> second = batcher.submit("bb");
+            CompletableFuture<Embedding> third = batcher.submit("ccc");
+
+            // Assert - each caller gets the embedding for its own text
+            assertEquals(Embedding.of(1f), first.get(1, TimeUnit.SECONDS));
+            assertEquals(Embedding.of(2f), second.get(1, TimeUnit.SECONDS));
+            assertEquals(Embedding.of(3f), third.get(1, TimeUnit.SECONDS));
+            assertEquals(List.of(List.of("a", "bb", "ccc")), batches);
+        }
+    }
+
+    @Test
+    void submit_ShouldDispatchEarly_WhenBatchIsFull() throws Exception {
+        // Arrange
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(texts -> {
+            batchSizes.add(texts.size());
+            return texts.stream().map(text -> Embedding.of(0f)).toList();
+        }, Duration.ofSeconds(30), 2)) {
+
+            // Act
+            CompletableFuture<Embedding> first = batcher.submit("a");
+            CompletableFuture<Embedding> second = batcher.submit("b");
+
+            // Assert - completes well before the 30 second window
+            CompletableFuture.allOf(first, second).get(1, TimeUnit.SECONDS);
+            assertEquals(List.of(2), batchSizes);
+        }
+    }
+
+    @Test
+    void embed_ShouldPropagateFailureToEveryCallerInBatch() throws Exception {
+        // Arrange
+        try (EmbeddingBatcher batcher = new EmbeddingBatcher(texts -> {
+            throw new RuntimeException("Failed to get embedding");
+        }, Duration.ofMillis(50), 10)) {
+
+            // Act
+            CompletableFuture<Embedding> first = batcher.submit("a");
+
+            // Assert
+            RuntimeException thrown = assertThrows(RuntimeException.class, () -> batcher.embed("b"));
+            assertEquals("Failed to get embedding", thrown.getMessage());
+            assertTrue(first.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void getEmbedding_ShouldBatchAgainstLocalEmbedStub() throws Exception {
+        // Arrange - a stand-in for embedding_service_script.py that takes 20 ms per call, regardless of batch size
+        int callers = 64;
+        AtomicInteger embedCalls = new AtomicInteger();
+        ObjectMapper objectMapper = new ObjectMapper();
+        HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/embed", exchange -> {
+            JsonNode sentences = objectMapper.readTree(exchange.getRequestBody()).get("sentences");
+            embedCalls.incrementAndGet();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StringBuilder body = new StringBuilder("{\"embeddings\": [");
+            for (int i = 0; i < sentences.size(); i++) {
+                body.append(i == 0 ? "" : ",").append("[").append(sentences.get(i).asText().length()).append("]");
+            }
+            byte[] bytes = body.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        stub.start();
+
+        HttpEmbeddingProvider embeddingProvider = new HttpEmbeddingProvider(new RestTemplate());
+        ReflectionTestUtils.setField(embeddingProvider, "embeddingUrl",
+                "http://localhost:" + stub.getAddress().getPort() + "/embed");
+        EmbeddingService embeddingService = new EmbeddingService(embeddingProvider,
+                new EmbeddingCache(100, 60, "test-model", new SimpleMeterRegistry()),
+                new PipelineMetrics(new SimpleMeterRegistry(), new EstimatingTokenizer()));
+        ReflectionTestUtils.setField(embeddingService, "batchWindowMs", 5L);
+        ReflectionTestUtils.setField(embeddingService, "maxBatchSize", 32);
+        embeddingService.startBatcher();
+
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            // Act
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Long>> latencies = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                String text = "x".repeat(i + 1);
+                latencies.add(pool.submit(() -> {
+                    start.await();
+                    long begin = System.nanoTime();
+                    Embedding embedding = embeddingService.getEmbedding(text);
+                    assertEquals(Embedding.of(text.length()), embedding);
+                    return System.nanoTime() - begin;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            List<Long> sorted = new ArrayList<>();
+            for (Future<Long> latency : latencies) {
+                sorted.add(latency.get(10, TimeUnit.SECONDS));
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+            Collections.sort(sorted);
+
+            // Assert
+            LOG.info("{} embeddings in {} ms over {} /embed calls, p50 {} ms, p99 {} ms",
+                    callers, elapsedMs, embedCalls.get(),
+                    TimeUnit.NANOSECONDS.toMillis(sorted.get(callers / 2)),
+                    TimeUnit.NANOSECONDS.toMillis(sorted.get(callers * 99 / 100)));
+            assertTrue(embedCalls.get() < callers / 4, "Expected coalescing, got " + embedCalls.get() + " calls");
+        } finally {
+            pool.shutdownNow();
+            embeddingService.stopBatcher();
+            stub.stop(0);
+        }
+    }
+}
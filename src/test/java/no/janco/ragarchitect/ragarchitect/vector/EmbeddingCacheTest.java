@@ -0,0 +1,52 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCacheTest {
+
+    @Test
+    void getIfPresent_ShouldMatchTextThatOnlyDiffersInWhitespace() {
+        // Arrange
+        EmbeddingCache cache = new EmbeddingCache(10, 60, "test-model", new SimpleMeterRegistry());
+        float[] embedding = {0.1f, 0.2f};
+        cache.put("How does the  Orchestrator\nwork?", embedding);
+
+        // Act
+        float[] result = cache.getIfPresent("  How does the Orchestrator work? ");
+
+        // Assert
+        assertSame(embedding, result);
+    }
+
+    @Test
+    void key_ShouldDifferBetweenModels() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EmbeddingCache first = new EmbeddingCache(10, 60, "all-MiniLM-L6-v2", meterRegistry);
+        EmbeddingCache second = new EmbeddingCache(10, 60, "all-mpnet-base-v2", meterRegistry);
+
+        // Act & Assert
+        assertNotEquals(first.key("query"), second.key("query"));
+    }
+
+    @Test
+    void put_ShouldEvictAndCount_WhenFull() {
+        // Arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EmbeddingCache cache = new EmbeddingCache(1, 60, "test-model", meterRegistry);
+
+        // Act
+        cache.put("first", new float[] {1f});
+        cache.put("second", new float[] {2f});
+        cache.getIfPresent("first");
+        cache.getIfPresent("second");
+
+        // Assert
+        assertEquals(1.0, meterRegistry.get("cache.evictions").tag("cache", "embeddings").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "embeddings", "result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "embeddings", "result", "miss").functionCounter().count());
+    }
+}
@@ -1,21 +1,31 @@
 package no.janco.ragarchitect.ragarchitect.vector;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.DeserializationProblemHandler;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.tokenizer.EstimatingTokenizer;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.*;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class EmbeddingServiceTest {
@@ -23,30 +33,38 @@ class EmbeddingServiceTest {
     @Mock
     private RestTemplate restTemplate;
 
-    @InjectMocks
+    @Mock
+    private EmbeddingCache embeddingCache;
+
     private EmbeddingService embeddingService;
 
     private static final String EMBEDDING_URL = "http://embedding-service:8080/embed";
 
+    @BeforeEach
+    void setUp() {
+        embeddingService = new EmbeddingService(new HttpEmbeddingProvider(restTemplate), embeddingCache,
+                new PipelineMetrics(new SimpleMeterRegistry(), new EstimatingTokenizer()));
+    }
+
     @Test
     void getEmbedding_ShouldReturnEmbeddingList_WhenSuccessful() {
         // Arrange
         String prompt = "Test prompt";
-        List<Float> expectedEmbedding = Arrays.asList(0.1f, 0.2f, 0.3f);
-        EmbeddingService.EmbeddingResponse response = new EmbeddingService.EmbeddingResponse();
-        response.setEmbeddings(Arrays.asList(expectedEmbedding));
+        Embedding expectedEmbedding = Embedding.of(0.1f, 0.2f, 0.3f);
+        HttpEmbeddingProvider.EmbeddingResponse response = new HttpEmbeddingProvider.EmbeddingResponse();
+        response.setEmbeddings(List.of(expectedEmbedding));
 
-        ResponseEntity<EmbeddingService.EmbeddingResponse> responseEntity = 
+        ResponseEntity<HttpEmbeddingProvider.EmbeddingResponse> responseEntity = 
             new ResponseEntity<>(response, HttpStatus.OK);
 
         when(restTemplate.postForEntity(
             eq(EMBEDDING_URL),
             ArgumentMatchers.<HttpEntity<String>>any(),
-            eq(EmbeddingService.EmbeddingResponse.class)
+            eq(HttpEmbeddingProvider.EmbeddingResponse.class)
         )).thenReturn(responseEntity);
 
         // Act
-        List<Float> result = embeddingService.getEmbedding(prompt);
+        Embedding result = embeddingService.getEmbedding(prompt);
 
         // Assert
         assertNotNull(result);
@@ -57,21 +75,21 @@ class EmbeddingServiceTest {
     void getEmbedding_ShouldEscapeQuotes_InPrompt() {
         // Arrange
         String prompt = "Test \"quoted\" prompt";
-        List<Float> expectedEmbedding = Arrays.asList(0.1f, 0.2f, 0.3f);
-        EmbeddingService.EmbeddingResponse response = new EmbeddingService.EmbeddingResponse();
-        response.setEmbeddings(Arrays.asList(expectedEmbedding));
+        Embedding expectedEmbedding = Embedding.of(0.1f, 0.2f, 0.3f);
+        HttpEmbeddingProvider.EmbeddingResponse response = new HttpEmbeddingProvider.EmbeddingResponse();
+        response.setEmbeddings(List.of(expectedEmbedding));
 
-        ResponseEntity<EmbeddingService.EmbeddingResponse> responseEntity = 
+        ResponseEntity<HttpEmbeddingProvider.EmbeddingResponse> responseEntity = 
             new ResponseEntity<>(response, HttpStatus.OK);
 
         when(restTemplate.postForEntity(
             eq(EMBEDDING_URL),
             ArgumentMatchers.<HttpEntity<String>>any(),
-            eq(EmbeddingService.EmbeddingResponse.class)
+            eq(HttpEmbeddingProvider.EmbeddingResponse.class)
         )).thenReturn(responseEntity);
 
         // Act
-        List<Float> result = embeddingService.getEmbedding(prompt);
+        Embedding result = embeddingService.getEmbedding(prompt);
 
         // Assert
         assertNotNull(result);
@@ -85,7 +103,7 @@ class EmbeddingServiceTest {
         when(restTemplate.postForEntity(
             eq(EMBEDDING_URL),
             ArgumentMatchers.<HttpEntity<String>>any(),
-            eq(EmbeddingService.EmbeddingResponse.class)
+            eq(HttpEmbeddingProvider.EmbeddingResponse.class)
         )).thenThrow(new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
 
         // Act & Assert
@@ -96,16 +114,91 @@ class EmbeddingServiceTest {
     void getEmbedding_ShouldThrowException_WhenResponseBodyIsNull() {
         // Arrange
         String prompt = "Test prompt";
-        ResponseEntity<EmbeddingService.EmbeddingResponse> responseEntity = 
+        ResponseEntity<HttpEmbeddingProvider.EmbeddingResponse> responseEntity = 
             new ResponseEntity<>(null, HttpStatus.OK);
 
         when(restTemplate.postForEntity(
             eq(EMBEDDING_URL),
             ArgumentMatchers.<HttpEntity<String>>any(),
-            eq(EmbeddingService.EmbeddingResponse.class)
+            eq(HttpEmbeddingProvider.EmbeddingResponse.class)
         )).thenReturn(responseEntity);
 
         // Act & Assert
         assertThrows(RuntimeException.class, () -> embeddingService.getEmbedding(prompt));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void getEmbedding_ShouldServeFromCache_WithoutCallingService() {
+        // Arrange
+        String prompt = "Test prompt";
+        when(embeddingCache.getIfPresent(prompt)).thenReturn(new float[] {0.1f, 0.2f, 0.3f});
+
+        // Act
+        Embedding result = embeddingService.getEmbedding(prompt);
+
+        // Assert
+        assertEquals(Embedding.of(0.1f, 0.2f, 0.3f), result);
+        verifyNoInteractions(restTemplate);
+    }
+
+    @Test
+    void getEmbedding_ShouldPopulateCache_OnMiss() {
+        // Arrange
+        String prompt = "Test prompt";
+        HttpEmbeddingProvider.EmbeddingResponse response = new HttpEmbeddingProvider.EmbeddingResponse();
+        response.setEmbeddings(List.of(Embedding.of(0.1f, 0.2f, 0.3f)));
+
+        when(restTemplate.postForEntity(
+            eq(EMBEDDING_URL),
+            ArgumentMatchers.<HttpEntity<String>>any(),
+            eq(HttpEmbeddingProvider.EmbeddingResponse.class)
+        )).thenReturn(new ResponseEntity<>(response, HttpStatus.OK));
+
+        // Act
+        embeddingService.getEmbedding(prompt);
+
+        // Assert
+        verify(embeddingCache).put(eq(prompt), aryEq(new float[] {0.1f, 0.2f, 0.3f}));
+    }
+
+    @Test
+    void embeddingResponse_ShouldDeserializeIntoPrimitiveVectors() throws Exception {
+        // Arrange
+        String json = "{\"embeddings\": [[0.1, -0.2, 3], [1.5e-3, 0.0, 2.25]]}";
+
+        // Act
+        HttpEmbeddingProvider.EmbeddingResponse response = new ObjectMapper().readValue(json, HttpEmbeddingProvider.EmbeddingResponse.class);
+
+        // Assert
+        assertEquals(2, response.getEmbeddings().size());
+        assertArrayEquals(new float[] {0.1f, -0.2f, 3f}, response.getEmbeddings().get(0).values());
+        assertArrayEquals(new float[] {1.5e-3f, 0f, 2.25f}, response.getEmbeddings().get(1).values());
+    }
+
+    @Test
+    void embeddingResponse_ShouldRejectNonNumericVectorValues() {
+        // Arrange
+        String json = "{\"embeddings\": [[0.1, \"oops\"]]}";
+
+        // Act & Assert
+        assertThrows(MismatchedInputException.class,
+            () -> new ObjectMapper().readValue(json, HttpEmbeddingProvider.EmbeddingResponse.class));
+    }
+
+    @Test
+    void embeddingResponse_ShouldRejectNonNumericVectorValues_EvenWhenAProblemHandlerRecovers() {
+        // Arrange - a handler that would turn any unexpected token into a value
+        String json = "{\"embeddings\": [[0.1, \"oops\"]]}";
+        ObjectMapper objectMapper = new ObjectMapper().addHandler(new DeserializationProblemHandler() {
+            @Override
+            public Object handleUnexpectedToken(DeserializationContext context, JavaType targetType, JsonToken token,
+                                                JsonParser parser, String failureMsg) {
+                return 0f;
+            }
+        });
+
+        // Act & Assert
+        assertThrows(MismatchedInputException.class,
+            () -> objectMapper.readValue(json, HttpEmbeddingProvider.EmbeddingResponse.class));
+    }
+}
@@ -0,0 +1,96 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.google.common.util.concurrent.Futures;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class QuantizationSettingsTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private CollectionCatalog collectionCatalog;
+
+    @Test
+    void searchParams_ShouldUseCollectionOversampling_OrTheDefault() {
+        // Arrange
+        QuantizationSettings settings = settings(List.of("code:binary:4", "confluence:scalar"));
+
+        // Act
+        Points.SearchParams code = settings.searchParams("code");
+        Points.SearchParams confluence = settings.searchParams("confluence");
+
+        // Assert
+        assertEquals(4.0, code.getQuantization().getOversampling());
+        assertTrue(code.getQuantization().getRescore());
+        assertEquals(2.0, confluence.getQuantization().getOversampling());
+        assertNull(settings.searchParams("indexer_state"));
+    }
+
+    @Test
+    void applyAll_ShouldQuantizeExistingCollections_AndTheRestOnceCreated() throws Exception {
+        // Arrange
+        QuantizationSettings settings = settings(List.of("code:binary", "confluence:scalar"));
+        when(collectionCatalog.contains("code")).thenReturn(true);
+        when(collectionCatalog.contains("confluence")).thenReturn(false);
+        when(vectorStore.updateQuantization(anyString(), any()))
+                .thenReturn(Futures.immediateFuture(Collections.CollectionOperationResponse.getDefaultInstance()));
+
+        // Act
+        settings.applyAll();
+        when(collectionCatalog.contains("confluence")).thenReturn(true);
+        settings.onCollectionsChanged(new CollectionsChangedEvent(Set.of("code", "confluence", "indexer_state")));
+
+        // Assert - code is quantized again, as it may have been recreated
+        verify(vectorStore, times(2)).updateQuantization(eq("code"), argThat(Collections.QuantizationConfigDiff::hasBinary));
+        verify(vectorStore).updateQuantization(eq("confluence"), argThat(config ->
+                config.getScalar().getType() == Collections.QuantizationType.Int8 && config.getScalar().getAlwaysRam()));
+        verifyNoMoreInteractions(vectorStore);
+    }
+
+    @Test
+    void onCollectionsChanged_ShouldQuantizeAgain_WhenCollectionIsDroppedAndRecreated() throws Exception {
+        // Arrange
+        QuantizationSettings settings = settings(List.of("code:binary"));
+        when(collectionCatalog.contains("code")).thenReturn(true);
+        when(vectorStore.updateQuantization(anyString(), any()))
+                .thenReturn(Futures.immediateFuture(Collections.CollectionOperationResponse.getDefaultInstance()));
+        settings.applyAll();
+
+        // Act - an indexer drops the collection, then creates it anew
+        when(collectionCatalog.contains("code")).thenReturn(false);
+        settings.onCollectionsChanged(new CollectionsChangedEvent(Set.of("code")));
+        when(collectionCatalog.contains("code")).thenReturn(true);
+        settings.onCollectionsChanged(new CollectionsChangedEvent(Set.of("code")));
+
+        // Assert
+        verify(vectorStore, times(2)).updateQuantization(eq("code"), argThat(Collections.QuantizationConfigDiff::hasBinary));
+    }
+
+    @Test
+    void constructor_ShouldRejectMalformedEntries() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> settings(List.of("code")));
+        assertThrows(IllegalArgumentException.class, () -> settings(List.of("code:product")));
+    }
+
+    private QuantizationSettings settings(List<String> collections) {
+        return new QuantizationSettings(vectorStore, collectionCatalog, collections, 2.0, true, true);
+    }
+}
@@ -0,0 +1,270 @@
+package no.janco.ragarchitect.ragarchitect.vector;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import io.grpc.Status;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.qdrant.client.grpc.Points;
+import no.janco.ragarchitect.ragarchitect.lexical.LexicalIndex;
+import no.janco.ragarchitect.ragarchitect.lexical.LexicalIndexService;
+import no.janco.ragarchitect.ragarchitect.metrics.PipelineMetrics;
+import no.janco.ragarchitect.ragarchitect.tokenizer.EstimatingTokenizer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.qdrant.client.ValueFactory.value;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VectorSearchServiceTest {
+
+    @Mock
+    private EmbeddingService embeddingService;
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Mock
+    private CollectionCatalog collectionCatalog;
+
+    @Mock
+    private LexicalIndexService lexicalIndexService;
+
+    @Mock
+    private QuantizationSettings quantizationSettings;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private VectorSearchService vectorSearchService;
+
+    private static final String TEST_MESSAGE = "How does the Orchestrator work?";
+    private static final Embedding TEST_VECTOR = Embedding.of(0.1f, 0.2f, 0.3f);
+
+    @BeforeEach
+    void setUp() {
+        vectorSearchService = new VectorSearchService(embeddingService, vectorStore, collectionCatalog, lexicalIndexService, quantizationSettings,
+                new PipelineMetrics(meterRegistry, new EstimatingTokenizer()));
+        ReflectionTestUtils.setField(vectorSearchService, "collectionTimeoutMs", 500L);
+        ReflectionTestUtils.setField(vectorSearchService, "rrfK", 60);
+        ReflectionTestUtils.setField(vectorSearchService, "lazyContent", true);
+        lenient().when(embeddingService.getEmbedding(TEST_MESSAGE)).thenReturn(TEST_VECTOR);
+    }
+
+    @Test
+    void searchVector_ShouldIssueAllCollectionQueriesBeforeWaiting() throws Exception {
+        // Arrange
+        SettableFuture<List<Points.ScoredPoint>> codeResult = SettableFuture.create();
+        SettableFuture<List<Points.ScoredPoint>> confluenceResult = SettableFuture.create();
+        when(collectionCatalog.contains(anyString())).thenReturn(true);
+        when(vectorStore.query(forCollection("code"), any(Duration.class))).thenReturn(codeResult);
+        when(vectorStore.query(forCollection("confluence"), any(Duration.class))).thenReturn(confluenceResult);
+
+        // Act
+        CompletableFuture<String> context = CompletableFuture.supplyAsync(() -> {
+            try {
+                return vectorSearchService.searchVector(TEST_MESSAGE);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // Assert - both queries are in flight while neither has completed
+        verify(vectorStore, timeout(1000)).query(forCollection("code"), any(Duration.class));
+        verify(vectorStore, timeout(1000)).query(forCollection("confluence"), any(Duration.class));
+        assertFalse(context.isDone());
+
+        confluenceResult.set(List.of(point("wiki page")));
+        codeResult.set(List.of(point("class Orchestrator")));
+
+        assertEquals("\nCode snippet: class Orchestrator\nConfluence snippet: wiki page",
+                context.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void searchVector_ShouldReturnPartialContext_WhenCollectionQueryFails() throws Exception {
+        // Arrange
+        when(collectionCatalog.contains(anyString())).thenReturn(true);
+        when(vectorStore.query(forCollection("code"), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(point("class Orchestrator"))));
+        when(vectorStore.query(forCollection("confluence"), any(Duration.class)))
+                .thenReturn(Futures.immediateFailedFuture(Status.DEADLINE_EXCEEDED.asRuntimeException()));
+
+        // Act
+        String context = vectorSearchService.searchVector(TEST_MESSAGE);
+
+        // Assert
+        assertEquals("\nCode snippet: class Orchestrator", context);
+        assertEquals(1, meterRegistry.get(PipelineMetrics.STAGE_DURATION)
+                .tags("stage", "search", "collection", "confluence", "outcome", "failure").timer().count());
+        assertEquals(1, meterRegistry.get("rag.retrieved.chunks").tag("collection", "code").summary().totalAmount());
+        assertEquals(0, meterRegistry.get("rag.retrieved.chunks").tag("collection", "confluence").summary().totalAmount());
+    }
+
+    @Test
+    void searchVector_ShouldSkipMissingCollections() throws Exception {
+        // Arrange
+        when(collectionCatalog.contains("code")).thenReturn(false);
+        when(collectionCatalog.contains("confluence")).thenReturn(true);
+        when(vectorStore.query(forCollection("confluence"), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(point("wiki page"))));
+
+        // Act
+        String context = vectorSearchService.searchVector(TEST_MESSAGE);
+
+        // Assert
+        assertEquals("\nConfluence snippet: wiki page", context);
+        verify(vectorStore, never()).query(forCollection("code"), any(Duration.class));
+    }
+
+    @Test
+    void searchVector_ShouldInvalidateCatalogEntry_WhenCollectionIsGone() throws Exception {
+        // Arrange
+        when(collectionCatalog.contains(anyString())).thenReturn(true);
+        when(vectorStore.query(forCollection("code"), any(Duration.class)))
+                .thenReturn(Futures.immediateFailedFuture(Status.NOT_FOUND.asRuntimeException()));
+        when(vectorStore.query(forCollection("confluence"), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(point("wiki page"))));
+
+        // Act
+        String context = vectorSearchService.searchVector(TEST_MESSAGE);
+
+        // Assert
+        assertEquals("\nConfluence snippet: wiki page", context);
+        verify(collectionCatalog).invalidate("code");
+        verify(collectionCatalog, never()).invalidate("confluence");
+    }
+
+    @Test
+    void searchSnippets_ShouldFuseDenseAndLexicalMatches() throws Exception {
+        // Arrange - the exact identifier is only found lexically, the shared point is found by both
+        when(collectionCatalog.contains("code")).thenReturn(true);
+        when(collectionCatalog.contains("confluence")).thenReturn(false);
+        when(vectorStore.query(forCollection("code"), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(point("similar code"), point("class Orchestrator"))));
+        when(lexicalIndexService.search("code", TEST_MESSAGE, 30)).thenReturn(List.of(
+                new LexicalIndex.Hit(id("class Orchestrator"), "Orchestrator.java", 7.5f),
+                new LexicalIndex.Hit(id("Orchestrator.java"), "Orchestrator.java", 3.1f)));
+        when(vectorStore.retrieve(any(Points.GetPoints.class), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(retrievedPoint("Orchestrator.java"))));
+
+        // Act
+        List<ContextSnippet> snippets = vectorSearchService.searchSnippets(TEST_MESSAGE, TEST_VECTOR);
+
+        // Assert
+        assertEquals(List.of("class Orchestrator", "similar code", "Orchestrator.java"),
+                snippets.stream().map(ContextSnippet::content).toList());
+        assertEquals(1f / 62 + 1f / 61, snippets.get(0).score(), 1e-6);
+        assertEquals(1f / 61, snippets.get(1).score(), 1e-6);
+        assertEquals(1f / 62, snippets.get(2).score(), 1e-6);
+    }
+
+    @Test
+    void searchSnippets_ShouldPassSearchParams_ForQuantizedCollections() throws Exception {
+        // Arrange
+        Points.SearchParams params = Points.SearchParams.newBuilder()
+                .setQuantization(Points.QuantizationSearchParams.newBuilder().setRescore(true).setOversampling(3))
+                .build();
+        when(collectionCatalog.contains(anyString())).thenReturn(true);
+        when(quantizationSettings.searchParams("code")).thenReturn(params);
+        when(vectorStore.query(any(Points.QueryPoints.class), any(Duration.class))).thenReturn(Futures.immediateFuture(List.of()));
+
+        // Act
+        vectorSearchService.searchSnippets(TEST_MESSAGE, TEST_VECTOR);
+
+        // Assert
+        verify(vectorStore).query(argThat(query -> query.getCollectionName().equals("code") && query.getParams().equals(params)),
+                any(Duration.class));
+        verify(vectorStore).query(argThat(query -> query.getCollectionName().equals("confluence") && !query.hasParams()),
+                any(Duration.class));
+    }
+
+    @Test
+    void searchSnippets_ShouldFetchContentOfKeptMatches_InOneLookup() throws Exception {
+        // Arrange - dense matches come back without content; one of them is deleted before its content is fetched
+        when(collectionCatalog.contains("code")).thenReturn(true);
+        when(collectionCatalog.contains("confluence")).thenReturn(false);
+        when(vectorStore.query(forCollection("code"), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(rankedPoint("class Orchestrator"), rankedPoint("deleted code"))));
+        when(lexicalIndexService.search("code", TEST_MESSAGE, 30)).thenReturn(List.of(
+                new LexicalIndex.Hit(id("Orchestrator.java"), "Orchestrator.java", 3.1f)));
+        when(vectorStore.retrieve(any(Points.GetPoints.class), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(retrievedPoint("class Orchestrator"), retrievedPoint("Orchestrator.java"))));
+
+        // Act
+        List<ContextSnippet> snippets = vectorSearchService.searchSnippets(TEST_MESSAGE, TEST_VECTOR);
+
+        // Assert - dense and lexical matches alike are looked up together
+        assertEquals(List.of("class Orchestrator", "Orchestrator.java"), snippets.stream().map(ContextSnippet::content).toList());
+        verify(vectorStore).query(argThat(query -> !query.getWithPayload().getInclude().getFieldsList().contains("content")),
+                any(Duration.class));
+        verify(vectorStore).retrieve(argThat(request -> request.getCollectionName().equals("code")
+                && request.getIdsList().equals(List.of(id("class Orchestrator"), id("Orchestrator.java"), id("deleted code")))
+                && request.getWithPayload().getInclude().getFieldsList().equals(List.of("content"))), any(Duration.class));
+    }
+
+    @Test
+    void searchSnippets_ShouldKeepSnippetsWithContent_WhenContentLookupFails() throws Exception {
+        // Arrange
+        when(collectionCatalog.contains("code")).thenReturn(true);
+        when(collectionCatalog.contains("confluence")).thenReturn(false);
+        when(vectorStore.query(forCollection("code"), any(Duration.class)))
+                .thenReturn(Futures.immediateFuture(List.of(point("class Orchestrator"))));
+        when(lexicalIndexService.search("code", TEST_MESSAGE, 30)).thenReturn(List.of(
+                new LexicalIndex.Hit(id("Orchestrator.java"), "Orchestrator.java", 3.1f)));
+        when(vectorStore.retrieve(any(Points.GetPoints.class), any(Duration.class)))
+                .thenReturn(Futures.immediateFailedFuture(Status.DEADLINE_EXCEEDED.asRuntimeException()));
+
+        // Act
+        List<ContextSnippet> snippets = vectorSearchService.searchSnippets(TEST_MESSAGE, TEST_VECTOR);
+
+        // Assert
+        assertEquals(List.of("class Orchestrator"), snippets.stream().map(ContextSnippet::content).toList());
+    }
+
+    private static Points.QueryPoints forCollection(String collectionName) {
+        return argThat(query -> query != null && query.getCollectionName().equals(collectionName));
+    }
+
+    private static Points.ScoredPoint point(String content) {
+        return Points.ScoredPoint.newBuilder()
+                .setId(id(content))
+                .putPayload("content", value(content))
+                .build();
+    }
+
+    // A match as the chat context queries return it, without content
+    private static Points.ScoredPoint rankedPoint(String content) {
+        return Points.ScoredPoint.newBuilder()
+                .setId(id(content))
+                .putPayload("item_path", value(content + ".java"))
+                .build();
+    }
+
+    private static Points.RetrievedPoint retrievedPoint(String content) {
+        return Points.RetrievedPoint.newBuilder()
+                .setId(id(content))
+                .putPayload("content", value(content))
+                .build();
+    }
+
+    private static Points.PointId id(String content) {
+        return Points.PointId.newBuilder()
+                .setUuid(UUID.nameUUIDFromBytes(content.getBytes(StandardCharsets.UTF_8)).toString())
+                .build();
+    }
+}
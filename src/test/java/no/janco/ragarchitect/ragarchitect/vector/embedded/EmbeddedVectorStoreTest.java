@@ -0,0 +1,248 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import io.grpc.Status;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.PointIdFactory.id;
+import static io.qdrant.client.QueryFactory.nearest;
+import static io.qdrant.client.ValueFactory.value;
+import static io.qdrant.client.VectorsFactory.vectors;
+import static io.qdrant.client.WithPayloadSelectorFactory.enable;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedVectorStoreTest {
+
+    @TempDir
+    private Path storeDir;
+
+    private EmbeddedVectorStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new EmbeddedVectorStore(storeDir.toString(), 8, 64, 64);
+        store.createCollection("code", Collections.VectorParams.newBuilder()
+                .setSize(2)
+                .setDistance(Collections.Distance.Cosine)
+                .build()).get();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    @Test
+    void query_ShouldReturnNearestPointsWithPayload_DownToTheThreshold() throws Exception {
+        // Arrange
+        store.upsert("code", List.of(point(1, "east", 1f, 0f), point(2, "north", 0f, 1f), point(3, "north-east", 1f, 1f))).get();
+
+        // Act
+        List<Points.ScoredPoint> points = store.query(query("code", 1f, 0f, 0.5f), null).get();
+
+        // Assert - cosine similarity, so only the direction counts; north is below the threshold
+        assertEquals(List.of(id(1), id(3)), points.stream().map(Points.ScoredPoint::getId).toList());
+        assertEquals(1f, points.get(0).getScore(), 1e-5);
+        assertEquals("east", points.get(0).getPayloadMap().get("content").getStringValue());
+    }
+
+    @Test
+    void open_ShouldRestoreUpsertsAndDeletes_FromDisk() throws Exception {
+        // Arrange
+        store.upsert("code", List.of(point(1, "first", 1f, 0f), point(2, "second", 0f, 1f))).get();
+        store.upsert("code", List.of(point(1, "first, again", 1f, 0.1f))).get();
+        store.delete("code", List.of(id(2))).get();
+        store.close();
+
+        // Act
+        store = new EmbeddedVectorStore(storeDir.toString(), 8, 64, 64);
+        List<Points.ScoredPoint> points = store.query(query("code", 1f, 0f, 0f), null).get();
+
+        // Assert
+        assertEquals(List.of("code"), store.listCollections().get());
+        assertEquals(1, store.getCollectionMetadata("code").get().pointCount());
+        assertEquals(1, points.size());
+        assertEquals("first, again", points.get(0).getPayloadMap().get("content").getStringValue());
+    }
+
+    @Test
+    void scroll_ShouldPageInIdOrder_AndDeleteShouldRemoveFilteredPoints() throws Exception {
+        // Arrange
+        List<Points.PointStruct> points = new ArrayList<>();
+        for (int i = 5; i > 0; i--) {
+            points.add(point(i, i % 2 == 0 ? "even" : "odd", 1f, i));
+        }
+        store.upsert("code", points).get();
+
+        // Act
+        Points.ScrollResponse firstPage = store.scroll(scroll(null)).get();
+        Points.ScrollResponse secondPage = store.scroll(scroll(firstPage.getNextPageOffset())).get();
+        store.delete("code", Points.Filter.newBuilder().addMust(matchKeyword("content", "odd")).build()).get();
+        Points.ScrollResponse afterDelete = store.scroll(scroll(null)).get();
+
+        // Assert
+        assertEquals(List.of(id(1), id(2), id(3)), firstPage.getResultList().stream().map(Points.RetrievedPoint::getId).toList());
+        assertEquals(List.of(id(4), id(5)), secondPage.getResultList().stream().map(Points.RetrievedPoint::getId).toList());
+        assertFalse(secondPage.hasNextPageOffset());
+        assertEquals(List.of(id(2), id(4)), afterDelete.getResultList().stream().map(Points.RetrievedPoint::getId).toList());
+    }
+
+    @Test
+    void query_ShouldFindMostOfTheTrueNearestNeighbours() throws Exception {
+        // Arrange
+        int dimension = 32;
+        store.createCollection("random", Collections.VectorParams.newBuilder()
+                .setSize(dimension)
+                .setDistance(Collections.Distance.Cosine)
+                .build()).get();
+        Random random = new Random(7);
+        float[][] vectors = new float[3000][];
+        List<Points.PointStruct> points = new ArrayList<>();
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomUnitVector(random, dimension);
+            points.add(point(i, "point " + i, vectors[i]));
+        }
+        store.upsert("random", points).get();
+
+        // Act
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomUnitVector(random, dimension);
+            Set<Long> expected = new HashSet<>(IntStream.range(0, vectors.length).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -VectorSegments.dot(vectors[i], query)))
+                    .limit(10)
+                    .map(Integer::longValue)
+                    .toList());
+            for (Points.ScoredPoint point : store.query(Points.QueryPoints.newBuilder()
+                    .setCollectionName("random")
+                    .setQuery(nearest(query))
+                    .setLimit(10)
+                    .build(), null).get()) {
+                if (expected.contains(point.getId().getNum())) {
+                    found++;
+                }
+            }
+        }
+
+        // Assert
+        double recall = found / (queries * 10.0);
+        assertTrue(recall >= 0.9, "Recall was " + recall);
+    }
+
+    @Test
+    void query_ShouldAnswer_WhileAnotherThreadUpserts() throws Exception {
+        // Arrange
+        store.upsert("code", List.of(point(0, "origin", 1f, 0f))).get();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+
+        // Act
+        Future<?> upserts = writer.submit(() -> {
+            for (int i = 1; i <= 2000; i++) {
+                store.upsert("code", List.of(point(i, "point " + i, (float) Math.cos(i), (float) Math.sin(i)))).get();
+            }
+            return null;
+        });
+        do {
+            // Assert - every answer is complete, whatever the writer is in the middle of
+            List<Points.ScoredPoint> points = store.query(query("code", 1f, 0f, -1f), null).get();
+            assertFalse(points.isEmpty());
+            points.forEach(point -> assertTrue(point.getPayloadMap().containsKey("content")));
+        } while (!upserts.isDone());
+        upserts.get();
+        writer.shutdown();
+
+        assertEquals(2001, store.getCollectionMetadata("code").get().pointCount());
+    }
+
+    @Test
+    void query_ShouldRescoreQuantizedCandidates_AndKeepQuantizationAcrossReopen() throws Exception {
+        // Arrange
+        store.upsert("code", List.of(point(1, "east", 1f, 0f), point(2, "north", 0f, 1f), point(3, "north-east", 1f, 1f))).get();
+        store.updateQuantization("code", Collections.QuantizationConfigDiff.newBuilder()
+                .setBinary(Collections.BinaryQuantization.getDefaultInstance())
+                .build()).get();
+        store.upsert("code", List.of(point(4, "south-east", 1f, -0.2f))).get();
+        store.close();
+        store = new EmbeddedVectorStore(storeDir.toString(), 8, 64, 64);
+
+        // Act - east and south-east have the same signs, so only the rescoring tells them apart
+        List<Points.ScoredPoint> points = store.query(query("code", 1f, 0f, 0f).toBuilder()
+                .setLimit(2)
+                .setParams(Points.SearchParams.newBuilder()
+                        .setQuantization(Points.QuantizationSearchParams.newBuilder().setOversampling(2)))
+                .build(), null).get();
+
+        // Assert
+        assertEquals(List.of(id(1), id(4)), points.stream().map(Points.ScoredPoint::getId).toList());
+        assertEquals(1f, points.get(0).getScore(), 1e-5);
+        assertEquals(1 / Math.sqrt(1.04), points.get(1).getScore(), 1e-5);
+    }
+
+    @Test
+    void query_ShouldFailWithNotFound_ForMissingCollection() {
+        // Act
+        ExecutionException e = assertThrows(ExecutionException.class, () -> store.query(query("missing", 1f, 0f, 0f), null).get());
+
+        // Assert
+        assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(e).getCode());
+    }
+
+    private static Points.PointStruct point(long id, String content, float... vector) {
+        return Points.PointStruct.newBuilder()
+                .setId(id(id))
+                .setVectors(vectors(vector))
+                .putPayload("content", value(content))
+                .build();
+    }
+
+    private static Points.QueryPoints query(String collectionName, float x, float y, float scoreThreshold) {
+        return Points.QueryPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setQuery(nearest(x, y))
+                .setWithPayload(enable(true))
+                .setLimit(10)
+                .setScoreThreshold(scoreThreshold)
+                .build();
+    }
+
+    private static Points.ScrollPoints scroll(Points.PointId offset) {
+        Points.ScrollPoints.Builder request = Points.ScrollPoints.newBuilder()
+                .setCollectionName("code")
+                .setLimit(3);
+        if (offset != null) {
+            request.setOffset(offset);
+        }
+        return request.build();
+    }
+
+    private static float[] randomUnitVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        float norm = (float) Math.sqrt(VectorSegments.dot(vector, vector));
+        for (int i = 0; i < dimension; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+}
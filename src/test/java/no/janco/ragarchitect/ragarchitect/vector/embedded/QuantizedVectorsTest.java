@@ -0,0 +1,80 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedVectorsTest {
+
+    private static final int DIMENSION = 64;
+
+    @Test
+    void search_ShouldEstimateDotProducts_WithScalarQuantization() {
+        // Arrange
+        Random random = new Random(3);
+        float[][] vectors = randomVectors(random, 500);
+        QuantizedVectors quantized = quantized(QuantizedVectors.Type.SCALAR, vectors);
+        float[] query = randomVectors(random, 1)[0];
+
+        // Act
+        List<QuantizedVectors.Match> matches = quantized.search(query, 500, 1, slot -> true, null);
+
+        // Assert
+        assertEquals(500, matches.size());
+        for (QuantizedVectors.Match match : matches) {
+            assertEquals(VectorSegments.dot(vectors[match.slot()], query), match.score(), 0.02);
+        }
+    }
+
+    @Test
+    void search_ShouldFindExactNearest_WithBinaryQuantizationAndRescoring() {
+        // Arrange
+        Random random = new Random(5);
+        float[][] vectors = randomVectors(random, 2000);
+        QuantizedVectors quantized = quantized(QuantizedVectors.Type.BINARY, vectors);
+        float[] query = randomVectors(random, 1)[0];
+        List<Integer> expected = IntStream.range(0, vectors.length).boxed()
+                .filter(slot -> slot % 2 == 0)
+                .sorted(Comparator.comparingDouble(slot -> -VectorSegments.dot(vectors[slot], query)))
+                .limit(5)
+                .toList();
+
+        // Act - only even slots are accepted, and oversampled enough to rescore every one of them
+        List<QuantizedVectors.Match> matches = quantized.search(query, 5, 200, slot -> slot % 2 == 0,
+                slot -> VectorSegments.dot(vectors[slot], query));
+        List<QuantizedVectors.Match> unrescored = quantized.search(query, 5, 200, slot -> slot % 2 == 0, null);
+
+        // Assert
+        assertEquals(expected, matches.stream().map(QuantizedVectors.Match::slot).toList());
+        assertEquals(VectorSegments.dot(vectors[expected.get(0)], query), matches.get(0).score());
+        assertEquals(5, unrescored.size());
+        unrescored.forEach(match -> assertTrue(match.score() >= -1 && match.score() <= 1));
+    }
+
+    private static QuantizedVectors quantized(QuantizedVectors.Type type, float[][] vectors) {
+        QuantizedVectors quantized = new QuantizedVectors(type, DIMENSION);
+        for (int slot = 0; slot < vectors.length; slot++) {
+            quantized.set(slot, vectors[slot]);
+        }
+        return quantized;
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][DIMENSION];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+            float norm = (float) Math.sqrt(VectorSegments.dot(vector, vector));
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,36 @@
+package no.janco.ragarchitect.ragarchitect.vector.embedded;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static no.janco.ragarchitect.ragarchitect.vector.embedded.VectorSegments.SEGMENT_SLOTS;
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorSegmentsTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void force_ShouldWriteSlotsAcrossSegments_ToBeReadOnReopen() throws Exception {
+        // Arrange - a run of slots from the end of the first segment into the second
+        VectorSegments segments = new VectorSegments(directory, 4);
+        int firstSlot = SEGMENT_SLOTS - 2;
+        for (int i = 0; i < 4; i++) {
+            segments.write(firstSlot + i, new float[] {i, i + 1, i + 2, i + 3});
+        }
+
+        // Act
+        segments.force(firstSlot, 4);
+
+        // Assert
+        VectorSegments reopened = new VectorSegments(directory, 4);
+        float[] vector = new float[4];
+        for (int i = 0; i < 4; i++) {
+            reopened.read(firstSlot + i, vector);
+            assertArrayEquals(new float[] {i, i + 1, i + 2, i + 3}, vector);
+        }
+    }
+}
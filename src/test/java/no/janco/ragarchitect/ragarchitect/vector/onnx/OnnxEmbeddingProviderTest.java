@@ -0,0 +1,155 @@
+package no.janco.ragarchitect.ragarchitect.vector.onnx;
+
+import com.google.protobuf.CodedOutputStream;
+import no.janco.ragarchitect.ragarchitect.vector.Embedding;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OnnxEmbeddingProviderTest {
+
+    @TempDir
+    private Path modelDir;
+
+    private OnnxEmbeddingProvider provider;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.write(modelDir.resolve("vocab.txt"), List.of("[PAD]", "[UNK]", "[CLS]", "[SEP]", "hello", "world", "##s"));
+        Files.createDirectories(modelDir.resolve("onnx"));
+        Files.write(modelDir.resolve("onnx/model.onnx"), tokenIdModel());
+        provider = new OnnxEmbeddingProvider(modelDir.toString(), 2, 1, 2, 16, true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        provider.close();
+    }
+
+    @Test
+    void embed_ShouldMeanPoolRealTokensOnly_AcrossPaddedBatches() {
+        // Act - three texts in batches of two, the first batch padded to the longer text
+        List<Embedding> embeddings = provider.embed(List.of("hello", "hello worlds", "world"));
+
+        // Assert - the test model's token embedding is (token id, 1)
+        assertEquals(3, embeddings.size());
+        assertVector(new float[]{3f, 1f}, embeddings.get(0)); // [CLS] hello [SEP] = 2, 4, 3
+        assertVector(new float[]{4f, 1f}, embeddings.get(1)); // [CLS] hello world ##s [SEP] = 2, 4, 5, 6, 3
+        assertVector(new float[]{10f / 3, 1f}, embeddings.get(2)); // [CLS] world [SEP] = 2, 5, 3
+    }
+
+    @Test
+    void meanPool_ShouldLeaveVectorsUnnormalized_WhenDisabled() {
+        // Arrange
+        float[][][] tokenEmbeddings = {{{1f, 2f}, {3f, 4f}, {100f, 100f}}};
+
+        // Act
+        List<Embedding> embeddings = OnnxEmbeddingProvider.meanPool(tokenEmbeddings, new int[]{2}, false);
+
+        // Assert
+        assertEquals(Embedding.of(2f, 3f), embeddings.get(0));
+    }
+
+    private static void assertVector(float[] direction, Embedding actual) {
+        double norm = Math.sqrt(direction[0] * direction[0] + direction[1] * direction[1]);
+        assertEquals(direction[0] / norm, actual.values()[0], 1e-5);
+        assertEquals(direction[1] / norm, actual.values()[1], 1e-5);
+    }
+
+    /**
+     * A BERT-shaped ONNX graph whose last_hidden_state is (input id, 1) for every token, so pooling can be checked
+     * by hand. Written as raw protobuf, field numbers as in onnx.proto, since the onnx classes are not a dependency.
+     */
+    private static byte[] tokenIdModel() throws IOException {
+        Proto graph = new Proto()
+                .message(1, node("Cast", List.of("input_ids"), "ids", new Proto().string(1, "to").int64(3, 1).int64(20, 2)))
+                .message(1, node("Unsqueeze", List.of("ids", "axes"), "column", null))
+                .message(1, node("Mul", List.of("column", "scale"), "scaled", null))
+                .message(1, node("Add", List.of("scaled", "offset"), "last_hidden_state", null))
+                .string(2, "token_id_model")
+                .message(5, tensor("axes", 7, new long[]{2}, null))
+                .message(5, tensor("scale", 1, null, new float[]{1f, 0f}))
+                .message(5, tensor("offset", 1, null, new float[]{0f, 1f}))
+                .message(11, valueInfo("input_ids", 7, "batch", "sequence"))
+                .message(11, valueInfo("attention_mask", 7, "batch", "sequence"))
+                .message(11, valueInfo("token_type_ids", 7, "batch", "sequence"))
+                .message(12, valueInfo("last_hidden_state", 1, "batch", "sequence", 2L));
+        return new Proto()
+                .int64(1, 8)
+                .message(8, new Proto().int64(2, 13))
+                .message(7, graph)
+                .bytes();
+    }
+
+    private static Proto node(String opType, List<String> inputs, String output, Proto attribute) throws IOException {
+        Proto node = new Proto();
+        for (String input : inputs) {
+            node.string(1, input);
+        }
+        node.string(2, output).string(4, opType);
+        return attribute == null ? node : node.message(5, attribute);
+    }
+
+    private static Proto tensor(String name, int dataType, long[] int64s, float[] floats) throws IOException {
+        Proto tensor = new Proto().int64(1, int64s != null ? int64s.length : floats.length).int64(2, dataType);
+        if (floats != null) {
+            for (float value : floats) {
+                tensor.float32(4, value);
+            }
+        } else {
+            for (long value : int64s) {
+                tensor.int64(7, value);
+            }
+        }
+        return tensor.string(8, name);
+    }
+
+    // Each dimension is either a name (String) or a fixed size (Long)
+    private static Proto valueInfo(String name, int elementType, Object... dimensions) throws IOException {
+        Proto shape = new Proto();
+        for (Object dimension : dimensions) {
+            shape.message(1, dimension instanceof Long size ? new Proto().int64(1, size) : new Proto().string(2, (String) dimension));
+        }
+        Proto tensorType = new Proto().int64(1, elementType).message(2, shape);
+        return new Proto().string(1, name).message(2, new Proto().message(1, tensorType));
+    }
+
+    private static final class Proto {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final CodedOutputStream out = CodedOutputStream.newInstance(buffer);
+
+        Proto int64(int field, long value) throws IOException {
+            out.writeInt64(field, value);
+            return this;
+        }
+
+        Proto float32(int field, float value) throws IOException {
+            out.writeFloat(field, value);
+            return this;
+        }
+
+        Proto string(int field, String value) throws IOException {
+            out.writeString(field, value);
+            return this;
+        }
+
+        Proto message(int field, Proto message) throws IOException {
+            out.writeByteArray(field, message.bytes());
+            return this;
+        }
+
+        byte[] bytes() throws IOException {
+            out.flush();
+            return buffer.toByteArray();
+        }
+    }
+}